@@ -514,6 +514,8 @@ CREATE TABLE `ANSWER_GENERATION_BATCHES` (
     `ERROR_MESSAGE` TEXT NULL COMMENT '错误信息',
     `PROCESSING_INSTANCE` VARCHAR(100) NULL COMMENT '处理实例标识，用于防止多进程同时处理同一批次',
     `LAST_PROCESSED_RUN_ID` BIGINT NULL COMMENT '上次处理到的MODEL_ANSWER_RUN的ID',
+    `PRIORITY` INT NOT NULL DEFAULT 1 COMMENT '调度优先级，同一用户的多个批次按优先级比例分配该用户的份额',
+    `EXECUTION_MODE` VARCHAR(20) NOT NULL DEFAULT 'ONLINE' COMMENT '执行方式：ONLINE逐题实时调用，PROVIDER_BATCH通过提供商的批量接口离线提交',
     FOREIGN KEY (`DATASET_VERSION_ID`) REFERENCES `DATASET_VERSIONS`(`ID`) ON DELETE RESTRICT,
     FOREIGN KEY (`CREATED_BY_USER_ID`) REFERENCES `USERS`(`ID`) ON DELETE SET NULL,
     FOREIGN KEY (`ANSWER_ASSEMBLY_CONFIG_ID`) REFERENCES `ANSWER_PROMPT_ASSEMBLY_CONFIGS`(`ID`) ON DELETE SET NULL,
@@ -568,6 +570,27 @@ ALTER TABLE `ANSWER_GENERATION_BATCHES`
     )
         REFERENCES `MODEL_ANSWER_RUNS`(`ID`) ON DELETE SET NULL;
 
+-- 26. provider_batch_jobs (提供商批量任务表)
+DROP TABLE IF EXISTS `PROVIDER_BATCH_JOBS`;
+CREATE TABLE `PROVIDER_BATCH_JOBS` (
+    `ID` BIGINT PRIMARY KEY AUTO_INCREMENT COMMENT '提供商批量任务ID',
+    `MODEL_ANSWER_RUN_ID` BIGINT NOT NULL COMMENT '所属的模型回答运行',
+    `PROVIDER_BATCH_ID` VARCHAR(255) NOT NULL COMMENT '提供商返回的批量任务ID',
+    `INPUT_FILE_ID` VARCHAR(255) NULL COMMENT '上传的请求文件ID',
+    `STATUS` ENUM('SUBMITTED', 'IN_PROGRESS', 'COMPLETED', 'FAILED', 'EXPIRED', 'CANCELLED', 'INGESTED') NOT NULL DEFAULT 'SUBMITTED' COMMENT '任务状态，INGESTED表示结果已写入回答表',
+    `REQUEST_COUNT` INT NOT NULL DEFAULT 0 COMMENT '提交的请求数',
+    `COMPLETED_COUNT` INT NOT NULL DEFAULT 0 COMMENT '提供商已完成的请求数',
+    `FAILED_COUNT` INT NOT NULL DEFAULT 0 COMMENT '提供商处理失败的请求数',
+    `OUTPUT_FILE_ID` VARCHAR(255) NULL COMMENT '结果文件ID',
+    `ERROR_FILE_ID` VARCHAR(255) NULL COMMENT '错误文件ID',
+    `ERROR_MESSAGE` TEXT NULL COMMENT '错误信息',
+    `SUBMITTED_AT` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '提交时间',
+    `LAST_POLL_TIME` DATETIME NULL COMMENT '最近一次查询状态的时间',
+    `COMPLETED_AT` DATETIME NULL COMMENT '结果写入完成的时间',
+    FOREIGN KEY (`MODEL_ANSWER_RUN_ID`) REFERENCES `MODEL_ANSWER_RUNS`(`ID`) ON DELETE CASCADE,
+    INDEX `IDX_PROVIDER_BATCH_JOBS_RUN_STATUS` (`MODEL_ANSWER_RUN_ID`, `STATUS`)
+) ENGINE=INNODB DEFAULT CHARSET=UTF8MB4 COLLATE=UTF8MB4_UNICODE_CI COMMENT='提供商批量任务表';
+
 -- 27. llm_answers (LLM回答表)
 DROP TABLE IF EXISTS `LLM_ANSWERS`;
 CREATE TABLE `LLM_ANSWERS` (
@@ -582,8 +605,16 @@ CREATE TABLE `LLM_ANSWERS` (
     `RAW_MODEL_RESPONSE` TEXT NULL COMMENT '模型的原始响应',
     `OTHER_METADATA` JSON NULL COMMENT '其他元数据',
     `REPEAT_INDEX` INT NOT NULL DEFAULT 0 COMMENT '重复回答的索引，0表示第一次',
+    `PROMPT_TOKENS` INT NULL COMMENT '生成调用的输入token数',
+    `COMPLETION_TOKENS` INT NULL COMMENT '生成调用的输出token数',
+    `TOTAL_TOKENS` INT NULL COMMENT '生成调用的总token数',
+    `LATENCY_MS` BIGINT NULL COMMENT '生成调用的耗时（毫秒）',
+    `TTFT_MS` BIGINT NULL COMMENT '首字延迟（毫秒），仅流式调用有值',
+    `RETRY_COUNT` INT NULL COMMENT '生成调用的重试次数',
+    `FINISH_REASON` VARCHAR(50) NULL COMMENT '模型返回的结束原因',
     FOREIGN KEY (`MODEL_ANSWER_RUN_ID`) REFERENCES `MODEL_ANSWER_RUNS`(`ID`) ON DELETE CASCADE,
     FOREIGN KEY (`DATASET_QUESTION_MAPPING_ID`) REFERENCES `DATASET_QUESTION_MAPPING`(`ID`) ON DELETE CASCADE,
+    UNIQUE (`MODEL_ANSWER_RUN_ID`, `DATASET_QUESTION_MAPPING_ID`, `REPEAT_INDEX`) COMMENT '同一运行中每个问题的每次重复只保存一个回答，重复投递或接管时的重复写入被忽略',
     INDEX `IDX_LLM_ANSWERS_RUN_STATUS` (`MODEL_ANSWER_RUN_ID`, `GENERATION_STATUS`),
     INDEX `IDX_LLM_ANSWERS_QUESTION` (`DATASET_QUESTION_MAPPING_ID`),
     INDEX `IDX_LLM_ANSWERS_TIME` (`GENERATION_TIME`)
@@ -713,6 +744,15 @@ CREATE TABLE `EVALUATIONS` (
     `SCORE_TYPE` VARCHAR(50) NULL COMMENT '分数类型（例如：客观题得分、主观题得分、综合得分）',
     `SCORING_METHOD` VARCHAR(100) NULL COMMENT '评分方法',
     
+    /* 裁判模型调用的token用量和耗时 */
+    `PROMPT_TOKENS` INT NULL COMMENT '评测调用的输入token数',
+    `COMPLETION_TOKENS` INT NULL COMMENT '评测调用的输出token数',
+    `TOTAL_TOKENS` INT NULL COMMENT '评测调用的总token数',
+    `LATENCY_MS` BIGINT NULL COMMENT '评测调用的耗时（毫秒）',
+    `TTFT_MS` BIGINT NULL COMMENT '首字延迟（毫秒），仅流式调用有值',
+    `RETRY_COUNT` INT NULL COMMENT '评测调用的重试次数',
+    `FINISH_REASON` VARCHAR(50) NULL COMMENT '模型返回的结束原因',
+    
     FOREIGN KEY (`LLM_ANSWER_ID`) REFERENCES `LLM_ANSWERS`(`ID`) ON DELETE CASCADE,
     FOREIGN KEY (`EVALUATOR_ID`) REFERENCES `EVALUATORS`(`ID`) ON DELETE RESTRICT,
     FOREIGN KEY (`CREATED_BY_USER_ID`) REFERENCES `USERS`(`ID`) ON DELETE SET NULL,
@@ -779,6 +819,18 @@ CREATE TABLE `MODEL_BATCH_SCORES` (
     INDEX `IDX_MODEL_BATCH_SCORES_CALC_TIME` (`CALCULATED_AT`)
 ) ENGINE=INNODB DEFAULT CHARSET=UTF8MB4 COLLATE=UTF8MB4_UNICODE_CI COMMENT='模型批次评分表';
 
+-- 34. answer_work_unit_results (分布式工作单元结果表)
+DROP TABLE IF EXISTS `ANSWER_WORK_UNIT_RESULTS`;
+CREATE TABLE `ANSWER_WORK_UNIT_RESULTS` (
+    `MODEL_ANSWER_RUN_ID` BIGINT NOT NULL COMMENT '所属的模型回答运行',
+    `UNIT_ID` VARCHAR(100) NOT NULL COMMENT '工作单元ID（批次:运行:起始序号:结束序号）',
+    `FAILED_COUNT` INT NOT NULL DEFAULT 0 COMMENT '单元最近一次处理中失败的问题数',
+    `FAILED_QUESTION_IDS` JSON NULL COMMENT '单元最近一次处理中失败的问题ID列表',
+    `UPDATED_AT` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    PRIMARY KEY (`MODEL_ANSWER_RUN_ID`, `UNIT_ID`),
+    FOREIGN KEY (`MODEL_ANSWER_RUN_ID`) REFERENCES `MODEL_ANSWER_RUNS`(`ID`) ON DELETE CASCADE
+) ENGINE=INNODB DEFAULT CHARSET=UTF8MB4 COLLATE=UTF8MB4_UNICODE_CI COMMENT='分布式工作单元结果表，重复投递的单元覆盖此前的结果';
+
 -- =============================================
 -- 性能优化视图
 -- =============================================
@@ -1,35 +1,68 @@
 package com.example.demo.config;
 
-import java.util.concurrent.Executor;
-
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
+import com.example.demo.config.LlmConfig.ConcurrencyConfig;
+import com.example.demo.util.BoundedVirtualThreadExecutor;
+
+/**
+ * 异步执行器配置
+ * LLM调用属于阻塞I/O，统一使用虚拟线程执行，并发上限由信号量控制
+ */
 @Configuration
 @EnableAsync
 public class AsyncConfig {
-    
-    @Bean(name = "taskExecutor")
-    public Executor taskExecutor() {
-        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(5); // 核心线程数
-        executor.setMaxPoolSize(10); // 最大线程数
-        executor.setQueueCapacity(25); // 队列容量
-        executor.setThreadNamePrefix("AnswerGen-"); // 线程名前缀
-        executor.initialize();
-        return executor;
+
+    private final LlmConfig llmConfig;
+
+    public AsyncConfig(LlmConfig llmConfig) {
+        this.llmConfig = llmConfig;
     }
-    
-    @Bean(name = "evaluationExecutor")
-    public Executor evaluationExecutor() {
-        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(3); // 核心线程数
-        executor.setMaxPoolSize(5); // 最大线程数
-        executor.setQueueCapacity(10); // 队列容量
-        executor.setThreadNamePrefix("Eval-"); // 线程名前缀
-        executor.initialize();
-        return executor;
+
+    /**
+     * 批次级后台任务（批次启动、恢复等）
+     */
+    @Bean(name = "taskExecutor", destroyMethod = "shutdownNow")
+    public BoundedVirtualThreadExecutor taskExecutor() {
+        ConcurrencyConfig concurrency = llmConfig.getConcurrency();
+        return new BoundedVirtualThreadExecutor("AnswerGen", concurrency.getTaskMaxConcurrency());
+    }
+
+    /**
+     * 问题处理流水线：Prompt组装阶段（读数据库）
+     */
+    @Bean(name = "promptStageExecutor", destroyMethod = "shutdownNow")
+    public BoundedVirtualThreadExecutor promptStageExecutor() {
+        ConcurrencyConfig concurrency = llmConfig.getConcurrency();
+        return new BoundedVirtualThreadExecutor("PromptStage", concurrency.getPromptStageConcurrency());
+    }
+
+    /**
+     * 问题处理流水线：LLM调用阶段，所有运行共享，不持有数据库连接
+     */
+    @Bean(name = "questionExecutor", destroyMethod = "shutdownNow")
+    public BoundedVirtualThreadExecutor questionExecutor() {
+        ConcurrencyConfig concurrency = llmConfig.getConcurrency();
+        return new BoundedVirtualThreadExecutor("Question", concurrency.getQuestionMaxConcurrency());
+    }
+
+    /**
+     * 问题处理流水线：保存回答阶段（短事务写数据库）
+     */
+    @Bean(name = "persistStageExecutor", destroyMethod = "shutdownNow")
+    public BoundedVirtualThreadExecutor persistStageExecutor() {
+        ConcurrencyConfig concurrency = llmConfig.getConcurrency();
+        return new BoundedVirtualThreadExecutor("PersistStage", concurrency.getPersistStageConcurrency());
+    }
+
+    /**
+     * 评测任务（包括评测模型调用）
+     */
+    @Bean(name = "evaluationExecutor", destroyMethod = "shutdownNow")
+    public BoundedVirtualThreadExecutor evaluationExecutor() {
+        ConcurrencyConfig concurrency = llmConfig.getConcurrency();
+        return new BoundedVirtualThreadExecutor("Eval", concurrency.getEvaluationMaxConcurrency());
     }
-} 
+}
@@ -1,5 +1,8 @@
 package com.example.demo.config;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
@@ -11,11 +14,29 @@ public class LlmConfig {
     private String defaultModel;
     private int connectionTimeout;
     private int readTimeout;
-    private RetryConfig retry;
+    private RetryConfig retry = new RetryConfig();
+    private ConcurrencyConfig concurrency = new ConcurrencyConfig();
+    private RateLimitConfig rateLimit = new RateLimitConfig();
+    private CircuitBreakerConfig circuitBreaker = new CircuitBreakerConfig();
+    private StreamingConfig streaming = new StreamingConfig();
+    private HttpClientConfig httpClient = new HttpClientConfig();
+    private HedgingConfig hedging = new HedgingConfig();
+    private SimulatorConfig simulator = new SimulatorConfig();
+    private TimeoutConfig timeout = new TimeoutConfig();
+    private HealthConfig health = new HealthConfig();
+    private DistributedConfig distributed = new DistributedConfig();
+    private OwnershipConfig ownership = new OwnershipConfig();
+    private UsageConfig usage = new UsageConfig();
+    private FairShareConfig fairShare = new FairShareConfig();
+    private OrderingConfig ordering = new OrderingConfig();
+    private ProviderBatchConfig providerBatch = new ProviderBatchConfig();
     
     public static class RetryConfig {
-        private int maxAttempts;
-        private int backoffDelay;
+        // 单个问题调用模型的最大尝试次数（含首次调用）
+        private int maxAttempts = 3;
+        // 指数退避的初始延迟和最大延迟（毫秒），实际延迟带随机抖动
+        private int backoffDelay = 1000;
+        private int maxBackoffDelay = 30000;
         
         public int getMaxAttempts() {
             return maxAttempts;
@@ -32,6 +53,956 @@ public class LlmConfig {
         public void setBackoffDelay(int backoffDelay) {
             this.backoffDelay = backoffDelay;
         }
+        
+        public int getMaxBackoffDelay() {
+            return maxBackoffDelay;
+        }
+        
+        public void setMaxBackoffDelay(int maxBackoffDelay) {
+            this.maxBackoffDelay = maxBackoffDelay;
+        }
+    }
+    
+    /**
+     * 调用模型API的HTTP客户端配置，客户端按提供商地址复用
+     */
+    public static class HttpClientConfig {
+        // 同一地址（协议+主机+端口）同时进行的最大请求数；HTTPS地址的请求在同一HTTP/2连接上多路复用，
+        // 限制的是并发请求数而不是连接数
+        private int maxConcurrentRequestsPerRoute = 64;
+        private long connectTimeoutMs = 30000;
+        
+        public int getMaxConcurrentRequestsPerRoute() {
+            return maxConcurrentRequestsPerRoute;
+        }
+        
+        public void setMaxConcurrentRequestsPerRoute(int maxConcurrentRequestsPerRoute) {
+            this.maxConcurrentRequestsPerRoute = maxConcurrentRequestsPerRoute;
+        }
+        
+        public long getConnectTimeoutMs() {
+            return connectTimeoutMs;
+        }
+        
+        public void setConnectTimeoutMs(long connectTimeoutMs) {
+            this.connectTimeoutMs = connectTimeoutMs;
+        }
+    }
+    
+    /**
+     * 流式调用配置
+     */
+    public static class StreamingConfig {
+        // 是否对支持的API类型（openai、openai_compatible、anthropic、google）使用流式调用
+        private boolean enabled = true;
+        // 检查中断标志和空闲超时的间隔（毫秒），决定暂停后多快断开连接
+        private long watchdogIntervalMs = 200;
+        
+        public boolean isEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public long getWatchdogIntervalMs() {
+            return watchdogIntervalMs;
+        }
+        
+        public void setWatchdogIntervalMs(long watchdogIntervalMs) {
+            this.watchdogIntervalMs = watchdogIntervalMs;
+        }
+    }
+    
+    /**
+     * 内嵌的模拟提供商服务配置，用于在不消耗真实API配额的情况下压测回答生成和评测
+     */
+    public static class SimulatorConfig {
+        private boolean enabled = false;
+        // 监听端口，模型的API地址指向 http://localhost:端口 即可
+        private int port = 18089;
+        // simulate：生成模拟响应；record：转发到upstreamUrl并把交互录制到磁盘；replay：按请求内容回放录制的响应
+        private String mode = "simulate";
+        // 录制模式下转发的真实提供商基础地址
+        private String upstreamUrl = "";
+        // 录制文件目录
+        private String recordDir = "simulator-recordings";
+        // 回放时是否按录制的耗时延迟返回
+        private boolean replayLatency = true;
+        // 首个token延迟服从对数正态分布：中位数（毫秒）和对数标准差
+        private long medianFirstTokenMs = 800;
+        private double latencySigma = 0.6;
+        // 每个输出token的生成间隔（毫秒），非流式响应在全部生成后一次返回
+        private long tokenIntervalMs = 20;
+        // 每个回答的平均输出token数
+        private int outputTokens = 200;
+        // 注入429和5xx错误的概率
+        private double throttleRate = 0.0;
+        private double errorRate = 0.0;
+        // 429响应的Retry-After秒数
+        private int retryAfterSeconds = 1;
+        
+        public boolean isEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public int getPort() {
+            return port;
+        }
+        
+        public void setPort(int port) {
+            this.port = port;
+        }
+        
+        public String getMode() {
+            return mode;
+        }
+        
+        public void setMode(String mode) {
+            this.mode = mode;
+        }
+        
+        public String getUpstreamUrl() {
+            return upstreamUrl;
+        }
+        
+        public void setUpstreamUrl(String upstreamUrl) {
+            this.upstreamUrl = upstreamUrl;
+        }
+        
+        public String getRecordDir() {
+            return recordDir;
+        }
+        
+        public void setRecordDir(String recordDir) {
+            this.recordDir = recordDir;
+        }
+        
+        public boolean isReplayLatency() {
+            return replayLatency;
+        }
+        
+        public void setReplayLatency(boolean replayLatency) {
+            this.replayLatency = replayLatency;
+        }
+        
+        public long getMedianFirstTokenMs() {
+            return medianFirstTokenMs;
+        }
+        
+        public void setMedianFirstTokenMs(long medianFirstTokenMs) {
+            this.medianFirstTokenMs = medianFirstTokenMs;
+        }
+        
+        public double getLatencySigma() {
+            return latencySigma;
+        }
+        
+        public void setLatencySigma(double latencySigma) {
+            this.latencySigma = latencySigma;
+        }
+        
+        public long getTokenIntervalMs() {
+            return tokenIntervalMs;
+        }
+        
+        public void setTokenIntervalMs(long tokenIntervalMs) {
+            this.tokenIntervalMs = tokenIntervalMs;
+        }
+        
+        public int getOutputTokens() {
+            return outputTokens;
+        }
+        
+        public void setOutputTokens(int outputTokens) {
+            this.outputTokens = outputTokens;
+        }
+        
+        public double getThrottleRate() {
+            return throttleRate;
+        }
+        
+        public void setThrottleRate(double throttleRate) {
+            this.throttleRate = throttleRate;
+        }
+        
+        public double getErrorRate() {
+            return errorRate;
+        }
+        
+        public void setErrorRate(double errorRate) {
+            this.errorRate = errorRate;
+        }
+        
+        public int getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+        
+        public void setRetryAfterSeconds(int retryAfterSeconds) {
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+    }
+    
+    /**
+     * 按模型延迟分布学习的调用超时配置
+     */
+    public static class TimeoutConfig {
+        // 超时取该分位延迟乘以系数
+        private double percentile = 0.999;
+        private double factor = 3.0;
+        // 超时的下限和上限（秒）
+        private long floorSeconds = 30;
+        private long ceilingSeconds = 1200;
+        // 延迟样本不足时使用的超时（秒）
+        private long initialSeconds = 600;
+        private int minSamples = 50;
+        // 连续超时时超时依次乘以该系数放宽，最多放宽 maxTimeoutBackoffs 次，成功调用后恢复；超时不计入延迟样本
+        private double timeoutBackoff = 1.5;
+        private int maxTimeoutBackoffs = 3;
+        
+        public double getTimeoutBackoff() {
+            return timeoutBackoff;
+        }
+        
+        public void setTimeoutBackoff(double timeoutBackoff) {
+            this.timeoutBackoff = timeoutBackoff;
+        }
+        
+        public int getMaxTimeoutBackoffs() {
+            return maxTimeoutBackoffs;
+        }
+        
+        public void setMaxTimeoutBackoffs(int maxTimeoutBackoffs) {
+            this.maxTimeoutBackoffs = maxTimeoutBackoffs;
+        }
+        
+        public double getPercentile() {
+            return percentile;
+        }
+        
+        public void setPercentile(double percentile) {
+            this.percentile = percentile;
+        }
+        
+        public double getFactor() {
+            return factor;
+        }
+        
+        public void setFactor(double factor) {
+            this.factor = factor;
+        }
+        
+        public long getFloorSeconds() {
+            return floorSeconds;
+        }
+        
+        public void setFloorSeconds(long floorSeconds) {
+            this.floorSeconds = floorSeconds;
+        }
+        
+        public long getCeilingSeconds() {
+            return ceilingSeconds;
+        }
+        
+        public void setCeilingSeconds(long ceilingSeconds) {
+            this.ceilingSeconds = ceilingSeconds;
+        }
+        
+        public long getInitialSeconds() {
+            return initialSeconds;
+        }
+        
+        public void setInitialSeconds(long initialSeconds) {
+            this.initialSeconds = initialSeconds;
+        }
+        
+        public int getMinSamples() {
+            return minSamples;
+        }
+        
+        public void setMinSamples(int minSamples) {
+            this.minSamples = minSamples;
+        }
+    }
+    
+    /**
+     * 批次处理权租约配置
+     */
+    public static class OwnershipConfig {
+        private boolean enabled = true;
+        // 租约有效期（毫秒），持有者超过该时长未续约时由其他实例接管
+        private long leaseTtlMs = 30000;
+        // 持有者续约间隔（毫秒）
+        private long heartbeatIntervalMs = 5000;
+        // 检查过期租约的间隔（毫秒）
+        private long reapIntervalMs = 5000;
+        
+        public boolean isEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public long getLeaseTtlMs() {
+            return leaseTtlMs;
+        }
+        
+        public void setLeaseTtlMs(long leaseTtlMs) {
+            this.leaseTtlMs = leaseTtlMs;
+        }
+        
+        public long getHeartbeatIntervalMs() {
+            return heartbeatIntervalMs;
+        }
+        
+        public void setHeartbeatIntervalMs(long heartbeatIntervalMs) {
+            this.heartbeatIntervalMs = heartbeatIntervalMs;
+        }
+        
+        public long getReapIntervalMs() {
+            return reapIntervalMs;
+        }
+        
+        public void setReapIntervalMs(long reapIntervalMs) {
+            this.reapIntervalMs = reapIntervalMs;
+        }
+    }
+    
+    /**
+     * 模型调用用量统计配置
+     */
+    public static class UsageConfig {
+        // 内存中保留统计的运行数上限，超出时淘汰最久未更新的运行，之后从数据库汇总
+        private int maxTrackedRuns = 500;
+        // 每个统计项保留的延迟样本数上限
+        private long latencySamples = 4096;
+        
+        public int getMaxTrackedRuns() {
+            return maxTrackedRuns;
+        }
+        
+        public void setMaxTrackedRuns(int maxTrackedRuns) {
+            this.maxTrackedRuns = maxTrackedRuns;
+        }
+        
+        public long getLatencySamples() {
+            return latencySamples;
+        }
+        
+        public void setLatencySamples(long latencySamples) {
+            this.latencySamples = latencySamples;
+        }
+    }
+    
+    /**
+     * 批次间公平调度配置
+     */
+    public static class FairShareConfig {
+        private boolean enabled = true;
+        // 批次超过该时间没有模型调用即视为不活跃，不再参与该用户份额的分配
+        private long flowIdleMs = 60000;
+        // 未单独配置的用户的份额
+        private double defaultUserWeight = 1.0;
+        // 按用户ID配置的份额，例如管理员或付费用户可配置更大的份额
+        private Map<Long, Double> userWeights = new HashMap<>();
+        
+        public boolean isEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public long getFlowIdleMs() {
+            return flowIdleMs;
+        }
+        
+        public void setFlowIdleMs(long flowIdleMs) {
+            this.flowIdleMs = flowIdleMs;
+        }
+        
+        public double getDefaultUserWeight() {
+            return defaultUserWeight;
+        }
+        
+        public void setDefaultUserWeight(double defaultUserWeight) {
+            this.defaultUserWeight = defaultUserWeight;
+        }
+        
+        public Map<Long, Double> getUserWeights() {
+            return userWeights;
+        }
+        
+        public void setUserWeights(Map<Long, Double> userWeights) {
+            this.userWeights = userWeights;
+        }
+    }
+    
+    /**
+     * 运行内问题提交顺序配置
+     */
+    public static class OrderingConfig {
+        // longest-first：按预计耗时从长到短提交；dataset：按数据集顺序提交
+        private String strategy = "longest-first";
+        // 估算耗时时参考的历史回答天数
+        private int historyDays = 30;
+        // 同一数据集版本和模型的耗时估算的缓存时间，分布式模式下各工作单元共用
+        private long cacheTtlMs = 300000;
+        
+        public String getStrategy() {
+            return strategy;
+        }
+        
+        public void setStrategy(String strategy) {
+            this.strategy = strategy;
+        }
+        
+        public int getHistoryDays() {
+            return historyDays;
+        }
+        
+        public void setHistoryDays(int historyDays) {
+            this.historyDays = historyDays;
+        }
+        
+        public long getCacheTtlMs() {
+            return cacheTtlMs;
+        }
+        
+        public void setCacheTtlMs(long cacheTtlMs) {
+            this.cacheTtlMs = cacheTtlMs;
+        }
+    }
+    
+    /**
+     * 提供商批量接口（PROVIDER_BATCH执行方式）配置
+     */
+    public static class ProviderBatchConfig {
+        // 查询批量任务状态的间隔（毫秒）
+        private long pollIntervalMs = 30000;
+        // 提交时要求的完成时限，按提供商支持的取值填写
+        private String completionWindow = "24h";
+        // 单个批量任务的最大请求数，超过时拆分为多个任务提交
+        private int maxRequestsPerJob = 50000;
+        // 上传请求文件、下载结果文件等接口调用的超时（毫秒）
+        private long requestTimeoutMs = 120000;
+        
+        public long getPollIntervalMs() {
+            return pollIntervalMs;
+        }
+        
+        public void setPollIntervalMs(long pollIntervalMs) {
+            this.pollIntervalMs = pollIntervalMs;
+        }
+        
+        public String getCompletionWindow() {
+            return completionWindow;
+        }
+        
+        public void setCompletionWindow(String completionWindow) {
+            this.completionWindow = completionWindow;
+        }
+        
+        public int getMaxRequestsPerJob() {
+            return maxRequestsPerJob;
+        }
+        
+        public void setMaxRequestsPerJob(int maxRequestsPerJob) {
+            this.maxRequestsPerJob = maxRequestsPerJob;
+        }
+        
+        public long getRequestTimeoutMs() {
+            return requestTimeoutMs;
+        }
+        
+        public void setRequestTimeoutMs(long requestTimeoutMs) {
+            this.requestTimeoutMs = requestTimeoutMs;
+        }
+    }
+    
+    /**
+     * 多实例分布式回答生成配置
+     */
+    public static class DistributedConfig {
+        private boolean enabled = false;
+        // 每个工作单元包含的问题数（按运行的问题序号连续切分，含重复次数）
+        private int unitSize = 50;
+        // 每个实例同时处理的工作单元数
+        private int workerConcurrency = 4;
+        // 工作单元租约的有效期和续约间隔（毫秒），租约过期的单元由任一实例重新投递
+        private long leaseTtlMs = 60000;
+        private long heartbeatIntervalMs = 15000;
+        private long reapIntervalMs = 10000;
+        // 从队列拉取工作单元的阻塞等待时间（毫秒）
+        private long pollTimeoutMs = 2000;
+        // 闲置超过该时长的批次执行上下文从本实例内存中移除（毫秒）
+        private long contextIdleMs = 600000;
+        
+        public boolean isEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public int getUnitSize() {
+            return unitSize;
+        }
+        
+        public void setUnitSize(int unitSize) {
+            this.unitSize = unitSize;
+        }
+        
+        public int getWorkerConcurrency() {
+            return workerConcurrency;
+        }
+        
+        public void setWorkerConcurrency(int workerConcurrency) {
+            this.workerConcurrency = workerConcurrency;
+        }
+        
+        public long getLeaseTtlMs() {
+            return leaseTtlMs;
+        }
+        
+        public void setLeaseTtlMs(long leaseTtlMs) {
+            this.leaseTtlMs = leaseTtlMs;
+        }
+        
+        public long getHeartbeatIntervalMs() {
+            return heartbeatIntervalMs;
+        }
+        
+        public void setHeartbeatIntervalMs(long heartbeatIntervalMs) {
+            this.heartbeatIntervalMs = heartbeatIntervalMs;
+        }
+        
+        public long getReapIntervalMs() {
+            return reapIntervalMs;
+        }
+        
+        public void setReapIntervalMs(long reapIntervalMs) {
+            this.reapIntervalMs = reapIntervalMs;
+        }
+        
+        public long getPollTimeoutMs() {
+            return pollTimeoutMs;
+        }
+        
+        public void setPollTimeoutMs(long pollTimeoutMs) {
+            this.pollTimeoutMs = pollTimeoutMs;
+        }
+        
+        public long getContextIdleMs() {
+            return contextIdleMs;
+        }
+        
+        public void setContextIdleMs(long contextIdleMs) {
+            this.contextIdleMs = contextIdleMs;
+        }
+    }
+    
+    /**
+     * 模型健康探测与模型目录缓存配置
+     */
+    public static class HealthConfig {
+        private boolean enabled = true;
+        // 后台探测全部模型的间隔和应用启动后的首次探测延迟（毫秒）
+        private long probeIntervalMs = 300000;
+        private long initialDelayMs = 30000;
+        // 同时探测的模型数上限
+        private int probeConcurrency = 4;
+        // 单次探测请求的超时（毫秒），固定值，不使用按模型学习的调用超时
+        private long probeTimeoutMs = 15000;
+        // 探测结果超过该时长视为过期，连通性测试会重新探测（毫秒）
+        private long staleAfterMs = 600000;
+        // 连续探测失败达到该次数视为不健康
+        private int unhealthyThreshold = 2;
+        // 启动批次时拒绝包含不健康模型的批次
+        private boolean refuseUnhealthyStart = true;
+        // 可用模型列表的缓存时长（毫秒），过半后由后台探测提前刷新
+        private long catalogTtlMs = 600000;
+        
+        public boolean isEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public long getProbeIntervalMs() {
+            return probeIntervalMs;
+        }
+        
+        public void setProbeIntervalMs(long probeIntervalMs) {
+            this.probeIntervalMs = probeIntervalMs;
+        }
+        
+        public long getInitialDelayMs() {
+            return initialDelayMs;
+        }
+        
+        public void setInitialDelayMs(long initialDelayMs) {
+            this.initialDelayMs = initialDelayMs;
+        }
+        
+        public int getProbeConcurrency() {
+            return probeConcurrency;
+        }
+        
+        public void setProbeConcurrency(int probeConcurrency) {
+            this.probeConcurrency = probeConcurrency;
+        }
+        
+        public long getProbeTimeoutMs() {
+            return probeTimeoutMs;
+        }
+        
+        public void setProbeTimeoutMs(long probeTimeoutMs) {
+            this.probeTimeoutMs = probeTimeoutMs;
+        }
+        
+        public long getStaleAfterMs() {
+            return staleAfterMs;
+        }
+        
+        public void setStaleAfterMs(long staleAfterMs) {
+            this.staleAfterMs = staleAfterMs;
+        }
+        
+        public int getUnhealthyThreshold() {
+            return unhealthyThreshold;
+        }
+        
+        public void setUnhealthyThreshold(int unhealthyThreshold) {
+            this.unhealthyThreshold = unhealthyThreshold;
+        }
+        
+        public boolean isRefuseUnhealthyStart() {
+            return refuseUnhealthyStart;
+        }
+        
+        public void setRefuseUnhealthyStart(boolean refuseUnhealthyStart) {
+            this.refuseUnhealthyStart = refuseUnhealthyStart;
+        }
+        
+        public long getCatalogTtlMs() {
+            return catalogTtlMs;
+        }
+        
+        public void setCatalogTtlMs(long catalogTtlMs) {
+            this.catalogTtlMs = catalogTtlMs;
+        }
+    }
+    
+    /**
+     * 评测（AI打分）调用的对冲请求配置
+     */
+    public static class HedgingConfig {
+        private boolean enabled = true;
+        // 调用超过该模型此分位的历史延迟仍未返回时发出对冲请求
+        private double percentile = 0.95;
+        // 对冲请求数占原始请求数的上限
+        private double budgetRatio = 0.05;
+        // 延迟样本少于该数量时不对冲
+        private int minSamples = 20;
+        // 对冲等待时间的下限（毫秒）
+        private long minDelayMs = 200;
+        // 原始API地址 -> 对冲请求使用的备用地址，未配置时对冲到同一地址
+        private Map<String, String> alternateApiUrls = new HashMap<>();
+        
+        public boolean isEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public double getPercentile() {
+            return percentile;
+        }
+        
+        public void setPercentile(double percentile) {
+            this.percentile = percentile;
+        }
+        
+        public double getBudgetRatio() {
+            return budgetRatio;
+        }
+        
+        public void setBudgetRatio(double budgetRatio) {
+            this.budgetRatio = budgetRatio;
+        }
+        
+        public int getMinSamples() {
+            return minSamples;
+        }
+        
+        public void setMinSamples(int minSamples) {
+            this.minSamples = minSamples;
+        }
+        
+        public long getMinDelayMs() {
+            return minDelayMs;
+        }
+        
+        public void setMinDelayMs(long minDelayMs) {
+            this.minDelayMs = minDelayMs;
+        }
+        
+        public Map<String, String> getAlternateApiUrls() {
+            return alternateApiUrls;
+        }
+        
+        public void setAlternateApiUrls(Map<String, String> alternateApiUrls) {
+            this.alternateApiUrls = alternateApiUrls;
+        }
+    }
+    
+    /**
+     * 按模型划分的熔断器配置
+     */
+    public static class CircuitBreakerConfig {
+        // 连续多少次可重试错误后熔断
+        private int failureThreshold = 5;
+        // 熔断持续时间，之后进入半开状态放行探测请求
+        private long openDurationMs = 30000;
+        // 半开状态下同时放行的探测请求数
+        private int halfOpenProbes = 1;
+        
+        public int getFailureThreshold() {
+            return failureThreshold;
+        }
+        
+        public void setFailureThreshold(int failureThreshold) {
+            this.failureThreshold = failureThreshold;
+        }
+        
+        public long getOpenDurationMs() {
+            return openDurationMs;
+        }
+        
+        public void setOpenDurationMs(long openDurationMs) {
+            this.openDurationMs = openDurationMs;
+        }
+        
+        public int getHalfOpenProbes() {
+            return halfOpenProbes;
+        }
+        
+        public void setHalfOpenProbes(int halfOpenProbes) {
+            this.halfOpenProbes = halfOpenProbes;
+        }
+    }
+    
+    /**
+     * 回答生成并发配置
+     */
+    public static class ConcurrencyConfig {
+        // 单个批次内同时执行的运行数上限
+        private int maxConcurrentRuns = 4;
+        // 批次级后台任务的并发上限
+        private int taskMaxConcurrency = 50;
+        // 所有运行共享的问题处理并发上限
+        private int questionMaxConcurrency = 500;
+        // 在问题处理并发上限之外，还可以进入流水线排队的问题数；达到上限时各运行暂停提交新问题，小于0表示不限制
+        private int questionQueueCapacity = 1000;
+        // 问题流水线Prompt组装阶段（读数据库）的并发上限
+        private int promptStageConcurrency = 4;
+        // 问题流水线保存回答阶段（写数据库）的并发上限
+        private int persistStageConcurrency = 4;
+        // 评测任务的并发上限
+        private int evaluationMaxConcurrency = 200;
+        
+        public int getMaxConcurrentRuns() {
+            return maxConcurrentRuns;
+        }
+        
+        public void setMaxConcurrentRuns(int maxConcurrentRuns) {
+            this.maxConcurrentRuns = maxConcurrentRuns;
+        }
+        
+        public int getTaskMaxConcurrency() {
+            return taskMaxConcurrency;
+        }
+        
+        public void setTaskMaxConcurrency(int taskMaxConcurrency) {
+            this.taskMaxConcurrency = taskMaxConcurrency;
+        }
+        
+        public int getQuestionMaxConcurrency() {
+            return questionMaxConcurrency;
+        }
+        
+        public void setQuestionMaxConcurrency(int questionMaxConcurrency) {
+            this.questionMaxConcurrency = questionMaxConcurrency;
+        }
+        
+        public int getQuestionQueueCapacity() {
+            return questionQueueCapacity;
+        }
+        
+        public void setQuestionQueueCapacity(int questionQueueCapacity) {
+            this.questionQueueCapacity = questionQueueCapacity;
+        }
+        
+        public int getPromptStageConcurrency() {
+            return promptStageConcurrency;
+        }
+        
+        public void setPromptStageConcurrency(int promptStageConcurrency) {
+            this.promptStageConcurrency = promptStageConcurrency;
+        }
+        
+        public int getPersistStageConcurrency() {
+            return persistStageConcurrency;
+        }
+        
+        public void setPersistStageConcurrency(int persistStageConcurrency) {
+            this.persistStageConcurrency = persistStageConcurrency;
+        }
+        
+        public int getEvaluationMaxConcurrency() {
+            return evaluationMaxConcurrency;
+        }
+        
+        public void setEvaluationMaxConcurrency(int evaluationMaxConcurrency) {
+            this.evaluationMaxConcurrency = evaluationMaxConcurrency;
+        }
+    }
+    
+    /**
+     * 提供商限流配置（令牌桶 + AIMD并发控制）
+     */
+    public static class RateLimitConfig {
+        // 是否启用提供商限流
+        private boolean enabled = true;
+        // 每个提供商/API Key默认的每分钟请求数，0表示不限制
+        private int requestsPerMinute = 600;
+        // 每个提供商/API Key默认的每分钟token数，0表示不限制
+        private int tokensPerMinute = 0;
+        // 预估token时每个请求计入的输出token数
+        private int estimatedOutputTokens = 512;
+        // AIMD并发控制：初始并发数、下限和上限
+        private int initialConcurrency = 8;
+        private int minConcurrency = 1;
+        private int maxConcurrency = 64;
+        // 收到429时并发数的乘性递减系数
+        private double decreaseFactor = 0.5;
+        // 单次延迟超过平滑平均延迟的倍数时视为拥塞
+        private double latencyToleranceFactor = 3.0;
+        // 因延迟拥塞递减并发数的系数
+        private double latencyDecreaseFactor = 0.9;
+        // 429未携带Retry-After时的冷却时间，以及冷却时间上限
+        private long defaultRetryAfterMs = 2000;
+        private long maxRetryAfterMs = 60000;
+        
+        public boolean isEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public int getRequestsPerMinute() {
+            return requestsPerMinute;
+        }
+        
+        public void setRequestsPerMinute(int requestsPerMinute) {
+            this.requestsPerMinute = requestsPerMinute;
+        }
+        
+        public int getTokensPerMinute() {
+            return tokensPerMinute;
+        }
+        
+        public void setTokensPerMinute(int tokensPerMinute) {
+            this.tokensPerMinute = tokensPerMinute;
+        }
+        
+        public int getEstimatedOutputTokens() {
+            return estimatedOutputTokens;
+        }
+        
+        public void setEstimatedOutputTokens(int estimatedOutputTokens) {
+            this.estimatedOutputTokens = estimatedOutputTokens;
+        }
+        
+        public int getInitialConcurrency() {
+            return initialConcurrency;
+        }
+        
+        public void setInitialConcurrency(int initialConcurrency) {
+            this.initialConcurrency = initialConcurrency;
+        }
+        
+        public int getMinConcurrency() {
+            return minConcurrency;
+        }
+        
+        public void setMinConcurrency(int minConcurrency) {
+            this.minConcurrency = minConcurrency;
+        }
+        
+        public int getMaxConcurrency() {
+            return maxConcurrency;
+        }
+        
+        public void setMaxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+        }
+        
+        public double getDecreaseFactor() {
+            return decreaseFactor;
+        }
+        
+        public void setDecreaseFactor(double decreaseFactor) {
+            this.decreaseFactor = decreaseFactor;
+        }
+        
+        public double getLatencyToleranceFactor() {
+            return latencyToleranceFactor;
+        }
+        
+        public void setLatencyToleranceFactor(double latencyToleranceFactor) {
+            this.latencyToleranceFactor = latencyToleranceFactor;
+        }
+        
+        public double getLatencyDecreaseFactor() {
+            return latencyDecreaseFactor;
+        }
+        
+        public void setLatencyDecreaseFactor(double latencyDecreaseFactor) {
+            this.latencyDecreaseFactor = latencyDecreaseFactor;
+        }
+        
+        public long getDefaultRetryAfterMs() {
+            return defaultRetryAfterMs;
+        }
+        
+        public void setDefaultRetryAfterMs(long defaultRetryAfterMs) {
+            this.defaultRetryAfterMs = defaultRetryAfterMs;
+        }
+        
+        public long getMaxRetryAfterMs() {
+            return maxRetryAfterMs;
+        }
+        
+        public void setMaxRetryAfterMs(long maxRetryAfterMs) {
+            this.maxRetryAfterMs = maxRetryAfterMs;
+        }
     }
     
     public String getDefaultApiUrl() {
@@ -73,4 +1044,124 @@ public class LlmConfig {
     public void setRetry(RetryConfig retry) {
         this.retry = retry;
     }
+    
+    public ConcurrencyConfig getConcurrency() {
+        return concurrency;
+    }
+    
+    public void setConcurrency(ConcurrencyConfig concurrency) {
+        this.concurrency = concurrency;
+    }
+    
+    public RateLimitConfig getRateLimit() {
+        return rateLimit;
+    }
+    
+    public void setRateLimit(RateLimitConfig rateLimit) {
+        this.rateLimit = rateLimit;
+    }
+    
+    public HttpClientConfig getHttpClient() {
+        return httpClient;
+    }
+    
+    public void setHttpClient(HttpClientConfig httpClient) {
+        this.httpClient = httpClient;
+    }
+    
+    public StreamingConfig getStreaming() {
+        return streaming;
+    }
+    
+    public void setStreaming(StreamingConfig streaming) {
+        this.streaming = streaming;
+    }
+    
+    public HedgingConfig getHedging() {
+        return hedging;
+    }
+    
+    public void setHedging(HedgingConfig hedging) {
+        this.hedging = hedging;
+    }
+    
+    public TimeoutConfig getTimeout() {
+        return timeout;
+    }
+    
+    public void setTimeout(TimeoutConfig timeout) {
+        this.timeout = timeout;
+    }
+    
+    public DistributedConfig getDistributed() {
+        return distributed;
+    }
+    
+    public void setDistributed(DistributedConfig distributed) {
+        this.distributed = distributed;
+    }
+    
+    public OwnershipConfig getOwnership() {
+        return ownership;
+    }
+    
+    public void setOwnership(OwnershipConfig ownership) {
+        this.ownership = ownership;
+    }
+    
+    public UsageConfig getUsage() {
+        return usage;
+    }
+    
+    public void setUsage(UsageConfig usage) {
+        this.usage = usage;
+    }
+    
+    public FairShareConfig getFairShare() {
+        return fairShare;
+    }
+    
+    public void setFairShare(FairShareConfig fairShare) {
+        this.fairShare = fairShare;
+    }
+    
+    public OrderingConfig getOrdering() {
+        return ordering;
+    }
+    
+    public ProviderBatchConfig getProviderBatch() {
+        return providerBatch;
+    }
+    
+    public void setProviderBatch(ProviderBatchConfig providerBatch) {
+        this.providerBatch = providerBatch;
+    }
+    
+    public void setOrdering(OrderingConfig ordering) {
+        this.ordering = ordering;
+    }
+    
+    public HealthConfig getHealth() {
+        return health;
+    }
+    
+    public void setHealth(HealthConfig health) {
+        this.health = health;
+    }
+    
+    public SimulatorConfig getSimulator() {
+        return simulator;
+    }
+    
+    public void setSimulator(SimulatorConfig simulator) {
+        this.simulator = simulator;
+    }
+    
+    public CircuitBreakerConfig getCircuitBreaker() {
+        return circuitBreaker;
+    }
+    
+    public void setCircuitBreaker(CircuitBreakerConfig circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
 } 
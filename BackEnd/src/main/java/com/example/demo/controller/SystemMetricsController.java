@@ -0,0 +1,193 @@
+package com.example.demo.controller;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.demo.gateway.LlmGateway;
+import com.example.demo.manager.BatchLeaseManager;
+import com.example.demo.manager.DeferredRetryQueue;
+import com.example.demo.manager.FairShareScheduler;
+import com.example.demo.manager.ModelTimeoutRegistry;
+import com.example.demo.manager.HttpClientRegistry;
+import com.example.demo.manager.LlmStreamingClient;
+import com.example.demo.manager.ModelCircuitBreakerRegistry;
+import com.example.demo.manager.ModelHealthMonitor;
+import com.example.demo.manager.ProviderRateLimiter;
+import com.example.demo.task.AnswerUnitWorker;
+import com.example.demo.util.BoundedVirtualThreadExecutor;
+
+/**
+ * 系统运行指标
+ */
+@RestController
+@RequestMapping("/system/metrics")
+@CrossOrigin(origins = "*")
+public class SystemMetricsController {
+
+    private final Map<String, BoundedVirtualThreadExecutor> executors;
+    private final ProviderRateLimiter rateLimiter;
+    private final ModelCircuitBreakerRegistry circuitBreakers;
+    private final DeferredRetryQueue retryQueue;
+    private final LlmStreamingClient streamingClient;
+    private final HttpClientRegistry httpClientRegistry;
+    private final LlmGateway llmGateway;
+    private final ModelTimeoutRegistry timeoutRegistry;
+    private final ModelHealthMonitor modelHealthMonitor;
+    private final AnswerUnitWorker answerUnitWorker;
+    private final BatchLeaseManager batchLeaseManager;
+    private final FairShareScheduler fairShareScheduler;
+
+    @Autowired
+    public SystemMetricsController(Map<String, BoundedVirtualThreadExecutor> executors,
+                                   ProviderRateLimiter rateLimiter,
+                                   ModelCircuitBreakerRegistry circuitBreakers,
+                                   DeferredRetryQueue retryQueue,
+                                   LlmStreamingClient streamingClient,
+                                   HttpClientRegistry httpClientRegistry,
+                                   LlmGateway llmGateway,
+                                   ModelTimeoutRegistry timeoutRegistry,
+                                   ModelHealthMonitor modelHealthMonitor,
+                                   AnswerUnitWorker answerUnitWorker,
+                                   BatchLeaseManager batchLeaseManager,
+                                   FairShareScheduler fairShareScheduler) {
+        this.executors = executors;
+        this.rateLimiter = rateLimiter;
+        this.circuitBreakers = circuitBreakers;
+        this.retryQueue = retryQueue;
+        this.streamingClient = streamingClient;
+        this.httpClientRegistry = httpClientRegistry;
+        this.llmGateway = llmGateway;
+        this.timeoutRegistry = timeoutRegistry;
+        this.modelHealthMonitor = modelHealthMonitor;
+        this.answerUnitWorker = answerUnitWorker;
+        this.batchLeaseManager = batchLeaseManager;
+        this.fairShareScheduler = fairShareScheduler;
+    }
+
+    /**
+     * 获取各执行器的活跃任务数、排队任务数等指标
+     *
+     * @return 执行器指标列表
+     */
+    @GetMapping("/executors")
+    public ResponseEntity<List<Map<String, Object>>> getExecutorMetrics() {
+        List<Map<String, Object>> metrics = new ArrayList<>();
+        for (BoundedVirtualThreadExecutor executor : executors.values()) {
+            metrics.add(executor.getMetrics());
+        }
+        return ResponseEntity.ok(metrics);
+    }
+
+    /**
+     * 获取各提供商配额的并发上限、冷却时间、剩余速率配额和限流次数
+     *
+     * @return 提供商配额指标列表
+     */
+    @GetMapping("/rate-limits")
+    public ResponseEntity<List<Map<String, Object>>> getRateLimitMetrics() {
+        return ResponseEntity.ok(rateLimiter.getMetrics());
+    }
+
+    /**
+     * 获取各模型熔断器状态和延迟重试队列长度
+     *
+     * @return 熔断器与重试队列指标
+     */
+    @GetMapping("/circuit-breakers")
+    public ResponseEntity<Map<String, Object>> getCircuitBreakerMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("breakers", circuitBreakers.getMetrics());
+        metrics.put("pendingRetries", retryQueue.getPendingCount());
+        metrics.put("dispatchedRetries", retryQueue.getDispatchedCount());
+        return ResponseEntity.ok(metrics);
+    }
+
+    /**
+     * 获取各模型流式调用的首字延迟、平均输出间隔和中断次数
+     *
+     * @return 流式调用指标列表
+     */
+    @GetMapping("/streaming")
+    public ResponseEntity<List<Map<String, Object>>> getStreamingMetrics() {
+        return ResponseEntity.ok(streamingClient.getMetrics());
+    }
+
+    /**
+     * 获取各提供商地址HTTP连接池的使用情况
+     *
+     * @return 连接池指标列表
+     */
+    @GetMapping("/http-clients")
+    public ResponseEntity<List<Map<String, Object>>> getHttpClientMetrics() {
+        return ResponseEntity.ok(httpClientRegistry.getMetrics());
+    }
+
+    /**
+     * 获取LLM网关按用途（回答生成/评测/对话）、提供商和模型划分的调用次数、失败数、延迟和token用量
+     *
+     * @return 网关调用指标列表
+     */
+    @GetMapping("/gateway")
+    public ResponseEntity<List<Map<String, Object>>> getGatewayMetrics() {
+        return ResponseEntity.ok(llmGateway.getMetrics());
+    }
+
+    /**
+     * 获取各模型学习到的调用超时及其依据的延迟分位数
+     *
+     * @return 模型超时列表
+     */
+    @GetMapping("/timeouts")
+    public ResponseEntity<List<Map<String, Object>>> getModelTimeouts() {
+        return ResponseEntity.ok(timeoutRegistry.getMetrics());
+    }
+
+    /**
+     * 获取后台健康探测缓存的各模型连通性、响应时间和连续失败次数
+     *
+     * @return 模型健康指标
+     */
+    @GetMapping("/model-health")
+    public ResponseEntity<Map<String, Object>> getModelHealth() {
+        return ResponseEntity.ok(modelHealthMonitor.getMetrics());
+    }
+
+    /**
+     * 获取分布式回答生成的队列长度、各实例持有的租约数和本实例的单元处理统计
+     *
+     * @return 工作队列指标
+     */
+    @GetMapping("/work-queue")
+    public ResponseEntity<Map<String, Object>> getWorkQueueMetrics() {
+        return ResponseEntity.ok(answerUnitWorker.getMetrics());
+    }
+
+    /**
+     * 获取本实例标识和持有处理权的批次
+     *
+     * @return 批次处理权指标
+     */
+    @GetMapping("/batch-ownership")
+    public ResponseEntity<Map<String, Object>> getBatchOwnership() {
+        return ResponseEntity.ok(batchLeaseManager.getMetrics());
+    }
+
+    /**
+     * 获取活跃批次的公平调度权重和已获得的调用名额
+     *
+     * @return 公平调度指标
+     */
+    @GetMapping("/fair-share")
+    public ResponseEntity<Map<String, Object>> getFairShare() {
+        return ResponseEntity.ok(fairShareScheduler.getMetrics());
+    }
+}
@@ -2,6 +2,7 @@ package com.example.demo.dto;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
 
 import com.example.demo.entity.jdbc.AnswerGenerationBatch.BatchStatus;
@@ -26,6 +27,8 @@ public class AnswerGenerationBatchDTO {
     private LocalDateTime pauseTime;
     private String pauseReason;
     private Integer answerRepeatCount;
+    private Integer priority;
+    private String executionMode;
     private Integer totalRuns;
     private Integer pendingRuns;
     private Integer completedRuns;
@@ -41,6 +44,8 @@ public class AnswerGenerationBatchDTO {
     private String simpleFactPromptName;
     private Long subjectivePromptId;
     private String subjectivePromptName;
+    // 各运行（模型）生成调用的用量汇总，仅状态查询时填充
+    private List<Map<String, Object>> runCallUsage;
     
     // Constructors
     public AnswerGenerationBatchDTO() {
@@ -191,6 +196,22 @@ public class AnswerGenerationBatchDTO {
         this.answerRepeatCount = answerRepeatCount;
     }
     
+    public Integer getPriority() {
+        return priority;
+    }
+    
+    public void setPriority(Integer priority) {
+        this.priority = priority;
+    }
+    
+    public String getExecutionMode() {
+        return executionMode;
+    }
+    
+    public void setExecutionMode(String executionMode) {
+        this.executionMode = executionMode;
+    }
+    
     public Integer getTotalRuns() {
         return totalRuns;
     }
@@ -295,4 +316,12 @@ public class AnswerGenerationBatchDTO {
     public void setSubjectivePromptName(String subjectivePromptName) {
         this.subjectivePromptName = subjectivePromptName;
     }
-} 
\ No newline at end of file
+    
+    public List<Map<String, Object>> getRunCallUsage() {
+        return runCallUsage;
+    }
+    
+    public void setRunCallUsage(List<Map<String, Object>> runCallUsage) {
+        this.runCallUsage = runCallUsage;
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.demo.dto;
+
+import java.nio.charset.StandardCharsets;
+
+import com.example.demo.util.TokenUsage;
+
+/**
+ * 一次模型调用的结果
+ * 包含已解析的回答文本、原始响应、token用量和耗时，调用方无需再次解析响应JSON。
+ */
+public class LlmCallResult {
+
+    private String text;
+    // 原始响应体的UTF-8字节，保留接收时的缓冲区，需要时再解码
+    private byte[] rawResponseBytes;
+    private String thinking;
+    private String finishReason;
+    private String modelName;
+    private String apiType;
+    private Integer promptTokens;
+    private Integer completionTokens;
+    private Integer totalTokens;
+    // 首字延迟（毫秒），仅流式调用有值
+    private Long ttftMillis;
+    private long latencyMillis;
+    private boolean streamed;
+    private boolean cancelled;
+    // 成功前失败重试的次数
+    private int retries;
+
+    public LlmCallResult() {
+    }
+
+    /**
+     * 被中断的调用，没有回答文本
+     */
+    public static LlmCallResult cancelled(String modelName, String apiType, long latencyMillis) {
+        LlmCallResult result = new LlmCallResult();
+        result.setModelName(modelName);
+        result.setApiType(apiType);
+        result.setLatencyMillis(latencyMillis);
+        result.setCancelled(true);
+        return result;
+    }
+
+    public void applyUsage(TokenUsage usage) {
+        if (usage != null) {
+            this.promptTokens = usage.getPromptTokens();
+            this.completionTokens = usage.getCompletionTokens();
+            this.totalTokens = usage.getTotalTokens();
+        }
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    /**
+     * 原始响应体，流式调用时为null（原始事件流不做保留）
+     * 每次调用都会重新解码，写库或再解析时应优先使用 getRawResponseBytes()
+     */
+    public String getRawResponse() {
+        return rawResponseBytes != null ? new String(rawResponseBytes, StandardCharsets.UTF_8) : null;
+    }
+
+    public byte[] getRawResponseBytes() {
+        return rawResponseBytes;
+    }
+
+    public void setRawResponseBytes(byte[] rawResponseBytes) {
+        this.rawResponseBytes = rawResponseBytes;
+    }
+
+    public String getThinking() {
+        return thinking;
+    }
+
+    public void setThinking(String thinking) {
+        this.thinking = thinking;
+    }
+
+    /**
+     * 结束原因（如 stop、length、max_tokens），响应中没有时为null
+     */
+    public String getFinishReason() {
+        return finishReason;
+    }
+
+    public void setFinishReason(String finishReason) {
+        this.finishReason = finishReason;
+    }
+
+    public String getModelName() {
+        return modelName;
+    }
+
+    public void setModelName(String modelName) {
+        this.modelName = modelName;
+    }
+
+    public String getApiType() {
+        return apiType;
+    }
+
+    public void setApiType(String apiType) {
+        this.apiType = apiType;
+    }
+
+    public Integer getPromptTokens() {
+        return promptTokens;
+    }
+
+    public void setPromptTokens(Integer promptTokens) {
+        this.promptTokens = promptTokens;
+    }
+
+    public Integer getCompletionTokens() {
+        return completionTokens;
+    }
+
+    public void setCompletionTokens(Integer completionTokens) {
+        this.completionTokens = completionTokens;
+    }
+
+    public Integer getTotalTokens() {
+        return totalTokens;
+    }
+
+    public void setTotalTokens(Integer totalTokens) {
+        this.totalTokens = totalTokens;
+    }
+
+    public Long getTtftMillis() {
+        return ttftMillis;
+    }
+
+    public void setTtftMillis(Long ttftMillis) {
+        this.ttftMillis = ttftMillis;
+    }
+
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    public boolean isStreamed() {
+        return streamed;
+    }
+
+    public void setStreamed(boolean streamed) {
+        this.streamed = streamed;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void setCancelled(boolean cancelled) {
+        this.cancelled = cancelled;
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+
+    public void setRetries(int retries) {
+        this.retries = retries;
+    }
+}
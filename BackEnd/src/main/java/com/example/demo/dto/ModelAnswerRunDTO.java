@@ -40,6 +40,8 @@ public class ModelAnswerRunDTO {
     private LocalDateTime creationTime;
     private Long createdBy;
     private Long evaluationRunId;
+    // 生成调用的用量汇总（token用量、吞吐、延迟分位、估算费用），仅状态查询时填充
+    private Map<String, Object> callUsage;
     
     // Constructors
     public ModelAnswerRunDTO() {
@@ -293,4 +295,12 @@ public class ModelAnswerRunDTO {
     public void setEvaluationRunId(Long evaluationRunId) {
         this.evaluationRunId = evaluationRunId;
     }
-} 
\ No newline at end of file
+    
+    public Map<String, Object> getCallUsage() {
+        return callUsage;
+    }
+    
+    public void setCallUsage(Map<String, Object> callUsage) {
+        this.callUsage = callUsage;
+    }
+} 
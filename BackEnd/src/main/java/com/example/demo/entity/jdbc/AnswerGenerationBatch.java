@@ -38,6 +38,8 @@ public class AnswerGenerationBatch {
     public static final String COLUMN_ERROR_MESSAGE = "error_message";
     public static final String COLUMN_PROCESSING_INSTANCE = "processing_instance";
     public static final String COLUMN_LAST_PROCESSED_RUN_ID = "last_processed_run_id";
+    public static final String COLUMN_PRIORITY = "priority";
+    public static final String COLUMN_EXECUTION_MODE = "execution_mode";
     
     private Long id;
     private String name;
@@ -63,6 +65,9 @@ public class AnswerGenerationBatch {
     private String errorMessage;
     private String processingInstance;
     private Long lastProcessedRunId;
+    // 调度优先级，同一用户的多个批次按优先级比例分配该用户的份额
+    private Integer priority = 1;
+    private ExecutionMode executionMode = ExecutionMode.ONLINE;
     
     public enum BatchStatus {
         PENDING,        // 等待中
@@ -73,6 +78,25 @@ public class AnswerGenerationBatch {
         RESUMING        // 正在恢复
     }
     
+    public enum ExecutionMode {
+        ONLINE,         // 逐题实时调用模型
+        PROVIDER_BATCH; // 通过提供商的批量接口离线提交，轮询完成后统一写入结果
+        
+        /**
+         * 解析执行方式，空值或无法识别时按实时调用处理
+         */
+        public static ExecutionMode fromString(String value) {
+            if (value == null || value.isBlank()) {
+                return ONLINE;
+            }
+            try {
+                return ExecutionMode.valueOf(value.trim().toUpperCase().replace("-", "_"));
+            } catch (IllegalArgumentException e) {
+                return ONLINE;
+            }
+        }
+    }
+    
     // Getters and Setters
     public Long getId() {
         return id;
@@ -265,4 +289,20 @@ public class AnswerGenerationBatch {
     public void setLastProcessedRunId(Long lastProcessedRunId) {
         this.lastProcessedRunId = lastProcessedRunId;
     }
-} 
\ No newline at end of file
+
+    public Integer getPriority() {
+        return priority;
+    }
+
+    public void setPriority(Integer priority) {
+        this.priority = priority;
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    public void setExecutionMode(ExecutionMode executionMode) {
+        this.executionMode = executionMode;
+    }
+}
@@ -35,6 +35,14 @@ public class Evaluation {
     public static final String COLUMN_WEIGHTED_SCORE = "weighted_score";
     public static final String COLUMN_SCORE_TYPE = "score_type";
     public static final String COLUMN_SCORING_METHOD = "scoring_method";
+    // 裁判模型调用的token用量、耗时和重试次数，仅通过 EvaluationRepository.updateCallMetrics 写入
+    public static final String COLUMN_PROMPT_TOKENS = "prompt_tokens";
+    public static final String COLUMN_COMPLETION_TOKENS = "completion_tokens";
+    public static final String COLUMN_TOTAL_TOKENS = "total_tokens";
+    public static final String COLUMN_LATENCY_MS = "latency_ms";
+    public static final String COLUMN_TTFT_MS = "ttft_ms";
+    public static final String COLUMN_RETRY_COUNT = "retry_count";
+    public static final String COLUMN_FINISH_REASON = "finish_reason";
     
     private Long id;
     private LlmAnswer llmAnswer;
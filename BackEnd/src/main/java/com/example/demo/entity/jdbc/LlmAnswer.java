@@ -1,7 +1,10 @@
 package com.example.demo.entity.jdbc;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 /**
  * LLM模型生成答案实体类
  */
@@ -22,6 +25,13 @@ public class LlmAnswer {
     public static final String COLUMN_RAW_MODEL_RESPONSE = "raw_model_response";
     public static final String COLUMN_OTHER_METADATA = "other_metadata";
     public static final String COLUMN_REPEAT_INDEX = "repeat_index";
+    public static final String COLUMN_PROMPT_TOKENS = "prompt_tokens";
+    public static final String COLUMN_COMPLETION_TOKENS = "completion_tokens";
+    public static final String COLUMN_TOTAL_TOKENS = "total_tokens";
+    public static final String COLUMN_LATENCY_MS = "latency_ms";
+    public static final String COLUMN_TTFT_MS = "ttft_ms";
+    public static final String COLUMN_RETRY_COUNT = "retry_count";
+    public static final String COLUMN_FINISH_REASON = "finish_reason";
     
     private Long id;
     private ModelAnswerRun modelAnswerRun;
@@ -32,8 +42,18 @@ public class LlmAnswer {
     private LocalDateTime generationTime;
     private String promptUsed;
     private String rawModelResponse;
+    // 原始模型响应的UTF-8字节（调用结果的接收缓冲区），写库时直接以字符流写入
+    private byte[] rawModelResponseBytes;
     private String otherMetadata;
     private Integer repeatIndex = 0;
+    // 生成调用的token用量和耗时，提供商未返回用量时为null
+    private Integer promptTokens;
+    private Integer completionTokens;
+    private Integer totalTokens;
+    private Long latencyMs;
+    private Long ttftMs;
+    private Integer retryCount;
+    private String finishReason;
 
     // 生成状态枚举
     public enum GenerationStatus {
@@ -107,6 +127,9 @@ public class LlmAnswer {
     }
 
     public String getRawModelResponse() {
+        if (rawModelResponse == null && rawModelResponseBytes != null) {
+            return new String(rawModelResponseBytes, StandardCharsets.UTF_8);
+        }
         return rawModelResponse;
     }
 
@@ -114,6 +137,15 @@ public class LlmAnswer {
         this.rawModelResponse = rawModelResponse;
     }
 
+    @JsonIgnore
+    public byte[] getRawModelResponseBytes() {
+        return rawModelResponseBytes;
+    }
+
+    public void setRawModelResponseBytes(byte[] rawModelResponseBytes) {
+        this.rawModelResponseBytes = rawModelResponseBytes;
+    }
+
     public String getOtherMetadata() {
         return otherMetadata;
     }
@@ -129,4 +161,60 @@ public class LlmAnswer {
     public void setRepeatIndex(Integer repeatIndex) {
         this.repeatIndex = repeatIndex;
     }
-} 
\ No newline at end of file
+
+    public Integer getPromptTokens() {
+        return promptTokens;
+    }
+
+    public void setPromptTokens(Integer promptTokens) {
+        this.promptTokens = promptTokens;
+    }
+
+    public Integer getCompletionTokens() {
+        return completionTokens;
+    }
+
+    public void setCompletionTokens(Integer completionTokens) {
+        this.completionTokens = completionTokens;
+    }
+
+    public Integer getTotalTokens() {
+        return totalTokens;
+    }
+
+    public void setTotalTokens(Integer totalTokens) {
+        this.totalTokens = totalTokens;
+    }
+
+    public Long getLatencyMs() {
+        return latencyMs;
+    }
+
+    public void setLatencyMs(Long latencyMs) {
+        this.latencyMs = latencyMs;
+    }
+
+    public Long getTtftMs() {
+        return ttftMs;
+    }
+
+    public void setTtftMs(Long ttftMs) {
+        this.ttftMs = ttftMs;
+    }
+
+    public Integer getRetryCount() {
+        return retryCount;
+    }
+
+    public void setRetryCount(Integer retryCount) {
+        this.retryCount = retryCount;
+    }
+
+    public String getFinishReason() {
+        return finishReason;
+    }
+
+    public void setFinishReason(String finishReason) {
+        this.finishReason = finishReason;
+    }
+}
@@ -2,6 +2,7 @@ package com.example.demo.entity.jdbc;
 
 import java.time.LocalDateTime;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * LLM模型实体类
@@ -26,6 +27,31 @@ public class LlmModel {
     public static final String COLUMN_CREATED_CHANGE_LOG_ID = "created_change_log_id";
     public static final String COLUMN_DELETED_AT = "deleted_at";
     
+    // 模型参数中的执行控制键，仅供本系统调度使用，不会发送给模型API
+    public static final String PARAM_MAX_CONCURRENT_REQUESTS = "max_concurrent_requests";
+    // 提供商配额：每分钟请求数和每分钟token数，未配置时使用llm.rate-limit中的默认值
+    public static final String PARAM_REQUESTS_PER_MINUTE = "requests_per_minute";
+    public static final String PARAM_TOKENS_PER_MINUTE = "tokens_per_minute";
+    // 调用超时：timeout_seconds固定超时；其余覆盖按延迟学习超时时的系数、下限和上限
+    public static final String PARAM_TIMEOUT_SECONDS = "timeout_seconds";
+    public static final String PARAM_TIMEOUT_FACTOR = "timeout_factor";
+    public static final String PARAM_TIMEOUT_FLOOR_SECONDS = "timeout_floor_seconds";
+    public static final String PARAM_TIMEOUT_CEILING_SECONDS = "timeout_ceiling_seconds";
+    // 每千个输入/输出token的价格，用于估算调用费用
+    public static final String PARAM_INPUT_PRICE_PER_1K_TOKENS = "input_price_per_1k_tokens";
+    public static final String PARAM_OUTPUT_PRICE_PER_1K_TOKENS = "output_price_per_1k_tokens";
+    public static final Set<String> EXECUTION_PARAMETER_KEYS = Set.of(
+        PARAM_MAX_CONCURRENT_REQUESTS,
+        PARAM_REQUESTS_PER_MINUTE,
+        PARAM_TOKENS_PER_MINUTE,
+        PARAM_TIMEOUT_SECONDS,
+        PARAM_TIMEOUT_FACTOR,
+        PARAM_TIMEOUT_FLOOR_SECONDS,
+        PARAM_TIMEOUT_CEILING_SECONDS,
+        PARAM_INPUT_PRICE_PER_1K_TOKENS,
+        PARAM_OUTPUT_PRICE_PER_1K_TOKENS
+    );
+    
     private Long id;
     private String name;
     private String provider;
@@ -113,6 +139,34 @@ public class LlmModel {
         this.modelParameters = modelParameters;
     }
 
+    /**
+     * 读取模型参数中的整数配置，缺失或格式错误时返回默认值
+     */
+    public int resolveIntParameter(String key, int defaultValue) {
+        if (modelParameters == null) {
+            return defaultValue;
+        }
+        Object value = modelParameters.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        if (value instanceof String) {
+            try {
+                return Integer.parseInt(((String) value).trim());
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * 单个运行内允许同时进行的请求数，未配置时为1（串行）
+     */
+    public int resolveMaxConcurrentRequests() {
+        return Math.max(1, resolveIntParameter(PARAM_MAX_CONCURRENT_REQUESTS, 1));
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
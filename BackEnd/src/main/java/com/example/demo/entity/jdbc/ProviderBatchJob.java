@@ -0,0 +1,174 @@
+package com.example.demo.entity.jdbc;
+
+import java.time.LocalDateTime;
+
+/**
+ * 提供商批量任务实体类 - JDBC版本
+ * 对应数据库表: PROVIDER_BATCH_JOBS
+ * 批次以 PROVIDER_BATCH 方式执行时，运行的请求通过提供商的批量接口提交，每个提交对应一条记录
+ */
+public class ProviderBatchJob {
+    // 表名常量
+    public static final String TABLE_NAME = "PROVIDER_BATCH_JOBS";
+
+    // 列名常量
+    public static final String COLUMN_ID = "id";
+    public static final String COLUMN_MODEL_ANSWER_RUN_ID = "model_answer_run_id";
+    public static final String COLUMN_PROVIDER_BATCH_ID = "provider_batch_id";
+    public static final String COLUMN_INPUT_FILE_ID = "input_file_id";
+    public static final String COLUMN_STATUS = "status";
+    public static final String COLUMN_REQUEST_COUNT = "request_count";
+    public static final String COLUMN_COMPLETED_COUNT = "completed_count";
+    public static final String COLUMN_FAILED_COUNT = "failed_count";
+    public static final String COLUMN_OUTPUT_FILE_ID = "output_file_id";
+    public static final String COLUMN_ERROR_FILE_ID = "error_file_id";
+    public static final String COLUMN_ERROR_MESSAGE = "error_message";
+    public static final String COLUMN_SUBMITTED_AT = "submitted_at";
+    public static final String COLUMN_LAST_POLL_TIME = "last_poll_time";
+    public static final String COLUMN_COMPLETED_AT = "completed_at";
+
+    private Long id;
+    private Long modelAnswerRunId;
+    private String providerBatchId;
+    private String inputFileId;
+    private JobStatus status = JobStatus.SUBMITTED;
+    private Integer requestCount = 0;
+    private Integer completedCount = 0;
+    private Integer failedCount = 0;
+    private String outputFileId;
+    private String errorFileId;
+    private String errorMessage;
+    private LocalDateTime submittedAt = LocalDateTime.now();
+    private LocalDateTime lastPollTime;
+    private LocalDateTime completedAt;
+
+    public enum JobStatus {
+        SUBMITTED,      // 已提交
+        IN_PROGRESS,    // 提供商处理中
+        COMPLETED,      // 提供商已完成，结果待写入
+        FAILED,         // 提供商处理失败
+        EXPIRED,        // 超出完成时限
+        CANCELLED,      // 已取消
+        INGESTED;       // 结果已写入回答表
+
+        /**
+         * 任务是否仍需轮询或写入结果
+         */
+        public boolean isActive() {
+            return this == SUBMITTED || this == IN_PROGRESS || this == COMPLETED;
+        }
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getModelAnswerRunId() {
+        return modelAnswerRunId;
+    }
+
+    public void setModelAnswerRunId(Long modelAnswerRunId) {
+        this.modelAnswerRunId = modelAnswerRunId;
+    }
+
+    public String getProviderBatchId() {
+        return providerBatchId;
+    }
+
+    public void setProviderBatchId(String providerBatchId) {
+        this.providerBatchId = providerBatchId;
+    }
+
+    public String getInputFileId() {
+        return inputFileId;
+    }
+
+    public void setInputFileId(String inputFileId) {
+        this.inputFileId = inputFileId;
+    }
+
+    public JobStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(JobStatus status) {
+        this.status = status;
+    }
+
+    public Integer getRequestCount() {
+        return requestCount;
+    }
+
+    public void setRequestCount(Integer requestCount) {
+        this.requestCount = requestCount;
+    }
+
+    public Integer getCompletedCount() {
+        return completedCount;
+    }
+
+    public void setCompletedCount(Integer completedCount) {
+        this.completedCount = completedCount;
+    }
+
+    public Integer getFailedCount() {
+        return failedCount;
+    }
+
+    public void setFailedCount(Integer failedCount) {
+        this.failedCount = failedCount;
+    }
+
+    public String getOutputFileId() {
+        return outputFileId;
+    }
+
+    public void setOutputFileId(String outputFileId) {
+        this.outputFileId = outputFileId;
+    }
+
+    public String getErrorFileId() {
+        return errorFileId;
+    }
+
+    public void setErrorFileId(String errorFileId) {
+        this.errorFileId = errorFileId;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+
+    public LocalDateTime getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public void setSubmittedAt(LocalDateTime submittedAt) {
+        this.submittedAt = submittedAt;
+    }
+
+    public LocalDateTime getLastPollTime() {
+        return lastPollTime;
+    }
+
+    public void setLastPollTime(LocalDateTime lastPollTime) {
+        this.lastPollTime = lastPollTime;
+    }
+
+    public LocalDateTime getCompletedAt() {
+        return completedAt;
+    }
+
+    public void setCompletedAt(LocalDateTime completedAt) {
+        this.completedAt = completedAt;
+    }
+}
@@ -0,0 +1,313 @@
+package com.example.demo.gateway;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * 提供商适配器基类
+ * 提供Bearer认证、OpenAI风格的消息体、参数类型转换、用量字段扫描和通用响应解析，
+ * 子类只需覆盖与OpenAI格式不同的部分。
+ */
+public abstract class AbstractProviderAdapter implements ProviderAdapter {
+
+    protected static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+
+    // 未指定时使用的默认生成参数
+    private static final Map<String, Object> DEFAULT_PARAMETERS = Map.of("temperature", 0.7, "max_tokens", 1000);
+    // 不作为普通参数写入请求体的键
+    private static final Set<String> RESERVED_KEYS = Set.of("model", "messages", "prompt");
+    // 通用解析时优先查找的字段
+    private static final String[] CONTENT_KEYS = {"content", "text", "result", "response", "message", "answer", "completion"};
+
+    private final String name;
+    private final Set<String> apiTypes;
+
+    protected AbstractProviderAdapter(String name, String... apiTypes) {
+        this.name = name;
+        this.apiTypes = Set.of(apiTypes);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean supports(String apiType) {
+        return apiType != null && apiTypes.contains(apiType.toLowerCase());
+    }
+
+    @Override
+    public HttpHeaders buildHeaders(String apiKey) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        if (apiKey != null && !apiKey.isEmpty()) {
+            applyAuthentication(headers, apiKey);
+        }
+        return headers;
+    }
+
+    /**
+     * 设置认证头，默认Bearer认证
+     */
+    protected void applyAuthentication(HttpHeaders headers, String apiKey) {
+        headers.set(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey);
+    }
+
+    /**
+     * 先处理各提供商通用的用量字段，其余字段交给 scanProviderField
+     */
+    @Override
+    public void scanField(String path, JsonParser parser, ScannedResponse response) throws IOException {
+        if (path.startsWith("usage")) {
+            switch (path) {
+                case "usage.prompt_tokens":
+                case "usage.input_tokens":
+                    response.setPromptTokens(intValue(parser));
+                    return;
+                case "usage.completion_tokens":
+                case "usage.output_tokens":
+                    response.setCompletionTokens(intValue(parser));
+                    return;
+                case "usage.total_tokens":
+                case "usageMetadata.totalTokenCount":
+                    response.setTotalTokens(intValue(parser));
+                    return;
+                case "usageMetadata.promptTokenCount":
+                    response.setPromptTokens(intValue(parser));
+                    return;
+                case "usageMetadata.candidatesTokenCount":
+                    response.setCompletionTokens(intValue(parser));
+                    return;
+                default:
+                    return;
+            }
+        }
+        scanProviderField(path, parser, response);
+    }
+
+    /**
+     * 按该提供商的响应格式提取回答文本、思考过程和结束原因
+     */
+    protected abstract void scanProviderField(String path, JsonParser parser, ScannedResponse response)
+            throws IOException;
+
+    @Override
+    public String extractText(JsonNode response) {
+        if (response == null || response.isMissingNode() || response.isNull()) {
+            return "";
+        }
+        String text = extractCommonText(response);
+        return text != null ? text : "";
+    }
+
+    /**
+     * 当前字符串值，非字符串（如null）时返回null
+     */
+    protected static String textValue(JsonParser parser) throws IOException {
+        return parser.currentToken() == JsonToken.VALUE_STRING ? parser.getText() : null;
+    }
+
+    /**
+     * 当前整数值，非数值时返回null
+     */
+    protected static Integer intValue(JsonParser parser) throws IOException {
+        return parser.currentToken() == JsonToken.VALUE_NUMBER_INT ? parser.getIntValue() : null;
+    }
+
+    /**
+     * 判断路径是否为 arrayPath 某个元素下的 field 字段，如 elementOwner(path, "content", "text") 匹配 content[2].text
+     *
+     * @return 匹配时返回元素路径（如 content[2]），否则返回null
+     */
+    protected static String elementOwner(String path, String arrayPath, String field) {
+        int prefixLength = arrayPath.length() + 1;
+        int ownerLength = path.length() - field.length() - 1;
+        if (ownerLength <= prefixLength + 1 || !path.startsWith(arrayPath) || path.charAt(arrayPath.length()) != '['
+                || !path.endsWith(field) || path.charAt(ownerLength) != '.' || path.charAt(ownerLength - 1) != ']') {
+            return null;
+        }
+        for (int i = prefixLength; i < ownerLength - 1; i++) {
+            if (!Character.isDigit(path.charAt(i))) {
+                return null;
+            }
+        }
+        return path.substring(0, ownerLength);
+    }
+
+    /**
+     * OpenAI风格的聊天请求体：model + messages（可选system + user）+ 其他参数
+     */
+    protected ObjectNode chatCompletionBody(LlmGatewayRequest request) {
+        ObjectNode body = NODES.objectNode();
+        body.put("model", requireModel(request));
+        ArrayNode messages = body.putArray("messages");
+        if (request.getSystemPrompt() != null && !request.getSystemPrompt().isEmpty()) {
+            messages.addObject().put("role", "system").put("content", request.getSystemPrompt());
+        }
+        messages.addObject().put("role", "user").put("content", request.getPrompt());
+        putParameters(body, withDefaults(request.getParameters()));
+        return body;
+    }
+
+    /**
+     * 获取模型名称，缺失时抛出异常而不是使用默认模型
+     */
+    protected String requireModel(LlmGatewayRequest request) {
+        String model = request.getModel();
+        if (model == null || model.isEmpty()) {
+            throw new IllegalArgumentException("缺少必要的参数: model - 在调用" + name + " API时必须指定模型名称");
+        }
+        return model;
+    }
+
+    /**
+     * 用调用参数覆盖默认参数
+     */
+    protected static Map<String, Object> withDefaults(Map<String, Object> parameters) {
+        Map<String, Object> merged = new HashMap<>(DEFAULT_PARAMETERS);
+        if (parameters != null) {
+            merged.putAll(parameters);
+        }
+        return merged;
+    }
+
+    /**
+     * 将参数写入请求体：计数类参数使用整数，其他数值使用浮点数
+     */
+    protected static void putParameters(ObjectNode body, Map<String, Object> parameters) {
+        for (Map.Entry<String, Object> entry : parameters.entrySet()) {
+            String key = entry.getKey();
+            Object value = entry.getValue();
+            if (RESERVED_KEYS.contains(key) || value == null) {
+                continue;
+            }
+            switch (key) {
+                case "max_tokens":
+                case "n":
+                case "top_k":
+                    if (value instanceof Number) {
+                        body.put(key, ((Number) value).intValue());
+                    }
+                    break;
+                default:
+                    if (value instanceof Number) {
+                        body.put(key, ((Number) value).doubleValue());
+                    } else if (value instanceof Boolean) {
+                        body.put(key, (Boolean) value);
+                    } else {
+                        body.put(key, value.toString());
+                    }
+            }
+        }
+    }
+
+    protected static Double doubleParameter(Map<String, Object> parameters, String key) {
+        Object value = parameters.get(key);
+        return value instanceof Number ? ((Number) value).doubleValue() : null;
+    }
+
+    protected static Integer intParameter(Map<String, Object> parameters, String key) {
+        Object value = parameters.get(key);
+        return value instanceof Number ? ((Number) value).intValue() : null;
+    }
+
+    /**
+     * 在基础地址后追加路径，避免出现双斜杠
+     */
+    protected static String appendPath(String baseUrl, String path) {
+        String base = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        return base + path;
+    }
+
+    /**
+     * 通用响应解析，尝试从各种常见格式中提取文本
+     */
+    protected static String extractCommonText(JsonNode root) {
+        JsonNode choice = root.path("choices").path(0);
+        if (choice.isObject()) {
+            // OpenAI或类似格式
+            JsonNode content = choice.path("message").path("content");
+            if (content.isTextual()) {
+                return content.asText();
+            }
+            if (choice.path("text").isTextual()) {
+                return choice.path("text").asText();
+            }
+        }
+        for (String key : new String[] {"completion", "generated_text", "result", "response"}) {
+            if (root.path(key).isTextual()) {
+                return root.path(key).asText();
+            }
+        }
+        JsonNode output = root.path("output");
+        if (output.path("text").isTextual()) {
+            // 阿里通义千问格式
+            return output.path("text").asText();
+        }
+        JsonNode outputContent = output.path("choices").path(0).path("message").path("content");
+        if (outputContent.isTextual()) {
+            return outputContent.asText();
+        }
+        if (root.path("data").isObject()) {
+            // 一些API将结果包装在data字段中
+            String text = extractCommonText(root.path("data"));
+            if (text != null && !text.isEmpty()) {
+                return text;
+            }
+        }
+        // 在找不到特定格式时，尝试递归遍历所有字段
+        return findTextRecursively(root);
+    }
+
+    /**
+     * 递归遍历响应体，优先查找可能包含内容的关键字段
+     */
+    private static String findTextRecursively(JsonNode node) {
+        if (node == null || node.isNull() || node.isMissingNode()) {
+            return null;
+        }
+        if (node.isTextual()) {
+            return node.asText();
+        }
+        if (node.isObject()) {
+            for (String key : CONTENT_KEYS) {
+                if (node.has(key)) {
+                    String text = findTextRecursively(node.get(key));
+                    if (text != null && !text.isEmpty()) {
+                        return text;
+                    }
+                }
+            }
+            for (JsonNode value : node) {
+                if (value.isContainerNode()) {
+                    String text = findTextRecursively(value);
+                    if (text != null && !text.isEmpty()) {
+                        return text;
+                    }
+                }
+            }
+        }
+        if (node.isArray()) {
+            for (JsonNode item : node) {
+                String text = findTextRecursively(item);
+                if (text != null && !text.isEmpty()) {
+                    return text;
+                }
+            }
+        }
+        return null;
+    }
+}
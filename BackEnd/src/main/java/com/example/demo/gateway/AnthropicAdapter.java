@@ -0,0 +1,100 @@
+package com.example.demo.gateway;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Anthropic Claude适配器
+ * 基础地址默认补全为Text Completions端点（/v1/complete）；
+ * 配置的地址已指向 /v1/messages 时使用Messages API格式。
+ */
+@Component
+public class AnthropicAdapter extends AbstractProviderAdapter {
+
+    private static final String API_VERSION = "2023-06-01";
+    private static final String MESSAGES_PATH = "/v1/messages";
+    private static final String COMPLETE_PATH = "/v1/complete";
+
+    public AnthropicAdapter() {
+        super("anthropic", "anthropic");
+    }
+
+    @Override
+    public String resolveEndpoint(String apiUrl, LlmGatewayRequest request) {
+        if (apiUrl.endsWith(MESSAGES_PATH) || apiUrl.endsWith(COMPLETE_PATH)) {
+            return apiUrl;
+        }
+        return appendPath(apiUrl, COMPLETE_PATH);
+    }
+
+    @Override
+    protected void applyAuthentication(HttpHeaders headers, String apiKey) {
+        headers.set("x-api-key", apiKey);
+        headers.set("anthropic-version", API_VERSION);
+    }
+
+    @Override
+    public ObjectNode buildRequestBody(LlmGatewayRequest request) {
+        Map<String, Object> parameters = withDefaults(request.getParameters());
+        ObjectNode body = NODES.objectNode();
+        body.put("model", requireModel(request));
+        String system = request.getSystemPrompt();
+        if (request.getApiUrl() != null && request.getApiUrl().endsWith(MESSAGES_PATH)) {
+            if (system != null && !system.isEmpty()) {
+                body.put("system", system);
+            }
+            body.putArray("messages").addObject().put("role", "user").put("content", request.getPrompt());
+        } else {
+            String prefix = system != null && !system.isEmpty() ? system : "";
+            body.put("prompt", prefix + "\n\nHuman: " + request.getPrompt() + "\n\nAssistant: ");
+            // Text Completions API使用max_tokens_to_sample
+            Object maxTokens = parameters.remove("max_tokens");
+            if (maxTokens instanceof Number && !parameters.containsKey("max_tokens_to_sample")) {
+                parameters.put("max_tokens_to_sample", ((Number) maxTokens).intValue());
+            }
+        }
+        putParameters(body, parameters);
+        return body;
+    }
+
+    @Override
+    protected void scanProviderField(String path, JsonParser parser, ScannedResponse response) throws IOException {
+        if ("completion".equals(path)) {
+            response.appendText(textValue(parser));
+        } else if ("stop_reason".equals(path)) {
+            response.setFinishReason(textValue(parser));
+        } else if (elementOwner(path, "content", "text") != null) {
+            // 只有text类型的内容块带text字段，thinking块的内容在thinking字段中
+            response.appendText(textValue(parser));
+        } else if (elementOwner(path, "content", "thinking") != null) {
+            response.appendThinking(textValue(parser));
+        }
+    }
+
+    @Override
+    public boolean supportsStreaming(String apiType) {
+        return true;
+    }
+
+    @Override
+    public boolean handleStreamEvent(JsonNode event, StreamSink sink) {
+        String type = event.path("type").asText();
+        if (event.has("completion")) {
+            sink.onText(event.get("completion").asText());
+        } else if ("content_block_delta".equals(type)) {
+            JsonNode delta = event.path("delta");
+            sink.onText(delta.path("text").asText(""));
+            sink.onThinking(delta.path("thinking").asText(""));
+        } else if ("message_stop".equals(type)) {
+            return false;
+        }
+        return true;
+    }
+}
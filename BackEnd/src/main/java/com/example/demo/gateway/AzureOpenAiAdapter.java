@@ -0,0 +1,61 @@
+package com.example.demo.gateway;
+
+import java.io.IOException;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Azure OpenAI适配器：按部署路径调用，使用api-key认证
+ */
+@Component
+public class AzureOpenAiAdapter extends AbstractProviderAdapter {
+
+    private static final String API_VERSION = "2023-07-01-preview";
+
+    public AzureOpenAiAdapter() {
+        super("azure", "azure");
+    }
+
+    @Override
+    public String resolveEndpoint(String apiUrl, LlmGatewayRequest request) {
+        // Azure OpenAI API需要在URL中包含部署ID，未包含时以模型名称作为部署ID
+        if (apiUrl.contains("deployments")) {
+            return apiUrl;
+        }
+        return appendPath(apiUrl, "/deployments/" + requireModel(request) + "/chat/completions?api-version=" + API_VERSION);
+    }
+
+    @Override
+    protected void applyAuthentication(HttpHeaders headers, String apiKey) {
+        headers.set("api-key", apiKey);
+    }
+
+    @Override
+    public ObjectNode buildRequestBody(LlmGatewayRequest request) {
+        ObjectNode body = chatCompletionBody(request);
+        body.put("stream", false);
+        return body;
+    }
+
+    @Override
+    protected void scanProviderField(String path, JsonParser parser, ScannedResponse response) throws IOException {
+        switch (path) {
+            case "choices[0].message.content":
+            case "choices[0].text":
+                response.appendText(textValue(parser));
+                break;
+            case "choices[0].message.reasoning_content":
+                response.appendThinking(textValue(parser));
+                break;
+            case "choices[0].finish_reason":
+                response.setFinishReason(textValue(parser));
+                break;
+            default:
+                break;
+        }
+    }
+}
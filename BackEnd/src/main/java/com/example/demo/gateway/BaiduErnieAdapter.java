@@ -0,0 +1,60 @@
+package com.example.demo.gateway;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * 百度文心一言适配器
+ */
+@Component
+public class BaiduErnieAdapter extends AbstractProviderAdapter {
+
+    private static final String CHAT_PATH = "/rpc/2.0/ai_custom/v1/wenxinworkshop/chat/completions";
+
+    public BaiduErnieAdapter() {
+        super("baidu", "baidu", "wenxin", "ernie");
+    }
+
+    @Override
+    public String resolveEndpoint(String apiUrl, LlmGatewayRequest request) {
+        return apiUrl.contains("/wenxinworkshop/") ? apiUrl : appendPath(apiUrl, CHAT_PATH);
+    }
+
+    @Override
+    public ObjectNode buildRequestBody(LlmGatewayRequest request) {
+        Map<String, Object> parameters = withDefaults(request.getParameters());
+        ObjectNode body = NODES.objectNode();
+        // 文心一言的系统提示通过system字段传入，messages中只能包含user/assistant
+        if (request.getSystemPrompt() != null && !request.getSystemPrompt().isEmpty()) {
+            body.put("system", request.getSystemPrompt());
+        }
+        body.putArray("messages").addObject().put("role", "user").put("content", request.getPrompt());
+        Double temperature = doubleParameter(parameters, "temperature");
+        if (temperature != null) {
+            body.put("temperature", temperature);
+        }
+        Double topP = doubleParameter(parameters, "top_p");
+        body.put("top_p", topP != null ? topP : 0.8);
+        Integer maxTokens = intParameter(parameters, "max_tokens");
+        if (maxTokens != null) {
+            body.put("max_output_tokens", maxTokens);
+        }
+        body.put("stream", false);
+        body.put("user_id", "user_" + System.currentTimeMillis());
+        return body;
+    }
+
+    @Override
+    protected void scanProviderField(String path, JsonParser parser, ScannedResponse response) throws IOException {
+        if ("result".equals(path)) {
+            response.appendText(textValue(parser));
+        } else if ("finish_reason".equals(path)) {
+            response.setFinishReason(textValue(parser));
+        }
+    }
+}
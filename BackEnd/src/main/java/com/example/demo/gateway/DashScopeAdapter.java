@@ -0,0 +1,74 @@
+package com.example.demo.gateway;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * 阿里通义千问（DashScope）适配器
+ */
+@Component
+public class DashScopeAdapter extends AbstractProviderAdapter {
+
+    private static final String GENERATION_PATH = "/v1/services/aigc/text-generation/generation";
+
+    public DashScopeAdapter() {
+        super("dashscope", "aliyun", "tongyi", "dashscope");
+    }
+
+    @Override
+    public String resolveEndpoint(String apiUrl, LlmGatewayRequest request) {
+        return apiUrl.endsWith("/generation") ? apiUrl : appendPath(apiUrl, GENERATION_PATH);
+    }
+
+    @Override
+    protected void applyAuthentication(HttpHeaders headers, String apiKey) {
+        super.applyAuthentication(headers, apiKey);
+        headers.set("X-DashScope-ApiKey", apiKey);
+    }
+
+    @Override
+    public ObjectNode buildRequestBody(LlmGatewayRequest request) {
+        Map<String, Object> parameters = withDefaults(request.getParameters());
+        ObjectNode body = NODES.objectNode();
+        body.put("model", requireModel(request));
+
+        ArrayNode messages = body.putObject("input").putArray("messages");
+        if (request.getSystemPrompt() != null && !request.getSystemPrompt().isEmpty()) {
+            messages.addObject().put("role", "system").put("content", request.getSystemPrompt());
+        }
+        messages.addObject().put("role", "user").put("content", request.getPrompt());
+
+        ObjectNode generation = body.putObject("parameters");
+        Double temperature = doubleParameter(parameters, "temperature");
+        generation.put("temperature", temperature != null ? temperature : 0.7);
+        Integer maxTokens = intParameter(parameters, "max_tokens");
+        generation.put("max_tokens", maxTokens != null ? maxTokens : 2048);
+        Double topP = doubleParameter(parameters, "top_p");
+        generation.put("top_p", topP != null ? topP : 0.8);
+        generation.put("result_format", "text");
+        return body;
+    }
+
+    @Override
+    protected void scanProviderField(String path, JsonParser parser, ScannedResponse response) throws IOException {
+        switch (path) {
+            case "output.text":
+            case "output.choices[0].message.content":
+                response.appendText(textValue(parser));
+                break;
+            case "output.finish_reason":
+            case "output.choices[0].finish_reason":
+                response.setFinishReason(textValue(parser));
+                break;
+            default:
+                break;
+        }
+    }
+}
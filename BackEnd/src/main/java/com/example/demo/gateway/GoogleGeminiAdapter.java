@@ -0,0 +1,109 @@
+package com.example.demo.gateway;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Google Gemini适配器
+ */
+@Component
+public class GoogleGeminiAdapter extends AbstractProviderAdapter {
+
+    private static final String CANDIDATE_PARTS = "candidates[0].content.parts";
+
+    public GoogleGeminiAdapter() {
+        super("google", "google");
+    }
+
+    @Override
+    public String resolveEndpoint(String apiUrl, LlmGatewayRequest request) {
+        // 检查并补全Google API路径，未指定模型时使用gemini-pro
+        if (apiUrl.contains("/v1/models") || apiUrl.contains("/v1beta/models") || apiUrl.contains(":generateContent")) {
+            return apiUrl;
+        }
+        String model = request.getModel() != null && !request.getModel().isEmpty() ? request.getModel() : "gemini-pro";
+        return appendPath(apiUrl, "/v1/models/" + model + ":generateContent");
+    }
+
+    @Override
+    public ObjectNode buildRequestBody(LlmGatewayRequest request) {
+        Map<String, Object> parameters = withDefaults(request.getParameters());
+        ObjectNode body = NODES.objectNode();
+        if (request.getSystemPrompt() != null && !request.getSystemPrompt().isEmpty()) {
+            body.putObject("systemInstruction").putArray("parts").addObject().put("text", request.getSystemPrompt());
+        }
+        ObjectNode content = body.putArray("contents").addObject();
+        content.put("role", "user");
+        content.putArray("parts").addObject().put("text", request.getPrompt());
+
+        ObjectNode generationConfig = body.putObject("generationConfig");
+        Double temperature = doubleParameter(parameters, "temperature");
+        if (temperature != null) {
+            generationConfig.put("temperature", temperature);
+        }
+        Double topP = doubleParameter(parameters, "top_p");
+        if (topP != null) {
+            generationConfig.put("topP", topP);
+        }
+        Integer topK = intParameter(parameters, "top_k");
+        if (topK != null) {
+            generationConfig.put("topK", topK);
+        }
+        Integer maxTokens = intParameter(parameters, "max_tokens");
+        if (maxTokens != null) {
+            generationConfig.put("maxOutputTokens", maxTokens);
+        }
+        return body;
+    }
+
+    @Override
+    protected void scanProviderField(String path, JsonParser parser, ScannedResponse response) throws IOException {
+        if ("candidates[0].finishReason".equals(path)) {
+            response.setFinishReason(textValue(parser));
+            return;
+        }
+        String owner = elementOwner(path, CANDIDATE_PARTS, "text");
+        if (owner != null) {
+            response.appendText(owner, textValue(parser));
+            return;
+        }
+        // 思考摘要以 thought=true 标记，字段可能出现在text之前或之后
+        owner = elementOwner(path, CANDIDATE_PARTS, "thought");
+        if (owner != null && parser.currentToken() == JsonToken.VALUE_TRUE) {
+            response.markThinking(owner);
+        }
+    }
+
+    @Override
+    public boolean supportsStreaming(String apiType) {
+        return true;
+    }
+
+    @Override
+    public String prepareStreamingRequest(LlmGatewayRequest request, String endpointUrl, ObjectNode requestBody) {
+        String url = endpointUrl.replace(":generateContent", ":streamGenerateContent");
+        if (!url.contains("alt=sse")) {
+            url = url + (url.contains("?") ? "&" : "?") + "alt=sse";
+        }
+        return url;
+    }
+
+    @Override
+    public boolean handleStreamEvent(JsonNode event, StreamSink sink) {
+        for (JsonNode part : event.path("candidates").path(0).path("content").path("parts")) {
+            if (part.path("thought").asBoolean(false)) {
+                sink.onThinking(part.path("text").asText(""));
+            } else {
+                sink.onText(part.path("text").asText(""));
+            }
+        }
+        return true;
+    }
+}
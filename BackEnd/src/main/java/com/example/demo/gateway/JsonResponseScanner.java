@@ -0,0 +1,77 @@
+package com.example.demo.gateway;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * 基于 JsonParser 的响应扫描器
+ * 在响应字节上顺序读取一次token，维护当前字段路径，把每个标量字段交给 ProviderAdapter.scanField 判断是否需要。
+ * 不构建 JsonNode 树，也不把响应体解码成字符串；未被读取的字符串值由解析器直接跳过，不会生成对象，
+ * 因此大响应中只有回答文本本身会被物化。
+ */
+public final class JsonResponseScanner {
+
+    private static final int INITIAL_DEPTH = 16;
+
+    private JsonResponseScanner() {
+    }
+
+    /**
+     * 扫描响应字节
+     *
+     * @throws IOException 响应不是合法JSON
+     */
+    public static ScannedResponse scan(JsonFactory jsonFactory, byte[] body, ProviderAdapter adapter) throws IOException {
+        ScannedResponse response = new ScannedResponse();
+        if (body == null || body.length == 0) {
+            return response;
+        }
+
+        StringBuilder path = new StringBuilder(64);
+        // 每层容器的路径长度和数组下标（对象为-1）
+        int[] baseLengths = new int[INITIAL_DEPTH];
+        int[] arrayIndexes = new int[INITIAL_DEPTH];
+        int depth = 0;
+
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token == JsonToken.FIELD_NAME) {
+                    path.setLength(baseLengths[depth - 1]);
+                    if (path.length() > 0) {
+                        path.append('.');
+                    }
+                    path.append(parser.currentName());
+                    continue;
+                }
+                if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY) {
+                    depth--;
+                    continue;
+                }
+
+                // 数组元素：路径为 父路径[下标]
+                if (depth > 0 && arrayIndexes[depth - 1] >= 0) {
+                    path.setLength(baseLengths[depth - 1]);
+                    path.append('[').append(arrayIndexes[depth - 1]++).append(']');
+                }
+
+                if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                    if (depth == baseLengths.length) {
+                        baseLengths = Arrays.copyOf(baseLengths, depth * 2);
+                        arrayIndexes = Arrays.copyOf(arrayIndexes, depth * 2);
+                    }
+                    baseLengths[depth] = path.length();
+                    arrayIndexes[depth] = token == JsonToken.START_ARRAY ? 0 : -1;
+                    depth++;
+                } else {
+                    adapter.scanField(path.toString(), parser, response);
+                }
+            }
+        }
+        return response;
+    }
+}
@@ -0,0 +1,661 @@
+package com.example.demo.gateway;
+
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+
+import com.example.demo.config.LlmConfig;
+import com.example.demo.config.LlmConfig.HedgingConfig;
+import com.example.demo.config.LlmConfig.RetryConfig;
+import com.example.demo.dto.LlmCallResult;
+import com.example.demo.manager.HttpClientRegistry;
+import com.example.demo.manager.HttpClientRegistry.RouteClient;
+import com.example.demo.manager.LlmStreamingClient;
+import com.example.demo.manager.LlmStreamingClient.StreamResult;
+import com.example.demo.manager.ModelTimeoutRegistry;
+import com.example.demo.manager.ProviderRateLimiter;
+import com.example.demo.util.CallUsageStats;
+import com.example.demo.util.LatencyHistogram;
+import com.example.demo.util.LlmRetryPolicy;
+import com.example.demo.util.TokenUsage;
+import com.example.demo.utils.TextPreprocessor;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 统一的LLM调用网关
+ * 回答生成、评测打分和对话接口的模型调用都经过这里：按API类型选择 ProviderAdapter 完成协议相关的部分，
+ * 连接池复用、提供商限流、流式读取、思考过程清理和调用指标在网关中统一处理。
+ * 同步调用对可重试错误按带抖动的指数退避重试；异步调用只尝试一次，由调用方决定重试方式。
+ * 允许对冲的请求（评测打分）超过该模型历史高分位延迟仍未返回时，在预算内再发一次，取先成功的结果。
+ */
+@Component
+public class LlmGateway {
+
+    private static final Logger logger = LoggerFactory.getLogger(LlmGateway.class);
+
+    // 每个统计项保留的延迟样本数上限
+    private static final long LATENCY_SAMPLES = 2000;
+
+    private final List<ProviderAdapter> adapters;
+    private final ProviderAdapter defaultAdapter;
+    private final HttpClientRegistry httpClientRegistry;
+    private final ProviderRateLimiter rateLimiter;
+    private final LlmStreamingClient streamingClient;
+    private final ModelTimeoutRegistry timeoutRegistry;
+    private final RetryConfig retryConfig;
+    private final HedgingConfig hedgingConfig;
+    private final ObjectMapper objectMapper;
+    // 流式调用阻塞读取事件流，在虚拟线程上执行
+    private final ExecutorService streamingExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    // 到达对冲等待时间后发出对冲请求
+    private final ScheduledExecutorService hedgeScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "LlmHedgeScheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, CallStats> stats = new ConcurrentHashMap<>();
+
+    @Autowired
+    public LlmGateway(List<ProviderAdapter> adapters, OpenAiCompatibleAdapter defaultAdapter,
+                      HttpClientRegistry httpClientRegistry, ProviderRateLimiter rateLimiter,
+                      LlmStreamingClient streamingClient, ModelTimeoutRegistry timeoutRegistry,
+                      LlmConfig llmConfig, ObjectMapper objectMapper) {
+        this.adapters = adapters;
+        this.defaultAdapter = defaultAdapter;
+        this.httpClientRegistry = httpClientRegistry;
+        this.rateLimiter = rateLimiter;
+        this.streamingClient = streamingClient;
+        this.timeoutRegistry = timeoutRegistry;
+        this.retryConfig = llmConfig.getRetry();
+        this.hedgingConfig = llmConfig.getHedging();
+        this.objectMapper = objectMapper;
+        logger.info("LLM网关已加载{}个提供商适配器", adapters.size());
+    }
+
+    /**
+     * 按API类型选择适配器，未知类型使用OpenAI兼容适配器
+     */
+    public ProviderAdapter resolveAdapter(String apiType) {
+        for (ProviderAdapter adapter : adapters) {
+            if (adapter.supports(apiType)) {
+                return adapter;
+            }
+        }
+        return defaultAdapter;
+    }
+
+    /**
+     * 未指定API类型时根据URL推断
+     */
+    public static String inferApiType(String apiUrl) {
+        if (apiUrl == null) {
+            return "openai_compatible";
+        }
+        if (apiUrl.contains("openai.com")) {
+            return "openai";
+        } else if (apiUrl.contains("anthropic.com")) {
+            return "anthropic";
+        } else if (apiUrl.contains("googleapis.com")) {
+            return "google";
+        } else if (apiUrl.contains("baidu.com") || apiUrl.contains("wenxin")) {
+            return "baidu";
+        } else if (apiUrl.contains("aliyun") || apiUrl.contains("tongyi") || apiUrl.contains("dashscope")) {
+            return "aliyun";
+        } else if (apiUrl.contains("zhipu") || apiUrl.contains("chatglm")) {
+            return "zhipu";
+        } else if (apiUrl.contains("azure")) {
+            return "azure";
+        }
+        return "openai_compatible";
+    }
+
+    /**
+     * 同步调用，可重试错误按退避策略重试
+     */
+    public LlmCallResult call(LlmGatewayRequest request) {
+        return call(request, () -> false);
+    }
+
+    /**
+     * 同步调用，可中途取消
+     *
+     * @return 调用结果，被取消时 isCancelled() 为true
+     * @throws RuntimeException 重试耗尽或遇到不可重试错误；网络异常转换为 ResourceAccessException
+     */
+    public LlmCallResult call(LlmGatewayRequest request, BooleanSupplier cancelled) {
+        int maxAttempts = request.getMaxAttempts() > 0 ? request.getMaxAttempts() : Math.max(1, retryConfig.getMaxAttempts());
+        for (int attempt = 1; ; attempt++) {
+            try {
+                LlmCallResult result = attemptAsync(request, cancelled).join();
+                result.setRetries(attempt - 1);
+                return result;
+            } catch (CompletionException e) {
+                RuntimeException error = unwrap(e);
+                if (attempt >= maxAttempts || !LlmRetryPolicy.isRetryable(error) || cancelled.getAsBoolean()) {
+                    throw error;
+                }
+                long delayMillis = LlmRetryPolicy.backoffDelayMillis(retryConfig, attempt);
+                logger.warn("模型{}第{}次调用失败，{}毫秒后重试: {}", request.getModel(), attempt, delayMillis, error.getMessage());
+                try {
+                    TimeUnit.MILLISECONDS.sleep(delayMillis);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw error;
+                }
+            }
+        }
+    }
+
+    public CompletableFuture<LlmCallResult> callAsync(LlmGatewayRequest request) {
+        return callAsync(request, () -> false);
+    }
+
+    /**
+     * 单次尝试：允许对冲且已启用时走对冲调用，否则直接调用
+     */
+    private CompletableFuture<LlmCallResult> attemptAsync(LlmGatewayRequest request, BooleanSupplier cancelled) {
+        if (request.isHedgingAllowed() && hedgingConfig.isEnabled()) {
+            return callHedgedAsync(request, cancelled);
+        }
+        return callAsync(request, cancelled);
+    }
+
+    /**
+     * 对冲调用：原始请求超过该模型历史延迟的指定分位（默认p95）仍未返回时，
+     * 在对冲预算内向同一地址（或配置的备用地址）再发一次，取先成功的结果，另一个被取消
+     * （流式调用立即断开，非流式调用尚在排队时不再发送，已发出的请求被中止并归还连接和配额）。
+     * 延迟样本不足时不对冲。
+     */
+    public CompletableFuture<LlmCallResult> callHedgedAsync(LlmGatewayRequest request, BooleanSupplier cancelled) {
+        resolveApiType(request);
+        CallStats callStats = stats(request, resolveAdapter(request.getApiType()));
+        long hedgeDelayMillis = callStats.hedgeDelayMillis(hedgingConfig);
+        if (hedgeDelayMillis < 0) {
+            return callAsync(request, cancelled);
+        }
+
+        HedgedCall hedgedCall = new HedgedCall(cancelled);
+        hedgedCall.attach(callAsync(request, hedgedCall.cancellation(HedgedCall.PRIMARY)), HedgedCall.PRIMARY);
+        ScheduledFuture<?> timer = hedgeScheduler.schedule(() -> {
+            if (hedgedCall.result.isDone() || cancelled.getAsBoolean()
+                    || !callStats.tryAcquireHedge(hedgingConfig.getBudgetRatio())) {
+                return;
+            }
+            LlmGatewayRequest hedgeRequest = request.copy();
+            String alternateUrl = hedgingConfig.getAlternateApiUrls().get(request.getApiUrl());
+            if (alternateUrl != null && !alternateUrl.isEmpty()) {
+                hedgeRequest.setApiUrl(alternateUrl);
+            }
+            logger.info("模型{}调用超过{}ms未返回，发出对冲请求: 地址={}", request.getModel(), hedgeDelayMillis,
+                    hedgeRequest.getApiUrl());
+            hedgedCall.attach(callAsync(hedgeRequest, hedgedCall.cancellation(HedgedCall.HEDGE)), HedgedCall.HEDGE);
+        }, hedgeDelayMillis, TimeUnit.MILLISECONDS);
+
+        return hedgedCall.result.whenComplete((result, error) -> {
+            timer.cancel(false);
+            if (error == null && hedgedCall.winner == HedgedCall.HEDGE) {
+                callStats.hedgeWins.increment();
+                logger.info("模型{}的对冲请求先于原始请求返回", request.getModel());
+            }
+        });
+    }
+
+    /**
+     * 异步调用：非流式请求通过地址复用的HttpClient非阻塞发送，流式请求在虚拟线程上读取事件流，
+     * 两者都在提供商配额内执行；被限流时限流器只冷却并降低并发，重试由调用方负责。
+     * 取消返回的future会中止已发出的非流式请求；流式请求在取消标志生效后断开。
+     */
+    public CompletableFuture<LlmCallResult> callAsync(LlmGatewayRequest request, BooleanSupplier cancelled) {
+        String apiType = resolveApiType(request);
+        ProviderAdapter adapter = resolveAdapter(apiType);
+        CallStats callStats = stats(request, adapter);
+        long startNanos = System.nanoTime();
+        boolean streaming = request.isStreamingAllowed() && streamingClient.isEnabled()
+                && adapter.supportsStreaming(apiType);
+        // 流式调用为两次输出之间的最长空闲时间，非流式调用为完整响应的读取超时
+        Duration timeout = timeoutRegistry.resolveTimeout(request.getModel(), streaming,
+                request.getExecutionParameters());
+
+        CompletableFuture<LlmCallResult> future;
+        // 已发出的非流式请求，调用方取消时中止
+        AtomicReference<CompletableFuture<?>> inFlight = new AtomicReference<>();
+        try {
+            String endpointUrl = adapter.resolveEndpoint(request.getApiUrl(), request);
+            HttpHeaders headers = adapter.buildHeaders(request.getApiKey());
+            ObjectNode requestBody = adapter.buildRequestBody(request);
+
+            logger.info("通过{}适配器调用模型: 用途={}, 模型={}, 流式={}, 超时={}秒", adapter.getName(),
+                    request.getPurpose(), request.getModel(), streaming, timeout.toSeconds());
+            logger.debug("调用端点: {}, 提示词: {}", endpointUrl, request.getPrompt());
+
+            if (streaming) {
+                future = rateLimiter.executeAsync(apiType, request.getApiUrl(), request.getApiKey(),
+                        request.getExecutionParameters(), request.getPrompt(), request.getFlow(),
+                        () -> cancelled.getAsBoolean()
+                                ? CompletableFuture.completedFuture(LlmCallResult.cancelled(request.getModel(), apiType, 0))
+                                : CompletableFuture.supplyAsync(() -> stream(adapter, request, endpointUrl, headers,
+                                        requestBody, timeout, cancelled), streamingExecutor));
+            } else {
+                HttpRequest httpRequest = HttpClientRegistry.newRequest(endpointUrl, headers, requestBody.toString(),
+                        timeout).build();
+                // 排队期间被取消则不再发送，返回时已被中断则丢弃结果
+                future = rateLimiter.executeAsync(apiType, request.getApiUrl(), request.getApiKey(),
+                        request.getExecutionParameters(), request.getPrompt(), request.getFlow(),
+                        () -> cancelled.getAsBoolean()
+                                ? CompletableFuture.completedFuture(LlmCallResult.cancelled(request.getModel(), apiType, 0))
+                                : send(adapter, request, endpointUrl, httpRequest, cancelled, inFlight))
+                        .thenApply(result -> cancelled.getAsBoolean()
+                                ? LlmCallResult.cancelled(result.getModelName(), result.getApiType(), result.getLatencyMillis())
+                                : result);
+            }
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<LlmCallResult> call = future.whenComplete((result, error) -> {
+            callStats.record(result, error, System.nanoTime() - startNanos, request.getExecutionParameters());
+            recordTimeoutSample(request.getModel(), streaming, timeout, result, error);
+        });
+        call.whenComplete((result, error) -> {
+            CompletableFuture<?> sent = inFlight.get();
+            if (call.isCancelled() && sent != null) {
+                sent.cancel(true);
+            }
+        });
+        return call;
+    }
+
+    /**
+     * 用调用耗时更新该模型的超时学习：成功时记录首次输出或完整响应时间，超时时记录超时时间
+     */
+    private void recordTimeoutSample(String modelName, boolean streaming, Duration timeout, LlmCallResult result,
+                                     Throwable error) {
+        if (error != null) {
+            if (ModelTimeoutRegistry.isTimeout(error)) {
+                timeoutRegistry.recordTimeout(modelName, streaming, timeout);
+            }
+        } else if (!result.isCancelled()) {
+            if (!streaming) {
+                timeoutRegistry.recordLatency(modelName, false, result.getLatencyMillis());
+            } else if (result.getTtftMillis() != null) {
+                timeoutRegistry.recordLatency(modelName, true, result.getTtftMillis());
+            }
+        }
+    }
+
+    /**
+     * 各用途、提供商和模型的调用统计
+     */
+    public List<Map<String, Object>> getMetrics() {
+        List<Map<String, Object>> metrics = new ArrayList<>();
+        stats.forEach((key, callStats) -> metrics.add(callStats.toMap()));
+        return metrics;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hedgeScheduler.shutdownNow();
+        streamingExecutor.shutdownNow();
+    }
+
+    /**
+     * 请求未指定API类型时根据URL推断并写回请求
+     */
+    private static String resolveApiType(LlmGatewayRequest request) {
+        if (request.getApiType() == null || request.getApiType().isEmpty()) {
+            request.setApiType(inferApiType(request.getApiUrl()));
+        }
+        return request.getApiType();
+    }
+
+    /**
+     * 发送非流式请求，发出的请求登记到inFlight供调用方取消；被取消的请求以取消结果结束，
+     * 由外层照常归还连接和提供商配额
+     */
+    private CompletableFuture<LlmCallResult> send(ProviderAdapter adapter, LlmGatewayRequest request, String endpointUrl,
+                                                  HttpRequest httpRequest, BooleanSupplier cancelled,
+                                                  AtomicReference<CompletableFuture<?>> inFlight) {
+        RouteClient route = httpClientRegistry.route(endpointUrl);
+        return route.executeAsync(() -> {
+            long startNanos = System.nanoTime();
+            CompletableFuture<HttpResponse<byte[]>> response = route.getHttpClient()
+                    .sendAsync(httpRequest, HttpResponse.BodyHandlers.ofByteArray());
+            inFlight.set(response);
+            // 登记前已被取消时立即中止
+            if (cancelled.getAsBoolean()) {
+                response.cancel(true);
+            }
+            return response
+                    .thenApply(httpResponse -> toCallResult(adapter, request, httpResponse, startNanos))
+                    .exceptionally(error -> {
+                        if (response.isCancelled()) {
+                            return LlmCallResult.cancelled(request.getModel(), request.getApiType(),
+                                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+                        }
+                        throw error instanceof CompletionException completionException
+                                ? completionException : new CompletionException(error);
+                    });
+        });
+    }
+
+    /**
+     * 将非流式响应转换为调用结果，非2xx状态码转换为与RestTemplate一致的异常
+     */
+    private LlmCallResult toCallResult(ProviderAdapter adapter, LlmGatewayRequest request,
+                                       HttpResponse<byte[]> response, long startNanos) {
+        byte[] body = response.body() != null ? response.body() : new byte[0];
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            throw HttpClientRegistry.statusException(response, body);
+        }
+        return parseResponse(adapter, request, body, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+
+    /**
+     * 解析一个成功的非流式响应体，同步调用和提供商批量接口的结果都经过这里
+     * 响应字节按适配器单次扫描提取文本、用量和结束原因，字节本身作为原始响应保留，不再解码成字符串
+     *
+     * @param latencyMillis 调用耗时
+     */
+    public LlmCallResult parseResponse(ProviderAdapter adapter, LlmGatewayRequest request, byte[] body,
+                                       long latencyMillis) {
+        LlmCallResult result = newResult(request);
+        result.setRawResponseBytes(body);
+        result.setLatencyMillis(latencyMillis);
+
+        String text = "";
+        String thinking = "";
+        try {
+            ScannedResponse scanned = JsonResponseScanner.scan(objectMapper.getFactory(), body, adapter);
+            if (scanned.hasText()) {
+                text = scanned.getText();
+                thinking = scanned.getThinking();
+                result.setFinishReason(scanned.getFinishReason());
+                result.applyUsage(scanned.getUsage());
+            } else if (body.length > 0) {
+                // 未知的响应格式：退回到树解析和通用字段查找
+                JsonNode responseNode = objectMapper.readTree(body);
+                text = adapter.extractText(responseNode);
+                result.applyUsage(TokenUsage.from(responseNode));
+            }
+        } catch (IOException e) {
+            logger.error("解析API响应失败: {}", e.getMessage());
+        }
+        if (text.isEmpty()) {
+            logger.warn("无法从响应中提取文本内容，返回空字符串。原始响应: {}", result.getRawResponse());
+        }
+
+        // 使用TextPreprocessor处理文本，移除思考过程标记
+        String cleaned = TextPreprocessor.cleanText(text);
+        if (cleaned.length() != text.length()) {
+            thinking = thinking + TextPreprocessor.extractThinkingProcess(text);
+            logger.info("已清理模型回答中的思考过程标记和特殊字符，原长度: {}，处理后长度: {}",
+                    text.length(), cleaned.length());
+        }
+        result.setText(cleaned);
+        result.setThinking(thinking.isEmpty() ? null : thinking);
+        logger.info("模型调用完成，模型: {}，耗时: {}ms，token用量: {}，结束原因: {}，响应大小: {}字节",
+                request.getModel(), result.getLatencyMillis(), result.getTotalTokens(), result.getFinishReason(),
+                body.length);
+        return result;
+    }
+
+    /**
+     * 以流式方式调用模型，思考过程在接收时剥离
+     */
+    private LlmCallResult stream(ProviderAdapter adapter, LlmGatewayRequest request, String endpointUrl,
+                                 HttpHeaders headers, ObjectNode requestBody, Duration idleTimeout,
+                                 BooleanSupplier cancelled) {
+        String streamUrl = adapter.prepareStreamingRequest(request, endpointUrl, requestBody);
+        StreamResult streamResult;
+        try {
+            streamResult = streamingClient.stream(request.getModel(), adapter, streamUrl, headers,
+                    requestBody.toString(), idleTimeout, cancelled);
+        } catch (IOException e) {
+            throw new ResourceAccessException("LLM API流式调用失败: " + e.getMessage(), e);
+        }
+        if (streamResult.isCancelled()) {
+            return LlmCallResult.cancelled(request.getModel(), request.getApiType(), streamResult.getTotalMillis());
+        }
+
+        if (!streamResult.getThinking().isEmpty()) {
+            logger.info("已在流式输出中剥离思考过程，长度: {}，回答长度: {}",
+                    streamResult.getThinking().length(), streamResult.getText().length());
+        }
+        logger.info("流式调用完成，模型: {}，首字延迟: {}ms，总耗时: {}ms",
+                request.getModel(), streamResult.getTtftMillis(), streamResult.getTotalMillis());
+
+        LlmCallResult result = newResult(request);
+        result.setText(streamResult.getText());
+        result.setThinking(streamResult.getThinking());
+        result.setTtftMillis(streamResult.getTtftMillis() >= 0 ? streamResult.getTtftMillis() : null);
+        result.setLatencyMillis(streamResult.getTotalMillis());
+        result.setStreamed(true);
+        result.applyUsage(streamResult.getUsage());
+        return result;
+    }
+
+    private static LlmCallResult newResult(LlmGatewayRequest request) {
+        LlmCallResult result = new LlmCallResult();
+        result.setModelName(request.getModel());
+        result.setApiType(request.getApiType());
+        return result;
+    }
+
+    private static RuntimeException unwrap(CompletionException e) {
+        Throwable cause = e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof RuntimeException runtimeException) {
+            return runtimeException;
+        }
+        if (cause instanceof IOException) {
+            return new ResourceAccessException("LLM API调用失败: " + cause.getMessage(), (IOException) cause);
+        }
+        return new RuntimeException("LLM API调用失败: " + cause.getMessage(), cause);
+    }
+
+    private CallStats stats(LlmGatewayRequest request, ProviderAdapter adapter) {
+        String key = request.getPurpose() + "|" + adapter.getName() + "|" + request.getModel();
+        return stats.computeIfAbsent(key, k -> new CallStats(request.getPurpose(), adapter.getName(), request.getModel()));
+    }
+
+    /**
+     * 一次对冲调用：原始请求和对冲请求中先成功的一个作为结果，另一个被取消；
+     * 两者都失败时以最后一个错误结束
+     */
+    private static class HedgedCall {
+        static final int PRIMARY = 0;
+        static final int HEDGE = 1;
+
+        final CompletableFuture<LlmCallResult> result = new CompletableFuture<>();
+        private final BooleanSupplier cancelled;
+        private final AtomicInteger pending = new AtomicInteger();
+        @SuppressWarnings("unchecked")
+        private final CompletableFuture<LlmCallResult>[] attempts = new CompletableFuture[2];
+        volatile int winner = -1;
+
+        HedgedCall(BooleanSupplier cancelled) {
+            this.cancelled = cancelled;
+        }
+
+        /**
+         * 调用方取消或另一个请求已胜出时视为取消
+         */
+        BooleanSupplier cancellation(int index) {
+            return () -> cancelled.getAsBoolean() || (winner >= 0 && winner != index);
+        }
+
+        void attach(CompletableFuture<LlmCallResult> attempt, int index) {
+            pending.incrementAndGet();
+            synchronized (attempts) {
+                attempts[index] = attempt;
+            }
+            // 另一个请求已在登记前胜出
+            if (winner >= 0 && winner != index) {
+                attempt.cancel(true);
+            }
+            attempt.whenComplete((callResult, error) -> {
+                boolean last = pending.decrementAndGet() == 0;
+                if (error == null && (!callResult.isCancelled() || cancelled.getAsBoolean())) {
+                    if (result.complete(callResult)) {
+                        winner = index;
+                        cancelLoser(index);
+                    }
+                } else if (last) {
+                    // 另一个请求尚未发出或已结束，以本次结果结束
+                    if (error != null) {
+                        result.completeExceptionally(error);
+                    } else {
+                        result.complete(callResult);
+                    }
+                }
+            });
+        }
+
+        /**
+         * 取消落败的请求，中止其HTTP交换并归还连接和提供商配额
+         */
+        private void cancelLoser(int winnerIndex) {
+            CompletableFuture<LlmCallResult> loser;
+            synchronized (attempts) {
+                loser = attempts[1 - winnerIndex];
+            }
+            if (loser != null) {
+                loser.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * 单个用途、提供商和模型组合的累计统计
+     */
+    private static class CallStats {
+        private final LlmGatewayRequest.Purpose purpose;
+        private final String adapterName;
+        private final String modelName;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder cancelled = new LongAdder();
+        private final LongAdder streamed = new LongAdder();
+        private final LongAdder latencyMillisTotal = new LongAdder();
+        private final AtomicLong maxLatencyMillis = new AtomicLong();
+        private final LongAdder promptTokens = new LongAdder();
+        private final LongAdder completionTokens = new LongAdder();
+        private final LongAdder hedges = new LongAdder();
+        private final LongAdder hedgeWins = new LongAdder();
+        // 成功调用的延迟分布，用于对冲等待时间
+        private final LatencyHistogram latency = new LatencyHistogram(LATENCY_SAMPLES);
+        // 成功调用的首字延迟、吞吐和估算费用
+        private final CallUsageStats usage = new CallUsageStats(LATENCY_SAMPLES);
+
+        CallStats(LlmGatewayRequest.Purpose purpose, String adapterName, String modelName) {
+            this.purpose = purpose;
+            this.adapterName = adapterName;
+            this.modelName = modelName;
+        }
+
+        void record(LlmCallResult result, Throwable error, long elapsedNanos, Map<String, Object> modelParameters) {
+            calls.increment();
+            long latencyMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+            latencyMillisTotal.add(latencyMillis);
+            maxLatencyMillis.accumulateAndGet(latencyMillis, Math::max);
+            if (error != null) {
+                failures.increment();
+                return;
+            }
+            if (result.isCancelled()) {
+                cancelled.increment();
+                return;
+            }
+            latency.record(latencyMillis);
+            if (result.isStreamed()) {
+                streamed.increment();
+            }
+            if (result.getPromptTokens() != null) {
+                promptTokens.add(result.getPromptTokens());
+            }
+            if (result.getCompletionTokens() != null) {
+                completionTokens.add(result.getCompletionTokens());
+            }
+            usage.record(result.getPromptTokens(), result.getCompletionTokens(), latencyMillis, result.getTtftMillis(),
+                    0, System.currentTimeMillis(), modelParameters);
+        }
+
+        /**
+         * 对冲等待时间：历史延迟的指定分位，不低于下限；样本不足时返回-1表示不对冲
+         */
+        long hedgeDelayMillis(HedgingConfig config) {
+            if (latency.getCount() < config.getMinSamples()) {
+                return -1;
+            }
+            return Math.max(config.getMinDelayMs(), latency.percentile(config.getPercentile()));
+        }
+
+        /**
+         * 对冲请求数不超过原始调用数的 budgetRatio（已完成的调用数中扣除对冲请求本身）
+         */
+        synchronized boolean tryAcquireHedge(double budgetRatio) {
+            long hedgeCount = hedges.sum();
+            long primaryCalls = Math.max(0, calls.sum() - hedgeCount);
+            if (hedgeCount + 1 > budgetRatio * primaryCalls) {
+                return false;
+            }
+            hedges.increment();
+            return true;
+        }
+
+        Map<String, Object> toMap() {
+            long count = calls.sum();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("purpose", purpose);
+            map.put("provider", adapterName);
+            map.put("modelName", modelName);
+            map.put("calls", count);
+            map.put("failures", failures.sum());
+            map.put("cancelled", cancelled.sum());
+            map.put("streamed", streamed.sum());
+            map.put("avgLatencyMillis", count > 0 ? latencyMillisTotal.sum() / count : 0);
+            map.put("maxLatencyMillis", maxLatencyMillis.get());
+            map.put("p50LatencyMillis", latency.percentile(0.5));
+            map.put("p95LatencyMillis", latency.percentile(0.95));
+            map.put("p99LatencyMillis", latency.percentile(0.99));
+            map.put("hedges", hedges.sum());
+            map.put("hedgeWins", hedgeWins.sum());
+            map.put("promptTokens", promptTokens.sum());
+            map.put("completionTokens", completionTokens.sum());
+            Map<String, Object> usageMap = usage.toMap();
+            map.put("p50TtftMillis", usageMap.get("p50TtftMillis"));
+            map.put("p95TtftMillis", usageMap.get("p95TtftMillis"));
+            map.put("outputTokensPerSecond", usageMap.get("outputTokensPerSecond"));
+            map.put("perCallOutputTokensPerSecond", usageMap.get("perCallOutputTokensPerSecond"));
+            map.put("estimatedCost", usageMap.get("estimatedCost"));
+            return map;
+        }
+    }
+}
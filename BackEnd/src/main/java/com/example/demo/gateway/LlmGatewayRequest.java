@@ -0,0 +1,194 @@
+package com.example.demo.gateway;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.example.demo.entity.jdbc.LlmModel;
+import com.example.demo.manager.FairShareScheduler.Flow;
+
+/**
+ * 经过LlmGateway的一次模型调用请求
+ */
+public class LlmGatewayRequest {
+
+    /**
+     * 调用用途，用于按流量类型统计指标
+     */
+    public enum Purpose {
+        GENERATION, JUDGE, CHAT
+    }
+
+    private Purpose purpose = Purpose.GENERATION;
+    private String apiType;
+    private String apiUrl;
+    private String apiKey;
+    private String model;
+    private String systemPrompt;
+    private String prompt;
+    // 发送给模型API的生成参数（temperature、max_tokens等）
+    private Map<String, Object> parameters = new HashMap<>();
+    // 模型的执行控制参数（配额、超时等，见 LlmModel.EXECUTION_PARAMETER_KEYS），不会发送给模型API
+    private Map<String, Object> executionParameters;
+    private boolean streamingAllowed = true;
+    // 同步调用的最大尝试次数，0表示使用 llm.retry.max-attempts
+    private int maxAttempts;
+    // 是否允许对冲请求（llm.hedging），用于对尾延迟敏感的评测调用
+    private boolean hedgingAllowed;
+    // 调用所属的调度流（回答生成批次），用于在提供商配额处公平排队，可为null
+    private Flow flow;
+
+    public LlmGatewayRequest() {
+    }
+
+    /**
+     * 按模型配置构建请求：模型默认参数 + 上下文变量（优先级更高），去除仅用于调度的执行控制参数
+     */
+    public static LlmGatewayRequest forModel(LlmModel model, String prompt, Map<String, Object> contextVariables,
+                                             Purpose purpose) {
+        Map<String, Object> parameters = new HashMap<>();
+        if (model.getModelParameters() != null) {
+            parameters.putAll(model.getModelParameters());
+        }
+        if (contextVariables != null) {
+            parameters.putAll(contextVariables);
+        }
+        parameters.keySet().removeAll(LlmModel.EXECUTION_PARAMETER_KEYS);
+
+        LlmGatewayRequest request = new LlmGatewayRequest();
+        request.setPurpose(purpose);
+        request.setApiType(model.getApiType());
+        request.setApiUrl(model.getApiUrl());
+        request.setApiKey(model.getApiKey());
+        Object modelName = parameters.remove("model");
+        request.setModel(modelName != null ? modelName.toString() : model.getName());
+        request.setPrompt(prompt);
+        request.setParameters(parameters);
+        request.setExecutionParameters(model.getModelParameters());
+        return request;
+    }
+
+    /**
+     * 复制请求，用于对冲或改用其他地址重发
+     */
+    public LlmGatewayRequest copy() {
+        LlmGatewayRequest copy = new LlmGatewayRequest();
+        copy.setPurpose(purpose);
+        copy.setApiType(apiType);
+        copy.setApiUrl(apiUrl);
+        copy.setApiKey(apiKey);
+        copy.setModel(model);
+        copy.setSystemPrompt(systemPrompt);
+        copy.setPrompt(prompt);
+        copy.setParameters(new HashMap<>(parameters));
+        copy.setExecutionParameters(executionParameters);
+        copy.setStreamingAllowed(streamingAllowed);
+        copy.setMaxAttempts(maxAttempts);
+        copy.setHedgingAllowed(hedgingAllowed);
+        copy.setFlow(flow);
+        return copy;
+    }
+
+    public Purpose getPurpose() {
+        return purpose;
+    }
+
+    public void setPurpose(Purpose purpose) {
+        this.purpose = purpose;
+    }
+
+    public String getApiType() {
+        return apiType;
+    }
+
+    public void setApiType(String apiType) {
+        this.apiType = apiType;
+    }
+
+    public String getApiUrl() {
+        return apiUrl;
+    }
+
+    public void setApiUrl(String apiUrl) {
+        this.apiUrl = apiUrl;
+    }
+
+    public String getApiKey() {
+        return apiKey;
+    }
+
+    public void setApiKey(String apiKey) {
+        this.apiKey = apiKey;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public void setModel(String model) {
+        this.model = model;
+    }
+
+    public String getSystemPrompt() {
+        return systemPrompt;
+    }
+
+    public void setSystemPrompt(String systemPrompt) {
+        this.systemPrompt = systemPrompt;
+    }
+
+    public String getPrompt() {
+        return prompt;
+    }
+
+    public void setPrompt(String prompt) {
+        this.prompt = prompt;
+    }
+
+    public Map<String, Object> getParameters() {
+        return parameters;
+    }
+
+    public void setParameters(Map<String, Object> parameters) {
+        this.parameters = parameters != null ? parameters : new HashMap<>();
+    }
+
+    public Map<String, Object> getExecutionParameters() {
+        return executionParameters;
+    }
+
+    public void setExecutionParameters(Map<String, Object> executionParameters) {
+        this.executionParameters = executionParameters;
+    }
+
+    public boolean isStreamingAllowed() {
+        return streamingAllowed;
+    }
+
+    public void setStreamingAllowed(boolean streamingAllowed) {
+        this.streamingAllowed = streamingAllowed;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public boolean isHedgingAllowed() {
+        return hedgingAllowed;
+    }
+
+    public void setHedgingAllowed(boolean hedgingAllowed) {
+        this.hedgingAllowed = hedgingAllowed;
+    }
+
+    public Flow getFlow() {
+        return flow;
+    }
+
+    public void setFlow(Flow flow) {
+        this.flow = flow;
+    }
+}
@@ -0,0 +1,247 @@
+package com.example.demo.gateway;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.LlmConfig;
+import com.example.demo.config.LlmConfig.ProviderBatchConfig;
+import com.example.demo.manager.HttpClientRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * OpenAI格式的批量接口适配器（OpenAI及兼容该协议的服务）
+ * 请求按行写成JSONL通过 /v1/files 上传，再以文件ID创建 /v1/batches 任务；
+ * 任务结束后从结果文件和错误文件按custom_id取回每个请求的响应。每行的请求体与实时接口相同，由 OpenAiCompatibleAdapter 构建。
+ */
+@Component
+public class OpenAiBatchAdapter implements ProviderBatchAdapter {
+
+    private static final Logger logger = LoggerFactory.getLogger(OpenAiBatchAdapter.class);
+
+    private static final String CHAT_COMPLETIONS_PATH = "/v1/chat/completions";
+
+    private final OpenAiCompatibleAdapter requestAdapter;
+    private final HttpClientRegistry httpClientRegistry;
+    private final ObjectMapper objectMapper;
+    private final ProviderBatchConfig config;
+
+    @Autowired
+    public OpenAiBatchAdapter(OpenAiCompatibleAdapter requestAdapter, HttpClientRegistry httpClientRegistry,
+                              ObjectMapper objectMapper, LlmConfig llmConfig) {
+        this.requestAdapter = requestAdapter;
+        this.httpClientRegistry = httpClientRegistry;
+        this.objectMapper = objectMapper;
+        this.config = llmConfig.getProviderBatch();
+    }
+
+    @Override
+    public String getName() {
+        return "openai-batch";
+    }
+
+    @Override
+    public boolean supports(String apiType) {
+        // 智谱等兼容实时接口的服务不一定提供批量接口，只对明确的OpenAI格式启用
+        return "openai".equalsIgnoreCase(apiType) || "openai_compatible".equalsIgnoreCase(apiType);
+    }
+
+    @Override
+    public Status submit(String apiUrl, String apiKey, List<Item> items) throws IOException, InterruptedException {
+        String baseUrl = baseUrlOf(apiUrl);
+
+        ByteArrayOutputStream jsonl = new ByteArrayOutputStream();
+        for (Item item : items) {
+            ObjectNode line = objectMapper.createObjectNode();
+            line.put("custom_id", item.getCustomId());
+            line.put("method", "POST");
+            line.put("url", CHAT_COMPLETIONS_PATH);
+            line.set("body", requestAdapter.buildRequestBody(item.getRequest()));
+            jsonl.write(objectMapper.writeValueAsBytes(line));
+            jsonl.write('\n');
+        }
+
+        // 上传请求文件
+        String boundary = "----batch" + UUID.randomUUID().toString().replace("-", "");
+        ByteArrayOutputStream multipart = new ByteArrayOutputStream(jsonl.size() + 512);
+        writeText(multipart, "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"purpose\"\r\n\r\nbatch\r\n"
+                + "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"batch.jsonl\"\r\n"
+                + "Content-Type: application/jsonl\r\n\r\n");
+        jsonl.writeTo(multipart);
+        writeText(multipart, "\r\n--" + boundary + "--\r\n");
+        HttpRequest upload = request(baseUrl + "/files", apiKey)
+                .header(HttpHeaders.CONTENT_TYPE, "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(multipart.toByteArray()))
+                .build();
+        String inputFileId = sendJson(upload).path("id").asText(null);
+        if (inputFileId == null) {
+            throw new IOException("上传批量请求文件后未返回文件ID");
+        }
+        logger.info("已上传批量请求文件: 文件ID={}, 请求数={}, 大小={}字节", inputFileId, items.size(), jsonl.size());
+
+        // 以上传的文件创建批量任务
+        ObjectNode body = objectMapper.createObjectNode();
+        body.put("input_file_id", inputFileId);
+        body.put("endpoint", CHAT_COMPLETIONS_PATH);
+        body.put("completion_window", config.getCompletionWindow());
+        HttpRequest create = request(baseUrl + "/batches", apiKey)
+                .header(HttpHeaders.CONTENT_TYPE, "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString(), StandardCharsets.UTF_8))
+                .build();
+        Status status = toStatus(sendJson(create));
+        status.setInputFileId(inputFileId);
+        if (status.getTotal() == 0) {
+            status.setTotal(items.size());
+        }
+        return status;
+    }
+
+    @Override
+    public Status getStatus(String apiUrl, String apiKey, String providerBatchId)
+            throws IOException, InterruptedException {
+        HttpRequest get = request(baseUrlOf(apiUrl) + "/batches/" + providerBatchId, apiKey).GET().build();
+        return toStatus(sendJson(get));
+    }
+
+    @Override
+    public List<Result> fetchResults(String apiUrl, String apiKey, Status status)
+            throws IOException, InterruptedException {
+        String baseUrl = baseUrlOf(apiUrl);
+        List<Result> results = new ArrayList<>();
+        for (String fileId : new String[] {status.getOutputFileId(), status.getErrorFileId()}) {
+            if (fileId == null || fileId.isEmpty()) {
+                continue;
+            }
+            HttpRequest download = request(baseUrl + "/files/" + fileId + "/content", apiKey).GET().build();
+            HttpResponse<InputStream> response = httpClientRegistry.route(download.uri().toString()).getHttpClient()
+                    .send(download, HttpResponse.BodyHandlers.ofInputStream());
+            if (response.statusCode() < 200 || response.statusCode() >= 300) {
+                byte[] body = response.body().readAllBytes();
+                throw HttpClientRegistry.statusException(response, body);
+            }
+            // 结果文件可能很大，逐行读取
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isBlank()) {
+                        results.add(toResult(objectMapper.readTree(line)));
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 模型配置的地址可能是完整的对话端点，批量接口使用其 /v1 前缀
+     */
+    static String baseUrlOf(String apiUrl) {
+        String url = apiUrl.trim();
+        if (url.endsWith("/chat/completions")) {
+            url = url.substring(0, url.length() - "/chat/completions".length());
+        }
+        if (url.endsWith("/")) {
+            url = url.substring(0, url.length() - 1);
+        }
+        return url.endsWith("/v1") ? url : url + "/v1";
+    }
+
+    private HttpRequest.Builder request(String url, String apiKey) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofMillis(config.getRequestTimeoutMs()));
+        if (apiKey != null && !apiKey.isEmpty()) {
+            builder.header(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey);
+        }
+        return builder;
+    }
+
+    private JsonNode sendJson(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = httpClientRegistry.route(request.uri().toString()).getHttpClient()
+                .send(request, HttpResponse.BodyHandlers.ofByteArray());
+        byte[] body = response.body() != null ? response.body() : new byte[0];
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            throw HttpClientRegistry.statusException(response, body);
+        }
+        return body.length > 0 ? objectMapper.readTree(body) : objectMapper.createObjectNode();
+    }
+
+    private static Status toStatus(JsonNode batch) {
+        Status status = new Status();
+        status.setProviderBatchId(batch.path("id").asText(null));
+        switch (batch.path("status").asText("")) {
+            case "completed":
+                status.setState(Status.State.COMPLETED);
+                break;
+            case "failed":
+                status.setState(Status.State.FAILED);
+                break;
+            case "expired":
+                status.setState(Status.State.EXPIRED);
+                break;
+            case "cancelled":
+                status.setState(Status.State.CANCELLED);
+                break;
+            default:
+                // validating、in_progress、finalizing、cancelling
+                status.setState(Status.State.IN_PROGRESS);
+                break;
+        }
+        JsonNode counts = batch.path("request_counts");
+        status.setTotal(counts.path("total").asInt(0));
+        status.setCompleted(counts.path("completed").asInt(0));
+        status.setFailed(counts.path("failed").asInt(0));
+        status.setOutputFileId(textOrNull(batch.path("output_file_id")));
+        status.setErrorFileId(textOrNull(batch.path("error_file_id")));
+        JsonNode error = batch.path("errors").path("data").path(0);
+        if (error.isObject()) {
+            status.setMessage(error.path("message").asText(null));
+        }
+        return status;
+    }
+
+    private Result toResult(JsonNode line) throws IOException {
+        String customId = line.path("custom_id").asText(null);
+        JsonNode response = line.path("response");
+        int statusCode = response.path("status_code").asInt(0);
+        JsonNode body = response.path("body");
+
+        JsonNode error = line.path("error");
+        if (error.isObject()) {
+            return new Result(customId, statusCode, null, error.path("message").asText(error.toString()));
+        }
+        if (statusCode < 200 || statusCode >= 300) {
+            String message = body.path("error").path("message").asText(null);
+            return new Result(customId, statusCode, null, "HTTP " + statusCode + (message != null ? ": " + message : ""));
+        }
+        return new Result(customId, statusCode, objectMapper.writeValueAsBytes(body), null);
+    }
+
+    private static String textOrNull(JsonNode node) {
+        return node.isTextual() && !node.asText().isEmpty() ? node.asText() : null;
+    }
+
+    private static void writeText(ByteArrayOutputStream out, String text) {
+        out.writeBytes(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
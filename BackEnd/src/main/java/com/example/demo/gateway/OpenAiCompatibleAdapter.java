@@ -0,0 +1,69 @@
+package com.example.demo.gateway;
+
+import java.io.IOException;
+
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * OpenAI及兼容格式（包括智谱GLM）的适配器，也是未知API类型的默认适配器
+ */
+@Component
+public class OpenAiCompatibleAdapter extends AbstractProviderAdapter {
+
+    public OpenAiCompatibleAdapter() {
+        super("openai_compatible", "openai", "openai_compatible", "zhipu", "glm", "chatglm");
+    }
+
+    @Override
+    public String resolveEndpoint(String apiUrl, LlmGatewayRequest request) {
+        // 检查并补全OpenAI API路径
+        if (apiUrl.endsWith("/chat/completions")) {
+            return apiUrl;
+        }
+        if (apiUrl.endsWith("/v1")) {
+            return apiUrl + "/chat/completions";
+        }
+        return appendPath(apiUrl, "/v1/chat/completions");
+    }
+
+    @Override
+    public ObjectNode buildRequestBody(LlmGatewayRequest request) {
+        return chatCompletionBody(request);
+    }
+
+    @Override
+    protected void scanProviderField(String path, JsonParser parser, ScannedResponse response) throws IOException {
+        switch (path) {
+            case "choices[0].message.content":
+            case "choices[0].text":
+                response.appendText(textValue(parser));
+                break;
+            case "choices[0].message.reasoning_content":
+                response.appendThinking(textValue(parser));
+                break;
+            case "choices[0].finish_reason":
+                response.setFinishReason(textValue(parser));
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public boolean supportsStreaming(String apiType) {
+        return "openai".equalsIgnoreCase(apiType) || "openai_compatible".equalsIgnoreCase(apiType);
+    }
+
+    @Override
+    public String prepareStreamingRequest(LlmGatewayRequest request, String endpointUrl, ObjectNode requestBody) {
+        requestBody.put("stream", true);
+        if ("openai".equalsIgnoreCase(request.getApiType())) {
+            // OpenAI默认不在流式响应中返回用量，需显式开启
+            requestBody.putObject("stream_options").put("include_usage", true);
+        }
+        return endpointUrl;
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.demo.gateway;
+
+import java.io.IOException;
+
+import org.springframework.http.HttpHeaders;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * LLM提供商适配器
+ * 封装一种API协议的端点补全、认证头、请求体构建和响应解析，LlmGateway按API类型选择适配器。
+ * 新增提供商时实现该接口并注册为Spring组件即可，连接池、限流、重试和指标由网关统一处理。
+ */
+public interface ProviderAdapter {
+
+    /**
+     * 适配器名称，用于日志和指标
+     */
+    String getName();
+
+    /**
+     * 是否处理该API类型（不区分大小写）
+     */
+    boolean supports(String apiType);
+
+    /**
+     * 根据基础地址补全调用端点，已是完整端点时原样返回
+     */
+    String resolveEndpoint(String apiUrl, LlmGatewayRequest request);
+
+    /**
+     * 构建请求头（内容类型和认证）
+     */
+    HttpHeaders buildHeaders(String apiKey);
+
+    /**
+     * 构建非流式请求体
+     */
+    ObjectNode buildRequestBody(LlmGatewayRequest request);
+
+    /**
+     * 单次扫描非流式响应时处理一个标量字段（见 JsonResponseScanner）
+     * 只有需要的字段才通过 parser 读取值，其余字段直接返回即可
+     *
+     * @param path 从根开始的字段路径，如 choices[0].message.content
+     */
+    void scanField(String path, JsonParser parser, ScannedResponse response) throws IOException;
+
+    /**
+     * 按通用格式从响应树中查找回答文本，仅在扫描没有得到文本（未知响应格式）时使用，无法提取时返回空字符串
+     */
+    String extractText(JsonNode response);
+
+    /**
+     * 该API类型是否支持SSE流式输出
+     */
+    default boolean supportsStreaming(String apiType) {
+        return false;
+    }
+
+    /**
+     * 将端点和请求体转换为流式调用形式
+     *
+     * @return 流式端点URL
+     */
+    default String prepareStreamingRequest(LlmGatewayRequest request, String endpointUrl, ObjectNode requestBody) {
+        requestBody.put("stream", true);
+        return endpointUrl;
+    }
+
+    /**
+     * 解析一个流式事件，默认按OpenAI的choices[0].delta格式处理
+     *
+     * @return 是否继续读取
+     */
+    default boolean handleStreamEvent(JsonNode event, StreamSink sink) {
+        JsonNode choice = event.path("choices").path(0);
+        JsonNode delta = choice.has("delta") ? choice.get("delta") : choice.path("message");
+        sink.onThinking(delta.path("reasoning_content").asText(delta.path("reasoning").asText("")));
+        sink.onText(delta.path("content").asText(choice.path("text").asText("")));
+        return true;
+    }
+
+    /**
+     * 流式输出的接收方
+     */
+    interface StreamSink {
+
+        void onText(String text);
+
+        void onThinking(String text);
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.demo.gateway;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 提供商批量接口适配器
+ * 封装一种异步批量协议：把多个请求打包提交、查询任务状态和下载结果，ProviderBatchGateway按API类型选择适配器。
+ * 单个请求的请求体和响应体格式与该提供商的实时接口一致，响应体由 LlmGateway 按对应的 ProviderAdapter 解析。
+ * 新增提供商时实现该接口并注册为Spring组件即可。
+ */
+public interface ProviderBatchAdapter {
+
+    /**
+     * 适配器名称，用于日志
+     */
+    String getName();
+
+    /**
+     * 是否处理该API类型（不区分大小写）
+     */
+    boolean supports(String apiType);
+
+    /**
+     * 提交一个批量任务
+     *
+     * @param apiUrl 模型配置的API地址
+     * @param items  请求列表，customId在任务内唯一
+     * @return 提交后的任务状态，包含提供商的任务ID
+     */
+    Status submit(String apiUrl, String apiKey, List<Item> items) throws IOException, InterruptedException;
+
+    /**
+     * 查询批量任务的状态和进度
+     */
+    Status getStatus(String apiUrl, String apiKey, String providerBatchId) throws IOException, InterruptedException;
+
+    /**
+     * 下载已结束任务的结果，包括成功的响应和提供商记录的失败请求
+     */
+    List<Result> fetchResults(String apiUrl, String apiKey, Status status) throws IOException, InterruptedException;
+
+    /**
+     * 批量任务中的一个请求
+     */
+    final class Item {
+        private final String customId;
+        private final LlmGatewayRequest request;
+
+        public Item(String customId, LlmGatewayRequest request) {
+            this.customId = customId;
+            this.request = request;
+        }
+
+        public String getCustomId() {
+            return customId;
+        }
+
+        public LlmGatewayRequest getRequest() {
+            return request;
+        }
+    }
+
+    /**
+     * 批量任务的状态
+     */
+    final class Status {
+
+        public enum State {
+            IN_PROGRESS, COMPLETED, FAILED, EXPIRED, CANCELLED
+        }
+
+        private String providerBatchId;
+        private String inputFileId;
+        private State state = State.IN_PROGRESS;
+        private int total;
+        private int completed;
+        private int failed;
+        private String outputFileId;
+        private String errorFileId;
+        private String message;
+
+        /**
+         * 任务是否已结束（不会再有新的结果）
+         */
+        public boolean isTerminal() {
+            return state != State.IN_PROGRESS;
+        }
+
+        public String getProviderBatchId() {
+            return providerBatchId;
+        }
+
+        public void setProviderBatchId(String providerBatchId) {
+            this.providerBatchId = providerBatchId;
+        }
+
+        public String getInputFileId() {
+            return inputFileId;
+        }
+
+        public void setInputFileId(String inputFileId) {
+            this.inputFileId = inputFileId;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public void setState(State state) {
+            this.state = state;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public void setTotal(int total) {
+            this.total = total;
+        }
+
+        public int getCompleted() {
+            return completed;
+        }
+
+        public void setCompleted(int completed) {
+            this.completed = completed;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        public void setFailed(int failed) {
+            this.failed = failed;
+        }
+
+        public String getOutputFileId() {
+            return outputFileId;
+        }
+
+        public void setOutputFileId(String outputFileId) {
+            this.outputFileId = outputFileId;
+        }
+
+        public String getErrorFileId() {
+            return errorFileId;
+        }
+
+        public void setErrorFileId(String errorFileId) {
+            this.errorFileId = errorFileId;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public void setMessage(String message) {
+            this.message = message;
+        }
+    }
+
+    /**
+     * 一个请求的结果：成功时为提供商实时接口格式的响应体，失败时为错误信息
+     */
+    final class Result {
+        private final String customId;
+        private final int statusCode;
+        private final byte[] body;
+        private final String error;
+
+        public Result(String customId, int statusCode, byte[] body, String error) {
+            this.customId = customId;
+            this.statusCode = statusCode;
+            this.body = body;
+            this.error = error;
+        }
+
+        public boolean isSuccess() {
+            return error == null && statusCode >= 200 && statusCode < 300 && body != null;
+        }
+
+        public String getCustomId() {
+            return customId;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
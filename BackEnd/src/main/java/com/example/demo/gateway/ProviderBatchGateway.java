@@ -0,0 +1,115 @@
+package com.example.demo.gateway;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+
+import com.example.demo.dto.LlmCallResult;
+import com.example.demo.entity.jdbc.LlmModel;
+import com.example.demo.gateway.ProviderBatchAdapter.Item;
+import com.example.demo.gateway.ProviderBatchAdapter.Result;
+import com.example.demo.gateway.ProviderBatchAdapter.Status;
+
+/**
+ * 提供商批量接口网关
+ * 按模型的API类型选择 ProviderBatchAdapter 提交和查询批量任务；取回的响应体与实时调用一样经 LlmGateway 解析，
+ * 文本同样经过 TextPreprocessor 清理思考过程标记。
+ * 网络错误统一转换为 ResourceAccessException，非2xx状态码为与RestTemplate一致的异常。
+ */
+@Component
+public class ProviderBatchGateway {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProviderBatchGateway.class);
+
+    private final List<ProviderBatchAdapter> adapters;
+    private final LlmGateway llmGateway;
+
+    @Autowired
+    public ProviderBatchGateway(List<ProviderBatchAdapter> adapters, LlmGateway llmGateway) {
+        this.adapters = adapters;
+        this.llmGateway = llmGateway;
+        logger.info("提供商批量接口网关已加载{}个适配器", adapters.size());
+    }
+
+    /**
+     * 模型的提供商是否有可用的批量接口
+     */
+    public boolean supports(LlmModel model) {
+        return findAdapter(apiTypeOf(model)) != null;
+    }
+
+    /**
+     * 提交一个批量任务
+     */
+    public Status submit(LlmModel model, List<Item> items) throws InterruptedException {
+        ProviderBatchAdapter adapter = resolveAdapter(model);
+        try {
+            Status status = adapter.submit(model.getApiUrl(), model.getApiKey(), items);
+            logger.info("已通过{}提交批量任务: 模型={}, 任务ID={}, 请求数={}",
+                    adapter.getName(), model.getName(), status.getProviderBatchId(), items.size());
+            return status;
+        } catch (IOException e) {
+            throw new ResourceAccessException("提交批量任务失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 查询批量任务的状态
+     */
+    public Status getStatus(LlmModel model, String providerBatchId) throws InterruptedException {
+        try {
+            return resolveAdapter(model).getStatus(model.getApiUrl(), model.getApiKey(), providerBatchId);
+        } catch (IOException e) {
+            throw new ResourceAccessException("查询批量任务状态失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 下载已结束任务的结果
+     */
+    public List<Result> fetchResults(LlmModel model, Status status) throws InterruptedException {
+        try {
+            return resolveAdapter(model).fetchResults(model.getApiUrl(), model.getApiKey(), status);
+        } catch (IOException e) {
+            throw new ResourceAccessException("下载批量任务结果失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 把一个成功的结果解析为调用结果，格式与实时调用相同
+     *
+     * @param request       该结果对应的请求
+     * @param latencyMillis 记录的耗时，批量任务没有单次调用耗时，由调用方按任务的周转时间填写
+     */
+    public LlmCallResult toCallResult(LlmGatewayRequest request, Result result, long latencyMillis) {
+        ProviderAdapter adapter = llmGateway.resolveAdapter(request.getApiType());
+        return llmGateway.parseResponse(adapter, request, result.getBody(), latencyMillis);
+    }
+
+    private ProviderBatchAdapter resolveAdapter(LlmModel model) {
+        ProviderBatchAdapter adapter = findAdapter(apiTypeOf(model));
+        if (adapter == null) {
+            throw new IllegalArgumentException("模型" + model.getName() + "的API类型" + model.getApiType() + "不支持批量接口");
+        }
+        return adapter;
+    }
+
+    private ProviderBatchAdapter findAdapter(String apiType) {
+        for (ProviderBatchAdapter adapter : adapters) {
+            if (adapter.supports(apiType)) {
+                return adapter;
+            }
+        }
+        return null;
+    }
+
+    private static String apiTypeOf(LlmModel model) {
+        return model.getApiType() != null && !model.getApiType().isEmpty()
+                ? model.getApiType() : LlmGateway.inferApiType(model.getApiUrl());
+    }
+}
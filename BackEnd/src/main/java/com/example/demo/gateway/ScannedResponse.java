@@ -0,0 +1,105 @@
+package com.example.demo.gateway;
+
+import com.example.demo.util.TokenUsage;
+
+/**
+ * 单次扫描响应字节得到的结果：回答文本、思考过程、结束原因和token用量
+ */
+public class ScannedResponse {
+
+    private final StringBuilder text = new StringBuilder();
+    private final StringBuilder thinking = new StringBuilder();
+    private String finishReason;
+    private Integer promptTokens;
+    private Integer completionTokens;
+    private Integer totalTokens;
+    // 最近一段回答文本所属的字段路径前缀及其在text中的起始位置，用于处理标记字段出现在文本之后的情况
+    private String lastTextOwner;
+    private int lastTextStart;
+    // 已被标记为思考过程、但文本尚未出现的字段路径前缀
+    private String pendingThinkingOwner;
+
+    public void appendText(String value) {
+        appendText(null, value);
+    }
+
+    /**
+     * 追加回答文本
+     *
+     * @param owner 文本所在对象的路径前缀（如 candidates[0].content.parts[1]），不需要按对象区分时传null
+     */
+    public void appendText(String owner, String value) {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        if (owner != null && owner.equals(pendingThinkingOwner)) {
+            thinking.append(value);
+            pendingThinkingOwner = null;
+            return;
+        }
+        lastTextOwner = owner;
+        lastTextStart = text.length();
+        text.append(value);
+    }
+
+    public void appendThinking(String value) {
+        if (value != null) {
+            thinking.append(value);
+        }
+    }
+
+    /**
+     * 将某个对象中的文本标记为思考过程：文本已读取时从回答中移出，否则在读到时直接归入思考过程
+     */
+    public void markThinking(String owner) {
+        if (owner != null && owner.equals(lastTextOwner)) {
+            thinking.append(text, lastTextStart, text.length());
+            text.setLength(lastTextStart);
+            lastTextOwner = null;
+        } else {
+            pendingThinkingOwner = owner;
+        }
+    }
+
+    public boolean hasText() {
+        return text.length() > 0;
+    }
+
+    public String getText() {
+        return text.toString();
+    }
+
+    public String getThinking() {
+        return thinking.toString();
+    }
+
+    public String getFinishReason() {
+        return finishReason;
+    }
+
+    public void setFinishReason(String finishReason) {
+        this.finishReason = finishReason;
+    }
+
+    public void setPromptTokens(Integer promptTokens) {
+        this.promptTokens = promptTokens;
+    }
+
+    public void setCompletionTokens(Integer completionTokens) {
+        this.completionTokens = completionTokens;
+    }
+
+    public void setTotalTokens(Integer totalTokens) {
+        this.totalTokens = totalTokens;
+    }
+
+    /**
+     * 扫描到的用量，没有任何用量字段时返回null
+     */
+    public TokenUsage getUsage() {
+        if (promptTokens == null && completionTokens == null && totalTokens == null) {
+            return null;
+        }
+        return new TokenUsage(promptTokens, completionTokens, totalTokens);
+    }
+}
@@ -0,0 +1,459 @@
+package com.example.demo.manager;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.redisson.api.RAtomicLong;
+import org.redisson.api.RBlockingDeque;
+import org.redisson.api.RList;
+import org.redisson.api.RMap;
+import org.redisson.api.RScript;
+import org.redisson.api.RSet;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.LlmConfig;
+import com.example.demo.config.LlmConfig.DistributedConfig;
+
+/**
+ * 回答生成的分布式工作队列（Redis）
+ * 运行的问题序号（重复次数×问题数）按固定大小切分为工作单元，单元ID为“批次ID:运行ID:起始序号:结束序号”。
+ * 单元在三个位置之一：待处理队列、处理中列表（带租约）、按批次暂存的已暂停列表，处理完成后记入运行的已完成单元集合。
+ * 拉取单元时原子地从待处理队列移入处理中列表，再写入租约；租约值包含持有者令牌和到期时间，
+ * 续约、完成和回收都以租约值做比较并替换，保证同一单元同一时刻只有一个持有者能提交结果。
+ * 租约到期时间由Lua脚本按Redis服务器的TIME计算和判断，不受各实例时钟偏差影响。
+ */
+@Component
+public class AnswerWorkQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnswerWorkQueue.class);
+
+    private static final String PENDING_KEY = "answer:units:pending";
+    private static final String PROCESSING_KEY = "answer:units:processing";
+    private static final String LEASES_KEY = "answer:units:leases";
+    private static final String PARKED_PREFIX = "answer:units:parked:";
+    private static final String DONE_PREFIX = "answer:run:done-units:";
+    private static final String REMAINING_PREFIX = "answer:run:remaining-units:";
+    // 运行级键的保留时间，运行完成时主动删除
+    private static final long RUN_KEY_TTL_DAYS = 7;
+
+    // 单元没有租约时写入租约：KEYS[1]=租约表，ARGV=单元ID、持有者令牌、有效期（毫秒），返回租约值，已有租约时返回nil
+    private static final String ACQUIRE_SCRIPT =
+            "redis.replicate_commands() " +
+            "if redis.call('hexists', KEYS[1], ARGV[1]) == 1 then return nil end " +
+            "local now = redis.call('time') " +
+            "local value = ARGV[2] .. '|' .. string.format('%d', now[1] * 1000 + math.floor(now[2] / 1000) + tonumber(ARGV[3])) " +
+            "redis.call('hset', KEYS[1], ARGV[1], value) " +
+            "return value";
+
+    // 租约值未变化时续约：KEYS[1]=租约表，ARGV=单元ID、当前租约值、新的持有者令牌、有效期（毫秒），租约已被回收时返回nil
+    private static final String RENEW_SCRIPT =
+            "redis.replicate_commands() " +
+            "if redis.call('hget', KEYS[1], ARGV[1]) ~= ARGV[2] then return nil end " +
+            "local now = redis.call('time') " +
+            "local value = ARGV[3] .. '|' .. string.format('%d', now[1] * 1000 + math.floor(now[2] / 1000) + tonumber(ARGV[4])) " +
+            "redis.call('hset', KEYS[1], ARGV[1], value) " +
+            "return value";
+
+    // 回收过期租约的单元放回待处理队列尾部，并为处理中列表里没有租约的单元补一个租约：
+    // KEYS=租约表、处理中列表、待处理队列，ARGV[1]=有效期（毫秒），返回被回收的单元ID和原租约值
+    private static final String REAP_SCRIPT =
+            "redis.replicate_commands() " +
+            "local now = redis.call('time') " +
+            "local nowMillis = now[1] * 1000 + math.floor(now[2] / 1000) " +
+            "local entries = redis.call('hgetall', KEYS[1]) " +
+            "local leased = {} " +
+            "local reaped = {} " +
+            "for i = 1, #entries, 2 do " +
+            "  local unitId, value = entries[i], entries[i + 1] " +
+            "  leased[unitId] = true " +
+            "  local expiry = tonumber(string.match(value, '|(%d+)$')) or 0 " +
+            "  if expiry <= nowMillis then " +
+            "    redis.call('hdel', KEYS[1], unitId) " +
+            "    redis.call('lrem', KEYS[2], 1, unitId) " +
+            "    redis.call('rpush', KEYS[3], unitId) " +
+            "    table.insert(reaped, unitId) " +
+            "    table.insert(reaped, value) " +
+            "  end " +
+            "end " +
+            "for _, unitId in ipairs(redis.call('lrange', KEYS[2], 0, -1)) do " +
+            "  if not leased[unitId] then " +
+            "    redis.call('hset', KEYS[1], unitId, 'orphan|' .. string.format('%d', nowMillis + tonumber(ARGV[1]))) " +
+            "  end " +
+            "end " +
+            "return reaped";
+
+    // 投递运行中尚未完成、也没有被持有的单元，并在同一脚本内写入剩余单元数，与完成单元的脚本互斥：
+    // KEYS=租约表、处理中列表、待处理队列、已完成单元集合、剩余单元计数，ARGV[1]=运行级键保留时间（秒），
+    // 其后依次为单元起始序号和单元ID，返回投递的单元数和剩余单元数（含仍被持有的单元）
+    private static final String PUBLISH_SCRIPT =
+            "local processing = {} " +
+            "for _, unitId in ipairs(redis.call('lrange', KEYS[2], 0, -1)) do processing[unitId] = true end " +
+            "local published, remaining = 0, 0 " +
+            "for i = 2, #ARGV, 2 do " +
+            "  local start, unitId = ARGV[i], ARGV[i + 1] " +
+            "  if redis.call('sismember', KEYS[4], start) == 0 then " +
+            "    remaining = remaining + 1 " +
+            "    if not processing[unitId] and redis.call('hexists', KEYS[1], unitId) == 0 then " +
+            "      redis.call('lpush', KEYS[3], unitId) " +
+            "      published = published + 1 " +
+            "    end " +
+            "  end " +
+            "end " +
+            "redis.call('set', KEYS[5], remaining, 'EX', ARGV[1]) " +
+            "redis.call('expire', KEYS[4], ARGV[1]) " +
+            "return {published, remaining}";
+
+    // 租约值未变化时完成单元：KEYS=租约表、处理中列表、已完成单元集合、剩余单元计数，
+    // ARGV=单元ID、租约值、单元起始序号，返回剩余单元数，租约已丢失或单元此前已完成时返回-1
+    private static final String COMPLETE_SCRIPT =
+            "if redis.call('hget', KEYS[1], ARGV[1]) ~= ARGV[2] then return -1 end " +
+            "redis.call('hdel', KEYS[1], ARGV[1]) " +
+            "redis.call('lrem', KEYS[2], 1, ARGV[1]) " +
+            "if redis.call('sadd', KEYS[3], ARGV[3]) == 0 then return -1 end " +
+            "return redis.call('decr', KEYS[4])";
+
+    private final RedissonClient redissonClient;
+    private final DistributedConfig config;
+    private final String instanceId;
+
+    @Autowired
+    public AnswerWorkQueue(RedissonClient redissonClient, LlmConfig llmConfig) {
+        this.redissonClient = redissonClient;
+        this.config = llmConfig.getDistributed();
+        this.instanceId = resolveHostName() + ":" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    /**
+     * 本实例的标识，用于租约持有者和批次处理实例
+     */
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    /**
+     * 为运行投递尚未完成的工作单元
+     * 仍在处理中列表或持有租约的单元（如暂停后尚未结束的单元）不重复投递，由原持有者完成，
+     * 租约过期时由回收任务重新投递；这些单元仍计入剩余单元数。
+     *
+     * @param totalQuestions 运行的总问题数（含重复次数）
+     * @return 运行剩余的单元数，为0表示运行的所有单元都已完成
+     */
+    public int publishRun(Long batchId, Long runId, int totalQuestions) {
+        int unitSize = Math.max(1, config.getUnitSize());
+        List<Object> args = new ArrayList<>();
+        args.add(String.valueOf(TimeUnit.DAYS.toSeconds(RUN_KEY_TTL_DAYS)));
+        for (int start = 0; start < totalQuestions; start += unitSize) {
+            args.add(String.valueOf(start));
+            args.add(new WorkUnit(batchId, runId, start, Math.min(totalQuestions, start + unitSize)).getId());
+        }
+
+        List<Object> counts = script().eval(RScript.Mode.READ_WRITE, PUBLISH_SCRIPT, RScript.ReturnType.MULTI,
+                Arrays.asList(LEASES_KEY, PROCESSING_KEY, PENDING_KEY, DONE_PREFIX + runId, REMAINING_PREFIX + runId),
+                args.toArray());
+        int published = ((Number) counts.get(0)).intValue();
+        int remaining = ((Number) counts.get(1)).intValue();
+        logger.info("运行{}投递{}个工作单元，处理中{}个，剩余{}个，单元大小: {}",
+                runId, published, remaining - published, remaining, unitSize);
+        return remaining;
+    }
+
+    /**
+     * 移除批次在待处理队列和已暂停列表中的单元，重新投递前调用，避免同一单元重复排队
+     *
+     * @return 移除的单元数
+     */
+    public int purgeBatch(Long batchId) {
+        String prefix = batchId + ":";
+        List<String> stale = new ArrayList<>();
+        for (String unitId : pending().readAll()) {
+            if (unitId.startsWith(prefix)) {
+                stale.add(unitId);
+            }
+        }
+        if (!stale.isEmpty()) {
+            pending().removeAll(stale);
+        }
+        RList<String> parked = parked(batchId);
+        int parkedCount = parked.size();
+        parked.delete();
+        return stale.size() + parkedCount;
+    }
+
+    /**
+     * 拉取一个工作单元并取得租约
+     *
+     * @return 租约，等待超时或单元已被回收任务接管时返回null
+     */
+    public Lease poll(long timeoutMillis) throws InterruptedException {
+        String unitId = pending().pollLastAndOfferFirstTo(PROCESSING_KEY, timeoutMillis, TimeUnit.MILLISECONDS);
+        if (unitId == null) {
+            return null;
+        }
+        WorkUnit unit = WorkUnit.parse(unitId);
+        if (unit == null) {
+            logger.warn("丢弃格式错误的工作单元: {}", unitId);
+            processing().remove(unitId);
+            return null;
+        }
+        String value = script().eval(RScript.Mode.READ_WRITE, ACQUIRE_SCRIPT, RScript.ReturnType.VALUE,
+                List.of(LEASES_KEY), unitId, newLeaseToken(), String.valueOf(config.getLeaseTtlMs()));
+        if (value == null) {
+            // 移入处理中列表与写入租约之间被回收任务当作孤儿单元接管，租约到期后会重新投递
+            logger.debug("工作单元{}已被回收任务接管，放弃处理", unitId);
+            return null;
+        }
+        return new Lease(unit, value);
+    }
+
+    /**
+     * 续约，租约已被回收（如续约间隔内发生长时间停顿）时返回false
+     */
+    public boolean renew(Lease lease) {
+        synchronized (lease) {
+            if (lease.lost) {
+                return false;
+            }
+            String renewed = script().eval(RScript.Mode.READ_WRITE, RENEW_SCRIPT, RScript.ReturnType.VALUE,
+                    List.of(LEASES_KEY), lease.unit.getId(), lease.value, newLeaseToken(),
+                    String.valueOf(config.getLeaseTtlMs()));
+            if (renewed != null) {
+                lease.value = renewed;
+                return true;
+            }
+            lease.lost = true;
+            return false;
+        }
+    }
+
+    /**
+     * 提交单元处理完成：在一个脚本内释放租约、记入运行的已完成单元并减少剩余单元数
+     *
+     * @return 运行剩余的单元数；租约已丢失或该单元此前已完成时返回-1
+     */
+    public long complete(Lease lease) {
+        synchronized (lease) {
+            if (lease.lost) {
+                return -1;
+            }
+            lease.lost = true;
+            WorkUnit unit = lease.unit;
+            Long remaining = script().eval(RScript.Mode.READ_WRITE, COMPLETE_SCRIPT, RScript.ReturnType.INTEGER,
+                    Arrays.asList(LEASES_KEY, PROCESSING_KEY, DONE_PREFIX + unit.getRunId(),
+                            REMAINING_PREFIX + unit.getRunId()),
+                    unit.getId(), lease.value, String.valueOf(unit.getStartIndex()));
+            return remaining;
+        }
+    }
+
+    /**
+     * 批次被暂停：把单元移入批次的已暂停列表，恢复批次时重新投递
+     */
+    public void park(Lease lease) {
+        if (removeLease(lease)) {
+            processing().remove(lease.unit.getId());
+            parked(lease.unit.getBatchId()).add(lease.unit.getId());
+        }
+    }
+
+    /**
+     * 放弃单元（如实例关闭）：放回待处理队列尾部，由其他实例优先处理
+     */
+    public void release(Lease lease) {
+        if (removeLease(lease)) {
+            processing().remove(lease.unit.getId());
+            pending().add(lease.unit.getId());
+        }
+    }
+
+    /**
+     * 回收租约过期的单元并重新投递；处理中列表里没有租约的单元（拉取后实例立即宕机）先补一个租约，到期后回收
+     *
+     * @return 重新投递的单元数
+     */
+    public int reapExpired() {
+        List<Object> reaped = script().eval(RScript.Mode.READ_WRITE, REAP_SCRIPT, RScript.ReturnType.MULTI,
+                Arrays.asList(LEASES_KEY, PROCESSING_KEY, PENDING_KEY), String.valueOf(config.getLeaseTtlMs()));
+        for (int i = 0; i + 1 < reaped.size(); i += 2) {
+            logger.warn("工作单元{}的租约已过期（持有者: {}），重新投递", reaped.get(i), leaseOwner(String.valueOf(reaped.get(i + 1))));
+        }
+        return reaped.size() / 2;
+    }
+
+    /**
+     * 运行完成后删除其已完成单元集合和剩余单元计数
+     */
+    public void clearRun(Long runId) {
+        doneUnits(runId).delete();
+        remainingUnits(runId).delete();
+    }
+
+    /**
+     * 队列长度和各实例持有的租约数
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("instanceId", instanceId);
+        metrics.put("pendingUnits", pending().size());
+        metrics.put("processingUnits", processing().size());
+        Map<String, Integer> leasesByOwner = new HashMap<>();
+        for (String value : leases().readAllValues()) {
+            leasesByOwner.merge(leaseOwner(value), 1, Integer::sum);
+        }
+        metrics.put("leasesByOwner", leasesByOwner);
+        return metrics;
+    }
+
+    private boolean removeLease(Lease lease) {
+        synchronized (lease) {
+            if (lease.lost) {
+                return false;
+            }
+            lease.lost = true;
+            return leases().remove(lease.unit.getId(), lease.value);
+        }
+    }
+
+    /**
+     * 租约值为“持有者实例/随机令牌|到期时间”，到期时间由脚本按Redis时间追加
+     */
+    private String newLeaseToken() {
+        return instanceId + "/" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    private static String leaseOwner(String value) {
+        int end = value.lastIndexOf('/');
+        if (end < 0) {
+            end = value.lastIndexOf('|');
+        }
+        return end > 0 ? value.substring(0, end) : value;
+    }
+
+    private RBlockingDeque<String> pending() {
+        return redissonClient.getBlockingDeque(PENDING_KEY, StringCodec.INSTANCE);
+    }
+
+    private RList<String> processing() {
+        return redissonClient.getList(PROCESSING_KEY, StringCodec.INSTANCE);
+    }
+
+    private RScript script() {
+        return redissonClient.getScript(StringCodec.INSTANCE);
+    }
+
+    private RMap<String, String> leases() {
+        return redissonClient.getMap(LEASES_KEY, StringCodec.INSTANCE);
+    }
+
+    private RList<String> parked(Long batchId) {
+        return redissonClient.getList(PARKED_PREFIX + batchId, StringCodec.INSTANCE);
+    }
+
+    private RSet<String> doneUnits(Long runId) {
+        return redissonClient.getSet(DONE_PREFIX + runId, StringCodec.INSTANCE);
+    }
+
+    private RAtomicLong remainingUnits(Long runId) {
+        return redissonClient.getAtomicLong(REMAINING_PREFIX + runId);
+    }
+
+    private static String resolveHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "unknown-host";
+        }
+    }
+
+    /**
+     * 工作单元：运行中问题序号区间[startIndex, endIndex)，序号为 重复索引×问题数+问题位置
+     */
+    public static class WorkUnit {
+        private final Long batchId;
+        private final Long runId;
+        private final int startIndex;
+        private final int endIndex;
+
+        public WorkUnit(Long batchId, Long runId, int startIndex, int endIndex) {
+            this.batchId = batchId;
+            this.runId = runId;
+            this.startIndex = startIndex;
+            this.endIndex = endIndex;
+        }
+
+        static WorkUnit parse(String unitId) {
+            String[] parts = unitId.split(":");
+            if (parts.length != 4) {
+                return null;
+            }
+            try {
+                return new WorkUnit(Long.valueOf(parts[0]), Long.valueOf(parts[1]),
+                        Integer.parseInt(parts[2]), Integer.parseInt(parts[3]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        public String getId() {
+            return batchId + ":" + runId + ":" + startIndex + ":" + endIndex;
+        }
+
+        public Long getBatchId() {
+            return batchId;
+        }
+
+        public Long getRunId() {
+            return runId;
+        }
+
+        public int getStartIndex() {
+            return startIndex;
+        }
+
+        public int getEndIndex() {
+            return endIndex;
+        }
+
+        @Override
+        public String toString() {
+            return getId();
+        }
+    }
+
+    /**
+     * 本实例持有的单元租约
+     */
+    public static class Lease {
+        private final WorkUnit unit;
+        private String value;
+        private boolean lost;
+
+        Lease(WorkUnit unit, String value) {
+            this.unit = unit;
+            this.value = value;
+        }
+
+        public WorkUnit getUnit() {
+            return unit;
+        }
+
+        /**
+         * 租约是否已丢失（被回收或已提交），丢失后不应继续提交新问题
+         */
+        public synchronized boolean isLost() {
+            return lost;
+        }
+    }
+}
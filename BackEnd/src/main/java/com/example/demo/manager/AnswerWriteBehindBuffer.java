@@ -0,0 +1,181 @@
+package com.example.demo.manager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.entity.jdbc.LlmAnswer;
+import com.example.demo.repository.jdbc.LlmAnswerRepository;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * LLM回答写缓冲
+ * 收集已生成的回答，达到数量阈值或定时通过JDBC批量写入。
+ * 入队返回的Future在回答真正落库后才完成，调用方据此推进断点，保证断点不会超前于已写入的回答。
+ */
+@Component
+public class AnswerWriteBehindBuffer {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnswerWriteBehindBuffer.class);
+
+    private final LlmAnswerRepository answerRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${llm.write-behind.batch-size:100}")
+    private int batchSize;
+
+    // 保护缓冲区的锁
+    private final ReentrantLock bufferLock = new ReentrantLock();
+    // 串行化刷新操作的锁
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private List<PendingAnswer> buffer = new ArrayList<>();
+
+    /**
+     * 等待写入的回答及其完成通知
+     */
+    private static class PendingAnswer {
+        final LlmAnswer answer;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        PendingAnswer(LlmAnswer answer) {
+            this.answer = answer;
+        }
+    }
+
+    @Autowired
+    public AnswerWriteBehindBuffer(LlmAnswerRepository answerRepository,
+                                   PlatformTransactionManager transactionManager) {
+        this.answerRepository = answerRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * 回答入队，返回的Future在回答写入数据库后完成
+     */
+    public CompletableFuture<Void> enqueue(LlmAnswer answer) {
+        PendingAnswer pending = new PendingAnswer(answer);
+        boolean full;
+
+        bufferLock.lock();
+        try {
+            buffer.add(pending);
+            full = buffer.size() >= batchSize;
+        } finally {
+            bufferLock.unlock();
+        }
+
+        // 达到数量阈值时由入队线程直接刷新
+        if (full) {
+            flush();
+        }
+        return pending.future;
+    }
+
+    /**
+     * 定时刷新缓冲区
+     */
+    @Scheduled(fixedDelayString = "${llm.write-behind.flush-interval-ms:500}")
+    public void scheduledFlush() {
+        flush();
+    }
+
+    /**
+     * 立即把缓冲区中的所有回答写入数据库（暂停、运行结束和关闭时调用）
+     * Future在释放刷新锁之后才完成，避免回调在持有锁时阻塞其他入队线程
+     */
+    public void flush() {
+        List<PendingAnswer> written = new ArrayList<>();
+        List<PendingAnswer> failed = new ArrayList<>();
+        List<Exception> errors = new ArrayList<>();
+
+        flushLock.lock();
+        try {
+            List<PendingAnswer> pending;
+            bufferLock.lock();
+            try {
+                if (buffer.isEmpty()) {
+                    return;
+                }
+                pending = buffer;
+                buffer = new ArrayList<>();
+            } finally {
+                bufferLock.unlock();
+            }
+
+            for (int from = 0; from < pending.size(); from += batchSize) {
+                write(pending.subList(from, Math.min(from + batchSize, pending.size())), written, failed, errors);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+
+        for (PendingAnswer pending : written) {
+            pending.future.complete(null);
+        }
+        for (int i = 0; i < failed.size(); i++) {
+            failed.get(i).future.completeExceptionally(errors.get(i));
+        }
+    }
+
+    /**
+     * 批量写入一组回答，整批失败时逐条重试以隔离问题数据
+     */
+    private void write(List<PendingAnswer> chunk, List<PendingAnswer> written,
+                       List<PendingAnswer> failed, List<Exception> errors) {
+        List<LlmAnswer> answers = new ArrayList<>(chunk.size());
+        for (PendingAnswer pending : chunk) {
+            answers.add(pending.answer);
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> answerRepository.batchInsert(answers));
+            logger.debug("批量写入{}条回答成功", answers.size());
+            written.addAll(chunk);
+        } catch (Exception e) {
+            logger.warn("批量写入{}条回答失败，改为逐条写入: {}", answers.size(), e.getMessage());
+            for (PendingAnswer pending : chunk) {
+                try {
+                    answerRepository.save(pending.answer);
+                    written.add(pending);
+                } catch (Exception ex) {
+                    logger.error("写入回答失败: runId={}, repeatIndex={}",
+                        pending.answer.getModelAnswerRun().getId(), pending.answer.getRepeatIndex(), ex);
+                    failed.add(pending);
+                    errors.add(ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * 等待写入的回答数
+     */
+    public int getPendingCount() {
+        bufferLock.lock();
+        try {
+            return buffer.size();
+        } finally {
+            bufferLock.unlock();
+        }
+    }
+
+    /**
+     * 应用关闭前写入剩余的回答
+     */
+    @PreDestroy
+    public void destroy() {
+        logger.info("关闭回答写缓冲，写入剩余{}条回答", getPendingCount());
+        flush();
+    }
+}
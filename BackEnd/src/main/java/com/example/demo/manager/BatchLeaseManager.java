@@ -0,0 +1,199 @@
+package com.example.demo.manager;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.LlmConfig;
+import com.example.demo.config.LlmConfig.OwnershipConfig;
+
+/**
+ * 批次处理权租约
+ * 处理批次的实例把自己的标识写入processing_instance，并定期刷新last_check_time作为心跳；
+ * last_check_time超过租约有效期未刷新的批次视为持有者已失效，任一实例可用比较并更新的方式接管。
+ * 心跳和过期判断都使用数据库时间，不受各实例时钟偏差影响。
+ * 持有者在半个有效期内没有成功续约（数据库不可达或处理权已被接管）时视为租约丢失，应立即停止处理，
+ * 保证其他实例接管前原持有者已停止提交新问题。
+ */
+@Component
+public class BatchLeaseManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchLeaseManager.class);
+
+    // 处理中且可被接管的批次状态
+    private static final String ACTIVE_STATUSES = "('GENERATING_ANSWERS', 'RESUMING')";
+
+    private static final String ACQUIRE_SQL =
+        "UPDATE answer_generation_batches SET processing_instance = ?, last_check_time = NOW() WHERE id = ?";
+
+    private static final String RENEW_SQL =
+        "UPDATE answer_generation_batches SET last_check_time = NOW() WHERE id = ? AND processing_instance = ?";
+
+    private static final String RELEASE_SQL =
+        "UPDATE answer_generation_batches SET processing_instance = NULL WHERE id = ? AND processing_instance = ?";
+
+    private static final String EXPIRE_SQL =
+        "UPDATE answer_generation_batches SET last_check_time = NULL WHERE id = ? AND processing_instance = ?";
+
+    private static final String TAKE_OVER_SQL =
+        "UPDATE answer_generation_batches SET processing_instance = ?, last_check_time = NOW() " +
+        "WHERE id = ? AND status IN " + ACTIVE_STATUSES + " AND processing_instance IS NOT NULL " +
+        "AND (last_check_time IS NULL OR last_check_time < NOW() - INTERVAL ? SECOND)";
+
+    private static final String FIND_EXPIRED_SQL =
+        "SELECT id FROM answer_generation_batches WHERE status IN " + ACTIVE_STATUSES + " " +
+        "AND processing_instance IS NOT NULL " +
+        "AND (last_check_time IS NULL OR last_check_time < NOW() - INTERVAL ? SECOND)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final OwnershipConfig config;
+    private final String instanceId;
+    // 本实例持有的批次及最近一次成功续约的时间
+    private final Map<Long, Long> ownedBatches = new ConcurrentHashMap<>();
+
+    @Autowired
+    public BatchLeaseManager(JdbcTemplate jdbcTemplate, LlmConfig llmConfig, AnswerWorkQueue workQueue) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.config = llmConfig.getOwnership();
+        this.instanceId = workQueue.getInstanceId();
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    /**
+     * 启动或恢复批次时获取处理权（覆盖原持有者）
+     */
+    public void acquire(Long batchId) {
+        jdbcTemplate.update(ACQUIRE_SQL, instanceId, batchId);
+        ownedBatches.put(batchId, System.currentTimeMillis());
+    }
+
+    /**
+     * 接管租约已过期的批次，多个实例同时接管时只有一个成功
+     */
+    public boolean takeOver(Long batchId) {
+        int updated = jdbcTemplate.update(TAKE_OVER_SQL, instanceId, batchId, ttlSeconds());
+        if (updated == 0) {
+            return false;
+        }
+        ownedBatches.put(batchId, System.currentTimeMillis());
+        return true;
+    }
+
+    /**
+     * 释放处理权，处理权已被其他实例接管时不做修改
+     */
+    public void release(Long batchId) {
+        ownedBatches.remove(batchId);
+        jdbcTemplate.update(RELEASE_SQL, batchId, instanceId);
+    }
+
+    /**
+     * 实例关闭时先在本实例内放弃所有批次的处理权，不修改数据库中的租约：
+     * 本实例的运行按租约丢失停止，停止前其他实例不会接管，停止后再调用expire让租约过期
+     *
+     * @return 放弃处理权的批次
+     */
+    public List<Long> relinquishAll() {
+        List<Long> batchIds = new ArrayList<>(ownedBatches.keySet());
+        for (Long batchId : batchIds) {
+            ownedBatches.remove(batchId);
+        }
+        return batchIds;
+    }
+
+    /**
+     * 放弃批次的处理权并让租约立即过期，由任一实例在下一次检查时接管
+     */
+    public void expire(Long batchId) {
+        ownedBatches.remove(batchId);
+        try {
+            jdbcTemplate.update(EXPIRE_SQL, batchId, instanceId);
+        } catch (Exception e) {
+            logger.warn("批次{}的租约置为过期失败，将在有效期结束后由其他实例接管: {}", batchId, e.getMessage());
+        }
+    }
+
+    /**
+     * 本实例是否仍持有批次的处理权（续约失败后返回false）
+     */
+    public boolean isOwned(Long batchId) {
+        return ownedBatches.containsKey(batchId);
+    }
+
+    /**
+     * 本实例能否继续提交批次的新问题：持有处理权，且最近一次成功续约不早于半个有效期之前。
+     * 心跳被延误时无法确认其他实例尚未接管，处理方应自行停止，不能等到续约失败才停止
+     */
+    public boolean isLeaseFresh(Long batchId) {
+        Long renewedAt = ownedBatches.get(batchId);
+        if (renewedAt == null) {
+            return false;
+        }
+        // 未启用租约时不续约，也不会被接管
+        return !config.isEnabled() || System.currentTimeMillis() - renewedAt <= config.getLeaseTtlMs() / 2;
+    }
+
+    /**
+     * 续约本实例持有的所有批次
+     *
+     * @return 租约已丢失的批次，已从持有列表中移除
+     */
+    public List<Long> renewAll() {
+        List<Long> lost = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Long, Long> entry : ownedBatches.entrySet()) {
+            Long batchId = entry.getKey();
+            try {
+                if (jdbcTemplate.update(RENEW_SQL, batchId, instanceId) > 0) {
+                    entry.setValue(now);
+                    continue;
+                }
+                logger.warn("批次{}的处理权已被其他实例接管", batchId);
+            } catch (Exception e) {
+                if (now - entry.getValue() < config.getLeaseTtlMs() / 2) {
+                    logger.warn("续约批次{}的处理权失败，稍后重试: {}", batchId, e.getMessage());
+                    continue;
+                }
+                logger.error("批次{}超过{}ms未能续约处理权，视为租约丢失", batchId, config.getLeaseTtlMs() / 2, e);
+            }
+            if (ownedBatches.remove(batchId, entry.getValue())) {
+                lost.add(batchId);
+            }
+        }
+        return lost;
+    }
+
+    /**
+     * 查找租约已过期的处理中批次（包括本实例此前因无法续约而放弃的批次）
+     */
+    public List<Long> findExpired() {
+        return jdbcTemplate.queryForList(FIND_EXPIRED_SQL, Long.class, ttlSeconds());
+    }
+
+    /**
+     * 本实例持有的批次和租约配置
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("instanceId", instanceId);
+        metrics.put("enabled", config.isEnabled());
+        metrics.put("leaseTtlMs", config.getLeaseTtlMs());
+        metrics.put("ownedBatches", new ArrayList<>(ownedBatches.keySet()));
+        return metrics;
+    }
+
+    private long ttlSeconds() {
+        return Math.max(1, config.getLeaseTtlMs() / 1000);
+    }
+}
@@ -2,7 +2,9 @@ package com.example.demo.manager;
 
 import com.example.demo.entity.jdbc.AnswerGenerationBatch.BatchStatus;
 import org.redisson.api.RLock;
+import org.redisson.api.RTopic;
 import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,11 +13,17 @@ import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -32,6 +40,14 @@ public class BatchStateManager {
     private static final String BATCH_STATE_PREFIX = "batch:state:";
     private static final String BATCH_INTERRUPT_PREFIX = "batch:interrupt:";
     private static final String BATCH_LOCK_PREFIX = "batch:lock:";
+    private static final String RUN_PROGRESS_PREFIX = "run:progress:";
+    // 中断信号广播频道，消息格式为 "批次ID:INTERRUPT" 或 "批次ID:CLEAR"
+    private static final String BATCH_CONTROL_TOPIC = "batch:control";
+    private static final String SIGNAL_INTERRUPT = "INTERRUPT";
+    private static final String SIGNAL_CLEAR = "CLEAR";
+    
+    private RTopic controlTopic;
+    private int controlListenerId = -1;
     
     // 定义允许的状态转换
     private static final Map<String, Set<String>> ALLOWED_TRANSITIONS = new HashMap<>();
@@ -87,6 +103,50 @@ public class BatchStateManager {
     public void setAnswerGenerationTask(com.example.demo.task.AnswerGenerationTask answerGenerationTask) {
         this.answerGenerationTask = answerGenerationTask;
     }
+    
+    /**
+     * 订阅中断信号频道，其他实例暂停或恢复批次时立即同步到本实例的内存标志
+     */
+    @PostConstruct
+    public void subscribeControlSignals() {
+        try {
+            controlTopic = redissonClient.getTopic(BATCH_CONTROL_TOPIC, StringCodec.INSTANCE);
+            controlListenerId = controlTopic.addListener(String.class, (channel, message) -> applyControlSignal(message));
+            logger.info("已订阅批次中断信号频道: {}", BATCH_CONTROL_TOPIC);
+        } catch (Exception e) {
+            // 订阅失败时仍可依靠定时轮询同步中断标志
+            logger.error("订阅批次中断信号频道失败，将仅依赖定时轮询同步中断标志", e);
+        }
+    }
+    
+    @PreDestroy
+    public void unsubscribeControlSignals() {
+        if (controlTopic != null && controlListenerId != -1) {
+            try {
+                controlTopic.removeListener(controlListenerId);
+            } catch (Exception e) {
+                logger.warn("取消订阅批次中断信号频道失败: {}", e.getMessage());
+            }
+        }
+    }
+    
+    private void applyControlSignal(String message) {
+        if (answerGenerationTask == null || message == null) {
+            return;
+        }
+        int separator = message.indexOf(':');
+        if (separator <= 0) {
+            logger.warn("忽略格式错误的批次中断信号: {}", message);
+            return;
+        }
+        try {
+            Long batchId = Long.valueOf(message.substring(0, separator));
+            boolean interrupted = SIGNAL_INTERRUPT.equals(message.substring(separator + 1));
+            answerGenerationTask.applyInterruptSignal(batchId, interrupted);
+        } catch (NumberFormatException e) {
+            logger.warn("忽略格式错误的批次中断信号: {}", message);
+        }
+    }
 
     /**
      * 获取批次状态锁
@@ -307,7 +367,8 @@ public class BatchStateManager {
     }
 
     /**
-     * 设置中断标志
+     * 设置中断标志，并广播给所有实例
+     * Redis中的标志作为持久状态供轮询兜底，广播让各实例的内存标志在毫秒级内生效
      * @param batchId 批次ID
      * @param interrupted 是否中断
      */
@@ -315,6 +376,19 @@ public class BatchStateManager {
         String key = BATCH_INTERRUPT_PREFIX + batchId;
         redisTemplate.opsForValue().set(key, interrupted ? "true" : "false");
         redisTemplate.expire(key, Duration.ofHours(24));
+        publishControlSignal(batchId, interrupted);
+    }
+    
+    private void publishControlSignal(Long batchId, boolean interrupted) {
+        if (controlTopic == null) {
+            return;
+        }
+        try {
+            controlTopic.publish(batchId + ":" + (interrupted ? SIGNAL_INTERRUPT : SIGNAL_CLEAR));
+        } catch (Exception e) {
+            // 广播失败不影响Redis中的标志，其他实例会在下一次轮询时同步
+            logger.warn("广播批次{}中断信号失败: {}", batchId, e.getMessage());
+        }
     }
 
     /**
@@ -328,6 +402,61 @@ public class BatchStateManager {
         return "true".equals(value);
     }
 
+    /**
+     * 一次查询多个批次的中断标志
+     * @param batchIds 批次ID
+     * @return 被标记为中断的批次ID
+     */
+    public Set<Long> findInterrupted(Collection<Long> batchIds) {
+        Set<Long> interrupted = new HashSet<>();
+        if (batchIds.isEmpty()) {
+            return interrupted;
+        }
+        List<Long> ids = new ArrayList<>(batchIds);
+        List<String> keys = new ArrayList<>(ids.size());
+        for (Long batchId : ids) {
+            keys.add(BATCH_INTERRUPT_PREFIX + batchId);
+        }
+        List<String> values = redisTemplate.opsForValue().multiGet(keys);
+        if (values == null) {
+            return interrupted;
+        }
+        for (int i = 0; i < ids.size() && i < values.size(); i++) {
+            if ("true".equals(values.get(i))) {
+                interrupted.add(ids.get(i));
+            }
+        }
+        return interrupted;
+    }
+
+    /**
+     * 保存运行的实时进度计数（Redis哈希），供其他实例查询运行状态
+     * @param runId 运行ID
+     * @param progress 进度字段
+     */
+    public void setRunProgress(Long runId, Map<String, String> progress) {
+        String key = RUN_PROGRESS_PREFIX + runId;
+        redisTemplate.opsForHash().putAll(key, progress);
+        redisTemplate.expire(key, Duration.ofHours(24));
+    }
+
+    /**
+     * 获取运行的实时进度计数
+     * @param runId 运行ID
+     * @return 进度字段，运行未在处理中时返回空Map
+     */
+    public Map<Object, Object> getRunProgress(Long runId) {
+        return redisTemplate.opsForHash().entries(RUN_PROGRESS_PREFIX + runId);
+    }
+
+    /**
+     * 清除运行的实时进度计数
+     * @param runId 运行ID
+     */
+    public void clearRunProgress(Long runId) {
+        redisTemplate.delete(RUN_PROGRESS_PREFIX + runId);
+    }
+
     /**
      * 同步批次状态
      * 确保Redis和数据库状态一致
@@ -0,0 +1,93 @@
+package com.example.demo.manager;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 延迟重试队列
+ * 需要重试或等待熔断恢复的任务在这里排队，到期后再提交回原执行器，
+ * 等待期间不占用任何工作线程。
+ */
+@Component
+public class DeferredRetryQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeferredRetryQueue.class);
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "LlmRetryQueue");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger dispatched = new AtomicInteger();
+
+    /**
+     * 延迟执行任务
+     *
+     * @param delayMillis 延迟毫秒数
+     * @param executor    到期后运行任务的执行器
+     * @param task        任务本身，返回的Future结果会传递给调用方
+     * @return 任务最终结果
+     */
+    public <T> CompletableFuture<T> schedule(long delayMillis, Executor executor,
+                                             Supplier<CompletableFuture<T>> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        pending.incrementAndGet();
+        try {
+            scheduler.schedule(() -> {
+                pending.decrementAndGet();
+                dispatched.incrementAndGet();
+                // 提交到有界执行器时可能阻塞，交给虚拟线程完成提交，避免拖住调度线程
+                Thread.startVirtualThread(() -> {
+                    try {
+                        CompletableFuture.supplyAsync(task, executor)
+                                .thenCompose(future -> future)
+                                .whenComplete((value, error) -> {
+                                    if (error != null) {
+                                        result.completeExceptionally(error);
+                                    } else {
+                                        result.complete(value);
+                                    }
+                                });
+                    } catch (Throwable e) {
+                        result.completeExceptionally(e);
+                    }
+                });
+            }, Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            pending.decrementAndGet();
+            logger.warn("延迟重试队列已关闭，任务无法调度");
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    public int getDispatchedCount() {
+        return dispatched.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        if (pending.get() > 0) {
+            logger.info("应用关闭，丢弃{}个待重试任务", pending.get());
+        }
+    }
+}
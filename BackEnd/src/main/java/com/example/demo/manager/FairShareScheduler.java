@@ -0,0 +1,169 @@
+package com.example.demo.manager;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.LlmConfig;
+import com.example.demo.config.LlmConfig.FairShareConfig;
+import com.example.demo.entity.jdbc.AnswerGenerationBatch;
+
+/**
+ * 回答生成批次间的公平调度
+ * 各批次的模型调用在提供商配额处按加权公平排队（见ProviderRateLimiter），每个批次是一个调度流：
+ * 批次权重 = 用户份额 × 批次优先级 / 该用户所有活跃批次的优先级之和，
+ * 即不同用户按份额分配提供商的并发和速率配额，同一用户的多个批次再按优先级平分该用户的份额。
+ * 批次在最近flow-idle-ms内有调用即视为活跃，无需显式注册，分布式模式下各实例按各自的调用计算。
+ */
+@Component
+public class FairShareScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(FairShareScheduler.class);
+
+    private final FairShareConfig config;
+    private final ConcurrentHashMap<Long, FlowState> flows = new ConcurrentHashMap<>();
+
+    @Autowired
+    public FairShareScheduler(LlmConfig llmConfig) {
+        this.config = llmConfig.getFairShare();
+    }
+
+    /**
+     * 批次对应的调度流
+     */
+    public static Flow forBatch(AnswerGenerationBatch batch) {
+        Long userId = batch.getCreatedByUser() != null ? batch.getCreatedByUser().getId() : null;
+        int priority = batch.getPriority() != null ? batch.getPriority() : 1;
+        return new Flow(batch.getId(), userId, priority);
+    }
+
+    /**
+     * 调度流的当前权重，同时刷新其活跃时间
+     *
+     * @param flow 调度流，为null（评测、连通性测试等不属于批次的调用）时返回1
+     */
+    public double weight(Flow flow) {
+        if (!config.isEnabled() || flow == null || flow.getBatchId() == null) {
+            return 1.0;
+        }
+        long now = System.currentTimeMillis();
+        FlowState current = flows.compute(flow.getBatchId(), (batchId, state) -> {
+            if (state == null) {
+                logger.debug("批次{}加入公平调度: 用户={}, 优先级={}", batchId, flow.getUserId(), flow.getPriority());
+                state = new FlowState();
+            }
+            state.flow = flow;
+            state.lastActiveMillis = now;
+            return state;
+        });
+
+        // 同一用户活跃批次的优先级之和，顺带清除不活跃的批次
+        double userPriorities = 0;
+        Iterator<Map.Entry<Long, FlowState>> iterator = flows.entrySet().iterator();
+        while (iterator.hasNext()) {
+            FlowState state = iterator.next().getValue();
+            if (now - state.lastActiveMillis > config.getFlowIdleMs()) {
+                iterator.remove();
+            } else if (Objects.equals(state.flow.getUserId(), flow.getUserId())) {
+                userPriorities += state.flow.getPriority();
+            }
+        }
+        double weight = userWeight(flow.getUserId()) * flow.getPriority() / Math.max(flow.getPriority(), userPriorities);
+        current.weight = weight;
+        return weight;
+    }
+
+    /**
+     * 记录调度流获得了一次调用名额
+     *
+     * @param estimatedTokens 该次调用预估消耗的token数，即公平排队的开销
+     */
+    public void onDispatched(Flow flow, long estimatedTokens) {
+        if (flow == null || flow.getBatchId() == null) {
+            return;
+        }
+        FlowState state = flows.get(flow.getBatchId());
+        if (state != null) {
+            state.dispatchedCalls.increment();
+            state.dispatchedTokens.add(estimatedTokens);
+        }
+    }
+
+    /**
+     * 活跃批次的权重和已获得的调用名额
+     */
+    public Map<String, Object> getMetrics() {
+        long now = System.currentTimeMillis();
+        List<Map<String, Object>> activeFlows = new ArrayList<>();
+        for (Map.Entry<Long, FlowState> entry : flows.entrySet()) {
+            FlowState state = entry.getValue();
+            Map<String, Object> flowMetrics = new LinkedHashMap<>();
+            flowMetrics.put("batchId", entry.getKey());
+            flowMetrics.put("userId", state.flow.getUserId());
+            flowMetrics.put("priority", state.flow.getPriority());
+            flowMetrics.put("weight", Math.round(state.weight * 10000) / 10000.0);
+            flowMetrics.put("dispatchedCalls", state.dispatchedCalls.sum());
+            flowMetrics.put("dispatchedTokens", state.dispatchedTokens.sum());
+            flowMetrics.put("idleMs", now - state.lastActiveMillis);
+            activeFlows.add(flowMetrics);
+        }
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", config.isEnabled());
+        metrics.put("flowIdleMs", config.getFlowIdleMs());
+        metrics.put("defaultUserWeight", config.getDefaultUserWeight());
+        metrics.put("userWeights", config.getUserWeights());
+        metrics.put("flows", activeFlows);
+        return metrics;
+    }
+
+    private double userWeight(Long userId) {
+        Double weight = userId != null && config.getUserWeights() != null ? config.getUserWeights().get(userId) : null;
+        double value = weight != null ? weight : config.getDefaultUserWeight();
+        return value > 0 ? value : 1.0;
+    }
+
+    /**
+     * 调度流：一个回答生成批次的模型调用
+     */
+    public static final class Flow {
+        private final Long batchId;
+        private final Long userId;
+        private final int priority;
+
+        public Flow(Long batchId, Long userId, int priority) {
+            this.batchId = batchId;
+            this.userId = userId;
+            this.priority = Math.max(1, priority);
+        }
+
+        public Long getBatchId() {
+            return batchId;
+        }
+
+        public Long getUserId() {
+            return userId;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+    }
+
+    private static final class FlowState {
+        volatile Flow flow;
+        volatile long lastActiveMillis;
+        volatile double weight = 1.0;
+        final LongAdder dispatchedCalls = new LongAdder();
+        final LongAdder dispatchedTokens = new LongAdder();
+    }
+}
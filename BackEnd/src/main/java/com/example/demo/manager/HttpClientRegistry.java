@@ -0,0 +1,332 @@
+package com.example.demo.manager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import com.example.demo.config.LlmConfig;
+import com.example.demo.config.LlmConfig.HttpClientConfig;
+
+/**
+ * 按提供商地址复用的HTTP客户端
+ * 每个基础地址（协议+主机+端口）共享一个带连接池的JDK HttpClient（长连接复用，HTTPS地址使用HTTP/2）
+ * 和一个RestTemplate，避免每次调用都新建客户端并重新握手。超时随请求设置（HttpRequest.timeout），不按超时缓存客户端。
+ * 同一地址同时进行的请求数受 maxConcurrentRequestsPerRoute 限制，超过时排队等待；
+ * HTTPS地址的请求在同一HTTP/2连接上多路复用，该上限限制的是并发请求数而不是连接数。
+ */
+@Component
+public class HttpClientRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpClientRegistry.class);
+
+    private final HttpClientConfig config;
+    private final RestTemplateBuilder restTemplateBuilder;
+    // RestTemplate的读取超时，取学习超时的上限；需要按调用设置超时的请求使用 RouteClient.send
+    private final Duration restTemplateReadTimeout;
+    private final Map<String, RouteClient> routes = new ConcurrentHashMap<>();
+    // 异步调用等待连接名额时使用的虚拟线程，等待不占用平台线程
+    private final ExecutorService permitExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @Autowired
+    public HttpClientRegistry(LlmConfig llmConfig, RestTemplateBuilder restTemplateBuilder) {
+        this.config = llmConfig.getHttpClient();
+        this.restTemplateBuilder = restTemplateBuilder;
+        this.restTemplateReadTimeout = Duration.ofSeconds(llmConfig.getTimeout().getCeilingSeconds());
+    }
+
+    /**
+     * 获取该地址复用的RestTemplate，读取超时为学习超时的上限
+     *
+     * @param url 请求地址（只使用其中的基础地址）
+     */
+    public RestTemplate getRestTemplate(String url) {
+        return route(url).restTemplate();
+    }
+
+    /**
+     * 获取基础地址对应的路由客户端，用于直接使用HttpClient的场景（如流式调用）
+     */
+    public RouteClient route(String url) {
+        String baseUrl = baseUrlOf(url);
+        return routes.computeIfAbsent(baseUrl, RouteClient::new);
+    }
+
+    /**
+     * 各地址连接池的使用情况
+     */
+    public List<Map<String, Object>> getMetrics() {
+        List<Map<String, Object>> metrics = new ArrayList<>();
+        for (RouteClient route : routes.values()) {
+            metrics.add(route.getMetrics());
+        }
+        return metrics;
+    }
+
+    /**
+     * 以Spring的请求头构建JDK HttpRequest，跳过由客户端自行设置的受限请求头
+     */
+    public static java.net.http.HttpRequest.Builder newRequest(String url, HttpHeaders headers, String body,
+                                                               Duration timeout) {
+        java.net.http.HttpRequest.Builder builder = java.net.http.HttpRequest.newBuilder(URI.create(url))
+                .timeout(timeout)
+                .POST(java.net.http.HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8));
+        headers.forEach((name, values) -> {
+            if (!HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name) && !HttpHeaders.HOST.equalsIgnoreCase(name)) {
+                values.forEach(value -> builder.header(name, value));
+            }
+        });
+        return builder;
+    }
+
+    /**
+     * 把非2xx响应转换为RestTemplate同样的异常类型，限流器和重试策略可以统一处理
+     */
+    public static RuntimeException statusException(HttpResponse<?> response, byte[] body) {
+        HttpHeaders headers = new HttpHeaders();
+        response.headers().map().forEach(headers::addAll);
+        HttpStatusCode status = HttpStatusCode.valueOf(response.statusCode());
+        String statusText = "HTTP " + response.statusCode();
+        if (status.is4xxClientError()) {
+            return HttpClientErrorException.create(status, statusText, headers, body, StandardCharsets.UTF_8);
+        }
+        return HttpServerErrorException.create(status, statusText, headers, body, StandardCharsets.UTF_8);
+    }
+
+    private static String baseUrlOf(String url) {
+        try {
+            URI uri = URI.create(url.trim());
+            if (uri.getScheme() == null || uri.getHost() == null) {
+                return url;
+            }
+            int port = uri.getPort();
+            if (port < 0) {
+                port = "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+            }
+            return uri.getScheme().toLowerCase() + "://" + uri.getHost().toLowerCase() + ":" + port;
+        } catch (IllegalArgumentException e) {
+            return url;
+        }
+    }
+
+    /**
+     * 单个基础地址的客户端和连接配额
+     */
+    public class RouteClient {
+
+        private final String baseUrl;
+        private final HttpClient httpClient;
+        private final int maxConcurrentRequests;
+        private final Semaphore permits;
+        private final RestTemplate restTemplate;
+        private final LongAdder totalRequests = new LongAdder();
+        private final LongAdder waitedRequests = new LongAdder();
+        private final LongAdder waitNanosTotal = new LongAdder();
+        private final AtomicLong maxInUse = new AtomicLong();
+
+        RouteClient(String baseUrl) {
+            this.baseUrl = baseUrl;
+            this.maxConcurrentRequests = Math.max(1, config.getMaxConcurrentRequestsPerRoute());
+            this.permits = new Semaphore(maxConcurrentRequests, true);
+            // 明文HTTP不尝试h2c升级，部分兼容服务对升级请求处理不正确
+            HttpClient.Version version = baseUrl.startsWith("https") ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1;
+            this.httpClient = HttpClient.newBuilder()
+                    .version(version)
+                    .connectTimeout(Duration.ofMillis(config.getConnectTimeoutMs()))
+                    .followRedirects(HttpClient.Redirect.NORMAL)
+                    .executor(Executors.newVirtualThreadPerTaskExecutor())
+                    .build();
+            JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(httpClient);
+            factory.setReadTimeout(restTemplateReadTimeout);
+            this.restTemplate = restTemplateBuilder
+                    .requestFactory(() -> factory)
+                    .additionalInterceptors(new ConcurrencyLimitInterceptor(this))
+                    .build();
+            logger.info("创建HTTP客户端: {}, 协议: {}, 最大并发请求数: {}", baseUrl, version, maxConcurrentRequests);
+        }
+
+        public HttpClient getHttpClient() {
+            return httpClient;
+        }
+
+        /**
+         * 占用一个请求名额，调用方必须在请求结束后调用 release()
+         */
+        public void acquire() throws InterruptedException {
+            long startNanos = System.nanoTime();
+            if (!permits.tryAcquire()) {
+                waitedRequests.increment();
+                permits.acquire();
+                waitNanosTotal.add(System.nanoTime() - startNanos);
+            }
+            totalRequests.increment();
+            maxInUse.accumulateAndGet(maxConcurrentRequests - permits.availablePermits(), Math::max);
+        }
+
+        public void release() {
+            permits.release();
+        }
+
+        /**
+         * 同步执行请求，超时由请求自身的 HttpRequest.timeout 决定；等待请求名额的时间不计入超时
+         */
+        public <T> HttpResponse<T> send(java.net.http.HttpRequest request, HttpResponse.BodyHandler<T> handler)
+                throws IOException, InterruptedException {
+            acquire();
+            try {
+                return httpClient.send(request, handler);
+            } finally {
+                release();
+            }
+        }
+
+        /**
+         * 异步执行请求：在虚拟线程上等待连接名额，请求完成（成功或失败）后归还
+         */
+        public <T> CompletableFuture<T> executeAsync(Supplier<CompletableFuture<T>> call) {
+            return CompletableFuture.runAsync(() -> {
+                try {
+                    acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("等待HTTP请求名额时被中断", e);
+                }
+            }, permitExecutor).thenCompose(ignored -> {
+                CompletableFuture<T> future;
+                try {
+                    future = call.get();
+                } catch (RuntimeException e) {
+                    future = CompletableFuture.failedFuture(e);
+                }
+                return future.whenComplete((result, error) -> release());
+            });
+        }
+
+        RestTemplate restTemplate() {
+            return restTemplate;
+        }
+
+        Map<String, Object> getMetrics() {
+            Map<String, Object> metrics = new LinkedHashMap<>();
+            long waited = waitedRequests.sum();
+            metrics.put("baseUrl", baseUrl);
+            metrics.put("protocol", httpClient.version().name());
+            metrics.put("maxConcurrentRequests", maxConcurrentRequests);
+            metrics.put("inUse", maxConcurrentRequests - permits.availablePermits());
+            metrics.put("queued", permits.getQueueLength());
+            metrics.put("maxInUse", maxInUse.get());
+            metrics.put("totalRequests", totalRequests.sum());
+            metrics.put("waitedRequests", waited);
+            metrics.put("avgWaitMillis", waited > 0 ? TimeUnit.NANOSECONDS.toMillis(waitNanosTotal.sum() / waited) : 0);
+            return metrics;
+        }
+    }
+
+    /**
+     * 请求前占用请求名额，响应关闭时归还
+     */
+    private static class ConcurrencyLimitInterceptor implements ClientHttpRequestInterceptor {
+
+        private final RouteClient route;
+
+        ConcurrencyLimitInterceptor(RouteClient route) {
+            this.route = route;
+        }
+
+        @Override
+        public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+                throws IOException {
+            try {
+                route.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("等待HTTP请求名额时被中断", e);
+            }
+            try {
+                return new ReleasingResponse(execution.execute(request, body), route);
+            } catch (IOException | RuntimeException e) {
+                route.release();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 关闭时归还请求名额的响应包装
+     */
+    private static class ReleasingResponse implements ClientHttpResponse {
+
+        private final ClientHttpResponse delegate;
+        private final RouteClient route;
+        private boolean released;
+
+        ReleasingResponse(ClientHttpResponse delegate, RouteClient route) {
+            this.delegate = delegate;
+            this.route = route;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return delegate.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return delegate.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return delegate.getBody();
+        }
+
+        @Override
+        public synchronized void close() {
+            try {
+                delegate.close();
+            } finally {
+                if (!released) {
+                    released = true;
+                    route.release();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,489 @@
+package com.example.demo.manager;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.LlmConfig;
+import com.example.demo.config.LlmConfig.StreamingConfig;
+import com.example.demo.gateway.ProviderAdapter;
+import com.example.demo.gateway.ProviderAdapter.StreamSink;
+import com.example.demo.manager.HttpClientRegistry.RouteClient;
+import com.example.demo.util.TokenUsage;
+import com.example.demo.utils.StreamingThinkingFilter;
+import com.example.demo.utils.TextPreprocessor;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * LLM流式调用客户端
+ * 以SSE方式接收模型输出，事件内容由对应的 ProviderAdapter 解析，思考过程在接收时实时剥离；
+ * 看门狗定期检查中断标志和空闲时间，需要停止时直接关闭底层连接，不必等待模型生成完毕。
+ * 同时按模型统计首字延迟（TTFT）和输出间隔。
+ */
+@Component
+public class LlmStreamingClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(LlmStreamingClient.class);
+
+    // 错误响应体最多读取的字节数
+    private static final int MAX_ERROR_BODY_BYTES = 64 * 1024;
+
+    private final ObjectMapper objectMapper;
+    private final StreamingConfig config;
+    private final HttpClientRegistry httpClientRegistry;
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "LlmStreamWatchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, StreamStats> stats = new ConcurrentHashMap<>();
+
+    @Autowired
+    public LlmStreamingClient(ObjectMapper objectMapper, LlmConfig llmConfig, HttpClientRegistry httpClientRegistry) {
+        this.objectMapper = objectMapper;
+        this.config = llmConfig.getStreaming();
+        this.httpClientRegistry = httpClientRegistry;
+    }
+
+    /**
+     * 是否启用流式调用（llm.streaming.enabled），具体API类型是否支持由适配器决定
+     */
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * 发起流式调用并读取完整输出
+     *
+     * @param modelName   模型名称，用于统计
+     * @param adapter     提供商适配器，负责解析事件内容
+     * @param endpointUrl 流式端点
+     * @param headers     请求头
+     * @param requestBody 请求体
+     * @param idleTimeout 两次输出之间允许的最长空闲时间，超过视为超时
+     * @param cancelled   中断检查，返回true时立即断开连接
+     * @return 调用结果，被中断时 isCancelled() 为true
+     * @throws IOException 网络错误或空闲超时
+     */
+    public StreamResult stream(String modelName, ProviderAdapter adapter, String endpointUrl, HttpHeaders headers,
+                               String requestBody, Duration idleTimeout, BooleanSupplier cancelled) throws IOException {
+        // 使用该地址复用的连接池，并占用一个连接名额直到流结束
+        RouteClient route = httpClientRegistry.route(endpointUrl);
+        try {
+            route.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待HTTP连接时被中断");
+        }
+        try {
+            return doStream(route, modelName, adapter, endpointUrl, headers, requestBody, idleTimeout, cancelled);
+        } finally {
+            route.release();
+        }
+    }
+
+    private StreamResult doStream(RouteClient route, String modelName, ProviderAdapter adapter, String endpointUrl,
+                                  HttpHeaders headers, String requestBody, Duration idleTimeout,
+                                  BooleanSupplier cancelled) throws IOException {
+        HttpRequest.Builder builder = HttpClientRegistry.newRequest(endpointUrl, headers, requestBody, idleTimeout);
+        builder.header(HttpHeaders.ACCEPT, "text/event-stream");
+
+        long startNanos = System.nanoTime();
+        HttpResponse<InputStream> response = awaitResponse(
+                route.getHttpClient().sendAsync(builder.build(), HttpResponse.BodyHandlers.ofInputStream()), cancelled);
+        if (response == null) {
+            return StreamResult.cancelled(elapsedMillis(startNanos));
+        }
+
+        InputStream body = response.body();
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            throw toStatusException(response, body);
+        }
+
+        StreamState state = new StreamState(startNanos);
+        AtomicReference<String> abortReason = new AtomicReference<>();
+        long idleTimeoutNanos = idleTimeout.toNanos();
+        long interval = Math.max(20, config.getWatchdogIntervalMs());
+        ScheduledFuture<?> guard = watchdog.scheduleAtFixedRate(() -> {
+            String reason = null;
+            if (cancelled.getAsBoolean()) {
+                reason = "CANCELLED";
+            } else if (System.nanoTime() - state.lastActivityNanos.get() > idleTimeoutNanos) {
+                reason = "IDLE_TIMEOUT";
+            }
+            if (reason != null && abortReason.compareAndSet(null, reason)) {
+                closeQuietly(body);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+
+        boolean eventStream = response.headers().firstValue(HttpHeaders.CONTENT_TYPE)
+                .map(type -> type.contains("text/event-stream")).orElse(true);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            if (eventStream) {
+                readEvents(reader, adapter, state);
+            } else {
+                // 服务端忽略了流式参数，按普通JSON响应整体解析
+                StringBuilder content = new StringBuilder();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    content.append(line).append('\n');
+                }
+                handleData(content.toString(), adapter, state);
+            }
+        } catch (IOException e) {
+            if (abortReason.get() == null) {
+                throw e;
+            }
+        } finally {
+            guard.cancel(false);
+        }
+
+        String reason = abortReason.get();
+        if ("CANCELLED".equals(reason)) {
+            logger.info("模型{}的流式调用已被中断，已接收{}个输出块", modelName, state.chunks);
+            stats(modelName).recordCancelled();
+            return StreamResult.cancelled(elapsedMillis(startNanos));
+        }
+        if ("IDLE_TIMEOUT".equals(reason)) {
+            throw new SocketTimeoutException("流式响应超过" + idleTimeout.toSeconds() + "秒没有输出");
+        }
+
+        state.filter.finish();
+        StreamResult result = state.toResult(elapsedMillis(startNanos));
+        stats(modelName).record(result);
+        logger.debug("模型{}流式调用完成: 首字延迟={}ms, 平均输出间隔={}ms, 总耗时={}ms, 输出块={}",
+                modelName, result.getTtftMillis(), result.getAvgInterTokenMillis(), result.getTotalMillis(), result.getChunkCount());
+        return result;
+    }
+
+    /**
+     * 按模型的流式调用统计
+     */
+    public List<Map<String, Object>> getMetrics() {
+        List<Map<String, Object>> metrics = new ArrayList<>();
+        stats.forEach((modelName, modelStats) -> metrics.add(modelStats.toMap(modelName)));
+        return metrics;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        watchdog.shutdownNow();
+    }
+
+    /**
+     * 等待响应头，期间检查中断标志；中断时取消请求并返回null
+     */
+    private HttpResponse<InputStream> awaitResponse(CompletableFuture<HttpResponse<InputStream>> future,
+                                                    BooleanSupplier cancelled) throws IOException {
+        long interval = Math.max(20, config.getWatchdogIntervalMs());
+        while (true) {
+            if (cancelled.getAsBoolean()) {
+                future.cancel(true);
+                return null;
+            }
+            try {
+                return future.get(interval, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // 继续等待
+            } catch (InterruptedException e) {
+                future.cancel(true);
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException ioException) {
+                    throw ioException;
+                }
+                throw new IOException(cause != null ? cause.getMessage() : e.getMessage(), cause);
+            }
+        }
+    }
+
+    /**
+     * 按SSE格式读取事件：data行累积到空行时分发，遇到[DONE]结束
+     */
+    private void readEvents(BufferedReader reader, ProviderAdapter adapter, StreamState state) throws IOException {
+        StringBuilder data = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            state.lastActivityNanos.set(System.nanoTime());
+            if (line.isEmpty()) {
+                if (data.length() > 0) {
+                    if (!handleData(data.toString(), adapter, state)) {
+                        return;
+                    }
+                    data.setLength(0);
+                }
+                continue;
+            }
+            if (line.startsWith("data:")) {
+                if (data.length() > 0) {
+                    data.append('\n');
+                }
+                data.append(line.substring(line.startsWith("data: ") ? 6 : 5));
+            }
+            // event/id/retry及注释行不影响内容解析
+        }
+        if (data.length() > 0) {
+            handleData(data.toString(), adapter, state);
+        }
+    }
+
+    /**
+     * 解析一个事件的数据
+     *
+     * @return 是否继续读取
+     */
+    private boolean handleData(String data, ProviderAdapter adapter, StreamState state) throws IOException {
+        String trimmed = data.trim();
+        if (trimmed.isEmpty()) {
+            return true;
+        }
+        if ("[DONE]".equals(trimmed)) {
+            return false;
+        }
+
+        JsonNode node = objectMapper.readTree(trimmed);
+        if (node.has("error")) {
+            JsonNode error = node.get("error");
+            String message = error.isTextual() ? error.asText() : error.path("message").asText(error.toString());
+            throw new IOException("模型返回错误: " + message);
+        }
+
+        state.usage = TokenUsage.merge(state.usage, TokenUsage.from(node));
+
+        return adapter.handleStreamEvent(node, state);
+    }
+
+    private RuntimeException toStatusException(HttpResponse<InputStream> response, InputStream body) {
+        byte[] errorBody = new byte[0];
+        try (InputStream in = body) {
+            errorBody = in.readNBytes(MAX_ERROR_BODY_BYTES);
+        } catch (IOException e) {
+            logger.debug("读取错误响应体失败: {}", e.getMessage());
+        }
+        return HttpClientRegistry.statusException(response, errorBody);
+    }
+
+    private StreamStats stats(String modelName) {
+        return stats.computeIfAbsent(modelName != null ? modelName : "unknown", k -> new StreamStats());
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private static void closeQuietly(InputStream stream) {
+        try {
+            stream.close();
+        } catch (IOException e) {
+            // 关闭用于中断读取，忽略异常
+        }
+    }
+
+    /**
+     * 单次流式调用的接收状态
+     */
+    private static class StreamState implements StreamSink {
+        final long startNanos;
+        final AtomicLong lastActivityNanos;
+        final StreamingThinkingFilter filter = new StreamingThinkingFilter();
+        final StringBuilder reasoning = new StringBuilder();
+        TokenUsage usage;
+        long firstTokenNanos = -1;
+        long lastTokenNanos = -1;
+        long interTokenNanosTotal;
+        int chunks;
+
+        StreamState(long startNanos) {
+            this.startNanos = startNanos;
+            this.lastActivityNanos = new AtomicLong(startNanos);
+        }
+
+        @Override
+        public void onText(String text) {
+            if (text == null || text.isEmpty()) {
+                return;
+            }
+            onToken();
+            filter.append(text);
+        }
+
+        @Override
+        public void onThinking(String text) {
+            if (text == null || text.isEmpty()) {
+                return;
+            }
+            onToken();
+            reasoning.append(text);
+        }
+
+        private void onToken() {
+            long now = System.nanoTime();
+            if (firstTokenNanos < 0) {
+                firstTokenNanos = now;
+            } else {
+                interTokenNanosTotal += now - lastTokenNanos;
+            }
+            lastTokenNanos = now;
+            chunks++;
+        }
+
+        StreamResult toResult(long totalMillis) {
+            String thinking = filter.getThinkingText();
+            if (reasoning.length() > 0) {
+                thinking = thinking.isEmpty() ? reasoning.toString().trim() : reasoning.toString().trim() + "\n" + thinking;
+            }
+            long ttftMillis = firstTokenNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(firstTokenNanos - startNanos);
+            double avgInterTokenMillis = chunks > 1 ? interTokenNanosTotal / (chunks - 1) / 1_000_000.0 : 0;
+            return new StreamResult(TextPreprocessor.normalizeText(filter.getVisibleText()), thinking,
+                    ttftMillis, avgInterTokenMillis, totalMillis, chunks, usage, false);
+        }
+    }
+
+    /**
+     * 流式调用结果
+     */
+    public static class StreamResult {
+        private final String text;
+        private final String thinking;
+        private final long ttftMillis;
+        private final double avgInterTokenMillis;
+        private final long totalMillis;
+        private final int chunkCount;
+        private final TokenUsage usage;
+        private final boolean cancelled;
+
+        StreamResult(String text, String thinking, long ttftMillis, double avgInterTokenMillis,
+                     long totalMillis, int chunkCount, TokenUsage usage, boolean cancelled) {
+            this.text = text;
+            this.thinking = thinking;
+            this.ttftMillis = ttftMillis;
+            this.avgInterTokenMillis = avgInterTokenMillis;
+            this.totalMillis = totalMillis;
+            this.chunkCount = chunkCount;
+            this.usage = usage;
+            this.cancelled = cancelled;
+        }
+
+        static StreamResult cancelled(long totalMillis) {
+            return new StreamResult(null, "", -1, 0, totalMillis, 0, null, true);
+        }
+
+        /**
+         * 去除思考过程并标准化后的回答，被中断时为null
+         */
+        public String getText() {
+            return text;
+        }
+
+        public String getThinking() {
+            return thinking;
+        }
+
+        /**
+         * 首字延迟（毫秒），没有任何输出时为-1
+         */
+        public long getTtftMillis() {
+            return ttftMillis;
+        }
+
+        public double getAvgInterTokenMillis() {
+            return avgInterTokenMillis;
+        }
+
+        public long getTotalMillis() {
+            return totalMillis;
+        }
+
+        public int getChunkCount() {
+            return chunkCount;
+        }
+
+        /**
+         * 流式响应中附带的token用量，提供商未返回时为null
+         */
+        public TokenUsage getUsage() {
+            return usage;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    /**
+     * 单个模型的流式调用累计统计
+     */
+    private static class StreamStats {
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder cancelled = new LongAdder();
+        private final LongAdder ttftMillisTotal = new LongAdder();
+        private final LongAdder ttftSamples = new LongAdder();
+        private final LongAdder interTokenMicrosTotal = new LongAdder();
+        private final LongAdder interTokenSamples = new LongAdder();
+        private final AtomicLong maxTtftMillis = new AtomicLong();
+
+        void record(StreamResult result) {
+            completed.increment();
+            if (result.getTtftMillis() >= 0) {
+                ttftMillisTotal.add(result.getTtftMillis());
+                ttftSamples.increment();
+                maxTtftMillis.accumulateAndGet(result.getTtftMillis(), Math::max);
+            }
+            if (result.getChunkCount() > 1) {
+                interTokenMicrosTotal.add((long) (result.getAvgInterTokenMillis() * 1000));
+                interTokenSamples.increment();
+            }
+        }
+
+        void recordCancelled() {
+            cancelled.increment();
+        }
+
+        Map<String, Object> toMap(String modelName) {
+            long ttftCount = ttftSamples.sum();
+            long interTokenCount = interTokenSamples.sum();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("modelName", modelName);
+            map.put("completedStreams", completed.sum());
+            map.put("cancelledStreams", cancelled.sum());
+            map.put("avgTtftMillis", ttftCount > 0 ? ttftMillisTotal.sum() / ttftCount : 0);
+            map.put("maxTtftMillis", maxTtftMillis.get());
+            map.put("avgInterTokenMillis", interTokenCount > 0 ? interTokenMicrosTotal.sum() / 1000.0 / interTokenCount : 0);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.demo.manager;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.LlmConfig;
+import com.example.demo.config.LlmConfig.CircuitBreakerConfig;
+import com.example.demo.entity.jdbc.LlmModel;
+
+/**
+ * 按模型划分的熔断器
+ * 同一模型连续出现可重试错误达到阈值后熔断，熔断期间不再向该模型发送请求；
+ * 到期后进入半开状态，只放行少量探测请求，探测成功即恢复，失败则重新熔断。
+ * 熔断只影响使用该模型的运行，其他运行不受影响。
+ */
+@Component
+public class ModelCircuitBreakerRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModelCircuitBreakerRegistry.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final CircuitBreakerConfig config;
+    private final Map<Long, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ModelCircuitBreakerRegistry(LlmConfig llmConfig) {
+        this.config = llmConfig.getCircuitBreaker();
+    }
+
+    /**
+     * 获取模型对应的熔断器，不存在时创建
+     */
+    public CircuitBreaker get(LlmModel model) {
+        return breakers.computeIfAbsent(model.getId(), id -> new CircuitBreaker(id, model.getName(), config));
+    }
+
+    public List<Map<String, Object>> getMetrics() {
+        List<Map<String, Object>> metrics = new ArrayList<>();
+        for (CircuitBreaker breaker : breakers.values()) {
+            metrics.add(breaker.getMetrics());
+        }
+        return metrics;
+    }
+
+    /**
+     * 单个模型的熔断器
+     */
+    public static class CircuitBreaker {
+
+        private final Long modelId;
+        private final String modelName;
+        private final CircuitBreakerConfig config;
+
+        private State state = State.CLOSED;
+        private int consecutiveFailures;
+        private long openUntilMillis;
+        private int probesInFlight;
+        private long openCount;
+        private long rejectedCount;
+
+        CircuitBreaker(Long modelId, String modelName, CircuitBreakerConfig config) {
+            this.modelId = modelId;
+            this.modelName = modelName;
+            this.config = config;
+        }
+
+        /**
+         * 申请调用许可
+         * 熔断到期时转为半开状态；半开状态下只放行有限数量的探测请求。
+         *
+         * @return 是否允许调用，允许时调用方必须随后调用 onSuccess/onFailure/onIgnored 之一
+         */
+        public synchronized boolean tryAcquirePermission() {
+            if (state == State.OPEN && System.currentTimeMillis() >= openUntilMillis) {
+                state = State.HALF_OPEN;
+                probesInFlight = 0;
+                logger.info("模型{}熔断到期，进入半开状态，开始放行探测请求", modelName);
+            }
+            switch (state) {
+                case CLOSED:
+                    return true;
+                case HALF_OPEN:
+                    if (probesInFlight < Math.max(1, config.getHalfOpenProbes())) {
+                        probesInFlight++;
+                        return true;
+                    }
+                    rejectedCount++;
+                    return false;
+                default:
+                    rejectedCount++;
+                    return false;
+            }
+        }
+
+        /**
+         * 调用成功，半开状态下探测成功则恢复
+         */
+        public synchronized void onSuccess() {
+            consecutiveFailures = 0;
+            if (state == State.HALF_OPEN) {
+                state = State.CLOSED;
+                probesInFlight = 0;
+                logger.info("模型{}探测请求成功，熔断恢复", modelName);
+            }
+        }
+
+        /**
+         * 调用出现可重试错误（超时、5xx、429等），累计失败次数，达到阈值后熔断
+         */
+        public synchronized void onFailure() {
+            if (state == State.HALF_OPEN) {
+                open("探测请求失败");
+                return;
+            }
+            consecutiveFailures++;
+            if (state == State.CLOSED && consecutiveFailures >= Math.max(1, config.getFailureThreshold())) {
+                open("连续" + consecutiveFailures + "次调用失败");
+            }
+        }
+
+        /**
+         * 调用失败但与模型可用性无关（如请求参数错误），或调用被暂停、取消而没有结果，只归还探测名额，不改变状态
+         */
+        public synchronized void onIgnored() {
+            if (state == State.HALF_OPEN && probesInFlight > 0) {
+                probesInFlight--;
+            }
+        }
+
+        /**
+         * 是否处于熔断等待期（尚未到达半开时间）
+         */
+        public synchronized boolean isOpen() {
+            return state == State.OPEN && System.currentTimeMillis() < openUntilMillis;
+        }
+
+        /**
+         * 距离熔断到期的剩余毫秒数，未熔断时为0
+         */
+        public synchronized long getRemainingOpenMillis() {
+            if (state != State.OPEN) {
+                return 0;
+            }
+            return Math.max(0, openUntilMillis - System.currentTimeMillis());
+        }
+
+        public synchronized State getState() {
+            return state;
+        }
+
+        public String getModelName() {
+            return modelName;
+        }
+
+        private void open(String reason) {
+            state = State.OPEN;
+            openUntilMillis = System.currentTimeMillis() + config.getOpenDurationMs();
+            probesInFlight = 0;
+            consecutiveFailures = 0;
+            openCount++;
+            logger.warn("模型{}熔断{}毫秒，原因: {}", modelName, config.getOpenDurationMs(), reason);
+        }
+
+        synchronized Map<String, Object> getMetrics() {
+            Map<String, Object> metrics = new LinkedHashMap<>();
+            metrics.put("modelId", modelId);
+            metrics.put("modelName", modelName);
+            metrics.put("state", state.name());
+            metrics.put("consecutiveFailures", consecutiveFailures);
+            metrics.put("remainingOpenMillis", state == State.OPEN
+                    ? Math.max(0, openUntilMillis - System.currentTimeMillis()) : 0);
+            metrics.put("probesInFlight", probesInFlight);
+            metrics.put("openCount", openCount);
+            metrics.put("rejectedCount", rejectedCount);
+            return metrics;
+        }
+    }
+}
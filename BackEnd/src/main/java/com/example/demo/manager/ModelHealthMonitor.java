@@ -0,0 +1,391 @@
+package com.example.demo.manager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.LlmConfig;
+import com.example.demo.config.LlmConfig.HealthConfig;
+import com.example.demo.dto.ModelInfoDTO;
+import com.example.demo.entity.jdbc.LlmModel;
+import com.example.demo.repository.jdbc.LlmModelRepository;
+import com.example.demo.service.LlmApiService;
+import com.example.demo.util.BoundedVirtualThreadExecutor;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 模型健康探测与模型目录缓存
+ * 后台按 llm.health.probe-interval-ms 以有限并发探测所有已注册模型，缓存连通性、响应时间和连续失败次数。
+ * 探测请求使用固定的短超时，探测和目录刷新都在探测执行器上进行，不占用Spring的调度线程；
+ * 连通性测试接口直接返回未过期的探测结果，只对没有结果或结果过期的模型重新探测。
+ * 同一模型同时只有一次探测在进行，并发的测试请求共享同一次探测的结果。
+ * 远程可用模型列表按地址和密钥缓存，过半有效期后由后台探测提前刷新，刷新失败时继续使用旧列表。
+ */
+@Component
+public class ModelHealthMonitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModelHealthMonitor.class);
+
+    private final HealthConfig config;
+    private final LlmModelRepository llmModelRepository;
+    private final LlmApiService llmApiService;
+    private final BoundedVirtualThreadExecutor probeExecutor;
+    private final Map<Long, ModelHealth> healthByModel = new ConcurrentHashMap<>();
+    private final Map<Long, CompletableFuture<ModelHealth>> inFlightProbes = new ConcurrentHashMap<>();
+    private final Map<String, CatalogEntry> catalogs = new ConcurrentHashMap<>();
+    // 上一轮后台探测尚未结束时跳过本轮
+    private final AtomicBoolean roundInProgress = new AtomicBoolean();
+
+    @Autowired
+    public ModelHealthMonitor(LlmConfig llmConfig, LlmModelRepository llmModelRepository,
+                              LlmApiService llmApiService) {
+        this.config = llmConfig.getHealth();
+        this.llmModelRepository = llmModelRepository;
+        this.llmApiService = llmApiService;
+        this.probeExecutor = new BoundedVirtualThreadExecutor("model-health-probe",
+                Math.max(1, config.getProbeConcurrency()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        probeExecutor.shutdownNow();
+    }
+
+    /**
+     * 后台探测所有已注册模型，并刷新即将过期的模型目录
+     * 只在调度线程上提交探测，不等待探测结果，结果汇总和目录刷新在探测执行器上完成
+     */
+    @Scheduled(initialDelayString = "${llm.health.initial-delay-ms:30000}",
+            fixedDelayString = "${llm.health.probe-interval-ms:300000}")
+    public void probeAllModels() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        if (!roundInProgress.compareAndSet(false, true)) {
+            logger.warn("上一轮模型健康探测尚未结束，跳过本轮");
+            return;
+        }
+        try {
+            long startTime = System.currentTimeMillis();
+            List<LlmModel> models = llmModelRepository.findAll();
+            List<CompletableFuture<ModelHealth>> futures = models.stream().map(this::probeAsync).toList();
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                    .handle((ignored, error) -> null)
+                    .thenRunAsync(() -> finishRound(models, futures, startTime), probeExecutor)
+                    .whenComplete((ignored, error) -> {
+                        roundInProgress.set(false);
+                        if (error != null) {
+                            logger.error("模型健康探测汇总失败", error);
+                        }
+                    });
+        } catch (RuntimeException e) {
+            roundInProgress.set(false);
+            logger.error("提交模型健康探测失败", e);
+        }
+    }
+
+    private void finishRound(List<LlmModel> models, List<CompletableFuture<ModelHealth>> futures, long startTime) {
+        // 删除已不存在的模型的探测结果
+        Map<Long, Boolean> registered = new HashMap<>();
+        for (LlmModel model : models) {
+            registered.put(model.getId(), Boolean.TRUE);
+        }
+        healthByModel.keySet().removeIf(modelId -> !registered.containsKey(modelId));
+
+        long unhealthy = awaitAll(futures).stream().filter(health -> !isHealthy(health)).count();
+        logger.info("模型健康探测完成: 模型数={}, 不健康={}, 耗时={}ms",
+                models.size(), unhealthy, System.currentTimeMillis() - startTime);
+
+        refreshCatalogs();
+    }
+
+    /**
+     * 获取模型的健康状态：未过期的探测结果直接返回，其余模型以有限并发重新探测
+     *
+     * @return 与models顺序一致的健康状态
+     */
+    public List<ModelHealth> getHealth(List<LlmModel> models) {
+        long now = System.currentTimeMillis();
+        List<CompletableFuture<ModelHealth>> futures = new ArrayList<>(models.size());
+        for (LlmModel model : models) {
+            ModelHealth cached = healthByModel.get(model.getId());
+            futures.add(isFresh(cached, now) ? CompletableFuture.completedFuture(cached) : probeAsync(model));
+        }
+        return awaitAll(futures);
+    }
+
+    /**
+     * 立即探测单个模型并更新缓存
+     */
+    public ModelHealth probeNow(LlmModel model) {
+        return probeAsync(model).join();
+    }
+
+    /**
+     * 模型是否已知不健康：未过期的探测结果中连续失败次数达到阈值。没有探测结果的模型不视为不健康。
+     */
+    public boolean isKnownUnhealthy(Long modelId) {
+        ModelHealth health = healthByModel.get(modelId);
+        return health != null && isFresh(health, System.currentTimeMillis()) && !isHealthy(health);
+    }
+
+    /**
+     * 启动批次时是否拒绝不健康的模型
+     */
+    public boolean isRefuseUnhealthyStart() {
+        return config.isEnabled() && config.isRefuseUnhealthyStart();
+    }
+
+    /**
+     * 获取可用模型列表，缓存未过期时不请求远程接口
+     *
+     * @param loader 请求远程模型列表，失败时抛出的异常原样传给调用方
+     */
+    public List<ModelInfoDTO> getCatalog(String apiUrl, String apiKey, Supplier<List<ModelInfoDTO>> loader) {
+        String key = catalogKey(apiUrl, apiKey);
+        long now = System.currentTimeMillis();
+        CatalogEntry entry = catalogs.get(key);
+        if (entry != null && now - entry.loadedAtMillis < config.getCatalogTtlMs()) {
+            entry.lastAccessMillis = now;
+            logger.debug("使用缓存的模型列表: API URL={}, 模型数={}", apiUrl, entry.models.size());
+            return entry.models;
+        }
+        List<ModelInfoDTO> models = List.copyOf(loader.get());
+        catalogs.put(key, new CatalogEntry(apiUrl, models, loader, now));
+        return models;
+    }
+
+    /**
+     * 各模型最近一次探测结果
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        List<Map<String, Object>> models = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (ModelHealth health : healthByModel.values()) {
+            Map<String, Object> map = health.toResult();
+            map.put("healthy", isHealthy(health));
+            map.put("fresh", isFresh(health, now));
+            models.add(map);
+        }
+        metrics.put("models", models);
+        metrics.put("inFlightProbes", inFlightProbes.size());
+        metrics.put("cachedCatalogs", catalogs.size());
+        metrics.put("probeExecutor", probeExecutor.getMetrics());
+        return metrics;
+    }
+
+    private CompletableFuture<ModelHealth> probeAsync(LlmModel model) {
+        Long modelId = model.getId();
+        CompletableFuture<ModelHealth> existing = inFlightProbes.get(modelId);
+        if (existing != null) {
+            return existing;
+        }
+        CompletableFuture<ModelHealth> future = new CompletableFuture<>();
+        existing = inFlightProbes.putIfAbsent(modelId, future);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            probeExecutor.execute(() -> {
+                try {
+                    future.complete(probe(model));
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                } finally {
+                    inFlightProbes.remove(modelId, future);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlightProbes.remove(modelId, future);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private ModelHealth probe(LlmModel model) {
+        long startTime = System.currentTimeMillis();
+        boolean connected;
+        String error = null;
+        try {
+            connected = llmApiService.testModelConnectivity(model.getApiUrl(), model.getApiKey(),
+                    model.getApiType(), model.getName(), Duration.ofMillis(config.getProbeTimeoutMs()));
+            if (!connected) {
+                error = "API测试失败";
+            }
+        } catch (Exception e) {
+            connected = false;
+            error = e.getMessage();
+        }
+        long checkedAt = System.currentTimeMillis();
+
+        ModelHealth previous = healthByModel.get(model.getId());
+        int consecutiveFailures = connected ? 0 : (previous != null ? previous.consecutiveFailures : 0) + 1;
+        ModelHealth health = new ModelHealth(model, connected, checkedAt - startTime, error,
+                checkedAt, consecutiveFailures);
+        healthByModel.put(model.getId(), health);
+
+        if (previous != null && isHealthy(previous) != isHealthy(health)) {
+            if (isHealthy(health)) {
+                logger.info("模型{}恢复健康，响应时间{}ms", model.getName(), health.responseTimeMillis);
+            } else {
+                logger.warn("模型{}连续{}次探测失败，标记为不健康: {}", model.getName(), consecutiveFailures, error);
+            }
+        }
+        return health;
+    }
+
+    private void refreshCatalogs() {
+        long now = System.currentTimeMillis();
+        long ttl = config.getCatalogTtlMs();
+        // 长时间无人访问的目录不再刷新
+        catalogs.values().removeIf(entry -> now - entry.lastAccessMillis > ttl * 4);
+        for (Map.Entry<String, CatalogEntry> item : catalogs.entrySet()) {
+            CatalogEntry entry = item.getValue();
+            if (now - entry.loadedAtMillis < ttl / 2) {
+                continue;
+            }
+            try {
+                List<ModelInfoDTO> models = List.copyOf(entry.loader.get());
+                CatalogEntry refreshed = new CatalogEntry(entry.apiUrl, models, entry.loader, now);
+                refreshed.lastAccessMillis = entry.lastAccessMillis;
+                catalogs.put(item.getKey(), refreshed);
+            } catch (Exception e) {
+                logger.warn("刷新模型列表失败，继续使用缓存: API URL={}, 错误={}", entry.apiUrl, e.getMessage());
+            }
+        }
+    }
+
+    private boolean isHealthy(ModelHealth health) {
+        return health.consecutiveFailures < Math.max(1, config.getUnhealthyThreshold());
+    }
+
+    private boolean isFresh(ModelHealth health, long now) {
+        return health != null && now - health.checkedAtMillis < config.getStaleAfterMs();
+    }
+
+    private static List<ModelHealth> awaitAll(List<CompletableFuture<ModelHealth>> futures) {
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).exceptionally(e -> null).join();
+        List<ModelHealth> results = new ArrayList<>(futures.size());
+        for (CompletableFuture<ModelHealth> future : futures) {
+            if (!future.isCompletedExceptionally()) {
+                results.add(future.join());
+            }
+        }
+        return results;
+    }
+
+    private static String catalogKey(String apiUrl, String apiKey) {
+        return apiUrl + "\n" + (apiKey != null ? apiKey : "");
+    }
+
+    /**
+     * 单个模型的探测结果
+     */
+    public static class ModelHealth {
+        private final Long modelId;
+        private final String modelName;
+        private final String provider;
+        private final String apiUrl;
+        private final boolean connected;
+        private final long responseTimeMillis;
+        private final String error;
+        private final long checkedAtMillis;
+        private final int consecutiveFailures;
+
+        ModelHealth(LlmModel model, boolean connected, long responseTimeMillis, String error,
+                    long checkedAtMillis, int consecutiveFailures) {
+            this.modelId = model.getId();
+            this.modelName = model.getName();
+            this.provider = model.getProvider();
+            this.apiUrl = model.getApiUrl();
+            this.connected = connected;
+            this.responseTimeMillis = responseTimeMillis;
+            this.error = error;
+            this.checkedAtMillis = checkedAtMillis;
+            this.consecutiveFailures = consecutiveFailures;
+        }
+
+        public Long getModelId() {
+            return modelId;
+        }
+
+        public String getModelName() {
+            return modelName;
+        }
+
+        public boolean isConnected() {
+            return connected;
+        }
+
+        public long getResponseTimeMillis() {
+            return responseTimeMillis;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public long getCheckedAtMillis() {
+            return checkedAtMillis;
+        }
+
+        public int getConsecutiveFailures() {
+            return consecutiveFailures;
+        }
+
+        /**
+         * 连通性测试接口使用的结果格式
+         */
+        public Map<String, Object> toResult() {
+            Map<String, Object> result = new HashMap<>();
+            result.put("modelId", modelId);
+            result.put("modelName", modelName);
+            result.put("provider", provider);
+            result.put("apiEndpoint", apiUrl);
+            result.put("connected", connected);
+            result.put("responseTime", responseTimeMillis);
+            if (error != null) {
+                result.put("error", error);
+            }
+            result.put("checkedAt", checkedAtMillis);
+            result.put("consecutiveFailures", consecutiveFailures);
+            return result;
+        }
+    }
+
+    /**
+     * 缓存的可用模型列表
+     */
+    private static class CatalogEntry {
+        final String apiUrl;
+        final List<ModelInfoDTO> models;
+        final Supplier<List<ModelInfoDTO>> loader;
+        final long loadedAtMillis;
+        volatile long lastAccessMillis;
+
+        CatalogEntry(String apiUrl, List<ModelInfoDTO> models, Supplier<List<ModelInfoDTO>> loader,
+                     long loadedAtMillis) {
+            this.apiUrl = apiUrl;
+            this.models = models;
+            this.loader = loader;
+            this.loadedAtMillis = loadedAtMillis;
+            this.lastAccessMillis = loadedAtMillis;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.demo.manager;
+
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.LlmConfig;
+import com.example.demo.config.LlmConfig.TimeoutConfig;
+import com.example.demo.entity.jdbc.LlmModel;
+import com.example.demo.util.LatencyHistogram;
+
+/**
+ * 按模型学习的调用超时
+ * 每个模型维护两份延迟直方图：非流式调用的完整响应时间和流式调用的首次输出时间，
+ * 超时取对应直方图的高分位（默认p99.9）乘以系数，并限制在下限和上限之间；样本不足时使用初始超时。
+ * 直方图只记录成功调用的延迟。超时的调用单独计数：连续超时时超时按 timeout-backoff 有限次放宽，
+ * 避免延迟整体变慢后持续超时，又不会因样本中的超时值被分位数和系数层层放大到上限；成功调用后恢复。
+ * 模型参数 timeout_seconds 可固定超时，timeout_factor、timeout_floor_seconds、timeout_ceiling_seconds 可覆盖默认值。
+ */
+@Component
+public class ModelTimeoutRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModelTimeoutRegistry.class);
+
+    // 每个直方图保留的样本数上限
+    private static final long MAX_SAMPLES = 5000;
+
+    private final TimeoutConfig config;
+    private final Map<String, ModelLatency> models = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ModelTimeoutRegistry(LlmConfig llmConfig) {
+        this.config = llmConfig.getTimeout();
+    }
+
+    /**
+     * 获取模型的调用超时
+     *
+     * @param streaming       流式调用时返回两次输出之间的最长空闲时间，否则返回完整响应的读取超时
+     * @param modelParameters 模型参数，可为null
+     */
+    public Duration resolveTimeout(String modelName, boolean streaming, Map<String, Object> modelParameters) {
+        ModelLatency latency = latency(modelName);
+        latency.modelParameters = modelParameters;
+        return Duration.ofMillis(streaming
+                ? timeoutMillis(latency.firstOutput, latency.firstOutputTimeoutStreak, modelParameters)
+                : timeoutMillis(latency.response, latency.responseTimeoutStreak, modelParameters));
+    }
+
+    /**
+     * 记录成功调用的耗时
+     *
+     * @param latencyMillis 流式调用为首次输出时间，非流式调用为完整响应时间
+     */
+    public void recordLatency(String modelName, boolean streaming, long latencyMillis) {
+        ModelLatency latency = latency(modelName);
+        (streaming ? latency.firstOutput : latency.response).record(latencyMillis);
+        (streaming ? latency.firstOutputTimeoutStreak : latency.responseTimeoutStreak).set(0);
+    }
+
+    /**
+     * 记录超时的调用，不作为延迟样本，只累计连续超时次数
+     */
+    public void recordTimeout(String modelName, boolean streaming, Duration timeout) {
+        ModelLatency latency = latency(modelName);
+        latency.timeouts.increment();
+        int maxBackoffs = Math.max(0, config.getMaxTimeoutBackoffs());
+        int streak = (streaming ? latency.firstOutputTimeoutStreak : latency.responseTimeoutStreak)
+                .updateAndGet(current -> Math.min(maxBackoffs, current + 1));
+        logger.warn("模型{}的{}调用在{}秒后超时，连续超时{}次", modelName, streaming ? "流式" : "非流式",
+                timeout.toSeconds(), streak);
+    }
+
+    /**
+     * 判断异常是否由读取超时引起
+     */
+    public static boolean isTimeout(Throwable error) {
+        Throwable current = error;
+        while (current != null) {
+            if (current instanceof SocketTimeoutException || current instanceof HttpTimeoutException) {
+                return true;
+            }
+            current = current.getCause();
+        }
+        return false;
+    }
+
+    /**
+     * 各模型的延迟分位数和当前超时
+     */
+    public List<Map<String, Object>> getMetrics() {
+        List<Map<String, Object>> metrics = new ArrayList<>();
+        for (ModelLatency latency : models.values()) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("modelName", latency.modelName);
+            map.put("responseSamples", latency.response.getCount());
+            map.put("responseP99Millis", latency.response.percentile(0.99));
+            map.put("responseTimeoutSeconds", TimeUnit.MILLISECONDS.toSeconds(
+                    timeoutMillis(latency.response, latency.responseTimeoutStreak, latency.modelParameters)));
+            map.put("firstOutputSamples", latency.firstOutput.getCount());
+            map.put("firstOutputP99Millis", latency.firstOutput.percentile(0.99));
+            map.put("firstOutputTimeoutSeconds", TimeUnit.MILLISECONDS.toSeconds(
+                    timeoutMillis(latency.firstOutput, latency.firstOutputTimeoutStreak, latency.modelParameters)));
+            map.put("timeouts", latency.timeouts.sum());
+            map.put("fixed", numberParameter(latency.modelParameters, LlmModel.PARAM_TIMEOUT_SECONDS) != null);
+            metrics.add(map);
+        }
+        return metrics;
+    }
+
+    private long timeoutMillis(LatencyHistogram histogram, AtomicInteger timeoutStreak,
+                               Map<String, Object> modelParameters) {
+        Double fixedSeconds = numberParameter(modelParameters, LlmModel.PARAM_TIMEOUT_SECONDS);
+        if (fixedSeconds != null && fixedSeconds > 0) {
+            return Math.round(fixedSeconds * 1000);
+        }
+        long floorMillis = Math.round(parameterOrDefault(modelParameters, LlmModel.PARAM_TIMEOUT_FLOOR_SECONDS,
+                config.getFloorSeconds()) * 1000);
+        long ceilingMillis = Math.max(floorMillis, Math.round(parameterOrDefault(modelParameters,
+                LlmModel.PARAM_TIMEOUT_CEILING_SECONDS, config.getCeilingSeconds()) * 1000));
+        long millis;
+        if (histogram.getCount() < config.getMinSamples()) {
+            millis = TimeUnit.SECONDS.toMillis(config.getInitialSeconds());
+        } else {
+            double factor = parameterOrDefault(modelParameters, LlmModel.PARAM_TIMEOUT_FACTOR, config.getFactor());
+            millis = Math.round(histogram.percentile(config.getPercentile()) * factor);
+        }
+        int streak = timeoutStreak.get();
+        if (streak > 0) {
+            millis = Math.round(millis * Math.pow(Math.max(1.0, config.getTimeoutBackoff()), streak));
+        }
+        return Math.min(ceilingMillis, Math.max(floorMillis, millis));
+    }
+
+    private ModelLatency latency(String modelName) {
+        String key = modelName != null ? modelName : "";
+        return models.computeIfAbsent(key, ModelLatency::new);
+    }
+
+    private static double parameterOrDefault(Map<String, Object> parameters, String key, double defaultValue) {
+        Double value = numberParameter(parameters, key);
+        return value != null && value > 0 ? value : defaultValue;
+    }
+
+    private static Double numberParameter(Map<String, Object> parameters, String key) {
+        if (parameters == null) {
+            return null;
+        }
+        Object value = parameters.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof String) {
+            try {
+                return Double.parseDouble(((String) value).trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 单个模型的延迟统计
+     */
+    private static class ModelLatency {
+        final String modelName;
+        final LatencyHistogram response = new LatencyHistogram(MAX_SAMPLES);
+        final LatencyHistogram firstOutput = new LatencyHistogram(MAX_SAMPLES);
+        final LongAdder timeouts = new LongAdder();
+        // 最近连续超时的次数，成功调用后清零
+        final AtomicInteger responseTimeoutStreak = new AtomicInteger();
+        final AtomicInteger firstOutputTimeoutStreak = new AtomicInteger();
+        // 最近一次调用使用的模型参数，用于展示当前超时
+        volatile Map<String, Object> modelParameters;
+
+        ModelLatency(String modelName) {
+            this.modelName = modelName;
+        }
+    }
+}
@@ -0,0 +1,552 @@
+package com.example.demo.manager;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+
+import com.example.demo.config.LlmConfig;
+import com.example.demo.config.LlmConfig.RateLimitConfig;
+import com.example.demo.entity.jdbc.LlmModel;
+import com.example.demo.manager.FairShareScheduler.Flow;
+import com.example.demo.util.TokenBucket;
+
+/**
+ * 提供商自适应限流器
+ * 按“API类型 + 主机 + API Key”划分配额，每个配额由两部分组成：
+ * 1. 令牌桶：限制每分钟请求数和每分钟token数
+ * 2. AIMD并发控制：请求成功时并发上限加性增加，收到429时乘性减少并按Retry-After冷却，
+ *    延迟明显高于平滑平均值时小幅减少
+ * 等待并发名额的请求按调度流（回答生成批次）加权公平排队（start-time fair queuing）：
+ * 请求的开始标签为 max(虚拟时间, 同一调度流上一个请求的结束标签)，结束标签 = 开始标签 + 预估token数 / 权重，
+ * 名额总是分配给开始标签最小的请求，因此小批次不必排在大批次的全部请求之后，权重见FairShareScheduler。
+ * 限流器只负责冷却和调整并发，不重试：被限流的异常原样抛出，由调用方唯一的重试逻辑处理，
+ * 重试的请求在限流器内等到冷却结束才会发出。
+ */
+@Component
+public class ProviderRateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProviderRateLimiter.class);
+
+    // 两次乘性递减之间的最小间隔，避免同一波429把并发数连续减半
+    private static final long DECREASE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // 延迟平滑系数和开始判断延迟拥塞所需的最少样本数
+    private static final double LATENCY_SMOOTHING = 0.2;
+    private static final int LATENCY_WARMUP_SAMPLES = 10;
+
+    private final RateLimitConfig config;
+    private final FairShareScheduler fairShareScheduler;
+    private final ConcurrentHashMap<String, ProviderLimit> limits = new ConcurrentHashMap<>();
+    // 异步调用在虚拟线程上等待配额，等待期间不占用调用方线程
+    private final ExecutorService acquireExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @Autowired
+    public ProviderRateLimiter(LlmConfig llmConfig, FairShareScheduler fairShareScheduler) {
+        this.config = llmConfig.getRateLimit();
+        this.fairShareScheduler = fairShareScheduler;
+    }
+
+    /**
+     * 在模型所属提供商的配额内执行调用
+     */
+    public <T> T execute(LlmModel model, String prompt, Supplier<T> call) {
+        return execute(model.getApiType(), model.getApiUrl(), model.getApiKey(), model.getModelParameters(), prompt, call);
+    }
+
+    /**
+     * 在指定提供商的配额内执行调用，被限流（429，或带Retry-After的503）时进入冷却并降低并发上限后抛出异常
+     *
+     * @param modelParameters 模型参数，可通过requests_per_minute、tokens_per_minute覆盖默认配额，可为null
+     */
+    public <T> T execute(String apiType, String apiUrl, String apiKey, Map<String, Object> modelParameters,
+                         String prompt, Supplier<T> call) {
+        if (!config.isEnabled()) {
+            return call.get();
+        }
+
+        ProviderLimit limit = resolveLimit(apiType, apiUrl, apiKey, modelParameters);
+        long estimatedTokens = estimateTokens(prompt, modelParameters);
+
+        limit.acquire(estimatedTokens, null, 1.0);
+        long startNanos = System.nanoTime();
+        try {
+            T result = call.get();
+            limit.onSuccess(System.nanoTime() - startNanos);
+            return result;
+        } catch (RuntimeException e) {
+            onCallError(limit, e);
+            throw e;
+        } finally {
+            limit.release();
+        }
+    }
+
+    /**
+     * 异步版本：在模型所属提供商的配额内执行异步调用
+     */
+    public <T> CompletableFuture<T> executeAsync(LlmModel model, String prompt, Supplier<CompletableFuture<T>> call) {
+        return executeAsync(model.getApiType(), model.getApiUrl(), model.getApiKey(), model.getModelParameters(),
+            prompt, call);
+    }
+
+    /**
+     * 异步版本：配额等待在虚拟线程上进行，调用完成时归还并发名额，被限流时进入冷却后以原异常结束
+     */
+    public <T> CompletableFuture<T> executeAsync(String apiType, String apiUrl, String apiKey,
+                                                 Map<String, Object> modelParameters, String prompt,
+                                                 Supplier<CompletableFuture<T>> call) {
+        return executeAsync(apiType, apiUrl, apiKey, modelParameters, prompt, null, call);
+    }
+
+    /**
+     * 异步版本：等待并发名额时按调用所属的调度流公平排队
+     *
+     * @param flow 调用所属的调度流（回答生成批次），为null时归入默认流
+     */
+    public <T> CompletableFuture<T> executeAsync(String apiType, String apiUrl, String apiKey,
+                                                 Map<String, Object> modelParameters, String prompt, Flow flow,
+                                                 Supplier<CompletableFuture<T>> call) {
+        if (!config.isEnabled()) {
+            return invoke(call);
+        }
+        ProviderLimit limit = resolveLimit(apiType, apiUrl, apiKey, modelParameters);
+        long estimatedTokens = estimateTokens(prompt, modelParameters);
+        return CompletableFuture.supplyAsync(() -> {
+            limit.acquire(estimatedTokens, flow != null ? flow.getBatchId() : null, fairShareScheduler.weight(flow));
+            fairShareScheduler.onDispatched(flow, estimatedTokens);
+            return System.nanoTime();
+        }, acquireExecutor).thenCompose(startNanos -> invoke(call).handle((result, error) -> {
+            limit.release();
+            if (error == null) {
+                limit.onSuccess(System.nanoTime() - startNanos);
+                return CompletableFuture.completedFuture(result);
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            onCallError(limit, cause);
+            return CompletableFuture.<T>failedFuture(cause);
+        })).thenCompose(future -> future);
+    }
+
+    /**
+     * 调用失败：被限流时按Retry-After冷却并乘性降低并发上限，其他错误只计数
+     */
+    private void onCallError(ProviderLimit limit, Throwable error) {
+        HttpStatusCodeException httpError = findHttpStatusException(error);
+        if (httpError != null && isThrottled(httpError)) {
+            long retryAfterMs = parseRetryAfter(httpError.getResponseHeaders());
+            limit.onThrottled(retryAfterMs);
+            logger.warn("提供商{}限流(HTTP {})，冷却{}毫秒，当前并发上限: {}",
+                limit.name, httpError.getStatusCode().value(), retryAfterMs, limit.getConcurrencyLimit());
+        } else {
+            limit.onError();
+        }
+    }
+
+    private static <T> CompletableFuture<T> invoke(Supplier<CompletableFuture<T>> call) {
+        try {
+            return call.get();
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * 各提供商配额的当前状态
+     */
+    public List<Map<String, Object>> getMetrics() {
+        List<Map<String, Object>> metrics = new ArrayList<>();
+        for (ProviderLimit limit : limits.values()) {
+            metrics.add(limit.getMetrics());
+        }
+        return metrics;
+    }
+
+    private ProviderLimit resolveLimit(String apiType, String apiUrl, String apiKey, Map<String, Object> modelParameters) {
+        String name = buildLimitName(apiType, apiUrl, apiKey);
+        long requestsPerMinute = intParameter(modelParameters, LlmModel.PARAM_REQUESTS_PER_MINUTE, config.getRequestsPerMinute());
+        long tokensPerMinute = intParameter(modelParameters, LlmModel.PARAM_TOKENS_PER_MINUTE, config.getTokensPerMinute());
+
+        ProviderLimit limit = limits.computeIfAbsent(name,
+            k -> new ProviderLimit(k, config, requestsPerMinute, tokensPerMinute));
+        limit.updateQuota(requestsPerMinute, tokensPerMinute);
+        return limit;
+    }
+
+    /**
+     * 配额名称，API Key只保留哈希值，避免在指标和日志中暴露
+     */
+    private String buildLimitName(String apiType, String apiUrl, String apiKey) {
+        String host = apiUrl;
+        try {
+            if (apiUrl != null && URI.create(apiUrl).getHost() != null) {
+                host = URI.create(apiUrl).getHost();
+            }
+        } catch (IllegalArgumentException e) {
+            // 非法URL直接使用原始字符串
+        }
+        String keyHash = apiKey == null || apiKey.isEmpty() ? "-" : Integer.toHexString(apiKey.hashCode());
+        return (apiType != null ? apiType.toLowerCase() : "default") + "|" + host + "|key#" + keyHash;
+    }
+
+    /**
+     * 粗略估算请求消耗的token数：中英文混合文本按2个字符1个token，加上预计的输出token数
+     */
+    private long estimateTokens(String prompt, Map<String, Object> modelParameters) {
+        long promptTokens = prompt != null ? prompt.length() / 2 : 0;
+        long outputTokens = intParameter(modelParameters, "max_tokens", config.getEstimatedOutputTokens());
+        return Math.max(1, promptTokens + outputTokens);
+    }
+
+    private static long intParameter(Map<String, Object> parameters, String key, long defaultValue) {
+        if (parameters == null) {
+            return defaultValue;
+        }
+        Object value = parameters.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof String) {
+            try {
+                return Long.parseLong(((String) value).trim());
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+        return defaultValue;
+    }
+
+    private static HttpStatusCodeException findHttpStatusException(Throwable e) {
+        Throwable current = e;
+        while (current != null) {
+            if (current instanceof HttpStatusCodeException) {
+                return (HttpStatusCodeException) current;
+            }
+            current = current.getCause();
+        }
+        return null;
+    }
+
+    private static boolean isThrottled(HttpStatusCodeException e) {
+        int status = e.getStatusCode().value();
+        if (status == 429) {
+            return true;
+        }
+        return status == 503 && e.getResponseHeaders() != null
+            && e.getResponseHeaders().getFirst(HttpHeaders.RETRY_AFTER) != null;
+    }
+
+    /**
+     * 解析Retry-After（秒数或HTTP日期），缺失或无法解析时使用默认冷却时间
+     */
+    private long parseRetryAfter(HttpHeaders headers) {
+        long retryAfterMs = config.getDefaultRetryAfterMs();
+        String value = headers != null ? headers.getFirst(HttpHeaders.RETRY_AFTER) : null;
+        if (value != null && !value.isBlank()) {
+            try {
+                retryAfterMs = (long) (Double.parseDouble(value.trim()) * 1000);
+            } catch (NumberFormatException e) {
+                try {
+                    ZonedDateTime retryAt = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                    retryAfterMs = Duration.between(ZonedDateTime.now(retryAt.getZone()), retryAt).toMillis();
+                } catch (Exception ex) {
+                    logger.debug("无法解析Retry-After: {}", value);
+                }
+            }
+        }
+        return Math.max(0, Math.min(retryAfterMs, config.getMaxRetryAfterMs()));
+    }
+
+    /**
+     * 单个提供商配额的状态
+     */
+    private static class ProviderLimit {
+        private final String name;
+        private final RateLimitConfig config;
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private volatile TokenBucket requestBucket;
+        private volatile TokenBucket tokenBucket;
+
+        // 以下字段在lock内读写
+        private double concurrencyLimit;
+        private int inFlight;
+        private long cooldownUntilNanos;
+        private long lastDecreaseNanos;
+        private double averageLatencyNanos;
+        private long latencySamples;
+        // 加权公平排队：等待者按开始标签排序，只有队首可以获取并发名额
+        private final PriorityQueue<Waiter> waiters = new PriorityQueue<>();
+        // 各调度流最近一个请求的结束标签，null键为不属于批次的调用
+        private final Map<Long, Double> finishTags = new HashMap<>();
+        private double virtualTime;
+        private long waiterSequence;
+
+        private final AtomicLong requestCount = new AtomicLong();
+        private final AtomicLong throttledCount = new AtomicLong();
+        private final AtomicLong errorCount = new AtomicLong();
+
+        ProviderLimit(String name, RateLimitConfig config, long requestsPerMinute, long tokensPerMinute) {
+            this.name = name;
+            this.config = config;
+            this.concurrencyLimit = Math.max(config.getMinConcurrency(),
+                Math.min(config.getInitialConcurrency(), config.getMaxConcurrency()));
+            this.requestBucket = requestsPerMinute > 0 ? new TokenBucket(requestsPerMinute) : null;
+            this.tokenBucket = tokensPerMinute > 0 ? new TokenBucket(tokensPerMinute) : null;
+            logger.info("创建提供商配额{}: 每分钟请求数={}, 每分钟token数={}, 初始并发={}",
+                name, requestsPerMinute, tokensPerMinute, (int) concurrencyLimit);
+        }
+
+        /**
+         * 同一配额下的模型可能配置了不同的配额参数，以最近一次调用的配置为准
+         */
+        void updateQuota(long requestsPerMinute, long tokensPerMinute) {
+            requestBucket = updateBucket(requestBucket, requestsPerMinute);
+            tokenBucket = updateBucket(tokenBucket, tokensPerMinute);
+        }
+
+        private static TokenBucket updateBucket(TokenBucket bucket, long permitsPerMinute) {
+            if (permitsPerMinute <= 0) {
+                return null;
+            }
+            if (bucket == null) {
+                return new TokenBucket(permitsPerMinute);
+            }
+            if (bucket.getPermitsPerMinute() != permitsPerMinute) {
+                bucket.setPermitsPerMinute(permitsPerMinute);
+            }
+            return bucket;
+        }
+
+        /**
+         * 按公平排队的顺序获取并发名额，再预约速率配额
+         * 速率配额在获得名额后按名额的分配顺序预约，保证速率受限时同样按公平顺序放行
+         *
+         * @param flowKey 调度流标识，为null时归入默认流
+         * @param weight  调度流的权重
+         */
+        void acquire(long estimatedTokens, Long flowKey, double weight) {
+            try {
+                acquireSlot(estimatedTokens, flowKey, weight);
+                try {
+                    long waitNanos = 0;
+                    TokenBucket requests = requestBucket;
+                    TokenBucket tokens = tokenBucket;
+                    if (requests != null) {
+                        waitNanos = Math.max(waitNanos, requests.reserve(1));
+                    }
+                    if (tokens != null) {
+                        waitNanos = Math.max(waitNanos, tokens.reserve(estimatedTokens));
+                    }
+                    if (waitNanos > 0) {
+                        TimeUnit.NANOSECONDS.sleep(waitNanos);
+                    }
+                } catch (InterruptedException e) {
+                    release();
+                    throw e;
+                }
+                requestCount.incrementAndGet();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("等待提供商" + name + "的限流许可时被中断", e);
+            }
+        }
+
+        private void acquireSlot(long estimatedTokens, Long flowKey, double weight) throws InterruptedException {
+            lock.lock();
+            try {
+                Double lastFinish = finishTags.get(flowKey);
+                double startTag = lastFinish != null ? Math.max(virtualTime, lastFinish) : virtualTime;
+                finishTags.put(flowKey, startTag + estimatedTokens / Math.max(weight, 1e-6));
+                Waiter waiter = new Waiter(lock.newCondition(), startTag, waiterSequence++);
+                waiters.add(waiter);
+                try {
+                    while (true) {
+                        long cooldownNanos = cooldownUntilNanos - System.nanoTime();
+                        if (waiters.peek() != waiter) {
+                            waiter.condition.await();
+                        } else if (cooldownNanos > 0) {
+                            waiter.condition.awaitNanos(cooldownNanos);
+                        } else if (inFlight >= allowedConcurrency()) {
+                            waiter.condition.await();
+                        } else {
+                            break;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    waiters.remove(waiter);
+                    signalHead();
+                    throw e;
+                }
+                waiters.poll();
+                virtualTime = waiter.startTag;
+                inFlight++;
+                // 结束标签不超过虚拟时间的调度流下次入队时开始标签即为虚拟时间，无需保留
+                if (finishTags.size() > waiters.size() + 16) {
+                    finishTags.values().removeIf(tag -> tag <= virtualTime);
+                }
+                // 仍有空闲名额时由新的队首继续获取
+                signalHead();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 唤醒队首的等待者，调用方需持有lock
+         */
+        private void signalHead() {
+            Waiter head = waiters.peek();
+            if (head != null) {
+                head.condition.signal();
+            }
+        }
+
+        void release() {
+            lock.lock();
+            try {
+                inFlight--;
+                signalHead();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 成功：延迟正常时加性增加（每完成约concurrencyLimit个请求增加1），延迟明显升高时小幅减少
+         */
+        void onSuccess(long latencyNanos) {
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                boolean congested = latencySamples >= LATENCY_WARMUP_SAMPLES
+                    && latencyNanos > averageLatencyNanos * config.getLatencyToleranceFactor();
+
+                averageLatencyNanos = latencySamples == 0 ? latencyNanos
+                    : averageLatencyNanos + LATENCY_SMOOTHING * (latencyNanos - averageLatencyNanos);
+                latencySamples++;
+
+                if (congested) {
+                    if (now - lastDecreaseNanos > DECREASE_INTERVAL_NANOS) {
+                        decrease(config.getLatencyDecreaseFactor(), now);
+                    }
+                } else {
+                    concurrencyLimit = Math.min(config.getMaxConcurrency(), concurrencyLimit + 1.0 / concurrencyLimit);
+                    signalHead();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 被限流：乘性减少并发上限，并在Retry-After期间暂停向该提供商发送请求
+         */
+        void onThrottled(long retryAfterMs) {
+            throttledCount.incrementAndGet();
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                if (now - lastDecreaseNanos > DECREASE_INTERVAL_NANOS) {
+                    decrease(config.getDecreaseFactor(), now);
+                }
+                cooldownUntilNanos = Math.max(cooldownUntilNanos, now + TimeUnit.MILLISECONDS.toNanos(retryAfterMs));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void onError() {
+            errorCount.incrementAndGet();
+        }
+
+        private void decrease(double factor, long now) {
+            double previous = concurrencyLimit;
+            concurrencyLimit = Math.max(config.getMinConcurrency(), concurrencyLimit * factor);
+            lastDecreaseNanos = now;
+            logger.info("提供商{}并发上限由{}降为{}", name, (int) previous, (int) concurrencyLimit);
+        }
+
+        private int allowedConcurrency() {
+            return Math.max(config.getMinConcurrency(), (int) concurrencyLimit);
+        }
+
+        int getConcurrencyLimit() {
+            lock.lock();
+            try {
+                return allowedConcurrency();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        Map<String, Object> getMetrics() {
+            Map<String, Object> metrics = new LinkedHashMap<>();
+            lock.lock();
+            try {
+                metrics.put("name", name);
+                metrics.put("concurrencyLimit", allowedConcurrency());
+                metrics.put("inFlight", inFlight);
+                metrics.put("waiting", waiters.size());
+                metrics.put("averageLatencyMs", TimeUnit.NANOSECONDS.toMillis((long) averageLatencyNanos));
+                metrics.put("cooldownRemainingMs",
+                    Math.max(0, TimeUnit.NANOSECONDS.toMillis(cooldownUntilNanos - System.nanoTime())));
+            } finally {
+                lock.unlock();
+            }
+            TokenBucket requests = requestBucket;
+            TokenBucket tokens = tokenBucket;
+            metrics.put("requestsPerMinute", requests != null ? requests.getPermitsPerMinute() : 0);
+            metrics.put("availableRequests", requests != null ? (long) requests.getAvailablePermits() : null);
+            metrics.put("tokensPerMinute", tokens != null ? tokens.getPermitsPerMinute() : 0);
+            metrics.put("availableTokens", tokens != null ? (long) tokens.getAvailablePermits() : null);
+            metrics.put("requests", requestCount.get());
+            metrics.put("throttled", throttledCount.get());
+            metrics.put("errors", errorCount.get());
+            return metrics;
+        }
+    }
+
+    /**
+     * 等待并发名额的请求，按开始标签排序，标签相同时先到先得
+     */
+    private static final class Waiter implements Comparable<Waiter> {
+        private final Condition condition;
+        private final double startTag;
+        private final long sequence;
+
+        Waiter(Condition condition, double startTag, long sequence) {
+            this.condition = condition;
+            this.startTag = startTag;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Waiter other) {
+            int byTag = Double.compare(startTag, other.startTag);
+            return byTag != 0 ? byTag : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.demo.manager;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.LlmConfig;
+import com.example.demo.config.LlmConfig.OrderingConfig;
+import com.example.demo.entity.jdbc.QuestionType;
+import com.example.demo.entity.jdbc.StandardQuestion;
+
+/**
+ * 估算模型回答每个问题的耗时，用于按预计耗时从长到短提交问题
+ * 依次参考：同一模型对同一问题的历史平均耗时；同一模型同题型的历史平均耗时，按问题长度相对数据集内同题型平均长度缩放；
+ * 都没有时使用模型的整体平均耗时（无历史时为默认值）乘以题型的默认相对耗时。
+ * 估算只影响提交顺序，查询失败时退回默认值，不影响回答生成。
+ * 通过提供商批量接口生成的回答记录的是任务周转时间而不是单次调用耗时，不参与估算。
+ */
+@Component
+public class QuestionCostEstimator {
+
+    private static final Logger logger = LoggerFactory.getLogger(QuestionCostEstimator.class);
+
+    public static final String STRATEGY_LONGEST_FIRST = "longest-first";
+
+    private static final String SQL_QUESTION_HISTORY =
+        "SELECT m.standard_question_id, AVG(la.latency_ms) AS avg_latency " +
+        "FROM llm_answers la " +
+        "JOIN model_answer_runs r ON la.model_answer_run_id = r.id " +
+        "JOIN answer_generation_batches b ON r.answer_generation_batch_id = b.id " +
+        "JOIN dataset_question_mapping m ON la.dataset_question_mapping_id = m.id " +
+        "WHERE r.llm_model_id = ? AND b.execution_mode = 'ONLINE' AND la.generation_status = 'SUCCESS' " +
+        "AND la.latency_ms IS NOT NULL " +
+        "AND la.generation_time > NOW() - INTERVAL ? DAY " +
+        "AND m.standard_question_id IN (SELECT standard_question_id FROM dataset_question_mapping WHERE dataset_version_id = ?) " +
+        "GROUP BY m.standard_question_id";
+
+    private static final String SQL_TYPE_HISTORY =
+        "SELECT q.question_type, AVG(la.latency_ms) AS avg_latency, COUNT(*) AS samples " +
+        "FROM llm_answers la " +
+        "JOIN model_answer_runs r ON la.model_answer_run_id = r.id " +
+        "JOIN answer_generation_batches b ON r.answer_generation_batch_id = b.id " +
+        "JOIN dataset_question_mapping m ON la.dataset_question_mapping_id = m.id " +
+        "JOIN standard_questions q ON m.standard_question_id = q.id " +
+        "WHERE r.llm_model_id = ? AND b.execution_mode = 'ONLINE' AND la.generation_status = 'SUCCESS' " +
+        "AND la.latency_ms IS NOT NULL " +
+        "AND la.generation_time > NOW() - INTERVAL ? DAY " +
+        "GROUP BY q.question_type";
+
+    // 模型没有任何历史回答时的基准耗时
+    private static final double DEFAULT_BASE_LATENCY_MS = 2000;
+    // 按问题长度缩放的上下限，避免个别超长或超短的问题估算失真
+    private static final double MIN_LENGTH_SCALE = 0.5;
+    private static final double MAX_LENGTH_SCALE = 3.0;
+    // 没有历史数据时各题型的相对耗时：主观题输出最长，选择题最短
+    private static final Map<QuestionType, Double> DEFAULT_TYPE_FACTORS = new EnumMap<>(QuestionType.class);
+
+    static {
+        DEFAULT_TYPE_FACTORS.put(QuestionType.SINGLE_CHOICE, 1.0);
+        DEFAULT_TYPE_FACTORS.put(QuestionType.MULTIPLE_CHOICE, 1.2);
+        DEFAULT_TYPE_FACTORS.put(QuestionType.SIMPLE_FACT, 2.0);
+        DEFAULT_TYPE_FACTORS.put(QuestionType.SUBJECTIVE, 5.0);
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final OrderingConfig config;
+    // 数据集版本ID:模型ID -> 估算结果
+    private final ConcurrentHashMap<String, CachedEstimate> cache = new ConcurrentHashMap<>();
+
+    @Autowired
+    public QuestionCostEstimator(JdbcTemplate jdbcTemplate, LlmConfig llmConfig) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.config = llmConfig.getOrdering();
+    }
+
+    /**
+     * 是否按预计耗时从长到短提交问题
+     */
+    public boolean isLongestFirst() {
+        return STRATEGY_LONGEST_FIRST.equalsIgnoreCase(config.getStrategy());
+    }
+
+    /**
+     * 估算模型回答数据集版本中每个问题的耗时
+     *
+     * @return 问题ID -> 预计耗时（毫秒）
+     */
+    public Map<Long, Double> estimate(List<StandardQuestion> questions, Long datasetVersionId, Long modelId) {
+        String key = datasetVersionId + ":" + modelId;
+        long now = System.currentTimeMillis();
+        CachedEstimate cached = cache.get(key);
+        if (cached != null && now - cached.createdMillis < config.getCacheTtlMs()) {
+            return cached.expectedMillis;
+        }
+        cache.values().removeIf(entry -> now - entry.createdMillis >= config.getCacheTtlMs());
+
+        Map<Long, Double> questionHistory = new HashMap<>();
+        Map<QuestionType, Double> typeHistory = new EnumMap<>(QuestionType.class);
+        double baseLatency = DEFAULT_BASE_LATENCY_MS;
+        try {
+            jdbcTemplate.query(SQL_QUESTION_HISTORY, rs -> {
+                questionHistory.put(rs.getLong("standard_question_id"), rs.getDouble("avg_latency"));
+            }, modelId, config.getHistoryDays(), datasetVersionId);
+
+            double[] totals = new double[2];
+            jdbcTemplate.query(SQL_TYPE_HISTORY, rs -> {
+                QuestionType type = QuestionType.fromString(rs.getString("question_type"));
+                double latency = rs.getDouble("avg_latency");
+                long samples = rs.getLong("samples");
+                if (type != null) {
+                    typeHistory.put(type, latency);
+                }
+                totals[0] += latency * samples;
+                totals[1] += samples;
+            }, modelId, config.getHistoryDays());
+            if (totals[1] > 0) {
+                baseLatency = totals[0] / totals[1];
+            }
+        } catch (Exception e) {
+            logger.warn("查询模型{}的历史回答耗时失败，按题型默认值估算: {}", modelId, e.getMessage());
+        }
+
+        // 数据集内各题型问题的平均长度，作为长度缩放的基准
+        Map<QuestionType, double[]> lengthTotals = new EnumMap<>(QuestionType.class);
+        for (StandardQuestion question : questions) {
+            double[] totals = lengthTotals.computeIfAbsent(typeOf(question), k -> new double[2]);
+            totals[0] += length(question);
+            totals[1]++;
+        }
+
+        Map<Long, Double> expected = new HashMap<>();
+        int fromQuestionHistory = 0;
+        for (StandardQuestion question : questions) {
+            Double history = questionHistory.get(question.getId());
+            if (history != null) {
+                expected.put(question.getId(), history);
+                fromQuestionHistory++;
+                continue;
+            }
+            QuestionType type = typeOf(question);
+            Double typeLatency = typeHistory.get(type);
+            double latency = typeLatency != null ? typeLatency : baseLatency * DEFAULT_TYPE_FACTORS.get(type);
+            double[] totals = lengthTotals.get(type);
+            double averageLength = totals[0] / totals[1];
+            double scale = averageLength > 0 ? length(question) / averageLength : 1.0;
+            expected.put(question.getId(), latency * Math.max(MIN_LENGTH_SCALE, Math.min(MAX_LENGTH_SCALE, scale)));
+        }
+        logger.debug("估算模型{}回答数据集版本{}的问题耗时: 问题数={}, 参考同题历史={}, 参考题型历史={}",
+            modelId, datasetVersionId, questions.size(), fromQuestionHistory, typeHistory.keySet());
+
+        Map<Long, Double> result = Collections.unmodifiableMap(expected);
+        cache.put(key, new CachedEstimate(result, now));
+        return result;
+    }
+
+    private static QuestionType typeOf(StandardQuestion question) {
+        return question.getQuestionType() != null ? question.getQuestionType() : QuestionType.SIMPLE_FACT;
+    }
+
+    private static int length(StandardQuestion question) {
+        return question.getQuestionText() != null ? question.getQuestionText().length() : 0;
+    }
+
+    private static final class CachedEstimate {
+        private final Map<Long, Double> expectedMillis;
+        private final long createdMillis;
+
+        CachedEstimate(Map<Long, Double> expectedMillis, long createdMillis) {
+            this.expectedMillis = expectedMillis;
+            this.createdMillis = createdMillis;
+        }
+    }
+}
@@ -0,0 +1,518 @@
+package com.example.demo.manager;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.entity.jdbc.ModelAnswerRun;
+import com.example.demo.service.WebSocketService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 运行进度聚合器
+ * 处理中的运行在内存中累计完成数、失败数和断点，按固定间隔合并写入数据库、同步到Redis并推送进度，
+ * 避免每个问题完成时都更新model_answer_runs和answer_generation_batches的同一行。
+ * 查询运行或批次状态时优先使用这里的实时计数。
+ * 运行进度只在批次的processing_instance仍为本实例时写入，处理权被接管后原持有者的快照被丢弃。
+ */
+@Component
+public class RunProgressAggregator {
+
+    private static final Logger logger = LoggerFactory.getLogger(RunProgressAggregator.class);
+
+    private static final String UPDATE_RUN_PROGRESS_SQL =
+        "UPDATE model_answer_runs SET completed_questions_count = ?, failed_questions_count = ?, " +
+        "failed_questions_ids = ?, progress_percentage = ?, last_processed_question_id = ?, " +
+        "last_processed_question_index = ?, last_activity_time = ? WHERE id = ? " +
+        "AND EXISTS (SELECT 1 FROM answer_generation_batches b WHERE b.id = ? AND b.processing_instance = ?)";
+
+    private static final String UPDATE_BATCH_PROGRESS_SQL =
+        "UPDATE answer_generation_batches SET progress_percentage = " +
+        "(SELECT IFNULL(ROUND(AVG(IFNULL(r.progress_percentage, 0)), 2), 0) FROM model_answer_runs r " +
+        "WHERE r.answer_generation_batch_id = ?), last_activity_time = ? WHERE id = ?";
+
+    // 工作单元最近一次处理的失败结果，单元被回收后重新投递时覆盖此前的结果
+    private static final String UPSERT_UNIT_RESULT_SQL =
+        "INSERT INTO answer_work_unit_results (model_answer_run_id, unit_id, failed_count, failed_question_ids) " +
+        "VALUES (?, ?, ?, CAST(? AS JSON)) " +
+        "ON DUPLICATE KEY UPDATE failed_count = VALUES(failed_count), failed_question_ids = VALUES(failed_question_ids)";
+
+    // 分布式工作单元完成后重新统计运行进度：完成数按已保存的成功回答统计，失败数按各单元最近一次的结果统计，
+    // 重复投递的单元不会重复计数；进度与本地处理的口径一致，为已完成数/总问题数
+    private static final String UPDATE_UNIT_PROGRESS_SQL =
+        "UPDATE model_answer_runs SET completed_questions_count = (SELECT COUNT(*) FROM llm_answers a " +
+        "WHERE a.model_answer_run_id = ? AND a.generation_status = 'SUCCESS'), " +
+        "failed_questions_count = (SELECT IFNULL(SUM(u.failed_count), 0) FROM answer_work_unit_results u " +
+        "WHERE u.model_answer_run_id = ?), " +
+        "failed_questions_ids = (SELECT IFNULL(JSON_ARRAYAGG(f.question_id), JSON_ARRAY()) " +
+        "FROM answer_work_unit_results u, JSON_TABLE(u.failed_question_ids, '$[*]' COLUMNS (question_id BIGINT PATH '$')) f " +
+        "WHERE u.model_answer_run_id = ?), " +
+        "progress_percentage = ROUND(completed_questions_count * 100 / ?, 2), " +
+        "last_activity_time = ? WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final WebSocketService webSocketService;
+    private final BatchStateManager batchStateManager;
+    private final BatchLeaseManager batchLeaseManager;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ConcurrentHashMap<Long, RunProgress> runs = new ConcurrentHashMap<>();
+    // 串行化写库，避免较旧的快照覆盖较新的快照
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    @Autowired
+    public RunProgressAggregator(JdbcTemplate jdbcTemplate,
+                                 WebSocketService webSocketService,
+                                 BatchStateManager batchStateManager,
+                                 BatchLeaseManager batchLeaseManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.webSocketService = webSocketService;
+        this.batchStateManager = batchStateManager;
+        this.batchLeaseManager = batchLeaseManager;
+    }
+
+    /**
+     * 单个运行的实时进度，所有修改在对象锁内完成
+     */
+    public static class RunProgress {
+        private final Long runId;
+        private final Long batchId;
+        private final int totalQuestions;
+        private int completedQuestions;
+        private int failedQuestions;
+        private final List<Long> failedQuestionIds;
+        private Long checkpointQuestionId;
+        private int checkpointIndex;
+        private LocalDateTime lastActivityTime = LocalDateTime.now();
+        private boolean dirty;
+
+        RunProgress(Long runId, Long batchId, int totalQuestions, int completedQuestions, int failedQuestions,
+                    List<Long> failedQuestionIds, Long checkpointQuestionId, int checkpointIndex) {
+            this.runId = runId;
+            this.batchId = batchId;
+            this.totalQuestions = totalQuestions;
+            this.completedQuestions = completedQuestions;
+            this.failedQuestions = failedQuestions;
+            this.failedQuestionIds = failedQuestionIds;
+            this.checkpointQuestionId = checkpointQuestionId;
+            this.checkpointIndex = checkpointIndex;
+        }
+
+        synchronized void record(boolean success, boolean retried, Long questionId, Long nextQuestionId, int nextIndex) {
+            if (retried) {
+                // 重新处理断点之后此前失败的位置：成功时只移出该位置的一次失败（失败列表按问题ID记录，
+                // 同一问题的各次失败可互换），再次失败时不重复计数
+                if (success && failedQuestionIds.remove(questionId)) {
+                    failedQuestions = Math.max(0, failedQuestions - 1);
+                    completedQuestions++;
+                }
+            } else if (success) {
+                completedQuestions++;
+            } else {
+                failedQuestions++;
+                failedQuestionIds.add(questionId);
+            }
+            checkpointQuestionId = nextQuestionId;
+            checkpointIndex = nextIndex;
+            lastActivityTime = LocalDateTime.now();
+            dirty = true;
+        }
+
+        /**
+         * 取出待写入的快照并清除脏标记，没有变化时返回null
+         */
+        synchronized ProgressSnapshot drain() {
+            if (!dirty) {
+                return null;
+            }
+            dirty = false;
+            return snapshot();
+        }
+
+        synchronized ProgressSnapshot snapshot() {
+            return new ProgressSnapshot(runId, batchId, totalQuestions, completedQuestions, failedQuestions,
+                new ArrayList<>(failedQuestionIds), checkpointQuestionId, checkpointIndex, lastActivityTime);
+        }
+
+        public synchronized int getCompletedQuestions() {
+            return completedQuestions;
+        }
+
+        public synchronized int getFailedQuestions() {
+            return failedQuestions;
+        }
+    }
+
+    /**
+     * 运行进度的不可变快照
+     */
+    public static class ProgressSnapshot {
+        private final Long runId;
+        private final Long batchId;
+        private final int totalQuestions;
+        private final int completedQuestions;
+        private final int failedQuestions;
+        // 从Redis读取的快照不包含失败问题ID，为null
+        private final List<Long> failedQuestionIds;
+        private final Long checkpointQuestionId;
+        private final int checkpointIndex;
+        private final LocalDateTime lastActivityTime;
+
+        ProgressSnapshot(Long runId, Long batchId, int totalQuestions, int completedQuestions, int failedQuestions,
+                         List<Long> failedQuestionIds, Long checkpointQuestionId, int checkpointIndex,
+                         LocalDateTime lastActivityTime) {
+            this.runId = runId;
+            this.batchId = batchId;
+            this.totalQuestions = totalQuestions;
+            this.completedQuestions = completedQuestions;
+            this.failedQuestions = failedQuestions;
+            this.failedQuestionIds = failedQuestionIds;
+            this.checkpointQuestionId = checkpointQuestionId;
+            this.checkpointIndex = checkpointIndex;
+            this.lastActivityTime = lastActivityTime;
+        }
+
+        public Long getRunId() {
+            return runId;
+        }
+
+        public Long getBatchId() {
+            return batchId;
+        }
+
+        public int getTotalQuestions() {
+            return totalQuestions;
+        }
+
+        public int getCompletedQuestions() {
+            return completedQuestions;
+        }
+
+        public int getFailedQuestions() {
+            return failedQuestions;
+        }
+
+        public List<Long> getFailedQuestionIds() {
+            return failedQuestionIds;
+        }
+
+        public Long getCheckpointQuestionId() {
+            return checkpointQuestionId;
+        }
+
+        public int getCheckpointIndex() {
+            return checkpointIndex;
+        }
+
+        public LocalDateTime getLastActivityTime() {
+            return lastActivityTime;
+        }
+
+        /**
+         * 进度百分比，与原先按问题更新时的口径一致：已完成数/总问题数
+         */
+        public BigDecimal getProgressPercentage() {
+            if (totalQuestions <= 0) {
+                return BigDecimal.ZERO.setScale(2);
+            }
+            return BigDecimal.valueOf((double) completedQuestions / totalQuestions * 100)
+                .setScale(2, RoundingMode.HALF_UP);
+        }
+
+        /**
+         * 把实时计数写回运行对象，保存运行状态前调用，避免用旧计数覆盖数据库
+         */
+        public void applyTo(ModelAnswerRun run) {
+            run.setCompletedQuestionsCount(completedQuestions);
+            run.setFailedQuestionsCount(failedQuestions);
+            if (failedQuestionIds != null) {
+                run.setFailedQuestionsIds(new ArrayList<>(failedQuestionIds));
+            }
+            run.setLastProcessedQuestionId(checkpointQuestionId);
+            run.setLastProcessedQuestionIndex(checkpointIndex);
+            run.setProgressPercentage(getProgressPercentage());
+            run.setLastActivityTime(lastActivityTime);
+        }
+    }
+
+    /**
+     * 开始跟踪运行进度
+     *
+     * @param run 运行
+     * @param totalQuestions 总问题数（含重复次数）
+     * @param completedQuestions 已完成问题数（从断点恢复时非0）
+     * @param failedQuestions 已失败问题数
+     * @param checkpointIndex 起始断点位置
+     */
+    public RunProgress register(ModelAnswerRun run, int totalQuestions, int completedQuestions,
+                                int failedQuestions, int checkpointIndex) {
+        List<Long> failedIds = run.getFailedQuestionsIds() != null
+            ? new ArrayList<>(run.getFailedQuestionsIds()) : new ArrayList<>();
+        RunProgress progress = new RunProgress(run.getId(), run.getAnswerGenerationBatch().getId(),
+            totalQuestions, completedQuestions, failedQuestions, failedIds,
+            run.getLastProcessedQuestionId(), checkpointIndex);
+        runs.put(run.getId(), progress);
+        logger.debug("开始跟踪运行{}的进度，总问题数: {}", run.getId(), totalQuestions);
+        return progress;
+    }
+
+    /**
+     * 记录一个问题的处理结果和新的断点，只修改内存计数
+     *
+     * @param runId 运行ID
+     * @param success 是否成功
+     * @param questionId 问题ID（失败时记入失败问题列表）
+     * @param nextQuestionId 断点处的问题ID，全部处理完成时为null
+     * @param nextIndex 断点索引，全部处理完成时为-1
+     */
+    public void recordResult(Long runId, boolean success, Long questionId, Long nextQuestionId, int nextIndex) {
+        recordResult(runId, success, false, questionId, nextQuestionId, nextIndex);
+    }
+
+    /**
+     * 记录一个问题的处理结果和新的断点，只修改内存计数
+     *
+     * @param retried 是否为恢复时重新处理的、此前已计入失败的位置
+     */
+    public void recordResult(Long runId, boolean success, boolean retried, Long questionId, Long nextQuestionId,
+                             int nextIndex) {
+        RunProgress progress = runs.get(runId);
+        if (progress == null) {
+            logger.warn("运行{}未在进度聚合器中注册，忽略问题{}的处理结果", runId, questionId);
+            return;
+        }
+        progress.record(success, retried, questionId, nextQuestionId, nextIndex);
+    }
+
+    /**
+     * 运行是否正由本实例跟踪进度
+     */
+    public boolean isTracking(Long runId) {
+        return runs.containsKey(runId);
+    }
+
+    /**
+     * 停止跟踪运行进度：立即写入最后一次变化并清除Redis中的实时计数
+     *
+     * @return 最终进度快照，运行未被跟踪时返回null
+     */
+    public ProgressSnapshot unregister(Long runId) {
+        RunProgress progress = runs.get(runId);
+        if (progress == null) {
+            return null;
+        }
+
+        ProgressSnapshot pending = progress.drain();
+        if (pending != null) {
+            write(List.of(pending));
+        }
+        runs.remove(runId);
+
+        try {
+            batchStateManager.clearRunProgress(runId);
+        } catch (Exception e) {
+            logger.warn("清除运行{}在Redis中的进度失败: {}", runId, e.getMessage());
+        }
+        logger.debug("停止跟踪运行{}的进度", runId);
+        return progress.snapshot();
+    }
+
+    /**
+     * 获取运行的实时进度：优先使用本实例内存中的计数，其次是其他实例同步到Redis的计数
+     *
+     * @return 进度快照，运行不在处理中时返回null
+     */
+    public ProgressSnapshot getLiveProgress(Long runId) {
+        RunProgress progress = runs.get(runId);
+        if (progress != null) {
+            return progress.snapshot();
+        }
+
+        try {
+            Map<Object, Object> fields = batchStateManager.getRunProgress(runId);
+            if (fields == null || fields.isEmpty()) {
+                return null;
+            }
+            String checkpointQuestionId = (String) fields.get("checkpointQuestionId");
+            String lastActivityTime = (String) fields.get("lastActivityTime");
+            return new ProgressSnapshot(runId,
+                Long.valueOf((String) fields.get("batchId")),
+                Integer.parseInt((String) fields.get("totalQuestions")),
+                Integer.parseInt((String) fields.get("completedQuestions")),
+                Integer.parseInt((String) fields.get("failedQuestions")),
+                null,
+                checkpointQuestionId == null || checkpointQuestionId.isEmpty() ? null : Long.valueOf(checkpointQuestionId),
+                Integer.parseInt((String) fields.get("checkpointIndex")),
+                lastActivityTime == null ? null : LocalDateTime.parse(lastActivityTime));
+        } catch (Exception e) {
+            logger.warn("读取运行{}在Redis中的进度失败: {}", runId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 记录一个分布式工作单元的处理结果，直接写入数据库并推送进度
+     * 各实例并发完成同一运行的单元，计数由数据重新统计，不经过内存聚合
+     *
+     * @param unitId 工作单元ID，重复投递的单元以最近一次的结果为准
+     * @param totalQuestions 运行的总问题数（含重复次数）
+     */
+    public void recordUnitResult(Long runId, Long batchId, String unitId, int totalQuestions,
+                                 List<Long> failedQuestionIds) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.update(UPSERT_UNIT_RESULT_SQL, runId, unitId, failedQuestionIds.size(), toJson(failedQuestionIds));
+        // MySQL按顺序求值SET子句，进度使用的是刚重新统计的完成数
+        jdbcTemplate.update(UPDATE_UNIT_PROGRESS_SQL, runId, runId, runId, Math.max(1, totalQuestions), now, runId);
+        jdbcTemplate.update(UPDATE_BATCH_PROGRESS_SQL, batchId, now, batchId);
+
+        Map<String, Object> row = jdbcTemplate.queryForMap(
+            "SELECT completed_questions_count, progress_percentage FROM model_answer_runs WHERE id = ?", runId);
+        Number completed = (Number) row.get("completed_questions_count");
+        Number percentage = (Number) row.get("progress_percentage");
+        webSocketService.sendRunProgressMessage(runId, percentage != null ? percentage.doubleValue() : 0,
+            "已处理 " + (completed != null ? completed.intValue() : 0) + "/" + totalQuestions + " 个问题");
+    }
+
+    /**
+     * 定时把有变化的运行进度合并写入数据库
+     */
+    @Scheduled(fixedDelayString = "${llm.progress.flush-interval-ms:2000}")
+    public void flush() {
+        List<ProgressSnapshot> pending = new ArrayList<>();
+        for (RunProgress progress : runs.values()) {
+            ProgressSnapshot snapshot = progress.drain();
+            if (snapshot != null) {
+                pending.add(snapshot);
+            }
+        }
+        if (!pending.isEmpty()) {
+            write(pending);
+        }
+    }
+
+    /**
+     * 写入一组运行进度：每个运行一条UPDATE（批量执行），每个批次一条进度汇总UPDATE
+     */
+    private void write(List<ProgressSnapshot> snapshots) {
+        flushLock.lock();
+        try {
+            List<Object[]> runArgs = new ArrayList<>(snapshots.size());
+            Set<Long> batchIds = new LinkedHashSet<>();
+            for (ProgressSnapshot snapshot : snapshots) {
+                runArgs.add(new Object[] {
+                    snapshot.getCompletedQuestions(),
+                    snapshot.getFailedQuestions(),
+                    toJson(snapshot.getFailedQuestionIds()),
+                    snapshot.getProgressPercentage(),
+                    snapshot.getCheckpointQuestionId(),
+                    snapshot.getCheckpointIndex(),
+                    Timestamp.valueOf(snapshot.getLastActivityTime()),
+                    snapshot.getRunId(),
+                    snapshot.getBatchId(),
+                    batchLeaseManager.getInstanceId()
+                });
+                batchIds.add(snapshot.getBatchId());
+            }
+
+            int[] argTypes = {Types.INTEGER, Types.INTEGER, Types.VARCHAR, Types.DECIMAL,
+                Types.BIGINT, Types.INTEGER, Types.TIMESTAMP, Types.BIGINT, Types.BIGINT, Types.VARCHAR};
+            int[] updated = jdbcTemplate.batchUpdate(UPDATE_RUN_PROGRESS_SQL, runArgs, argTypes);
+            // 批次已由其他实例接管时不写入，原持有者停止过程中的计数和断点不能覆盖接管实例的进度
+            List<ProgressSnapshot> written = new ArrayList<>(snapshots.size());
+            for (int i = 0; i < snapshots.size(); i++) {
+                if (i < updated.length && updated[i] == 0) {
+                    logger.warn("批次{}的处理权已不属于本实例，丢弃运行{}的进度", 
+                        snapshots.get(i).getBatchId(), snapshots.get(i).getRunId());
+                } else {
+                    written.add(snapshots.get(i));
+                }
+            }
+            snapshots = written;
+
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            for (Long batchId : batchIds) {
+                jdbcTemplate.update(UPDATE_BATCH_PROGRESS_SQL, batchId, now, batchId);
+            }
+            logger.debug("合并写入{}个运行、{}个批次的进度", snapshots.size(), batchIds.size());
+        } catch (Exception e) {
+            logger.error("写入运行进度失败，将在下次刷新时重试", e);
+            for (ProgressSnapshot snapshot : snapshots) {
+                RunProgress progress = runs.get(snapshot.getRunId());
+                if (progress != null) {
+                    synchronized (progress) {
+                        progress.dirty = true;
+                    }
+                }
+            }
+            return;
+        } finally {
+            flushLock.unlock();
+        }
+
+        for (ProgressSnapshot snapshot : snapshots) {
+            publish(snapshot);
+        }
+    }
+
+    /**
+     * 同步实时计数到Redis并推送进度通知
+     */
+    private void publish(ProgressSnapshot snapshot) {
+        try {
+            Map<String, String> fields = new HashMap<>();
+            fields.put("batchId", String.valueOf(snapshot.getBatchId()));
+            fields.put("totalQuestions", String.valueOf(snapshot.getTotalQuestions()));
+            fields.put("completedQuestions", String.valueOf(snapshot.getCompletedQuestions()));
+            fields.put("failedQuestions", String.valueOf(snapshot.getFailedQuestions()));
+            fields.put("checkpointQuestionId", snapshot.getCheckpointQuestionId() != null
+                ? String.valueOf(snapshot.getCheckpointQuestionId()) : "");
+            fields.put("checkpointIndex", String.valueOf(snapshot.getCheckpointIndex()));
+            fields.put("lastActivityTime", snapshot.getLastActivityTime().toString());
+            batchStateManager.setRunProgress(snapshot.getRunId(), fields);
+        } catch (Exception e) {
+            logger.warn("同步运行{}的进度到Redis失败: {}", snapshot.getRunId(), e.getMessage());
+        }
+
+        webSocketService.sendRunProgressMessage(snapshot.getRunId(),
+            snapshot.getProgressPercentage().doubleValue(),
+            "已处理 " + snapshot.getCompletedQuestions() + "/" + snapshot.getTotalQuestions() + " 个问题");
+    }
+
+    private String toJson(List<Long> failedQuestionIds) {
+        try {
+            return objectMapper.writeValueAsString(failedQuestionIds);
+        } catch (JsonProcessingException e) {
+            logger.error("序列化失败问题ID列表失败", e);
+            return "[]";
+        }
+    }
+
+    /**
+     * 应用关闭前写入剩余的进度
+     */
+    @PreDestroy
+    public void destroy() {
+        logger.info("关闭运行进度聚合器，写入{}个运行的进度", runs.size());
+        flush();
+    }
+}
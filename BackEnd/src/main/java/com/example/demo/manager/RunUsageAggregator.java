@@ -0,0 +1,398 @@
+package com.example.demo.manager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.LlmConfig;
+import com.example.demo.dto.LlmCallResult;
+import com.example.demo.entity.jdbc.LlmModel;
+import com.example.demo.entity.jdbc.ModelAnswerRun;
+import com.example.demo.entity.jdbc.ModelAnswerRun.RunStatus;
+import com.example.demo.util.CallUsageStats;
+import com.example.demo.util.LatencyHistogram;
+
+/**
+ * 按运行汇总回答生成调用的用量
+ * 本实例处理的运行在内存中增量累计；分布式模式下各实例把计数和延迟分布的桶计数增量合并到Redis。
+ * 首次记录时以数据库中已保存的回答为基数：计数、token和费用用SQL聚合，延迟分布只取最近的有限条样本。
+ * 已完成的运行不再变化，汇总一次后缓存；其他情况（运行不在本实例处理）按同样的方式从数据库汇总。
+ */
+@Component
+public class RunUsageAggregator {
+
+    private static final Logger logger = LoggerFactory.getLogger(RunUsageAggregator.class);
+
+    private static final String SQL_RUN_TOTALS =
+        "SELECT COUNT(*) AS calls, IFNULL(SUM(retry_count), 0) AS retries, " +
+        "IFNULL(SUM(CASE WHEN prompt_tokens IS NULL AND completion_tokens IS NULL THEN 1 ELSE 0 END), 0) AS calls_without_usage, " +
+        "IFNULL(SUM(prompt_tokens), 0) AS prompt_tokens, IFNULL(SUM(completion_tokens), 0) AS completion_tokens, " +
+        "IFNULL(SUM(latency_ms), 0) AS latency_total, " +
+        "MIN(UNIX_TIMESTAMP(generation_time) * 1000 - latency_ms) AS first_start, " +
+        "MAX(UNIX_TIMESTAMP(generation_time) * 1000) AS last_end " +
+        "FROM llm_answers WHERE model_answer_run_id = ? AND generation_status = 'SUCCESS' AND latency_ms IS NOT NULL";
+
+    private static final String SQL_RUN_LATENCY_SAMPLES =
+        "SELECT latency_ms, ttft_ms FROM llm_answers " +
+        "WHERE model_answer_run_id = ? AND generation_status = 'SUCCESS' AND latency_ms IS NOT NULL " +
+        "ORDER BY id DESC LIMIT ?";
+
+    private static final String USAGE_PREFIX = "answer:run:usage:";
+    private static final String LATENCY_PREFIX = "answer:run:usage-latency:";
+    private static final String TTFT_PREFIX = "answer:run:usage-ttft:";
+    // 运行级键的保留时间，运行完成时主动删除
+    private static final long RUN_KEY_TTL_DAYS = 7;
+
+    // 合并一次调用：KEYS=计数、延迟桶、首字延迟桶，ARGV=重试次数、是否无用量(1/0)、输入token、输出token、耗时、
+    // 费用（未配置价格时为空）、开始时间、结束时间、延迟桶序号、首字延迟桶序号（非流式为空）、保留时间（秒）
+    private static final String RECORD_SCRIPT =
+            "redis.call('hincrby', KEYS[1], 'calls', 1) " +
+            "redis.call('hincrby', KEYS[1], 'retries', ARGV[1]) " +
+            "if ARGV[2] == '1' then redis.call('hincrby', KEYS[1], 'callsWithoutUsage', 1) end " +
+            "redis.call('hincrby', KEYS[1], 'promptTokens', ARGV[3]) " +
+            "redis.call('hincrby', KEYS[1], 'completionTokens', ARGV[4]) " +
+            "redis.call('hincrby', KEYS[1], 'latencyTotal', ARGV[5]) " +
+            "if ARGV[6] ~= '' then redis.call('hincrbyfloat', KEYS[1], 'cost', ARGV[6]) end " +
+            "local first = tonumber(redis.call('hget', KEYS[1], 'firstStart')) " +
+            "if not first or tonumber(ARGV[7]) < first then redis.call('hset', KEYS[1], 'firstStart', ARGV[7]) end " +
+            "local last = tonumber(redis.call('hget', KEYS[1], 'lastEnd')) " +
+            "if not last or tonumber(ARGV[8]) > last then redis.call('hset', KEYS[1], 'lastEnd', ARGV[8]) end " +
+            "redis.call('hincrby', KEYS[2], ARGV[9], 1) " +
+            "if ARGV[10] ~= '' then redis.call('hincrby', KEYS[3], ARGV[10], 1) end " +
+            "for i = 1, 3 do redis.call('expire', KEYS[i], ARGV[11]) end " +
+            "return 1";
+
+    // 运行尚无Redis汇总时写入数据库中已有回答的基数，其他实例已写入时不做修改：
+    // KEYS同上，ARGV[1]=保留时间（秒），ARGV[2]=计数字段数n，其后为n对计数字段，再其后为延迟桶和首字延迟桶（'t'前缀）
+    private static final String SEED_SCRIPT =
+            "if redis.call('exists', KEYS[1]) == 1 then return 0 end " +
+            "local n = tonumber(ARGV[2]) " +
+            "for i = 3, 2 + n * 2, 2 do redis.call('hset', KEYS[1], ARGV[i], ARGV[i + 1]) end " +
+            "for i = 3 + n * 2, #ARGV, 2 do " +
+            "  if string.sub(ARGV[i], 1, 1) == 't' then redis.call('hincrby', KEYS[3], string.sub(ARGV[i], 2), ARGV[i + 1]) " +
+            "  else redis.call('hincrby', KEYS[2], ARGV[i], ARGV[i + 1]) end " +
+            "end " +
+            "redis.call('hsetnx', KEYS[1], 'calls', 0) " +
+            "for i = 1, 3 do redis.call('expire', KEYS[i], ARGV[1]) end " +
+            "return 1";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final RunProgressAggregator progressAggregator;
+    private final RedissonClient redissonClient;
+    private final LlmConfig llmConfig;
+    private final long latencySamples;
+    // 按最近访问顺序淘汰，防止长时间运行后内存无限增长
+    private final Map<Long, CallUsageStats> runStats;
+    // 已完成运行的汇总，运行完成后不再变化
+    private final Map<Long, CallUsageStats> finishedStats;
+    // 本实例已确认Redis中存在汇总基数的运行
+    private final Map<Long, Boolean> seededRuns;
+
+    @Autowired
+    public RunUsageAggregator(JdbcTemplate jdbcTemplate, RunProgressAggregator progressAggregator,
+                              RedissonClient redissonClient, LlmConfig llmConfig) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.progressAggregator = progressAggregator;
+        this.redissonClient = redissonClient;
+        this.llmConfig = llmConfig;
+        this.latencySamples = llmConfig.getUsage().getLatencySamples();
+        int maxTrackedRuns = Math.max(1, llmConfig.getUsage().getMaxTrackedRuns());
+        this.runStats = boundedMap(maxTrackedRuns);
+        this.finishedStats = boundedMap(maxTrackedRuns);
+        this.seededRuns = boundedMap(maxTrackedRuns);
+    }
+
+    /**
+     * 记录运行中一次成功的生成调用
+     *
+     * @param retries 成功前失败重试的次数
+     */
+    public void record(ModelAnswerRun run, LlmCallResult result, int retries) {
+        if (llmConfig.getDistributed().isEnabled()) {
+            try {
+                recordDistributed(run, result, retries);
+            } catch (Exception e) {
+                logger.warn("合并运行{}的调用用量到Redis失败: {}", run.getId(), e.getMessage());
+            }
+            return;
+        }
+        CallUsageStats stats = runStats.get(run.getId());
+        if (stats == null) {
+            CallUsageStats loaded = load(run);
+            stats = runStats.putIfAbsent(run.getId(), loaded);
+            if (stats == null) {
+                stats = loaded;
+            }
+        }
+        stats.record(result.getPromptTokens(), result.getCompletionTokens(), result.getLatencyMillis(),
+                result.getTtftMillis(), retries, System.currentTimeMillis(), modelParameters(run));
+    }
+
+    /**
+     * 运行结束或暂停后清除内存中的统计，之后的查询从数据库汇总
+     */
+    public void evict(Long runId) {
+        runStats.remove(runId);
+    }
+
+    /**
+     * 分布式运行完成后删除Redis中的汇总，之后的查询从数据库汇总并缓存
+     */
+    public void clearRun(Long runId) {
+        seededRuns.remove(runId);
+        try {
+            redissonClient.getKeys().delete(USAGE_PREFIX + runId, LATENCY_PREFIX + runId, TTFT_PREFIX + runId);
+        } catch (Exception e) {
+            logger.warn("删除运行{}在Redis中的调用用量失败: {}", runId, e.getMessage());
+        }
+    }
+
+    /**
+     * 运行的用量汇总：调用次数、token用量、吞吐、延迟分位和估算费用
+     */
+    public Map<String, Object> getRunUsage(ModelAnswerRun run) {
+        Long runId = run.getId();
+        CallUsageStats stats = null;
+        String source = "database";
+        if (run.getStatus() == RunStatus.COMPLETED) {
+            stats = finishedStats.get(runId);
+            source = "cache";
+            if (stats == null) {
+                stats = load(run);
+                finishedStats.put(runId, stats);
+                source = "database";
+            }
+        } else if (llmConfig.getDistributed().isEnabled()) {
+            stats = loadDistributed(run);
+            source = "redis";
+        } else if (progressAggregator.isTracking(runId)) {
+            stats = runStats.get(runId);
+            source = "memory";
+        }
+        if (stats == null) {
+            stats = load(run);
+            source = "database";
+        }
+
+        Map<String, Object> usage = new LinkedHashMap<>();
+        usage.put("runId", runId);
+        if (run.getLlmModel() != null) {
+            usage.put("modelId", run.getLlmModel().getId());
+            usage.put("modelName", run.getLlmModel().getName());
+        }
+        usage.putAll(stats.toMap());
+        usage.put("source", source);
+        return usage;
+    }
+
+    /**
+     * 批次内各运行（每个运行对应一个模型）的用量汇总
+     */
+    public List<Map<String, Object>> getBatchUsage(List<ModelAnswerRun> runs) {
+        List<Map<String, Object>> usages = new ArrayList<>();
+        for (ModelAnswerRun run : runs) {
+            try {
+                usages.add(getRunUsage(run));
+            } catch (Exception e) {
+                logger.warn("汇总运行{}的调用用量失败: {}", run.getId(), e.getMessage());
+            }
+        }
+        return usages;
+    }
+
+    /**
+     * 从已保存的回答记录汇总运行的用量：计数和token用SQL聚合，延迟分布取最近的latencySamples条回答
+     */
+    private CallUsageStats load(ModelAnswerRun run) {
+        CallUsageStats stats = new CallUsageStats(latencySamples);
+        Map<String, Object> parameters = modelParameters(run);
+        jdbcTemplate.query(SQL_RUN_TOTALS, rs -> {
+            long calls = rs.getLong("calls");
+            long callsWithoutUsage = rs.getLong("calls_without_usage");
+            long promptTokens = rs.getLong("prompt_tokens");
+            long completionTokens = rs.getLong("completion_tokens");
+            long lastEnd = rs.getLong("last_end");
+            stats.addTotals(calls, rs.getLong("retries"), callsWithoutUsage, promptTokens, completionTokens,
+                    rs.getLong("latency_total"), estimateCost(parameters, calls - callsWithoutUsage,
+                            promptTokens, completionTokens),
+                    rs.getObject("first_start") != null ? rs.getLong("first_start") : lastEnd, lastEnd);
+        }, run.getId());
+        if (stats.getCalls() > 0) {
+            jdbcTemplate.query(SQL_RUN_LATENCY_SAMPLES, rs -> {
+                stats.recordLatencySample(rs.getLong("latency_ms"), rs.getObject("ttft_ms", Long.class));
+            }, run.getId(), latencySamples);
+        }
+        return stats;
+    }
+
+    private void recordDistributed(ModelAnswerRun run, LlmCallResult result, int retries) {
+        Long runId = run.getId();
+        if (!seededRuns.containsKey(runId)) {
+            seed(run);
+            seededRuns.put(runId, Boolean.TRUE);
+        }
+        Integer promptTokens = result.getPromptTokens();
+        Integer completionTokens = result.getCompletionTokens();
+        boolean withoutUsage = promptTokens == null && completionTokens == null;
+        double cost = withoutUsage ? -1 : CallUsageStats.estimateCost(modelParameters(run), promptTokens, completionTokens);
+        long endMillis = System.currentTimeMillis();
+        long latencyMillis = result.getLatencyMillis();
+        Long ttftMillis = result.getTtftMillis();
+        script().eval(RScript.Mode.READ_WRITE, RECORD_SCRIPT, RScript.ReturnType.INTEGER, keys(runId),
+                String.valueOf(retries),
+                withoutUsage ? "1" : "0",
+                String.valueOf(promptTokens != null ? promptTokens : 0),
+                String.valueOf(completionTokens != null ? completionTokens : 0),
+                String.valueOf(latencyMillis),
+                cost >= 0 ? String.valueOf(cost) : "",
+                String.valueOf(endMillis - latencyMillis),
+                String.valueOf(endMillis),
+                String.valueOf(LatencyHistogram.bucketIndex(latencyMillis)),
+                ttftMillis != null ? String.valueOf(LatencyHistogram.bucketIndex(ttftMillis)) : "",
+                String.valueOf(TimeUnit.DAYS.toSeconds(RUN_KEY_TTL_DAYS)));
+    }
+
+    /**
+     * Redis中没有运行的汇总时，以数据库中已保存的回答为基数写入（如从暂停恢复、汇总已过期）
+     */
+    private void seed(ModelAnswerRun run) {
+        Long runId = run.getId();
+        if (redissonClient.getKeys().countExists(USAGE_PREFIX + runId) > 0) {
+            return;
+        }
+        // 只查询基数的计数部分和最近的样本，再由脚本原子地写入，其他实例已写入时不覆盖
+        Map<String, String> totals = new LinkedHashMap<>();
+        jdbcTemplate.query(SQL_RUN_TOTALS, rs -> {
+            long calls = rs.getLong("calls");
+            if (calls == 0) {
+                return;
+            }
+            long callsWithoutUsage = rs.getLong("calls_without_usage");
+            long promptTokens = rs.getLong("prompt_tokens");
+            long completionTokens = rs.getLong("completion_tokens");
+            totals.put("calls", String.valueOf(calls));
+            totals.put("retries", String.valueOf(rs.getLong("retries")));
+            totals.put("callsWithoutUsage", String.valueOf(callsWithoutUsage));
+            totals.put("promptTokens", String.valueOf(promptTokens));
+            totals.put("completionTokens", String.valueOf(completionTokens));
+            totals.put("latencyTotal", String.valueOf(rs.getLong("latency_total")));
+            long lastEnd = rs.getLong("last_end");
+            totals.put("firstStart", String.valueOf(rs.getObject("first_start") != null ? rs.getLong("first_start") : lastEnd));
+            totals.put("lastEnd", String.valueOf(lastEnd));
+            Double cost = estimateCost(modelParameters(run), calls - callsWithoutUsage, promptTokens, completionTokens);
+            if (cost != null) {
+                totals.put("cost", String.valueOf(cost));
+            }
+        }, runId);
+
+        Map<String, Long> buckets = new LinkedHashMap<>();
+        if (!totals.isEmpty()) {
+            jdbcTemplate.query(SQL_RUN_LATENCY_SAMPLES, rs -> {
+                buckets.merge(String.valueOf(LatencyHistogram.bucketIndex(rs.getLong("latency_ms"))), 1L, Long::sum);
+                Long ttft = rs.getObject("ttft_ms", Long.class);
+                if (ttft != null) {
+                    buckets.merge("t" + LatencyHistogram.bucketIndex(ttft), 1L, Long::sum);
+                }
+            }, runId, latencySamples);
+        }
+
+        List<Object> args = new ArrayList<>();
+        args.add(String.valueOf(TimeUnit.DAYS.toSeconds(RUN_KEY_TTL_DAYS)));
+        args.add(String.valueOf(totals.size()));
+        totals.forEach((field, value) -> {
+            args.add(field);
+            args.add(value);
+        });
+        buckets.forEach((bucket, samples) -> {
+            args.add(bucket);
+            args.add(String.valueOf(samples));
+        });
+        script().eval(RScript.Mode.READ_WRITE, SEED_SCRIPT, RScript.ReturnType.INTEGER, keys(runId), args.toArray());
+    }
+
+    /**
+     * 读取各实例合并到Redis的汇总，Redis中没有时返回null
+     */
+    private CallUsageStats loadDistributed(ModelAnswerRun run) {
+        Long runId = run.getId();
+        try {
+            Map<String, String> totals = redissonClient.<String, String>getMap(USAGE_PREFIX + runId, StringCodec.INSTANCE)
+                    .readAllMap();
+            if (totals.isEmpty()) {
+                return null;
+            }
+            CallUsageStats stats = new CallUsageStats(latencySamples);
+            String cost = totals.get("cost");
+            stats.addTotals(longField(totals, "calls"), longField(totals, "retries"),
+                    longField(totals, "callsWithoutUsage"), longField(totals, "promptTokens"),
+                    longField(totals, "completionTokens"), longField(totals, "latencyTotal"),
+                    cost != null ? Double.valueOf(cost) : null,
+                    longField(totals, "firstStart"), longField(totals, "lastEnd"));
+            addBuckets(stats, false, LATENCY_PREFIX + runId);
+            addBuckets(stats, true, TTFT_PREFIX + runId);
+            return stats;
+        } catch (Exception e) {
+            logger.warn("读取运行{}在Redis中的调用用量失败: {}", runId, e.getMessage());
+            return null;
+        }
+    }
+
+    private void addBuckets(CallUsageStats stats, boolean firstOutput, String key) {
+        Map<String, String> buckets = redissonClient.<String, String>getMap(key, StringCodec.INSTANCE).readAllMap();
+        for (Map.Entry<String, String> bucket : buckets.entrySet()) {
+            stats.addLatencyBucket(firstOutput, Integer.parseInt(bucket.getKey()), Long.parseLong(bucket.getValue()));
+        }
+    }
+
+    /**
+     * 按token总量估算费用，模型未配置价格或没有带用量的调用时返回null
+     */
+    private static Double estimateCost(Map<String, Object> parameters, long callsWithUsage, long promptTokens,
+                                       long completionTokens) {
+        if (callsWithUsage <= 0) {
+            return null;
+        }
+        double cost = CallUsageStats.estimateCost(parameters, promptTokens, completionTokens);
+        return cost >= 0 ? cost : null;
+    }
+
+    private static long longField(Map<String, String> fields, String name) {
+        String value = fields.get(name);
+        return value != null ? Long.parseLong(value) : 0;
+    }
+
+    private static List<Object> keys(Long runId) {
+        return Arrays.asList(USAGE_PREFIX + runId, LATENCY_PREFIX + runId, TTFT_PREFIX + runId);
+    }
+
+    private RScript script() {
+        return redissonClient.getScript(StringCodec.INSTANCE);
+    }
+
+    private static <V> Map<Long, V> boundedMap(int maxEntries) {
+        return Collections.synchronizedMap(new LinkedHashMap<Long, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, V> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    private static Map<String, Object> modelParameters(ModelAnswerRun run) {
+        LlmModel model = run.getLlmModel();
+        return model != null ? model.getModelParameters() : null;
+    }
+}
@@ -49,8 +49,9 @@ public class AnswerGenerationBatchRepository {
             "multiple_choice_prompt_id, simple_fact_prompt_id, subjective_prompt_id, " +
             "global_parameters, created_by_user_id, completed_at, progress_percentage, " +
             "last_activity_time, last_check_time, resume_count, pause_time, pause_reason, " +
-            "answer_repeat_count, error_message, processing_instance, last_processed_run_id) " +
-            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+            "answer_repeat_count, error_message, processing_instance, last_processed_run_id, priority, " +
+            "execution_mode) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
     
     private static final String SQL_UPDATE = 
             "UPDATE answer_generation_batches SET " +
@@ -59,7 +60,8 @@ public class AnswerGenerationBatchRepository {
             "multiple_choice_prompt_id=?, simple_fact_prompt_id=?, subjective_prompt_id=?, " +
             "global_parameters=?, created_by_user_id=?, completed_at=?, progress_percentage=?, " +
             "last_activity_time=?, last_check_time=?, resume_count=?, pause_time=?, pause_reason=?, " +
-            "answer_repeat_count=?, error_message=?, processing_instance=?, last_processed_run_id=? " +
+            "answer_repeat_count=?, error_message=?, processing_instance=?, last_processed_run_id=?, priority=?, " +
+            "execution_mode=? " +
             "WHERE id=?";
     
     private static final String SQL_FIND_BY_ID = 
@@ -273,6 +275,13 @@ public class AnswerGenerationBatchRepository {
                 ps.setNull(23, Types.BIGINT);
             }
             
+            // 设置调度优先级
+            ps.setInt(24, batch.getPriority() != null ? batch.getPriority() : 1);
+            
+            // 设置执行方式
+            ps.setString(25, batch.getExecutionMode() != null ? batch.getExecutionMode().name()
+                    : AnswerGenerationBatch.ExecutionMode.ONLINE.name());
+            
             return ps;
         }, keyHolder);
 
@@ -452,8 +461,15 @@ public class AnswerGenerationBatchRepository {
                 ps.setNull(23, Types.BIGINT);
             }
             
+            // 设置调度优先级
+            ps.setInt(24, batch.getPriority() != null ? batch.getPriority() : 1);
+            
+            // 设置执行方式
+            ps.setString(25, batch.getExecutionMode() != null ? batch.getExecutionMode().name()
+                    : AnswerGenerationBatch.ExecutionMode.ONLINE.name());
+            
             // 设置ID
-            ps.setLong(24, batch.getId());
+            ps.setLong(26, batch.getId());
             
             return ps;
         });
@@ -809,6 +825,15 @@ public class AnswerGenerationBatchRepository {
                 batch.setLastProcessedRunId(lastProcessedRunId);
             }
             
+            // 加载调度优先级
+            batch.setPriority(rs.getInt("priority"));
+            if (rs.wasNull()) {
+                batch.setPriority(1);
+            }
+            
+            // 加载执行方式
+            batch.setExecutionMode(AnswerGenerationBatch.ExecutionMode.fromString(rs.getString("execution_mode")));
+            
             // 加载进度百分比
             BigDecimal progressPercentage = rs.getBigDecimal("progress_percentage");
             if (progressPercentage != null) {
@@ -21,6 +21,8 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
@@ -484,6 +486,25 @@ public class AnswerTagPromptRepository {
         return jdbcTemplate.query(sql, (rs, rowNum) -> mapAnswerTagPrompt(rs), tagId);
     }
     
+    /**
+     * 根据多个标签ID一次查询激活状态的提示词
+     * 
+     * @param tagIds 标签ID集合
+     * @return 激活状态的提示词列表，按优先级排序
+     */
+    public List<AnswerTagPrompt> findActivePromptsByTagIds(Collection<Long> tagIds) {
+        if (tagIds == null || tagIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        
+        String placeholders = String.join(",", Collections.nCopies(tagIds.size(), "?"));
+        String sql = "SELECT * FROM answer_tag_prompts " +
+                     "WHERE tag_id IN (" + placeholders + ") AND is_active = true AND deleted_at IS NULL " +
+                     "ORDER BY prompt_priority ASC";
+                     
+        return jdbcTemplate.query(sql, (rs, rowNum) -> mapAnswerTagPrompt(rs), tagIds.toArray());
+    }
+    
     /**
      * 行映射器辅助方法
      */
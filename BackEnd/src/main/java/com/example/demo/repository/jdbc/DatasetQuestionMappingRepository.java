@@ -7,7 +7,9 @@ import java.sql.Statement;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -55,6 +57,9 @@ public class DatasetQuestionMappingRepository {
     private static final String SQL_EXISTS_BY_DATASET_VERSION_ID_AND_STANDARD_QUESTION_ID = 
             "SELECT COUNT(*) FROM DATASET_QUESTION_MAPPING WHERE DATASET_VERSION_ID=? AND STANDARD_QUESTION_ID=?";
     
+    private static final String SQL_FIND_MAPPING_IDS_BY_DATASET_VERSION_ID = 
+            "SELECT ID, STANDARD_QUESTION_ID FROM DATASET_QUESTION_MAPPING WHERE DATASET_VERSION_ID=?";
+    
     private static final String SQL_COUNT_BY_DATASET_VERSION_ID = 
             "SELECT COUNT(*) FROM DATASET_QUESTION_MAPPING WHERE DATASET_VERSION_ID=?";
     
@@ -264,6 +269,20 @@ public class DatasetQuestionMappingRepository {
         );
     }
 
+    /**
+     * 查询数据集版本中各标准问题对应的映射ID
+     *
+     * @param datasetVersionId 数据集版本ID
+     * @return 标准问题ID到映射ID的映射
+     */
+    public Map<Long, Long> findMappingIdsByDatasetVersionId(Long datasetVersionId) {
+        Map<Long, Long> mappingIds = new HashMap<>();
+        jdbcTemplate.query(SQL_FIND_MAPPING_IDS_BY_DATASET_VERSION_ID, rs -> {
+            mappingIds.put(rs.getLong("STANDARD_QUESTION_ID"), rs.getLong("ID"));
+        }, datasetVersionId);
+        return mappingIds;
+    }
+
     /**
      * 检查某个标准问题是否已经在指定数据集版本中
      *
@@ -54,6 +54,10 @@ public class EvaluationRepository {
             "raw_score=?, normalized_score=?, weighted_score=?, score_type=?, scoring_method=? " +
             "WHERE id=?";
     
+    private static final String SQL_UPDATE_CALL_METRICS = 
+            "UPDATE evaluations SET prompt_tokens=?, completion_tokens=?, total_tokens=?, latency_ms=?, ttft_ms=?, " +
+            "retry_count=?, finish_reason=? WHERE id=?";
+    
     private static final String SQL_DELETE = "DELETE FROM evaluations WHERE id=?";
     
     private static final String SQL_FIND_BY_ID = 
@@ -514,6 +518,27 @@ public class EvaluationRepository {
         return count != null ? count : 0;
     }
 
+    /**
+     * 记录评测调用的token用量、耗时和重试次数
+     *
+     * @param evaluationId 评测ID
+     * @param callMetrics 以列名为键的调用指标（见 Evaluation.COLUMN_PROMPT_TOKENS 等）
+     */
+    public void updateCallMetrics(Long evaluationId, Map<String, Object> callMetrics) {
+        if (evaluationId == null || callMetrics == null || callMetrics.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.update(SQL_UPDATE_CALL_METRICS,
+                callMetrics.get(Evaluation.COLUMN_PROMPT_TOKENS),
+                callMetrics.get(Evaluation.COLUMN_COMPLETION_TOKENS),
+                callMetrics.get(Evaluation.COLUMN_TOTAL_TOKENS),
+                callMetrics.get(Evaluation.COLUMN_LATENCY_MS),
+                callMetrics.get(Evaluation.COLUMN_TTFT_MS),
+                callMetrics.get(Evaluation.COLUMN_RETRY_COUNT),
+                callMetrics.get(Evaluation.COLUMN_FINISH_REASON),
+                evaluationId);
+    }
+
     /**
      * 检查指定回答ID和评测者ID的评测是否存在
      *
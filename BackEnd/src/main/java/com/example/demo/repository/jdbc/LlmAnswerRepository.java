@@ -1,6 +1,9 @@
 package com.example.demo.repository.jdbc;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -8,15 +11,19 @@ import java.sql.Statement;
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
@@ -39,12 +46,16 @@ public class LlmAnswerRepository {
 
     private static final String SQL_INSERT = 
             "INSERT INTO llm_answers (model_answer_run_id, dataset_question_mapping_id, answer_text, " +
-            "generation_status, error_message, generation_time, prompt_used, raw_model_response, other_metadata, repeat_index) " +
-            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+            "generation_status, error_message, generation_time, prompt_used, raw_model_response, other_metadata, repeat_index, " +
+            "prompt_tokens, completion_tokens, total_tokens, latency_ms, ttft_ms, retry_count, finish_reason) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+            // 同一运行、问题和重复索引已有回答时保留先写入的回答（单元重新投递或批次接管后的重复写入），并返回其ID
+            "ON DUPLICATE KEY UPDATE id = LAST_INSERT_ID(id)";
     
     private static final String SQL_UPDATE = 
             "UPDATE llm_answers SET model_answer_run_id=?, dataset_question_mapping_id=?, answer_text=?, " +
-            "generation_status=?, error_message=?, generation_time=?, prompt_used=?, raw_model_response=?, other_metadata=?, repeat_index=? " +
+            "generation_status=?, error_message=?, generation_time=?, prompt_used=?, raw_model_response=?, other_metadata=?, repeat_index=?, " +
+            "prompt_tokens=?, completion_tokens=?, total_tokens=?, latency_ms=?, ttft_ms=?, retry_count=?, finish_reason=? " +
             "WHERE id=?";
     
     private static final String SQL_FIND_BY_ID = 
@@ -81,6 +92,9 @@ public class LlmAnswerRepository {
     private static final String SQL_COUNT_BY_RUN_ID = 
             "SELECT COUNT(*) FROM llm_answers WHERE model_answer_run_id=?";
     
+    private static final String SQL_COUNT_SUCCESS_BY_RUN_ID = 
+            "SELECT COUNT(*) FROM llm_answers WHERE model_answer_run_id=? AND generation_status='SUCCESS'";
+    
     private static final String SQL_FIND_BY_BATCH_ID = 
             "SELECT a.* FROM llm_answers a " +
             "JOIN model_answer_runs mar ON a.model_answer_run_id = mar.id " +
@@ -239,61 +253,7 @@ public class LlmAnswerRepository {
 
         jdbcTemplate.update(connection -> {
             PreparedStatement ps = connection.prepareStatement(SQL_INSERT, Statement.RETURN_GENERATED_KEYS);
-            
-            // 设置模型回答运行ID
-            ps.setLong(1, llmAnswer.getModelAnswerRun().getId());
-            
-            // 设置数据集问题映射ID
-            ps.setLong(2, llmAnswer.getDatasetQuestionMapping().getId());
-            
-            // 设置回答文本
-            if (llmAnswer.getAnswerText() != null) {
-                ps.setString(3, llmAnswer.getAnswerText());
-            } else {
-                ps.setNull(3, java.sql.Types.VARCHAR);
-            }
-            
-            // 设置生成状态
-            ps.setString(4, llmAnswer.getGenerationStatus().name());
-            
-            // 设置错误信息
-            if (llmAnswer.getErrorMessage() != null) {
-                ps.setString(5, llmAnswer.getErrorMessage());
-            } else {
-                ps.setNull(5, java.sql.Types.VARCHAR);
-            }
-            
-            // 设置生成时间
-            if (llmAnswer.getGenerationTime() != null) {
-                ps.setTimestamp(6, Timestamp.valueOf(llmAnswer.getGenerationTime()));
-            } else {
-                ps.setNull(6, java.sql.Types.TIMESTAMP);
-            }
-            
-            // 设置使用的提示词
-            if (llmAnswer.getPromptUsed() != null) {
-                ps.setString(7, llmAnswer.getPromptUsed());
-            } else {
-                ps.setNull(7, java.sql.Types.VARCHAR);
-            }
-            
-            // 设置原始模型响应
-            if (llmAnswer.getRawModelResponse() != null) {
-                ps.setString(8, llmAnswer.getRawModelResponse());
-            } else {
-                ps.setNull(8, java.sql.Types.VARCHAR);
-            }
-            
-            // 设置其他元数据
-            if (llmAnswer.getOtherMetadata() != null) {
-                ps.setString(9, llmAnswer.getOtherMetadata());
-            } else {
-                ps.setString(9, "{}");
-            }
-            
-            // 设置重复索引
-            ps.setInt(10, llmAnswer.getRepeatIndex() != null ? llmAnswer.getRepeatIndex() : 0);
-            
+            setInsertParameters(ps, llmAnswer);
             return ps;
         }, keyHolder);
 
@@ -304,6 +264,100 @@ public class LlmAnswerRepository {
         return llmAnswer;
     }
 
+    /**
+     * 批量插入LLM回答，不回填生成的ID；已有相同运行、问题和重复索引的回答时跳过
+     *
+     * @param llmAnswers LLM回答列表
+     * @return 每条语句的影响行数
+     */
+    public int[] batchInsert(List<LlmAnswer> llmAnswers) {
+        if (llmAnswers == null || llmAnswers.isEmpty()) {
+            return new int[0];
+        }
+        return jdbcTemplate.batchUpdate(SQL_INSERT, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                setInsertParameters(ps, llmAnswers.get(i));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return llmAnswers.size();
+            }
+        });
+    }
+
+    /**
+     * 设置插入语句参数
+     */
+    private void setInsertParameters(PreparedStatement ps, LlmAnswer llmAnswer) throws SQLException {
+        // 设置模型回答运行ID
+        ps.setLong(1, llmAnswer.getModelAnswerRun().getId());
+        
+        // 设置数据集问题映射ID
+        ps.setLong(2, llmAnswer.getDatasetQuestionMapping().getId());
+        
+        // 设置回答文本
+        if (llmAnswer.getAnswerText() != null) {
+            ps.setString(3, llmAnswer.getAnswerText());
+        } else {
+            ps.setNull(3, java.sql.Types.VARCHAR);
+        }
+        
+        // 设置生成状态
+        ps.setString(4, llmAnswer.getGenerationStatus().name());
+        
+        // 设置错误信息
+        if (llmAnswer.getErrorMessage() != null) {
+            ps.setString(5, llmAnswer.getErrorMessage());
+        } else {
+            ps.setNull(5, java.sql.Types.VARCHAR);
+        }
+        
+        // 设置生成时间
+        if (llmAnswer.getGenerationTime() != null) {
+            ps.setTimestamp(6, Timestamp.valueOf(llmAnswer.getGenerationTime()));
+        } else {
+            ps.setNull(6, java.sql.Types.TIMESTAMP);
+        }
+        
+        // 设置使用的提示词
+        if (llmAnswer.getPromptUsed() != null) {
+            ps.setString(7, llmAnswer.getPromptUsed());
+        } else {
+            ps.setNull(7, java.sql.Types.VARCHAR);
+        }
+        
+        // 设置原始模型响应，有响应字节时直接从字节流式写入，避免再生成一份完整字符串
+        if (llmAnswer.getRawModelResponseBytes() != null) {
+            ps.setCharacterStream(8, new InputStreamReader(
+                    new ByteArrayInputStream(llmAnswer.getRawModelResponseBytes()), StandardCharsets.UTF_8));
+        } else if (llmAnswer.getRawModelResponse() != null) {
+            ps.setString(8, llmAnswer.getRawModelResponse());
+        } else {
+            ps.setNull(8, java.sql.Types.VARCHAR);
+        }
+        
+        // 设置其他元数据
+        if (llmAnswer.getOtherMetadata() != null) {
+            ps.setString(9, llmAnswer.getOtherMetadata());
+        } else {
+            ps.setString(9, "{}");
+        }
+        
+        // 设置重复索引
+        ps.setInt(10, llmAnswer.getRepeatIndex() != null ? llmAnswer.getRepeatIndex() : 0);
+
+        // 设置调用的token用量、耗时和重试次数
+        ps.setObject(11, llmAnswer.getPromptTokens(), java.sql.Types.INTEGER);
+        ps.setObject(12, llmAnswer.getCompletionTokens(), java.sql.Types.INTEGER);
+        ps.setObject(13, llmAnswer.getTotalTokens(), java.sql.Types.INTEGER);
+        ps.setObject(14, llmAnswer.getLatencyMs(), java.sql.Types.BIGINT);
+        ps.setObject(15, llmAnswer.getTtftMs(), java.sql.Types.BIGINT);
+        ps.setObject(16, llmAnswer.getRetryCount(), java.sql.Types.INTEGER);
+        ps.setObject(17, llmAnswer.getFinishReason(), java.sql.Types.VARCHAR);
+    }
+
     /**
      * 更新LLM回答
      *
@@ -322,6 +376,13 @@ public class LlmAnswerRepository {
                 llmAnswer.getRawModelResponse(),
                 llmAnswer.getOtherMetadata() != null ? llmAnswer.getOtherMetadata() : "{}",
                 llmAnswer.getRepeatIndex(),
+                llmAnswer.getPromptTokens(),
+                llmAnswer.getCompletionTokens(),
+                llmAnswer.getTotalTokens(),
+                llmAnswer.getLatencyMs(),
+                llmAnswer.getTtftMs(),
+                llmAnswer.getRetryCount(),
+                llmAnswer.getFinishReason(),
                 llmAnswer.getId());
 
         return llmAnswer;
@@ -475,6 +536,70 @@ public class LlmAnswerRepository {
         return count != null ? count : 0;
     }
     
+    /**
+     * 统计运行中已成功生成的回答数量
+     *
+     * @param runId 运行ID
+     * @return 成功回答数量
+     */
+    public int countSuccessByRunId(Long runId) {
+        Integer count = jdbcTemplate.queryForObject(
+                SQL_COUNT_SUCCESS_BY_RUN_ID,
+                Integer.class,
+                runId
+        );
+        return count != null ? count : 0;
+    }
+    
+    /**
+     * 查找运行中所有已成功生成的回答
+     *
+     * @param runId 运行ID
+     * @return 已有回答的键，格式为“映射ID:重复索引”
+     */
+    public Set<String> findAnsweredKeys(Long runId) {
+        Set<String> keys = new HashSet<>();
+        jdbcTemplate.query(
+                "SELECT dataset_question_mapping_id, repeat_index FROM llm_answers " +
+                "WHERE model_answer_run_id=? AND generation_status='SUCCESS'",
+                rs -> {
+                    keys.add(rs.getLong("dataset_question_mapping_id") + ":" + rs.getInt("repeat_index"));
+                }, runId);
+        return keys;
+    }
+    
+    /**
+     * 查找运行中指定问题和重复索引范围内已成功生成的回答
+     *
+     * @param runId 运行ID
+     * @param mappingIds 数据集问题映射ID
+     * @param minRepeatIndex 最小重复索引
+     * @param maxRepeatIndex 最大重复索引
+     * @return 已有回答的键，格式为“映射ID:重复索引”
+     */
+    public Set<String> findAnsweredKeys(Long runId, Collection<Long> mappingIds, int minRepeatIndex, int maxRepeatIndex) {
+        if (mappingIds == null || mappingIds.isEmpty()) {
+            return Collections.emptySet();
+        }
+        
+        String placeholders = String.join(",", Collections.nCopies(mappingIds.size(), "?"));
+        String sql = "SELECT dataset_question_mapping_id, repeat_index FROM llm_answers " +
+                "WHERE model_answer_run_id=? AND generation_status='SUCCESS' " +
+                "AND repeat_index BETWEEN ? AND ? AND dataset_question_mapping_id IN (" + placeholders + ")";
+        
+        List<Object> params = new ArrayList<>(mappingIds.size() + 3);
+        params.add(runId);
+        params.add(minRepeatIndex);
+        params.add(maxRepeatIndex);
+        params.addAll(mappingIds);
+        
+        Set<String> keys = new HashSet<>();
+        jdbcTemplate.query(sql, rs -> {
+            keys.add(rs.getLong("dataset_question_mapping_id") + ":" + rs.getInt("repeat_index"));
+        }, params.toArray());
+        return keys;
+    }
+    
     /**
      * 按批次ID查找所有回答
      *
@@ -672,6 +797,15 @@ public class LlmAnswerRepository {
             // 设置重复索引
             llmAnswer.setRepeatIndex(rs.getInt("repeat_index"));
             
+            // 设置调用的token用量和耗时
+            llmAnswer.setPromptTokens(rs.getObject("prompt_tokens", Integer.class));
+            llmAnswer.setCompletionTokens(rs.getObject("completion_tokens", Integer.class));
+            llmAnswer.setTotalTokens(rs.getObject("total_tokens", Integer.class));
+            llmAnswer.setLatencyMs(rs.getObject("latency_ms", Long.class));
+            llmAnswer.setTtftMs(rs.getObject("ttft_ms", Long.class));
+            llmAnswer.setRetryCount(rs.getObject("retry_count", Integer.class));
+            llmAnswer.setFinishReason(rs.getString("finish_reason"));
+            
             return llmAnswer;
         }
     }
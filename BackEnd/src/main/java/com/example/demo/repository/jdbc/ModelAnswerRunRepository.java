@@ -8,6 +8,7 @@ import com.example.demo.entity.jdbc.EvaluationPromptAssemblyConfig;
 import com.example.demo.entity.jdbc.LlmModel;
 import com.example.demo.entity.jdbc.ModelAnswerRun;
 import com.example.demo.entity.jdbc.ModelAnswerRun.RunStatus;
+import com.example.demo.entity.jdbc.User;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -58,6 +59,12 @@ public class ModelAnswerRunRepository {
             "failed_questions_count=?, failed_questions_ids=? " +
             "WHERE id=?";
     
+    // 在数据库端原子累加失败计数并追加失败问题ID，并发完成的问题之间无需加锁
+    private static final String SQL_APPEND_FAILED_QUESTION = 
+            "UPDATE model_answer_runs SET failed_questions_count=failed_questions_count+1, " +
+            "failed_questions_ids=JSON_ARRAY_APPEND(COALESCE(failed_questions_ids, JSON_ARRAY()), '$', ?), " +
+            "last_activity_time=? WHERE id=?";
+    
     private static final String SQL_FIND_BY_ID = 
             "SELECT * FROM model_answer_runs WHERE id=?";
     
@@ -119,6 +126,16 @@ public class ModelAnswerRunRepository {
         return save(modelAnswerRun);
     }
 
+    /**
+     * 记录一个失败的问题
+     *
+     * @param runId 运行ID
+     * @param questionId 失败的问题ID
+     */
+    public void appendFailedQuestion(Long runId, Long questionId) {
+        jdbcTemplate.update(SQL_APPEND_FAILED_QUESTION, questionId, Timestamp.valueOf(LocalDateTime.now()), runId);
+    }
+
     /**
      * 插入新模型回答运行
      *
@@ -635,6 +652,20 @@ public class ModelAnswerRunRepository {
                                 batch.setName(brs.getString("name"));
                                 batch.setDescription(brs.getString("description"));
                                 
+                                // 加载公平调度所需的创建者和优先级，以及执行方式
+                                long createdByUserId = brs.getLong("created_by_user_id");
+                                if (!brs.wasNull()) {
+                                    User user = new User();
+                                    user.setId(createdByUserId);
+                                    batch.setCreatedByUser(user);
+                                }
+                                batch.setPriority(brs.getInt("priority"));
+                                if (brs.wasNull()) {
+                                    batch.setPriority(1);
+                                }
+                                batch.setExecutionMode(AnswerGenerationBatch.ExecutionMode.fromString(
+                                        brs.getString("execution_mode")));
+                                
                                 // 加载配置ID
                                 Long answerConfigId = brs.getLong("answer_assembly_config_id");
                                 if (!brs.wasNull()) {
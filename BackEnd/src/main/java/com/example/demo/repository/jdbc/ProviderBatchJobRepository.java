@@ -0,0 +1,153 @@
+package com.example.demo.repository.jdbc;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+
+import com.example.demo.entity.jdbc.ProviderBatchJob;
+import com.example.demo.entity.jdbc.ProviderBatchJob.JobStatus;
+
+/**
+ * 基于JDBC的提供商批量任务仓库实现
+ */
+@Repository
+public class ProviderBatchJobRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private static final String SQL_INSERT =
+            "INSERT INTO provider_batch_jobs " +
+            "(model_answer_run_id, provider_batch_id, input_file_id, status, request_count, " +
+            "completed_count, failed_count, submitted_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String SQL_UPDATE_STATUS =
+            "UPDATE provider_batch_jobs SET status=?, completed_count=?, failed_count=?, " +
+            "output_file_id=?, error_file_id=?, error_message=?, last_poll_time=?, completed_at=? " +
+            "WHERE id=?";
+
+    private static final String SQL_FIND_ACTIVE_BY_RUN =
+            "SELECT * FROM provider_batch_jobs WHERE model_answer_run_id=? " +
+            "AND status IN ('SUBMITTED', 'IN_PROGRESS', 'COMPLETED') ORDER BY id";
+
+    private static final String SQL_FIND_BY_RUN =
+            "SELECT * FROM provider_batch_jobs WHERE model_answer_run_id=? ORDER BY id";
+
+    @Autowired
+    public ProviderBatchJobRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * 记录新提交的批量任务
+     *
+     * @param job 批量任务对象
+     * @return 带有ID的批量任务对象
+     */
+    public ProviderBatchJob insert(ProviderBatchJob job) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+
+        jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement(SQL_INSERT, Statement.RETURN_GENERATED_KEYS);
+            ps.setLong(1, job.getModelAnswerRunId());
+            ps.setString(2, job.getProviderBatchId());
+            ps.setString(3, job.getInputFileId());
+            ps.setString(4, job.getStatus().name());
+            ps.setInt(5, job.getRequestCount() != null ? job.getRequestCount() : 0);
+            ps.setInt(6, job.getCompletedCount() != null ? job.getCompletedCount() : 0);
+            ps.setInt(7, job.getFailedCount() != null ? job.getFailedCount() : 0);
+            ps.setTimestamp(8, Timestamp.valueOf(job.getSubmittedAt() != null ? job.getSubmittedAt() : LocalDateTime.now()));
+            return ps;
+        }, keyHolder);
+
+        Number key = keyHolder.getKey();
+        if (key != null) {
+            job.setId(key.longValue());
+        }
+        return job;
+    }
+
+    /**
+     * 更新批量任务的状态、进度和结果文件
+     *
+     * @param job 批量任务对象
+     */
+    public void updateStatus(ProviderBatchJob job) {
+        jdbcTemplate.update(SQL_UPDATE_STATUS,
+                job.getStatus().name(),
+                job.getCompletedCount() != null ? job.getCompletedCount() : 0,
+                job.getFailedCount() != null ? job.getFailedCount() : 0,
+                job.getOutputFileId(),
+                job.getErrorFileId(),
+                job.getErrorMessage(),
+                job.getLastPollTime() != null ? Timestamp.valueOf(job.getLastPollTime()) : null,
+                job.getCompletedAt() != null ? Timestamp.valueOf(job.getCompletedAt()) : null,
+                job.getId());
+    }
+
+    /**
+     * 查找运行尚未写入结果的批量任务（提交顺序）
+     *
+     * @param runId 运行ID
+     * @return 批量任务列表
+     */
+    public List<ProviderBatchJob> findActiveByRunId(Long runId) {
+        return jdbcTemplate.query(SQL_FIND_ACTIVE_BY_RUN, new ProviderBatchJobRowMapper(), runId);
+    }
+
+    /**
+     * 查找运行的所有批量任务（提交顺序）
+     *
+     * @param runId 运行ID
+     * @return 批量任务列表
+     */
+    public List<ProviderBatchJob> findByRunId(Long runId) {
+        return jdbcTemplate.query(SQL_FIND_BY_RUN, new ProviderBatchJobRowMapper(), runId);
+    }
+
+    /**
+     * 提供商批量任务行映射器
+     */
+    private static class ProviderBatchJobRowMapper implements RowMapper<ProviderBatchJob> {
+        @Override
+        public ProviderBatchJob mapRow(ResultSet rs, int rowNum) throws SQLException {
+            ProviderBatchJob job = new ProviderBatchJob();
+            job.setId(rs.getLong("id"));
+            job.setModelAnswerRunId(rs.getLong("model_answer_run_id"));
+            job.setProviderBatchId(rs.getString("provider_batch_id"));
+            job.setInputFileId(rs.getString("input_file_id"));
+            job.setStatus(JobStatus.valueOf(rs.getString("status")));
+            job.setRequestCount(rs.getInt("request_count"));
+            job.setCompletedCount(rs.getInt("completed_count"));
+            job.setFailedCount(rs.getInt("failed_count"));
+            job.setOutputFileId(rs.getString("output_file_id"));
+            job.setErrorFileId(rs.getString("error_file_id"));
+            job.setErrorMessage(rs.getString("error_message"));
+
+            Timestamp submittedAt = rs.getTimestamp("submitted_at");
+            if (submittedAt != null) {
+                job.setSubmittedAt(submittedAt.toLocalDateTime());
+            }
+            Timestamp lastPollTime = rs.getTimestamp("last_poll_time");
+            if (lastPollTime != null) {
+                job.setLastPollTime(lastPollTime.toLocalDateTime());
+            }
+            Timestamp completedAt = rs.getTimestamp("completed_at");
+            if (completedAt != null) {
+                job.setCompletedAt(completedAt.toLocalDateTime());
+            }
+            return job;
+        }
+    }
+}
@@ -103,7 +103,7 @@ public class StandardQuestionRepository {
     private static final String SQL_FIND_BY_DATASET_VERSION_ID = 
             "SELECT sq.* FROM standard_questions sq " +
             "JOIN dataset_question_mapping dqm ON sq.id = dqm.standard_question_id " +
-            "WHERE dqm.dataset_version_id=? AND sq.deleted_at IS NULL";
+            "WHERE dqm.dataset_version_id=? AND sq.deleted_at IS NULL ORDER BY sq.id";
     
     private static final String SQL_FIND_BY_DATASET_VERSION_ID_WITH_TAGS = 
             "SELECT DISTINCT sq.* FROM standard_questions sq " +
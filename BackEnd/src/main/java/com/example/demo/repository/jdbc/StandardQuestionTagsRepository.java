@@ -4,7 +4,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.example.demo.entity.jdbc.Tag;
 
@@ -25,14 +30,36 @@ public class StandardQuestionTagsRepository {
                      "JOIN standard_question_tags sqt ON t.id = sqt.tag_id " +
                      "WHERE sqt.standard_question_id = ? AND t.deleted_at IS NULL";
         
-        return jdbcTemplate.query(sql, (rs, rowNum) -> {
-            Tag tag = new Tag();
-            tag.setId(rs.getLong("id"));
-            tag.setTagName(rs.getString("tag_name"));
-            tag.setTagType(rs.getString("tag_type"));
-            tag.setDescription(rs.getString("description"));
-            // 可以设置其他必要的字段
-            return tag;
-        }, questionId);
+        return jdbcTemplate.query(sql, (rs, rowNum) -> mapTag(rs), questionId);
+    }
+
+    /**
+     * 一次查询数据集版本中所有问题关联的标签
+     * 
+     * @param datasetVersionId 数据集版本ID
+     * @return 问题ID到标签列表的映射，没有标签的问题不包含在内
+     */
+    public Map<Long, List<Tag>> findTagsByDatasetVersionId(Long datasetVersionId) {
+        String sql = "SELECT sqt.standard_question_id, t.* FROM tags t " +
+                     "JOIN standard_question_tags sqt ON t.id = sqt.tag_id " +
+                     "JOIN dataset_question_mapping dqm ON dqm.standard_question_id = sqt.standard_question_id " +
+                     "WHERE dqm.dataset_version_id = ? AND t.deleted_at IS NULL";
+        
+        Map<Long, List<Tag>> tagsByQuestionId = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            tagsByQuestionId.computeIfAbsent(rs.getLong("standard_question_id"), k -> new ArrayList<>())
+                .add(mapTag(rs));
+        }, datasetVersionId);
+        return tagsByQuestionId;
+    }
+
+    private Tag mapTag(ResultSet rs) throws SQLException {
+        Tag tag = new Tag();
+        tag.setId(rs.getLong("id"));
+        tag.setTagName(rs.getString("tag_name"));
+        tag.setTagType(rs.getString("tag_type"));
+        tag.setDescription(rs.getString("description"));
+        // 可以设置其他必要的字段
+        return tag;
     }
 } 
\ No newline at end of file
@@ -142,6 +142,10 @@ public interface AnswerGenerationService {
         private java.util.Map<String, Object> globalParameters;
         private java.util.Map<Long, java.util.Map<String, Object>> modelSpecificParameters;
         private Integer answerRepeatCount;
+        // 调度优先级，默认1；同一用户同时运行多个批次时按优先级比例分配该用户的份额
+        private Integer priority;
+        // 执行方式：ONLINE（默认）逐题实时调用，PROVIDER_BATCH 通过提供商的批量接口离线提交
+        private String executionMode;
         private Long userId;
         
         // 题型prompt配置
@@ -215,6 +219,22 @@ public interface AnswerGenerationService {
             this.answerRepeatCount = answerRepeatCount;
         }
         
+        public Integer getPriority() {
+            return priority;
+        }
+        
+        public void setPriority(Integer priority) {
+            this.priority = priority;
+        }
+        
+        public String getExecutionMode() {
+            return executionMode;
+        }
+        
+        public void setExecutionMode(String executionMode) {
+            this.executionMode = executionMode;
+        }
+        
         public Long getUserId() {
             return userId;
         }
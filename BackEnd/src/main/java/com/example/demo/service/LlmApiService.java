@@ -1,8 +1,13 @@
 package com.example.demo.service;
 
+import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
 
+import com.example.demo.dto.LlmCallResult;
 import com.example.demo.entity.jdbc.LlmModel;
+import com.example.demo.manager.FairShareScheduler;
 
 /**
  * LLM API服务接口
@@ -42,6 +47,51 @@ public interface LlmApiService {
      */
     String generateModelAnswer(LlmModel model, String prompt, Map<String, Object> contextVariables);
     
+    /**
+     * 使用LLM模型生成回答，可中途取消
+     * 支持流式的API类型会以流式方式调用，cancelled返回true时立即断开连接
+     * 
+     * @param model LLM模型
+     * @param prompt 提示词
+     * @param contextVariables 上下文变量
+     * @param cancelled 取消检查，会在调用过程中被反复调用
+     * @return 生成的回答文本，调用被取消时返回null
+     */
+    String generateModelAnswer(LlmModel model, String prompt, Map<String, Object> contextVariables,
+                               BooleanSupplier cancelled);
+    
+    /**
+     * 异步调用LLM模型，不占用调用方线程
+     * 非流式API类型使用非阻塞HTTP客户端发送请求，流式API类型在虚拟线程上读取事件流
+     * 
+     * @param model LLM模型
+     * @param prompt 提示词
+     * @param contextVariables 上下文变量
+     * @return 调用结果，包含回答文本、原始响应、token用量和耗时；调用失败时以异常完成
+     */
+    CompletableFuture<LlmCallResult> generateModelAnswerAsync(LlmModel model, String prompt,
+                                                              Map<String, Object> contextVariables);
+    
+    /**
+     * 异步调用LLM模型，可中途取消
+     * 
+     * @param cancelled 取消检查，流式调用过程中返回true时立即断开连接，结果的 isCancelled() 为true
+     */
+    CompletableFuture<LlmCallResult> generateModelAnswerAsync(LlmModel model, String prompt,
+                                                              Map<String, Object> contextVariables,
+                                                              BooleanSupplier cancelled);
+    
+    /**
+     * 异步调用LLM模型，可中途取消，并在提供商配额处按调度流公平排队
+     * 
+     * @param flow 调用所属的调度流（回答生成批次），见 FairShareScheduler
+     * @param cancelled 取消检查，流式调用过程中返回true时立即断开连接，结果的 isCancelled() 为true
+     */
+    CompletableFuture<LlmCallResult> generateModelAnswerAsync(LlmModel model, String prompt,
+                                                              Map<String, Object> contextVariables,
+                                                              FairShareScheduler.Flow flow,
+                                                              BooleanSupplier cancelled);
+    
     /**
      * 测试模型连通性
      * 
@@ -62,4 +112,16 @@ public interface LlmApiService {
      * @return 连接是否成功
      */
     boolean testModelConnectivity(String apiUrl, String apiKey, String apiType, String modelName);
+    
+    /**
+     * 测试模型连通性（使用指定的模型名称和请求超时）
+     * 
+     * @param apiUrl API URL
+     * @param apiKey API密钥
+     * @param apiType API类型
+     * @param modelName 模型名称
+     * @param timeout 测试请求的超时时间
+     * @return 连接是否成功
+     */
+    boolean testModelConnectivity(String apiUrl, String apiKey, String apiType, String modelName, Duration timeout);
 } 
\ No newline at end of file
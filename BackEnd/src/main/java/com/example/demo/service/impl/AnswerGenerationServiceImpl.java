@@ -6,22 +6,17 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.PlatformTransactionManager;
-import org.springframework.transaction.TransactionDefinition;
-import org.springframework.transaction.TransactionStatus;
-import org.springframework.transaction.support.DefaultTransactionDefinition;
 import org.springframework.transaction.support.TransactionTemplate;
 
 import com.example.demo.dto.AnswerGenerationBatchDTO;
@@ -38,7 +33,13 @@ import com.example.demo.entity.jdbc.ModelAnswerRun.RunStatus;
 import com.example.demo.entity.jdbc.QuestionType;
 import com.example.demo.entity.jdbc.User;
 import com.example.demo.exception.EntityNotFoundException;
+import com.example.demo.manager.BatchLeaseManager;
 import com.example.demo.manager.BatchStateManager;
+import com.example.demo.manager.ModelHealthMonitor;
+import com.example.demo.manager.ModelHealthMonitor.ModelHealth;
+import com.example.demo.manager.RunProgressAggregator;
+import com.example.demo.manager.RunUsageAggregator;
+import com.example.demo.manager.RunProgressAggregator.ProgressSnapshot;
 import com.example.demo.repository.jdbc.AnswerGenerationBatchRepository;
 import com.example.demo.repository.jdbc.AnswerPromptAssemblyConfigRepository;
 import com.example.demo.repository.jdbc.AnswerQuestionTypePromptRepository;
@@ -71,6 +72,10 @@ public class AnswerGenerationServiceImpl implements AnswerGenerationService {
     private final JdbcTemplate jdbcTemplate;
     private final PlatformTransactionManager transactionManager;
     private final BatchStateManager batchStateManager;
+    private final BatchLeaseManager batchLeaseManager;
+    private final RunProgressAggregator progressAggregator;
+    private final ModelHealthMonitor modelHealthMonitor;
+    private final RunUsageAggregator usageAggregator;
     private final ExecutorService taskExecutor;
     
     @Autowired
@@ -88,7 +93,12 @@ public class AnswerGenerationServiceImpl implements AnswerGenerationService {
             LlmApiService llmApiService,
             JdbcTemplate jdbcTemplate,
             PlatformTransactionManager transactionManager,
-            BatchStateManager batchStateManager) {
+            BatchStateManager batchStateManager,
+            BatchLeaseManager batchLeaseManager,
+            RunProgressAggregator progressAggregator,
+            ModelHealthMonitor modelHealthMonitor,
+            RunUsageAggregator usageAggregator,
+            @Qualifier("taskExecutor") ExecutorService taskExecutor) {
         this.batchRepository = batchRepository;
         this.runRepository = runRepository;
         this.datasetVersionRepository = datasetVersionRepository;
@@ -103,7 +113,11 @@ public class AnswerGenerationServiceImpl implements AnswerGenerationService {
         this.jdbcTemplate = jdbcTemplate;
         this.transactionManager = transactionManager;
         this.batchStateManager = batchStateManager;
-        this.taskExecutor = Executors.newFixedThreadPool(5);
+        this.batchLeaseManager = batchLeaseManager;
+        this.progressAggregator = progressAggregator;
+        this.modelHealthMonitor = modelHealthMonitor;
+        this.usageAggregator = usageAggregator;
+        this.taskExecutor = taskExecutor;
     }
     
     // 实现接口方法
@@ -211,6 +225,16 @@ public class AnswerGenerationServiceImpl implements AnswerGenerationService {
                     batch.setAnswerRepeatCount(1); // 默认值
                 }
                 
+                // 设置调度优先级
+                if (request.getPriority() != null && request.getPriority() > 0) {
+                    batch.setPriority(request.getPriority());
+                } else {
+                    batch.setPriority(1); // 默认值
+                }
+                
+                // 设置执行方式
+                batch.setExecutionMode(AnswerGenerationBatch.ExecutionMode.fromString(request.getExecutionMode()));
+                
                 // 保存批次
                 AnswerGenerationBatch savedBatch = batchRepository.save(batch);
                 logger.debug("批次已创建: ID={}, 名称={}", savedBatch.getId(), savedBatch.getName());
@@ -298,6 +322,20 @@ public class AnswerGenerationServiceImpl implements AnswerGenerationService {
                     throw new IllegalStateException("批次当前状态不允许启动: " + batch.getStatus());
                 }
                 
+                // 最近的健康探测已确认不可用的模型直接拒绝，不必等运行逐个调用失败
+                if (modelHealthMonitor.isRefuseUnhealthyStart()) {
+                    List<String> unhealthyModels = runRepository.findByAnswerGenerationBatchId(batchId).stream()
+                        .map(ModelAnswerRun::getLlmModel)
+                        .filter(model -> model != null && modelHealthMonitor.isKnownUnhealthy(model.getId()))
+                        .map(LlmModel::getName)
+                        .distinct()
+                        .collect(Collectors.toList());
+                    if (!unhealthyModels.isEmpty()) {
+                        throw new IllegalStateException("以下模型最近的健康检查均失败，请检查模型配置后再启动: "
+                            + String.join(", ", unhealthyModels));
+                    }
+                }
+                
                 // 更新批次状态
                 if (batch.getStatus() == BatchStatus.PENDING) {
                     // 首次启动
@@ -344,25 +382,15 @@ public class AnswerGenerationServiceImpl implements AnswerGenerationService {
     }
     
     /**
-     * 在新事务中启动批次处理任务
+     * 启动批次处理任务
+     * 批次内的运行并发执行，各运行自行管理短事务，这里不再用一个事务包裹整个批次，
+     * 否则批次行和运行行的锁会一直持有到批次结束，并阻塞其它运行线程的更新
      */
     public void startBatchProcessingTask(Long batchId) {
-        // 创建新的事务定义，指定传播行为为REQUIRES_NEW
-        DefaultTransactionDefinition def = new DefaultTransactionDefinition();
-        def.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
-        
-        // 获取事务状态
-        TransactionStatus status = transactionManager.getTransaction(def);
-        
         try {
             // 启动批次处理
             answerGenerationTask.startBatchAnswerGeneration(batchId);
-            
-            // 提交事务
-            transactionManager.commit(status);
         } catch (Exception e) {
-            // 回滚事务
-            transactionManager.rollback(status);
             logger.error("批次{}处理任务失败", batchId, e);
             
             try {
@@ -449,7 +477,15 @@ public class AnswerGenerationServiceImpl implements AnswerGenerationService {
             try {
                 AnswerGenerationBatch batch = batchRepository.findById(batchId)
                     .orElseThrow(() -> new EntityNotFoundException("找不到指定的批次: " + batchId));
-                return convertToDTO(batch);
+                AnswerGenerationBatchDTO dto = convertToDTO(batch);
+                List<ModelAnswerRun> runs = runRepository.findByAnswerGenerationBatchId(batchId);
+                
+                // 处理中的批次使用运行的实时进度计算总体进度
+                if (batch.getStatus() == BatchStatus.GENERATING_ANSWERS || batch.getStatus() == BatchStatus.RESUMING) {
+                    applyLiveProgress(dto, runs);
+                }
+                dto.setRunCallUsage(usageAggregator.getBatchUsage(runs));
+                return dto;
             } catch (Exception e) {
                 logger.error("获取批次{}状态失败", batchId, e);
                 throw e;
@@ -468,7 +504,9 @@ public class AnswerGenerationServiceImpl implements AnswerGenerationService {
             try {
                 ModelAnswerRun run = runRepository.findById(runId)
                     .orElseThrow(() -> new EntityNotFoundException("找不到指定的运行: " + runId));
-                return convertToDTO(run);
+                ModelAnswerRunDTO dto = convertToDTO(run);
+                dto.setCallUsage(usageAggregator.getRunUsage(run));
+                return dto;
             } catch (Exception e) {
                 logger.error("获取运行{}状态失败", runId, e);
                 throw e;
@@ -624,10 +662,11 @@ public class AnswerGenerationServiceImpl implements AnswerGenerationService {
             }
             
             // 使用乐观锁和处理实例标记，确保只有一个进程能处理该批次
-            String processingInstance = UUID.randomUUID().toString();
+            // 同时刷新租约心跳，避免提交处理任务前被其他实例判定为过期而接管
+            String processingInstance = batchLeaseManager.getInstanceId();
             int updated = jdbcTemplate.update(
                 "UPDATE answer_generation_batches SET status = 'GENERATING_ANSWERS', last_activity_time = ?, " +
-                "processing_instance = ? WHERE id = ? AND status = 'PAUSED' AND " + 
+                "processing_instance = ?, last_check_time = NOW() WHERE id = ? AND status = 'PAUSED' AND " + 
                 "(processing_instance IS NULL OR processing_instance = '')",
                 LocalDateTime.now(), processingInstance, batchId);
                 
@@ -653,22 +692,13 @@ public class AnswerGenerationServiceImpl implements AnswerGenerationService {
             
             try {
                 // 启动一个新线程执行批次处理任务
+                // 处理任务持有处理权租约，结束时自行释放
                 taskExecutor.submit(() -> {
                     try {
                         answerGenerationTask.startBatchAnswerGeneration(batchId);
                         logger.info("批次{}处理任务完成", batchId);
                     } catch (Exception e) {
                         logger.error("批次{}处理任务执行失败: {}", batchId, e.getMessage(), e);
-                    } finally {
-                        // 任务结束后清除处理标记
-                        try {
-                            jdbcTemplate.update(
-                                "UPDATE answer_generation_batches SET processing_instance = NULL WHERE id = ? AND processing_instance = ?",
-                                batchId, processingInstance);
-                            logger.info("批次{}处理完成，已清除处理标记", batchId);
-                        } catch (Exception ex) {
-                            logger.error("清除批次{}处理标记时出错", batchId, ex);
-                        }
                     }
                 });
             } catch (Exception e) {
@@ -700,89 +730,17 @@ public class AnswerGenerationServiceImpl implements AnswerGenerationService {
             return result;
         }
         
+        // 未过期的后台探测结果直接使用，其余模型由健康监控以有限并发探测
+        List<ModelHealth> healthList = modelHealthMonitor.getHealth(allModels);
+        
         Map<String, Object> result = new HashMap<>();
         List<Map<String, Object>> modelResults = new ArrayList<>();
         int passedCount = 0;
-        int failedCount = 0;
-        
-        // 创建线程池并行测试所有模型
-        ExecutorService executor = Executors.newFixedThreadPool(Math.min(allModels.size(), 5));
-        List<CompletableFuture<Map<String, Object>>> futures = new ArrayList<>();
-        
-        // 提交所有测试任务
-        for (LlmModel model : allModels) {
-            CompletableFuture<Map<String, Object>> future = CompletableFuture.supplyAsync(() -> {
-                Map<String, Object> modelResult = new HashMap<>();
-                modelResult.put("modelId", model.getId());
-                modelResult.put("modelName", model.getName());
-                modelResult.put("provider", model.getProvider());
-                modelResult.put("apiEndpoint", model.getApiUrl());
-                
-                long modelStartTime = System.currentTimeMillis();
-                try {
-                    // 测试模型连通性，传入模型名称
-                    boolean connected = llmApiService.testModelConnectivity(
-                        model.getApiUrl(),
-                        model.getApiKey(),
-                        model.getApiType(),
-                        model.getName()  // 传入模型表中的模型名称
-                    );
-                    
-                    long responseTime = System.currentTimeMillis() - modelStartTime;
-                    modelResult.put("connected", connected);
-                    modelResult.put("responseTime", responseTime);
-                    
-                    if (!connected) {
-                        modelResult.put("error", "API测试失败");
-                    }
-                    
-                    return modelResult;
-                } catch (Exception e) {
-                    long responseTime = System.currentTimeMillis() - modelStartTime;
-                    modelResult.put("connected", false);
-                    modelResult.put("responseTime", responseTime);
-                    modelResult.put("error", e.getMessage());
-                    return modelResult;
-                }
-            }, executor);
-            
-            futures.add(future);
-        }
-        
-        // 收集所有测试结果
-        for (int i = 0; i < allModels.size(); i++) {
-            try {
-                // 设置合理的超时时间
-                int timeoutSeconds = getModelTimeoutSeconds(allModels.get(i));
-                Map<String, Object> modelResult = futures.get(i).get(timeoutSeconds, TimeUnit.SECONDS);
-                modelResults.add(modelResult);
-                
-                if ((Boolean)modelResult.get("connected")) {
-                    passedCount++;
-                } else {
-                    failedCount++;
-                }
-            } catch (Exception e) {
-                Map<String, Object> modelResult = new HashMap<>();
-                modelResult.put("modelId", allModels.get(i).getId());
-                modelResult.put("modelName", allModels.get(i).getName());
-                modelResult.put("provider", allModels.get(i).getProvider());
-                modelResult.put("connected", false);
-                modelResult.put("error", "测试超时或异常: " + e.getMessage());
-                modelResults.add(modelResult);
-                failedCount++;
-            }
-        }
-        
-        // 关闭线程池
-        executor.shutdown();
-        try {
-            if (!executor.awaitTermination(120, TimeUnit.SECONDS)) {
-                executor.shutdownNow();
+        for (ModelHealth health : healthList) {
+            modelResults.add(health.toResult());
+            if (health.isConnected()) {
+                passedCount++;
             }
-        } catch (InterruptedException e) {
-            executor.shutdownNow();
-            Thread.currentThread().interrupt();
         }
         
         // 组装最终结果
@@ -791,7 +749,7 @@ public class AnswerGenerationServiceImpl implements AnswerGenerationService {
         result.put("timestamp", System.currentTimeMillis());
         result.put("totalModels", allModels.size());
         result.put("passedModels", passedCount);
-        result.put("failedModels", failedCount);
+        result.put("failedModels", allModels.size() - passedCount);
         result.put("testDuration", testDuration);
         result.put("modelResults", modelResults);
         
@@ -801,44 +759,17 @@ public class AnswerGenerationServiceImpl implements AnswerGenerationService {
     @Override
     public Map<String, Object> testModelConnectivity(Long modelId) {
         logger.info("测试模型{}连通性", modelId);
-        long startTime = System.currentTimeMillis();
         
         // 获取指定模型
         LlmModel model = llmModelRepository.findById(modelId)
                 .orElseThrow(() -> new EntityNotFoundException("找不到指定的模型(ID: " + modelId + ")"));
         
-        Map<String, Object> result = new HashMap<>();
-        result.put("modelId", model.getId());
-        result.put("modelName", model.getName());
-        result.put("provider", model.getProvider());
-        result.put("apiEndpoint", model.getApiUrl());
+        // 单个模型的测试总是重新探测，结果同时更新健康缓存
+        ModelHealth health = modelHealthMonitor.probeNow(model);
+        Map<String, Object> result = health.toResult();
+        result.put("success", health.isConnected());
         result.put("timestamp", System.currentTimeMillis());
         
-        try {
-            // 测试模型连通性，传入模型名称
-            boolean connected = llmApiService.testModelConnectivity(
-                model.getApiUrl(),
-                model.getApiKey(),
-                model.getApiType(),
-                model.getName()  // 传入模型表中的模型名称
-            );
-            
-            long responseTime = System.currentTimeMillis() - startTime;
-            result.put("connected", connected);
-            result.put("responseTime", responseTime);
-            result.put("success", connected);
-            
-            if (!connected) {
-                result.put("error", "API测试失败");
-            }
-        } catch (Exception e) {
-            long responseTime = System.currentTimeMillis() - startTime;
-            result.put("connected", false);
-            result.put("responseTime", responseTime);
-            result.put("success", false);
-            result.put("error", e.getMessage());
-        }
-        
         return result;
     }
     
@@ -874,104 +805,31 @@ public class AnswerGenerationServiceImpl implements AnswerGenerationService {
         
         List<LlmModel> models = new ArrayList<>(modelsMap.values());
         
+        // 未过期的后台探测结果直接使用，其余模型由健康监控以有限并发探测
+        List<ModelHealth> healthList = modelHealthMonitor.getHealth(models);
+        
         Map<String, Object> result = new HashMap<>();
         List<Map<String, Object>> modelResults = new ArrayList<>();
         int passedCount = 0;
-        int failedCount = 0;
-        
-        // 创建线程池并行测试所有模型
-        ExecutorService executor = Executors.newFixedThreadPool(Math.min(models.size(), 5));
-        List<CompletableFuture<Map<String, Object>>> futures = new ArrayList<>();
-        
-        // 提交所有测试任务
-        for (LlmModel model : models) {
-            CompletableFuture<Map<String, Object>> future = CompletableFuture.supplyAsync(() -> {
-                Map<String, Object> modelResult = new HashMap<>();
-                modelResult.put("modelId", model.getId());
-                modelResult.put("modelName", model.getName());
-                modelResult.put("provider", model.getProvider());
-                modelResult.put("apiEndpoint", model.getApiUrl());
-                
-                long modelStartTime = System.currentTimeMillis();
-                try {
-                    // 测试模型连通性，传入模型名称
-                    boolean connected = llmApiService.testModelConnectivity(
-                        model.getApiUrl(),
-                        model.getApiKey(),
-                        model.getApiType(),
-                        model.getName()  // 传入模型表中的模型名称
-                    );
-                    
-                    long responseTime = System.currentTimeMillis() - modelStartTime;
-                    modelResult.put("connected", connected);
-                    modelResult.put("responseTime", responseTime);
-                    
-                    if (!connected) {
-                        modelResult.put("error", "API测试失败");
-                    }
-                    
-                    // 查找使用该模型的运行
-                    List<ModelAnswerRun> modelRuns = runs.stream()
-                        .filter(run -> run.getLlmModel().getId().equals(model.getId()))
-                        .collect(Collectors.toList());
-                    
-                    List<Map<String, Object>> runInfos = new ArrayList<>();
-                    for (ModelAnswerRun run : modelRuns) {
-                        Map<String, Object> runInfo = new HashMap<>();
-                        runInfo.put("runId", run.getId());
-                        runInfo.put("runName", run.getRunName());
-                        runInfo.put("status", run.getStatus());
-                        runInfos.add(runInfo);
-                    }
-                    modelResult.put("runs", runInfos);
-                    
-                    return modelResult;
-                } catch (Exception e) {
-                    long responseTime = System.currentTimeMillis() - modelStartTime;
-                    modelResult.put("connected", false);
-                    modelResult.put("responseTime", responseTime);
-                    modelResult.put("error", e.getMessage());
-                    return modelResult;
-                }
-            }, executor);
+        for (ModelHealth health : healthList) {
+            Map<String, Object> modelResult = health.toResult();
+            if (health.isConnected()) {
+                passedCount++;
+            }
             
-            futures.add(future);
-        }
-        
-        // 收集所有测试结果
-        for (int i = 0; i < models.size(); i++) {
-            try {
-                // 设置合理的超时时间
-                int timeoutSeconds = getModelTimeoutSeconds(models.get(i));
-                Map<String, Object> modelResult = futures.get(i).get(timeoutSeconds, TimeUnit.SECONDS);
-                modelResults.add(modelResult);
-                
-                if ((Boolean)modelResult.get("connected")) {
-                    passedCount++;
-                } else {
-                    failedCount++;
+            // 查找使用该模型的运行
+            List<Map<String, Object>> runInfos = new ArrayList<>();
+            for (ModelAnswerRun run : runs) {
+                if (run.getLlmModel().getId().equals(health.getModelId())) {
+                    Map<String, Object> runInfo = new HashMap<>();
+                    runInfo.put("runId", run.getId());
+                    runInfo.put("runName", run.getRunName());
+                    runInfo.put("status", run.getStatus());
+                    runInfos.add(runInfo);
                 }
-            } catch (Exception e) {
-                Map<String, Object> modelResult = new HashMap<>();
-                modelResult.put("modelId", models.get(i).getId());
-                modelResult.put("modelName", models.get(i).getName());
-                modelResult.put("provider", models.get(i).getProvider());
-                modelResult.put("connected", false);
-                modelResult.put("error", "测试超时或异常: " + e.getMessage());
-                modelResults.add(modelResult);
-                failedCount++;
-            }
-        }
-        
-        // 关闭线程池
-        executor.shutdown();
-        try {
-            if (!executor.awaitTermination(120, TimeUnit.SECONDS)) {
-                executor.shutdownNow();
             }
-        } catch (InterruptedException e) {
-            executor.shutdownNow();
-            Thread.currentThread().interrupt();
+            modelResult.put("runs", runInfos);
+            modelResults.add(modelResult);
         }
         
         // 组装最终结果
@@ -983,7 +841,7 @@ public class AnswerGenerationServiceImpl implements AnswerGenerationService {
         result.put("timestamp", System.currentTimeMillis());
         result.put("totalModels", models.size());
         result.put("passedModels", passedCount);
-        result.put("failedModels", failedCount);
+        result.put("failedModels", models.size() - passedCount);
         result.put("testDuration", testDuration);
         result.put("modelResults", modelResults);
         
@@ -1089,6 +947,8 @@ public class AnswerGenerationServiceImpl implements AnswerGenerationService {
         dto.setPauseTime(batch.getPauseTime());
         dto.setPauseReason(batch.getPauseReason());
         dto.setAnswerRepeatCount(batch.getAnswerRepeatCount());
+        dto.setPriority(batch.getPriority());
+        dto.setExecutionMode(batch.getExecutionMode() != null ? batch.getExecutionMode().name() : null);
         
         // 添加上次处理的运行ID
         if (batch.getLastProcessedRunId() != null) {
@@ -1099,54 +959,90 @@ public class AnswerGenerationServiceImpl implements AnswerGenerationService {
     }
     
     private ModelAnswerRunDTO convertToDTO(ModelAnswerRun run) {
-        // 待实现
-        return null;
+        if (run == null) {
+            return null;
+        }
+        
+        ModelAnswerRunDTO dto = new ModelAnswerRunDTO();
+        dto.setId(run.getId());
+        
+        if (run.getAnswerGenerationBatch() != null) {
+            dto.setAnswerGenerationBatchId(run.getAnswerGenerationBatch().getId());
+            dto.setBatchName(run.getAnswerGenerationBatch().getName());
+        }
+        
+        if (run.getLlmModel() != null) {
+            dto.setLlmModelId(run.getLlmModel().getId());
+            dto.setModelName(run.getLlmModel().getName());
+            dto.setModelProvider(run.getLlmModel().getProvider());
+        }
+        
+        dto.setRunName(run.getRunName());
+        dto.setRunDescription(run.getRunDescription());
+        dto.setRunIndex(run.getRunIndex());
+        dto.setRunTime(run.getRunTime());
+        dto.setStatus(run.getStatus());
+        dto.setParameters(run.getParameters());
+        dto.setErrorMessage(run.getErrorMessage());
+        
+        if (run.getCreatedByUser() != null) {
+            dto.setCreatedByUserId(run.getCreatedByUser().getId());
+            dto.setCreatedByUsername(run.getCreatedByUser().getUsername());
+        }
+        
+        dto.setProgressPercentage(run.getProgressPercentage());
+        dto.setLastActivityTime(run.getLastActivityTime());
+        dto.setResumeCount(run.getResumeCount());
+        dto.setPauseTime(run.getPauseTime());
+        dto.setPauseReason(run.getPauseReason());
+        dto.setCompletedQuestionsCount(run.getCompletedQuestionsCount());
+        dto.setTotalQuestionsCount(run.getTotalQuestionsCount());
+        dto.setFailedQuestionsCount(run.getFailedQuestionsCount());
+        dto.setFailedQuestionsIds(run.getFailedQuestionsIds());
+        dto.setLastProcessedQuestionId(run.getLastProcessedQuestionId());
+        dto.setLastProcessedQuestionIndex(run.getLastProcessedQuestionIndex());
+        
+        // 处理中的运行以进度聚合器中的实时计数为准，数据库中的值最多落后一个刷新间隔
+        ProgressSnapshot live = progressAggregator.getLiveProgress(run.getId());
+        if (live != null) {
+            dto.setCompletedQuestionsCount(live.getCompletedQuestions());
+            dto.setFailedQuestionsCount(live.getFailedQuestions());
+            dto.setTotalQuestionsCount(live.getTotalQuestions());
+            if (live.getFailedQuestionIds() != null) {
+                dto.setFailedQuestionsIds(live.getFailedQuestionIds());
+            }
+            dto.setLastProcessedQuestionId(live.getCheckpointQuestionId());
+            dto.setLastProcessedQuestionIndex(live.getCheckpointIndex());
+            dto.setProgressPercentage(live.getProgressPercentage());
+            if (live.getLastActivityTime() != null) {
+                dto.setLastActivityTime(live.getLastActivityTime());
+            }
+        }
+        
+        return dto;
     }
     
     /**
-     * 根据模型类型获取适当的超时时间（秒）
-     * @param model 模型
-     * @return 超时时间（秒）
+     * 用各运行的实时进度计算批次总体进度（各运行进度的平均值）
      */
-    private int getModelTimeoutSeconds(LlmModel model) {
-        // 默认超时时间为60秒
-        int timeout = 600;
-        
-        if (model == null || model.getName() == null) {
-            return timeout;
+    private void applyLiveProgress(AnswerGenerationBatchDTO dto, List<ModelAnswerRun> runs) {
+        if (runs.isEmpty()) {
+            return;
         }
         
-        String modelName = model.getName().toLowerCase();
-        String provider = model.getProvider() != null ? model.getProvider().toLowerCase() : "";
-        
-        // 根据模型名称和提供商设置不同的超时时间
-        if (modelName.contains("gpt-4") || modelName.contains("gpt4")) {
-            // GPT-4系列模型超时时间较长
-            timeout = 900;
-        } else if (modelName.contains("claude")) {
-            // Claude模型超时时间
-            timeout = 750;
-        } else if (modelName.contains("gpt-3.5") || modelName.contains("gpt3")) {
-            // GPT-3.5模型
-            timeout = 450;
-        } else if (provider.contains("anthropic")) {
-            // Anthropic其他模型
-            timeout = 750;
-        } else if (provider.contains("openai")) {
-            // OpenAI其他模型
-            timeout = 600;
-        } else if (modelName.contains("gemini") || modelName.contains("palm")) {
-            // Google模型
-            timeout = 600;
-        } else if (modelName.contains("llama") || modelName.contains("mixtral")) {
-            // 开源大型模型
-            timeout = 900;
+        BigDecimal totalProgress = BigDecimal.ZERO;
+        for (ModelAnswerRun run : runs) {
+            ProgressSnapshot live = progressAggregator.getLiveProgress(run.getId());
+            BigDecimal progress = live != null ? live.getProgressPercentage() : run.getProgressPercentage();
+            if (progress != null) {
+                totalProgress = totalProgress.add(progress);
+            }
+            if (live != null && live.getLastActivityTime() != null
+                    && (dto.getLastActivityTime() == null || live.getLastActivityTime().isAfter(dto.getLastActivityTime()))) {
+                dto.setLastActivityTime(live.getLastActivityTime());
+            }
         }
         
-        // 可以从配置中读取更精确的超时设置
-        // TODO: 从配置文件中读取模型特定的超时时间
-        
-        logger.debug("模型 {} 设置的测试超时时间为 {}秒", model.getName(), timeout);
-        return timeout;
+        dto.setProgressPercentage(totalProgress.divide(BigDecimal.valueOf(runs.size()), 2, java.math.RoundingMode.HALF_UP));
     }
 }
\ No newline at end of file
@@ -18,7 +18,6 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -29,16 +28,13 @@ import org.redisson.api.RedissonClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
@@ -46,8 +42,8 @@ import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.client.RestTemplate;
 
+import com.example.demo.dto.LlmCallResult;
 import com.example.demo.dto.Option;
 import com.example.demo.entity.jdbc.Evaluation;
 import com.example.demo.entity.jdbc.Evaluation.EvaluationStatus;
@@ -71,6 +67,9 @@ import com.example.demo.entity.jdbc.StandardSubjectiveAnswer;
 import com.example.demo.entity.jdbc.Tag;
 import com.example.demo.entity.jdbc.User;
 import com.example.demo.exception.EntityNotFoundException;
+import com.example.demo.gateway.LlmGateway;
+import com.example.demo.gateway.LlmGatewayRequest;
+import com.example.demo.gateway.LlmGatewayRequest.Purpose;
 import com.example.demo.repository.jdbc.EvaluationCriterionRepository;
 import com.example.demo.repository.jdbc.EvaluationDetailRepository;
 import com.example.demo.repository.jdbc.EvaluationPromptAssemblyConfigRepository;
@@ -116,8 +115,15 @@ public class EvaluationServiceImpl implements EvaluationService {
     // 不再需要AnswerScoreRepository
     private final LlmModelRepository llmModelRepository;
     
-    // 线程池用于异步执行评测任务
-    private final ExecutorService evaluationExecutor = Executors.newFixedThreadPool(5);
+    // 虚拟线程执行器用于异步执行评测任务
+    private final ExecutorService evaluationExecutor;
+    
+    // 评测模型的系统提示
+    private static final String JUDGE_SYSTEM_PROMPT = "你是一位专业的评测专家，负责评估答案的质量。请严格按照用户要求的JSON格式返回评测结果，确保'总分'字段在JSON的最外层，且值为0-100之间的数字。";
+    // 未配置评测模型时使用的默认API端点
+    private static final String DEFAULT_JUDGE_API_URL = "https://api.openai.com/v1/chat/completions";
+    // 评测结果中记录裁判模型调用指标的键，保存评测时写入evaluations表的对应列
+    private static final String CALL_METRICS_KEY = "call_metrics";
     
     // AI服务配置
     @Value("${ai.service.url:}")
@@ -129,7 +135,8 @@ public class EvaluationServiceImpl implements EvaluationService {
     @Value("${ai.service.model:}")
     private String aiServiceModel;
     
-    private final RestTemplate restTemplate;
+    // 评测模型调用经过统一的LLM网关
+    private final LlmGateway llmGateway;
     
     // 添加Redis相关依赖
     private final RedisTemplate<String, String> redisTemplate;
@@ -154,10 +161,11 @@ public class EvaluationServiceImpl implements EvaluationService {
             StandardQuestionRepository standardQuestionRepository,
             StandardSubjectiveAnswerRepository standardSubjectiveAnswerRepository,
             LlmModelRepository llmModelRepository,
-            RestTemplate restTemplate,
+            LlmGateway llmGateway,
             RedisTemplate<String, String> redisTemplate,
             RedissonClient redissonClient,
-            JdbcTemplate jdbcTemplate) {
+            JdbcTemplate jdbcTemplate,
+            @Qualifier("evaluationExecutor") ExecutorService evaluationExecutor) {
         this.evaluationRepository = evaluationRepository;
         this.evaluatorRepository = evaluatorRepository;
         this.userRepository = userRepository;
@@ -174,10 +182,11 @@ public class EvaluationServiceImpl implements EvaluationService {
         this.standardQuestionRepository = standardQuestionRepository;
         this.standardSubjectiveAnswerRepository = standardSubjectiveAnswerRepository;
         this.llmModelRepository = llmModelRepository;
-        this.restTemplate = restTemplate;
+        this.llmGateway = llmGateway;
         this.redisTemplate = redisTemplate;
         this.redissonClient = redissonClient;
         this.jdbcTemplate = jdbcTemplate;
+        this.evaluationExecutor = evaluationExecutor;
         this.objectMapper = new ObjectMapper();
         objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
     }
@@ -549,7 +558,8 @@ public class EvaluationServiceImpl implements EvaluationService {
             }
             
             // 调用AI服务进行评测
-            String aiResponse = callAIService(prompt, evaluator.getLlmModel().getId());
+            LlmCallResult judgeCall = callAIService(prompt, evaluator.getLlmModel().getId());
+            String aiResponse = judgeCall.getText();
             
             // 将完整的AI回复记录到日志中
             logger.info("\n========== AI评测回复 ==========\n{}\n==================================", aiResponse);
@@ -620,6 +630,10 @@ public class EvaluationServiceImpl implements EvaluationService {
             result.put("comments", comments != null ? comments : "无评语");
             result.put("raw_ai_response", aiResponse);
             result.put("criteria_scores", aiResult.get("criteria_scores"));
+            Map<String, Object> callMetrics = toCallMetrics(judgeCall);
+            if (callMetrics != null) {
+                result.put(CALL_METRICS_KEY, callMetrics);
+            }
             
         } catch (Exception e) {
             logger.error("AI评测主观题失败", e);
@@ -683,7 +697,8 @@ public class EvaluationServiceImpl implements EvaluationService {
             }
             
             // 调用AI服务进行评测
-            String aiResponse = callAIService(prompt, evaluator.getLlmModel().getId());
+            LlmCallResult judgeCall = callAIService(prompt, evaluator.getLlmModel().getId());
+            String aiResponse = judgeCall.getText();
             
             // 将完整的AI回复记录到日志中
             logger.info("\n========== AI评测回复 ==========\n{}\n==================================", aiResponse);
@@ -754,6 +769,10 @@ public class EvaluationServiceImpl implements EvaluationService {
             result.put("comments", comments != null ? comments : "无评语");
             result.put("raw_ai_response", aiResponse);
             result.put("criteria_scores", aiResult.get("criteria_scores"));
+            Map<String, Object> callMetrics = toCallMetrics(judgeCall);
+            if (callMetrics != null) {
+                result.put(CALL_METRICS_KEY, callMetrics);
+            }
             
         } catch (Exception e) {
             logger.error("AI评测主观题失败", e);
@@ -767,111 +786,28 @@ public class EvaluationServiceImpl implements EvaluationService {
     
     /**
      * 调用AI服务进行评测
+     * 评测模型的调用经过LLM网关，与回答生成共享连接池、提供商配额、重试策略和调用指标
      */
-    private String callAIService(String prompt, Long modelId) {
+    private LlmCallResult callAIService(String prompt, Long modelId) {
         try {
-            // 获取模型信息
-            LlmModel llmModel = null;
-            if (modelId != null) {
-                // 从数据库中获取指定ID的LlmModel对象
-                llmModel = llmModelRepository.findById(modelId)
-                    .orElse(null);
-                if (llmModel != null) {
-                    logger.info("找到模型: {}, API URL: {}", llmModel.getName(), llmModel.getApiUrl());
-                } else {
-                    logger.warn("未找到ID为{}的模型", modelId);
-                }
-            }
-            
-            // 确定API URL和密钥
-            String apiUrl = null;
-            String apiKey = null;
-            String model = null;
-            String apiType = "openai_compatible"; // 默认为OpenAI兼容格式
+            LlmGatewayRequest request = buildJudgeRequest(prompt, modelId, aiServiceUrl);
             
-            if (llmModel != null && llmModel.getApiUrl() != null && !llmModel.getApiUrl().isEmpty()) {
-                apiUrl = llmModel.getApiUrl();
-                apiKey = llmModel.getApiKey();
-                model = llmModel.getName();
-                apiType = llmModel.getApiType() != null ? llmModel.getApiType() : apiType;
-            } else {
-                // 使用配置的默认值
-                apiUrl = aiServiceUrl;
-                apiKey = aiServiceApiKey;
-                model = aiServiceModel;
-            }
+            logger.info("API URL: {}, 模型: {}", request.getApiUrl(), request.getModel());
             
-            // 补全API URL路径
-            apiUrl = buildApiUrl(apiUrl, apiType);
-            
-            logger.info("API URL: {}, 模型: {}", apiUrl, model);
-            
-            if (apiUrl == null || apiUrl.isEmpty() || apiKey == null || apiKey.isEmpty() || model == null || model.isEmpty()) {
+            if (isBlank(request.getApiUrl()) || isBlank(request.getApiKey()) || isBlank(request.getModel())) {
                 logger.warn("AI服务配置不完整，使用直接调用大模型");
                 return executeAIEvaluation(prompt, modelId);
             }
             
-            // 准备请求头
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.setBearerAuth(apiKey);
-            
-            // 准备请求体
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("model", model);
-            
-            // 构建消息列表
-            List<Map<String, String>> messages = new ArrayList<>();
-            
-            // 添加系统消息
-            Map<String, String> systemMessage = new HashMap<>();
-            systemMessage.put("role", "system");
-            systemMessage.put("content", "你是一位专业的评测专家，负责评估答案的质量。请严格按照用户要求的JSON格式返回评测结果，确保'总分'字段在JSON的最外层，且值为0-100之间的数字。");
-            messages.add(systemMessage);
-            
-            // 添加用户消息
-            Map<String, String> userMessage = new HashMap<>();
-            userMessage.put("role", "user");
-            userMessage.put("content", prompt);
-            messages.add(userMessage);
-            
-            requestBody.put("messages", messages);
-            requestBody.put("temperature", 0.2);
-            requestBody.put("max_tokens", 2000);
-            
-            // 发送请求
-            HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
-            
-            // 打印完整请求内容
-            try {
-                String requestJson = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(requestBody);
-                logger.info("\n========== 评测请求内容 ==========");
-                logger.info("请求URL: " + apiUrl);
-                logger.info("请求头: Authorization: Bearer " + (apiKey != null ? apiKey.substring(0, 3) + "..." : "null"));
-                logger.info("请求体: \n" + requestJson);
-                logger.info("====================================\n");
-            } catch (Exception e) {
-                logger.error("打印请求内容失败: {}", e.getMessage());
-            }
-            
             try {
-                logger.info("正在向AI服务发送请求: {}", apiUrl);
-                ResponseEntity<Map> response = restTemplate.postForEntity(apiUrl, request, Map.class);
-                
-                // 处理响应
-                if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                    Map responseBody = response.getBody();
-                    List<Map<String, Object>> choices = (List<Map<String, Object>>) responseBody.get("choices");
-                    if (choices != null && !choices.isEmpty()) {
-                        Map<String, Object> message = (Map<String, Object>) choices.get(0).get("message");
-                        if (message != null && message.containsKey("content")) {
-                            String content = (String) message.get("content");
-                            logger.info("大模型评测成功，返回内容长度: {}", content.length());
-                            // 将AI回复内容完整记录到日志
-                            logger.info("\n========== 大模型评测回复内容 ==========\n{}\n=======================================", content);
-                            return content;
-                        }
-                    }
+                logger.info("正在向AI服务发送请求: {}", request.getApiUrl());
+                LlmCallResult result = llmGateway.call(request);
+                String content = result.getText();
+                if (!isBlank(content)) {
+                    logger.info("大模型评测成功，返回内容长度: {}", content.length());
+                    // 将AI回复内容完整记录到日志
+                    logger.info("\n========== 大模型评测回复内容 ==========\n{}\n=======================================", content);
+                    return result;
                 }
                 
                 logger.warn("AI服务返回无效响应，使用直接调用大模型");
@@ -890,164 +826,67 @@ public class EvaluationServiceImpl implements EvaluationService {
     }
     
     /**
-     * 根据API类型和基础URL构建完整的API端点URL
+     * 构建评测请求：优先使用数据库中的模型配置，否则使用配置的默认值
+     * 
+     * @param defaultApiUrl 模型未配置API地址时使用的地址
      */
-    private String buildApiUrl(String baseUrl, String apiType) {
-        if (baseUrl == null || baseUrl.isEmpty()) {
-            return baseUrl;
-        }
-        
-        // 移除URL末尾的斜杠
-        baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
-        
-        // 如果apiType为空，尝试从URL判断API类型
-        if (apiType == null || apiType.isEmpty()) {
-            if (baseUrl.contains("openai.com")) {
-                apiType = "openai";
-            } else if (baseUrl.contains("anthropic.com")) {
-                apiType = "anthropic";
-            } else if (baseUrl.contains("baidu.com") || baseUrl.contains("wenxin")) {
-                apiType = "baidu";
-            } else if (baseUrl.contains("aliyun") || baseUrl.contains("tongyi") || baseUrl.contains("dashscope")) {
-                apiType = "aliyun";
-            } else if (baseUrl.contains("zhipu") || baseUrl.contains("chatglm")) {
-                apiType = "zhipu";
-            } else if (baseUrl.contains("azure")) {
-                apiType = "azure";
+    private LlmGatewayRequest buildJudgeRequest(String prompt, Long modelId, String defaultApiUrl) {
+        // 获取模型信息
+        LlmModel llmModel = null;
+        if (modelId != null) {
+            llmModel = llmModelRepository.findById(modelId).orElse(null);
+            if (llmModel != null) {
+                logger.info("找到模型: {}, API URL: {}", llmModel.getName(), llmModel.getApiUrl());
             } else {
-                apiType = "openai_compatible"; // 默认为OpenAI兼容格式
+                logger.warn("未找到ID为{}的模型", modelId);
             }
         }
         
-        // 根据API类型返回不同的端点路径
-        switch (apiType.toLowerCase()) {
-            case "openai":
-            case "openai_compatible":
-                // 检查是否已包含完整路径
-                if (baseUrl.endsWith("/chat/completions") || baseUrl.endsWith("/v1/chat/completions")) {
-                    return baseUrl;
-                }
-                return baseUrl + "/v1/chat/completions";
-            case "anthropic":
-                return baseUrl + "/v1/messages";
-            case "baidu":
-                return baseUrl + "/rpc/2.0/ai_custom/v1/wenxinworkshop/chat/completions";
-            case "aliyun":
-            case "tongyi":
-            case "dashscope":
-                return baseUrl + "/v1/services/aigc/text-generation/generation";
-            case "zhipu":
-            case "glm":
-            case "chatglm":
-                return baseUrl + "/v1/chat/completions";
-            case "azure":
-                // Azure OpenAI API通常需要在URL中包含部署ID
-                if (baseUrl.contains("deployments")) {
-                    return baseUrl;
-                } else {
-                    return baseUrl + "/deployments/{deployment-id}/chat/completions?api-version=2023-07-01-preview";
-                }
-            default:
-                return baseUrl + "/v1/chat/completions"; // 默认使用OpenAI格式
+        LlmGatewayRequest request;
+        if (llmModel != null && !isBlank(llmModel.getApiUrl())) {
+            request = LlmGatewayRequest.forModel(llmModel, prompt, null, Purpose.JUDGE);
+        } else {
+            // 使用配置的默认值
+            request = new LlmGatewayRequest();
+            request.setPurpose(Purpose.JUDGE);
+            request.setApiType("openai_compatible");
+            request.setApiUrl(defaultApiUrl);
+            request.setApiKey(aiServiceApiKey);
+            request.setModel(aiServiceModel);
+            request.setPrompt(prompt);
         }
+        request.setSystemPrompt(JUDGE_SYSTEM_PROMPT);
+        // 低温度，增加输出的确定性；足够长的输出
+        request.getParameters().put("temperature", 0.2);
+        request.getParameters().put("max_tokens", 2000);
+        // 评测调用对尾延迟敏感，允许在预算内发出对冲请求
+        request.setHedgingAllowed(true);
+        return request;
+    }
+    
+    private static boolean isBlank(String value) {
+        return value == null || value.isEmpty();
     }
     
     /**
      * 执行AI评测（调用大语言模型API）
      */
-    private String executeAIEvaluation(String prompt, Long modelId) {
+    private LlmCallResult executeAIEvaluation(String prompt, Long modelId) {
         try {
             logger.info("调用真实大模型进行评测，提示词长度: {}", prompt.length());
             
-            // 从数据库获取模型信息
-            LlmModel llmModel = null;
-            if (modelId != null) {
-                llmModel = llmModelRepository.findById(modelId)
-                    .orElse(null);
-            }
-            
-            // 获取API信息
-            String apiUrl = "https://api.openai.com/v1/chat/completions";  // 默认API端点
-            String apiKey = aiServiceApiKey;
-            String model = aiServiceModel;
-            String apiType = "openai_compatible"; // 默认为OpenAI兼容格式
-            
-            if (llmModel != null && llmModel.getApiUrl() != null && !llmModel.getApiUrl().isEmpty()) {
-                apiUrl = llmModel.getApiUrl();
-                apiKey = llmModel.getApiKey();
-                model = llmModel.getName();
-                apiType = llmModel.getApiType() != null ? llmModel.getApiType() : apiType;
-                logger.info("使用数据库中的模型配置: URL={}, 模型={}", apiUrl, model);
-            } else {
-                logger.info("使用默认配置: URL={}, 模型={}", apiUrl, model);
-            }
-            
-            // 补全API URL路径
-            apiUrl = buildApiUrl(apiUrl, apiType);
-            logger.info("完整API URL路径: {}", apiUrl);
-            
-            // 构建请求头
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.setBearerAuth(apiKey);
-            
-            // 构建请求体
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("model", model);
-            
-            List<Map<String, String>> messages = new ArrayList<>();
-            
-            // 添加系统消息
-            Map<String, String> systemMessage = new HashMap<>();
-            systemMessage.put("role", "system");
-            systemMessage.put("content", "你是一位专业的评测专家，负责评估答案的质量。请严格按照用户要求的JSON格式返回评测结果，确保'总分'字段在JSON的最外层，且值为0-100之间的数字。");
-            messages.add(systemMessage);
-            
-            // 添加用户消息
-            Map<String, String> userMessage = new HashMap<>();
-            userMessage.put("role", "user");
-            userMessage.put("content", prompt);
-            messages.add(userMessage);
-            
-            requestBody.put("messages", messages);
-            requestBody.put("temperature", 0.2); // 低温度，增加输出的确定性
-            requestBody.put("max_tokens", 2000); // 足够长的输出
-            
-            // 发送请求
-            HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
-            
-            // 打印完整请求内容
-            try {
-                String requestJson = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(requestBody);
-                logger.info("\n========== 评测请求内容 ==========");
-                logger.info("请求URL: " + apiUrl);
-                logger.info("请求头: Authorization: Bearer " + (apiKey != null ? apiKey.substring(0, 3) + "..." : "null"));
-                logger.info("请求体: \n" + requestJson);
-                logger.info("====================================\n");
-            } catch (Exception e) {
-                logger.error("打印请求内容失败: {}", e.getMessage());
-            }
+            LlmGatewayRequest request = buildJudgeRequest(prompt, modelId, DEFAULT_JUDGE_API_URL);
+            // 首次调用已按重试策略重试过，这里只再尝试一次
+            request.setMaxAttempts(1);
+            logger.info("使用模型配置: URL={}, 模型={}", request.getApiUrl(), request.getModel());
             
             try {
-                logger.info("发送请求到: {}", apiUrl);
-                ResponseEntity<Map> response = restTemplate.postForEntity(apiUrl, request, Map.class);
-                
-                if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                    Map responseBody = response.getBody();
-                    
-                    @SuppressWarnings("unchecked")
-                    List<Map<String, Object>> choices = (List<Map<String, Object>>) responseBody.get("choices");
-                    
-                    if (choices != null && !choices.isEmpty()) {
-                        Map<String, Object> choice = choices.get(0);
-                        Map<String, Object> message = (Map<String, Object>) choice.get("message");
-                        
-                        if (message != null && message.containsKey("content")) {
-                            String content = (String) message.get("content");
-                            logger.info("大模型评测成功，返回内容长度: {}", content.length());
-                            return content;
-                        }
-                    }
+                logger.info("发送请求到: {}", request.getApiUrl());
+                LlmCallResult result = llmGateway.call(request);
+                String content = result.getText();
+                if (!isBlank(content)) {
+                    logger.info("大模型评测成功，返回内容长度: {}", content.length());
+                    return result;
                 }
                 
                 logger.warn("大模型响应解析失败，返回默认评测结果");
@@ -1056,7 +895,7 @@ public class EvaluationServiceImpl implements EvaluationService {
             }
             
             // 如果API调用失败，返回默认JSON格式评测结果
-            return """
+            return fallbackJudgeResult("""
                 {
                   "总分": 75,
                   "criteria_scores": [
@@ -1067,12 +906,12 @@ public class EvaluationServiceImpl implements EvaluationService {
                   "overall_comments": "回答整体表现良好，展示了对主题的理解，但在某些方面还可以进一步完善。",
                   "improvement_suggestions": "建议增加更多具体例子来支持论点，并进一步阐述某些关键概念的细节。"
                 }
-                """;
+                """);
         } catch (Exception e) {
             logger.error("评测过程出现错误: {}", e.getMessage(), e);
             
             // 返回错误信息的JSON
-            return """
+            return fallbackJudgeResult("""
                 {
                   "总分": 50,
                   "criteria_scores": [
@@ -1082,10 +921,39 @@ public class EvaluationServiceImpl implements EvaluationService {
                   ",
                   "improvement_suggestions": "请重新提交评测请求"
                 }
-                """;
+                """);
         }
     }
     
+    /**
+     * 模型调用失败时的默认评测结果，没有调用指标
+     */
+    private static LlmCallResult fallbackJudgeResult(String text) {
+        LlmCallResult result = new LlmCallResult();
+        result.setText(text);
+        return result;
+    }
+    
+    /**
+     * 裁判模型调用的token用量、耗时和重试次数，以evaluations表的列名为键
+     * 
+     * @return 调用指标，默认评测结果（未实际调用模型）返回null
+     */
+    private static Map<String, Object> toCallMetrics(LlmCallResult result) {
+        if (result == null || result.getModelName() == null) {
+            return null;
+        }
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put(Evaluation.COLUMN_PROMPT_TOKENS, result.getPromptTokens());
+        metrics.put(Evaluation.COLUMN_COMPLETION_TOKENS, result.getCompletionTokens());
+        metrics.put(Evaluation.COLUMN_TOTAL_TOKENS, result.getTotalTokens());
+        metrics.put(Evaluation.COLUMN_LATENCY_MS, result.getLatencyMillis());
+        metrics.put(Evaluation.COLUMN_TTFT_MS, result.getTtftMillis());
+        metrics.put(Evaluation.COLUMN_RETRY_COUNT, result.getRetries());
+        metrics.put(Evaluation.COLUMN_FINISH_REASON, result.getFinishReason());
+        return metrics;
+    }
+    
     @Override
     public List<EvaluationDetail> getEvaluationDetails(Long evaluationId) {
         logger.info("获取评测详情，评测ID: {}", evaluationId);
@@ -1607,6 +1475,11 @@ public class EvaluationServiceImpl implements EvaluationService {
                     throw new IllegalArgumentException("不支持的问题类型: " + question.getQuestionType());
             }
             
+            // 裁判模型的调用指标写入单独的列，不保存在评测结果JSON中
+            @SuppressWarnings("unchecked")
+            Map<String, Object> callMetrics = evaluationResult.containsKey(CALL_METRICS_KEY)
+                    ? (Map<String, Object>) evaluationResult.remove(CALL_METRICS_KEY) : null;
+            
             // 更新评测记录
             BigDecimal score = new BigDecimal(evaluationResult.get("score").toString());
             evaluation.setScore(score);
@@ -1666,6 +1539,7 @@ public class EvaluationServiceImpl implements EvaluationService {
             evaluation.setScoringMethod(evaluator.getEvaluatorType() == Evaluator.EvaluatorType.HUMAN ? "HUMAN" : "AI_EVALUATION");
             
             evaluation = evaluationRepository.save(evaluation);
+            evaluationRepository.updateCallMetrics(evaluation.getId(), callMetrics);
             logger.info("成功保存评测记录，评测ID: {}, 回答ID: {}, 评测者ID: {}, 分数类型: {}", 
                     evaluation.getId(), llmAnswer.getId(), evaluatorId, scoreType);
             
@@ -5119,7 +4993,8 @@ public class EvaluationServiceImpl implements EvaluationService {
             if (evaluator.getLlmModel() != null) {
                 modelId = evaluator.getLlmModel().getId();
             }
-            String aiResponse = callAIService(prompt, modelId);
+            LlmCallResult judgeCall = callAIService(prompt, modelId);
+            String aiResponse = judgeCall.getText();
             
             // 解析AI响应
             Map<String, Object> evaluationResult = parseAIResponse(aiResponse);
@@ -5168,6 +5043,8 @@ public class EvaluationServiceImpl implements EvaluationService {
                         evaluationResult.getOrDefault("原始响应", "").toString(),
                         existingId);
                 
+                evaluationRepository.updateCallMetrics(existingId, toCallMetrics(judgeCall));
+                
                 // 删除旧的评测详情并保存新的
                 jdbcTemplate.update("DELETE FROM evaluation_details WHERE evaluation_id = ?", existingId);
                 saveEvaluationDetails(existingId, evaluationResult, criteria);
@@ -5214,6 +5091,7 @@ public class EvaluationServiceImpl implements EvaluationService {
                 }, keyHolder);
                 
                 Long evaluationId = keyHolder.getKey().longValue();
+                evaluationRepository.updateCallMetrics(evaluationId, toCallMetrics(judgeCall));
                 
                 // 保存评测详情到 EVALUATION_DETAILS 表
                 saveEvaluationDetails(evaluationId, evaluationResult, criteria);
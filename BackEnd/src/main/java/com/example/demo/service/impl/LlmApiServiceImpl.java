@@ -3,7 +3,6 @@ package com.example.demo.service.impl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
@@ -11,16 +10,24 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
-import com.example.demo.config.RestTemplateConfig;
+import com.example.demo.dto.LlmCallResult;
+import com.example.demo.gateway.LlmGateway;
+import com.example.demo.gateway.LlmGatewayRequest;
+import com.example.demo.gateway.LlmGatewayRequest.Purpose;
+import com.example.demo.manager.FairShareScheduler;
+import com.example.demo.manager.HttpClientRegistry;
 import com.example.demo.service.LlmApiService;
 import com.example.demo.entity.jdbc.LlmModel;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 
+import java.net.http.HttpResponse;
+import java.time.Duration;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
 
 /**
  * LLM API服务实现类
@@ -30,20 +37,23 @@ public class LlmApiServiceImpl implements LlmApiService {
     
     private static final Logger logger = LoggerFactory.getLogger(LlmApiServiceImpl.class);
     
+    // 连通性测试只请求几个token，不使用按完整回答学习到的超时
+    private static final Duration DEFAULT_CONNECTIVITY_TIMEOUT = Duration.ofSeconds(15);
+    
     private final RestTemplate restTemplate;
     private final ObjectMapper objectMapper;
-    private final RestTemplateConfig restTemplateConfig;
-    private final RestTemplateBuilder restTemplateBuilder;
+    private final HttpClientRegistry httpClientRegistry;
+    private final LlmGateway llmGateway;
     
     @Value("${llm.default-model:gpt-3.5-turbo}")
     private String defaultModelName;
     
     public LlmApiServiceImpl(RestTemplate restTemplate, ObjectMapper objectMapper, 
-                            RestTemplateConfig restTemplateConfig, RestTemplateBuilder restTemplateBuilder) {
+                            HttpClientRegistry httpClientRegistry, LlmGateway llmGateway) {
         this.restTemplate = restTemplate;
         this.objectMapper = objectMapper;
-        this.restTemplateConfig = restTemplateConfig;
-        this.restTemplateBuilder = restTemplateBuilder;
+        this.httpClientRegistry = httpClientRegistry;
+        this.llmGateway = llmGateway;
     }
     
     @Override
@@ -56,324 +66,25 @@ public class LlmApiServiceImpl implements LlmApiService {
         logger.debug("调用LLM API生成回答, URL: {}, API类型: {}", apiUrl, apiType);
         
         try {
-            // 根据API类型补全API路径
-            if (apiUrl != null && !apiUrl.isEmpty()) {
-                if (apiType != null) {
-                    switch (apiType.toLowerCase()) {
-                        case "openai":
-                        case "openai_compatible":
-                            // 检查并补全OpenAI API路径
-                            if (!apiUrl.endsWith("/v1/chat/completions")) {
-                                if (!apiUrl.endsWith("/v1")) {
-                                    apiUrl = apiUrl.endsWith("/") 
-                                        ? apiUrl + "v1/chat/completions" 
-                                        : apiUrl + "/v1/chat/completions";
-                                } else {
-                                    apiUrl = apiUrl + "/chat/completions";
-                                }
-                            }
-                            break;
-                        case "anthropic":
-                            // 检查并补全Anthropic API路径
-                            if (!apiUrl.endsWith("/v1/complete")) {
-                                apiUrl = apiUrl.endsWith("/") 
-                                    ? apiUrl + "v1/complete" 
-                                    : apiUrl + "/v1/complete";
-                            }
-                            break;
-                        case "google":
-                            // 检查并补全Google API路径
-                            if (!apiUrl.contains("/v1/models") && !apiUrl.contains("/generateContent")) {
-                                apiUrl = apiUrl.endsWith("/") 
-                                    ? apiUrl + "v1/models/gemini-pro:generateContent" 
-                                    : apiUrl + "/v1/models/gemini-pro:generateContent";
-                            }
-                            break;
-                    }
-                    logger.debug("完整API URL: {}", apiUrl);
-                }
-            }
-            
-            // 准备HTTP请求头
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            
-            if (apiKey != null && !apiKey.isEmpty()) {
-                // 根据API类型设置不同的认证头
-                if (apiType != null) {
-                    switch (apiType.toLowerCase()) {
-                        case "openai":
-                            headers.set("Authorization", "Bearer " + apiKey);
-                            break;
-                        case "openai_compatible":
-                            // OpenAI兼容类型，使用相同的认证方式
-                            headers.set("Authorization", "Bearer " + apiKey);
-                            break;
-                        case "azure":
-                            headers.set("api-key", apiKey);
-                            break;
-                        case "anthropic":
-                            headers.set("x-api-key", apiKey);
-                            break;
-                        case "google":
-                            headers.set("Authorization", "Bearer " + apiKey);
-                            break;
-                        default:
-                            // 默认Bearer认证
-                            headers.set("Authorization", "Bearer " + apiKey);
-                            break;
-                    }
-                } else {
-                    // 兼容旧代码，根据URL推断
-                    if (apiUrl.contains("openai.com")) {
-                        headers.set("Authorization", "Bearer " + apiKey);
-                    } else if (apiUrl.contains("azure.com")) {
-                        headers.set("api-key", apiKey);
-                    } else if (apiUrl.contains("anthropic.com")) {
-                        headers.set("x-api-key", apiKey);
-                    } else {
-                        // 默认Bearer认证
-                        headers.set("Authorization", "Bearer " + apiKey);
-                    }
-                }
-            }
-            
-            // 构建请求体
-            ObjectNode requestBody = createRequestBody(prompt, parameters, apiType);
-            
-            // 获取模型名称，用于配置特定的超时时间
-            String modelName = null;
-            if (parameters != null && parameters.containsKey("model")) {
-                modelName = parameters.get("model").toString();
-            }
-            
-            // 根据模型类型获取特定的RestTemplate，以支持不同的超时设置
-            RestTemplate modelSpecificRestTemplate;
-            if (modelName != null) {
-                logger.info("使用模型特定的RestTemplate，模型: {}", modelName);
-                // 创建适合该模型特性的RestTemplate，支持更长的超时时间
-                modelSpecificRestTemplate = restTemplateConfig.getModelSpecificRestTemplate(restTemplateBuilder, modelName);
-            } else {
-                // 使用默认RestTemplate
-                modelSpecificRestTemplate = restTemplate;
-            }
-            
-            // 打印问题内容
-            logger.info("向LLM发送问题: {}", prompt);
-            
-            // 创建HTTP实体
-            HttpEntity<String> requestEntity = new HttpEntity<>(requestBody.toString(), headers);
-            
-            // 使用模型特定的RestTemplate发送请求
-            ResponseEntity<String> responseEntity = modelSpecificRestTemplate.postForEntity(apiUrl, requestEntity, String.class);
-            
-            // 解析响应
-            return parseResponse(responseEntity.getBody(), apiType);
-            
+            LlmGatewayRequest request = new LlmGatewayRequest();
+            request.setApiUrl(apiUrl);
+            request.setApiKey(apiKey);
+            request.setApiType(apiType);
+            request.setPrompt(prompt);
+            Map<String, Object> requestParameters = parameters != null ? new HashMap<>(parameters) : new HashMap<>();
+            Object modelName = requestParameters.remove("model");
+            request.setModel(modelName != null ? modelName.toString() : null);
+            request.setParameters(requestParameters);
+            // 该接口保持一次性返回完整响应
+            request.setStreamingAllowed(false);
+            
+            return llmGateway.call(request).getText();
         } catch (Exception e) {
             logger.error("LLM API调用失败", e);
             throw new RuntimeException("LLM API调用失败: " + e.getMessage(), e);
         }
     }
     
-    /**
-     * 根据API类型和参数创建请求体
-     */
-    private ObjectNode createRequestBody(String prompt, Map<String, Object> parameters, String apiType) {
-        try {
-            ObjectNode requestBody = objectMapper.createObjectNode();
-            
-            // 默认参数
-            Map<String, Object> defaultParams = new HashMap<>();
-            defaultParams.put("temperature", 0.7);
-            defaultParams.put("max_tokens", 1000);
-            
-            // 用提供的参数覆盖默认参数
-            if (parameters != null) {
-                defaultParams.putAll(parameters);
-            }
-            
-            // 根据API类型构建不同的请求体
-            if (apiType != null) {
-                switch (apiType.toLowerCase()) {
-                    case "openai":
-                    case "openai_compatible":
-                        // OpenAI API格式或兼容格式
-                        if (!defaultParams.containsKey("model")) {
-                            // 抛出异常，不使用默认模型名称
-                            throw new IllegalArgumentException("缺少必要的参数: model - 在调用OpenAI/兼容API时必须指定模型名称");
-                        } else {
-                            requestBody.put("model", defaultParams.get("model").toString());
-                        }
-                        
-                        // 修复messages数组格式
-                        var messagesArray = objectMapper.createArrayNode();
-                        var messageObject = objectMapper.createObjectNode();
-                        messageObject.put("role", "user");
-                        messageObject.put("content", prompt);
-                        messagesArray.add(messageObject);
-                        requestBody.set("messages", messagesArray);
-                        break;
-                        
-                    case "anthropic":
-                        // Anthropic Claude API格式
-                        if (!defaultParams.containsKey("model")) {
-                            // 抛出异常，不使用默认模型名称
-                            throw new IllegalArgumentException("缺少必要的参数: model - 在调用Anthropic API时必须指定模型名称");
-                        } else {
-                            requestBody.put("model", defaultParams.get("model").toString());
-                        }
-                        
-                        requestBody.put("prompt", "\n\nHuman: " + prompt + "\n\nAssistant: ");
-                        break;
-                        
-                    case "google":
-                        // Google PaLM2/Gemini API格式
-                        requestBody.put("prompt", prompt);
-                        break;
-                        
-                    default:
-                        // 默认简单格式
-                        requestBody.put("prompt", prompt);
-                        break;
-                }
-            } else {
-                // 兼容旧代码逻辑
-                requestBody.put("prompt", prompt);
-            }
-            
-            // 添加其他参数
-            for (Map.Entry<String, Object> entry : defaultParams.entrySet()) {
-                if (!entry.getKey().equals("model") && !entry.getKey().equals("messages") && !entry.getKey().equals("prompt")) {
-                    String key = entry.getKey();
-                    Object value = entry.getValue();
-                    
-                    // 对于特定参数使用整数类型
-                    switch (key) {
-                        case "max_tokens":
-                        case "n":
-                        case "top_k":
-                            if (value instanceof Number) {
-                                requestBody.put(key, ((Number) value).intValue());
-                            }
-                            break;
-                        case "presence_penalty":
-                        case "frequency_penalty":
-                        case "temperature":
-                        case "top_p":
-                            if (value instanceof Number) {
-                                requestBody.put(key, ((Number) value).doubleValue());
-                            }
-                            break;
-                        default:
-                            if (value instanceof Number) {
-                                requestBody.put(key, ((Number) value).doubleValue());
-                            } else if (value != null) {
-                                requestBody.put(key, value.toString());
-                            }
-                    }
-                }
-            }
-            
-            return requestBody;
-        } catch (Exception e) {
-            logger.error("创建LLM API请求体失败", e);
-            throw new RuntimeException("创建LLM API请求体失败: " + e.getMessage(), e);
-        }
-    }
-    
-    /**
-     * 解析API响应
-     */
-    private String parseResponse(String responseJson, String apiType) {
-        try {
-            if (responseJson == null || responseJson.isEmpty()) {
-                return "";
-            }
-            
-            JsonNode responseNode = objectMapper.readTree(responseJson);
-            String result = "";
-            
-            // 根据API类型解析不同格式的响应
-            if (apiType != null) {
-                switch (apiType.toLowerCase()) {
-                    case "openai":
-                    case "openai_compatible":
-                        // OpenAI响应格式或兼容格式
-                        if (responseNode.has("choices") && responseNode.get("choices").size() > 0) {
-                            JsonNode choice = responseNode.get("choices").get(0);
-                            if (choice.has("message") && choice.get("message").has("content")) {
-                                result = choice.get("message").get("content").asText();
-                            }
-                        }
-                        break;
-                        
-                    case "anthropic":
-                        // Anthropic Claude响应格式
-                        if (responseNode.has("completion")) {
-                            result = responseNode.get("completion").asText();
-                        }
-                        break;
-                        
-                    case "google":
-                        // Google PaLM2/Gemini响应格式
-                        if (responseNode.has("candidates") && responseNode.get("candidates").size() > 0) {
-                            result = responseNode.get("candidates").get(0).get("content").asText();
-                        }
-                        break;
-                        
-                    default:
-                        // 尝试通用解析
-                        break;
-                }
-            }
-            
-            // 如果特定解析没有结果，尝试通用响应解析逻辑
-            if (result.isEmpty()) {
-                // 通用响应解析逻辑，尝试从各种常见格式中提取
-                if (responseNode.has("choices") && responseNode.get("choices").size() > 0) {
-                    // OpenAI或类似格式
-                    JsonNode choice = responseNode.get("choices").get(0);
-                    if (choice.has("message") && choice.get("message").has("content")) {
-                        result = choice.get("message").get("content").asText();
-                    } else if (choice.has("text")) {
-                        result = choice.get("text").asText();
-                    }
-                } else if (responseNode.has("completion")) {
-                    // Anthropic或类似格式
-                    result = responseNode.get("completion").asText();
-                } else if (responseNode.has("generated_text")) {
-                    // 某些模型的格式
-                    result = responseNode.get("generated_text").asText();
-                } else if (responseNode.has("result") && responseNode.get("result").isTextual()) {
-                    // 通用格式
-                    result = responseNode.get("result").asText();
-                }
-            }
-            
-            // 如果无法提取，记录并返回原始响应
-            if (result.isEmpty()) {
-                logger.warn("无法从响应中提取文本内容，返回空字符串。原始响应: {}", responseJson);
-                return "";
-            }
-            
-            // 使用TextPreprocessor处理文本，移除思考过程标记
-            String cleanedResult = com.example.demo.utils.TextPreprocessor.cleanText(result);
-            
-            // 如果处理前后文本长度不同，记录日志
-            if (cleanedResult.length() != result.length()) {
-                logger.info("已清理模型回答中的思考过程标记和特殊字符，原长度: {}，处理后长度: {}", 
-                          result.length(), cleanedResult.length());
-            }
-            
-            return cleanedResult;
-            
-        } catch (Exception e) {
-            logger.error("解析API响应失败", e);
-            return "";
-        }
-    }
-    
     /**
      * 测试模型连通性（改进版本）
      * @param apiUrl API地址
@@ -389,6 +100,12 @@ public class LlmApiServiceImpl implements LlmApiService {
     
     @Override
     public boolean testModelConnectivity(String apiUrl, String apiKey, String apiType, String modelName) {
+        return testModelConnectivity(apiUrl, apiKey, apiType, modelName, DEFAULT_CONNECTIVITY_TIMEOUT);
+    }
+    
+    @Override
+    public boolean testModelConnectivity(String apiUrl, String apiKey, String apiType, String modelName,
+            Duration timeout) {
         logger.info("测试模型连通性: URL={}, 类型={}, 模型名称={}", apiUrl, apiType, modelName);
         
         // 确保API URL不为空
@@ -600,30 +317,22 @@ public class LlmApiServiceImpl implements LlmApiService {
                     break;
             }
             
-            // 创建HTTP实体
-            HttpEntity<String> requestEntity = new HttpEntity<>(requestBody.toString(), headers);
-            
             // 记录详细的请求信息，帮助调试
-            logger.info("发送测试POST请求到 {}", endpointUrl);
+            logger.info("发送测试POST请求到 {}，超时{}秒", endpointUrl, timeout.toSeconds());
             logger.debug("请求头: {}", headers);
             logger.debug("请求体: {}", requestBody.toString());
             
-            // 获取模型特定的RestTemplate，支持更长的超时设置
-            RestTemplate modelSpecificRestTemplate = restTemplateConfig.getModelSpecificRestTemplate(
-                    restTemplateBuilder, modelName);
-                
             try {
-                // 发送POST请求，使用模型特定的RestTemplate
-                ResponseEntity<String> response = modelSpecificRestTemplate.postForEntity(
-                        endpointUrl, requestEntity, String.class);
+                // 使用该地址复用的HTTP客户端发送POST请求，超时随请求设置
+                HttpResponse<String> response = httpClientRegistry.route(endpointUrl).send(
+                        HttpClientRegistry.newRequest(endpointUrl, headers, requestBody.toString(), timeout).build(),
+                        HttpResponse.BodyHandlers.ofString());
                 
-                int statusCode = response.getStatusCodeValue();
-                String responseBody = response.getBody();
+                int statusCode = response.statusCode();
                 
                 // 放宽成功条件: 2xx成功，401/403表示认证问题但API可达
-                boolean apiReachable = response.getStatusCode().is2xxSuccessful() || 
-                                      statusCode == 401 || statusCode == 403;
-                boolean apiUsable = response.getStatusCode().is2xxSuccessful();
+                boolean apiUsable = statusCode >= 200 && statusCode < 300;
+                boolean apiReachable = apiUsable || statusCode == 401 || statusCode == 403;
                 
                 logger.info("模型API连通性测试结果 - 端点可达: {}, API可用: {}, 状态码: {}", 
                         apiReachable, apiUsable, statusCode);
@@ -638,6 +347,10 @@ public class LlmApiServiceImpl implements LlmApiService {
                     logger.error("API端点请求失败，状态码: {}", statusCode);
                     return false;
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.error("发送API请求时被中断");
+                return false;
             } catch (Exception e) {
                 logger.error("发送API请求失败: {}", e.getMessage());
                 return false;
@@ -696,37 +409,48 @@ public class LlmApiServiceImpl implements LlmApiService {
      */
     @Override
     public String generateModelAnswer(LlmModel model, String prompt, Map<String, Object> contextVariables) {
+        return generateModelAnswer(model, prompt, contextVariables, () -> false);
+    }
+    
+    /**
+     * 使用LLM模型生成回答，支持流式的API类型以流式方式调用，中断时断开连接
+     */
+    @Override
+    public String generateModelAnswer(LlmModel model, String prompt, Map<String, Object> contextVariables,
+                                      BooleanSupplier cancelled) {
         logger.debug("调用LLM模型生成回答, 模型: {}, API类型: {}", model.getName(), model.getApiType());
-        
-        // 组装参数
-        Map<String, Object> parameters = new HashMap<>();
-        
-        // 添加模型默认参数
-        if (model.getModelParameters() != null) {
-            parameters.putAll(model.getModelParameters());
-        }
-        
-        // 添加上下文变量（优先级更高）
-        if (contextVariables != null) {
-            parameters.putAll(contextVariables);
-        }
-        
-        // 确保参数中包含模型名称
-        if (!parameters.containsKey("model") && model.getName() != null) {
-            logger.debug("添加模型名称到请求参数: {}", model.getName());
-            parameters.put("model", model.getName());
-        }
-        
-        // 调用生成回答
-        return generateAnswer(
-            model.getApiUrl(),
-            model.getApiKey(),
-            model.getApiType(),
-            prompt,
-            parameters
-        );
+        LlmCallResult result = llmGateway.call(
+            LlmGatewayRequest.forModel(model, prompt, contextVariables, Purpose.GENERATION), cancelled);
+        return result.isCancelled() ? null : result.getText();
     }
-
+    
+    @Override
+    public CompletableFuture<LlmCallResult> generateModelAnswerAsync(LlmModel model, String prompt,
+                                                                     Map<String, Object> contextVariables) {
+        return generateModelAnswerAsync(model, prompt, contextVariables, () -> false);
+    }
+    
+    /**
+     * 异步调用模型：流式API类型在虚拟线程上读取事件流，其余类型通过非阻塞HTTP客户端发送请求
+     */
+    @Override
+    public CompletableFuture<LlmCallResult> generateModelAnswerAsync(LlmModel model, String prompt,
+                                                                     Map<String, Object> contextVariables,
+                                                                     BooleanSupplier cancelled) {
+        return generateModelAnswerAsync(model, prompt, contextVariables, null, cancelled);
+    }
+    
+    @Override
+    public CompletableFuture<LlmCallResult> generateModelAnswerAsync(LlmModel model, String prompt,
+                                                                     Map<String, Object> contextVariables,
+                                                                     FairShareScheduler.Flow flow,
+                                                                     BooleanSupplier cancelled) {
+        logger.debug("异步调用LLM模型生成回答, 模型: {}, API类型: {}", model.getName(), model.getApiType());
+        LlmGatewayRequest request = LlmGatewayRequest.forModel(model, prompt, contextVariables, Purpose.GENERATION);
+        request.setFlow(flow);
+        return llmGateway.callAsync(request, cancelled);
+    }
+    
     /**
      * 探测正确的API端点路径
      * @param baseUrl 基础API URL
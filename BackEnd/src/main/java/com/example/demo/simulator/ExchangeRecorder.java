@@ -0,0 +1,162 @@
+package com.example.demo.simulator;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.demo.config.LlmConfig.SimulatorConfig;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * 提供商交互的录制与回放
+ * 录制模式把请求转发到真实提供商，并以请求路径和请求体的摘要为键把响应写入录制目录；
+ * 回放模式按相同的键读取录制的响应原样返回，相同的请求总是得到相同的响应。
+ */
+class ExchangeRecorder {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExchangeRecorder.class);
+
+    // HttpClient不允许设置的请求头，以及会让上游返回压缩内容的请求头
+    private static final Set<String> SKIPPED_HEADERS = Set.of(
+            "connection", "content-length", "expect", "host", "upgrade", "accept-encoding");
+    // 每次请求都会变化、不参与匹配的请求体字段
+    private static final Set<String> VOLATILE_FIELDS = Set.of("user_id", "user");
+
+    private final ObjectMapper objectMapper;
+    private final Path recordDir;
+    private final String upstreamUrl;
+    private final boolean replayLatency;
+    private final HttpClient httpClient;
+
+    ExchangeRecorder(SimulatorConfig config, ObjectMapper objectMapper) throws IOException {
+        this.objectMapper = objectMapper;
+        this.recordDir = Paths.get(config.getRecordDir());
+        this.upstreamUrl = config.getUpstreamUrl();
+        this.replayLatency = config.isReplayLatency();
+        this.httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(30)).build();
+        Files.createDirectories(recordDir);
+    }
+
+    /**
+     * 转发请求到真实提供商并录制响应
+     */
+    void record(HttpExchange exchange, byte[] body) throws IOException {
+        if (upstreamUrl == null || upstreamUrl.isEmpty()) {
+            LlmSimulatorServer.sendError(exchange, 502, "录制模式未配置 llm.simulator.upstream-url");
+            return;
+        }
+        URI requestUri = exchange.getRequestURI();
+        String base = upstreamUrl.endsWith("/") ? upstreamUrl.substring(0, upstreamUrl.length() - 1) : upstreamUrl;
+        String target = base + requestUri.getRawPath() + (requestUri.getRawQuery() != null ? "?" + requestUri.getRawQuery() : "");
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(target))
+                .timeout(Duration.ofMinutes(10))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body));
+        for (Map.Entry<String, List<String>> header : exchange.getRequestHeaders().entrySet()) {
+            if (!SKIPPED_HEADERS.contains(header.getKey().toLowerCase())) {
+                for (String value : header.getValue()) {
+                    builder.header(header.getKey(), value);
+                }
+            }
+        }
+
+        long startNanos = System.nanoTime();
+        HttpResponse<byte[]> response;
+        try {
+            response = httpClient.send(builder.build(), HttpResponse.BodyHandlers.ofByteArray());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("转发请求被中断", e);
+        }
+        long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        String contentType = response.headers().firstValue("Content-Type").orElse("application/json");
+
+        ObjectNode recording = objectMapper.createObjectNode();
+        recording.put("path", requestUri.getPath());
+        recording.set("request", parseOrText(body));
+        recording.put("status", response.statusCode());
+        recording.put("contentType", contentType);
+        recording.put("latencyMillis", latencyMillis);
+        recording.put("response", new String(response.body(), StandardCharsets.UTF_8));
+        Path file = recordDir.resolve(key(requestUri.getPath(), body) + ".json");
+        Files.write(file, objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(recording));
+        logger.info("已录制提供商响应: 路径={}, 状态码={}, 耗时={}ms, 文件={}",
+                requestUri.getPath(), response.statusCode(), latencyMillis, file.getFileName());
+
+        LlmSimulatorServer.send(exchange, response.statusCode(), contentType, response.body());
+    }
+
+    /**
+     * 回放录制的响应
+     *
+     * @return 是否找到录制
+     */
+    boolean replay(HttpExchange exchange, byte[] body) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        Path file = recordDir.resolve(key(path, body) + ".json");
+        if (!Files.exists(file)) {
+            return false;
+        }
+        JsonNode recording = objectMapper.readTree(file.toFile());
+        long latencyMillis = recording.path("latencyMillis").asLong(0);
+        if (replayLatency && latencyMillis > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return true;
+            }
+        }
+        LlmSimulatorServer.send(exchange, recording.path("status").asInt(200),
+                recording.path("contentType").asText("application/json"),
+                recording.path("response").asText("").getBytes(StandardCharsets.UTF_8));
+        return true;
+    }
+
+    /**
+     * 录制的键：请求路径和去掉易变字段后的请求体的SHA-256摘要
+     */
+    private String key(String path, byte[] body) {
+        JsonNode request = parseOrText(body);
+        if (request instanceof ObjectNode) {
+            ((ObjectNode) request).remove(VOLATILE_FIELDS);
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(path.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+            digest.update(objectMapper.writeValueAsBytes(request));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new IllegalStateException("计算录制键失败", e);
+        }
+    }
+
+    private JsonNode parseOrText(byte[] body) {
+        try {
+            return objectMapper.readTree(body);
+        } catch (IOException e) {
+            return objectMapper.getNodeFactory().textNode(new String(body, StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.example.demo.simulator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.LlmConfig;
+import com.example.demo.config.LlmConfig.SimulatorConfig;
+import com.example.demo.simulator.SimulatedProvider.Format;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 内嵌的LLM模拟提供商服务（llm.simulator.enabled=true 时启动）
+ * 支持OpenAI兼容（/v1/chat/completions）、Anthropic（/v1/messages、/v1/complete）和Google（:generateContent、
+ * :streamGenerateContent）格式的流式与非流式调用，可配置首token延迟分布、token间隔以及429/5xx错误注入；
+ * 也可以录制真实提供商的交互并确定性地回放。将模型的API地址指向本服务即可在本地按真实并发压测
+ * 回答生成和评测流程，并用网关指标比较不同版本的吞吐。
+ * 另外模拟了OpenAI格式的批量接口（/v1/files、/v1/batches），在任何模式下都由 SimulatedBatchApi 处理。
+ */
+@Component
+@ConditionalOnProperty(prefix = "llm.simulator", name = "enabled", havingValue = "true")
+public class LlmSimulatorServer {
+
+    private static final Logger logger = LoggerFactory.getLogger(LlmSimulatorServer.class);
+
+    private final SimulatorConfig config;
+    private final ObjectMapper objectMapper;
+    private final SimulatedProvider provider;
+    private final SimulatedBatchApi batchApi;
+    // 每个请求在独立的虚拟线程上处理，模拟延迟不占用平台线程
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder streamed = new LongAdder();
+    private final LongAdder replayMisses = new LongAdder();
+    private ExchangeRecorder recorder;
+    private HttpServer server;
+
+    @Autowired
+    public LlmSimulatorServer(LlmConfig llmConfig, ObjectMapper objectMapper) {
+        this.config = llmConfig.getSimulator();
+        this.objectMapper = objectMapper;
+        this.provider = new SimulatedProvider(objectMapper, config.getOutputTokens());
+        this.batchApi = new SimulatedBatchApi(config, objectMapper, provider, executor);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!"simulate".equals(config.getMode())) {
+            recorder = new ExchangeRecorder(config, objectMapper);
+        }
+        server = HttpServer.create(new InetSocketAddress(config.getPort()), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+        logger.info("LLM模拟服务已启动: 端口={}, 模式={}, 首token延迟中位数={}ms, token间隔={}ms, 429概率={}, 错误概率={}",
+                config.getPort(), config.getMode(), config.getMedianFirstTokenMs(), config.getTokenIntervalMs(),
+                config.getThrottleRate(), config.getErrorRate());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+        executor.shutdownNow();
+        logger.info("LLM模拟服务已停止: 请求数={}, 流式={}, 注入429={}, 注入错误={}, 回放未命中={}",
+                requests.sum(), streamed.sum(), throttled.sum(), failed.sum(), replayMisses.sum());
+    }
+
+    private void handle(HttpExchange exchange) {
+        requests.increment();
+        try {
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            if (SimulatedBatchApi.handles(exchange.getRequestURI().getPath())) {
+                batchApi.handle(exchange, body);
+                return;
+            }
+            if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "只支持POST请求");
+                return;
+            }
+            switch (config.getMode()) {
+                case "record":
+                    recorder.record(exchange, body);
+                    break;
+                case "replay":
+                    if (!recorder.replay(exchange, body)) {
+                        replayMisses.increment();
+                        logger.warn("没有与请求匹配的录制: 路径={}", exchange.getRequestURI().getPath());
+                        sendError(exchange, 404, "没有与请求匹配的录制");
+                    }
+                    break;
+                default:
+                    simulate(exchange, body);
+                    break;
+            }
+        } catch (IOException e) {
+            // 客户端取消或断开连接（如暂停批次、对冲请求落败）
+            logger.debug("模拟请求处理中断: {}", e.getMessage());
+        } catch (RuntimeException e) {
+            logger.error("模拟请求处理失败", e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void simulate(HttpExchange exchange, byte[] body) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        JsonNode request;
+        try {
+            request = objectMapper.readTree(body);
+        } catch (IOException e) {
+            sendError(exchange, 400, "请求体不是合法的JSON");
+            return;
+        }
+
+        double roll = ThreadLocalRandom.current().nextDouble();
+        if (roll < config.getThrottleRate()) {
+            throttled.increment();
+            exchange.getResponseHeaders().set("Retry-After", String.valueOf(config.getRetryAfterSeconds()));
+            sendError(exchange, 429, "模拟的限流错误");
+            return;
+        }
+        if (roll < config.getThrottleRate() + config.getErrorRate()) {
+            failed.increment();
+            sendError(exchange, 503, "模拟的服务端错误");
+            return;
+        }
+
+        Format format = Format.detect(path);
+        String prompt = provider.promptOf(format, request);
+        String model = provider.modelOf(format, path, request);
+        List<String> tokens = provider.answerTokens(prompt);
+        int promptTokens = SimulatedProvider.estimatePromptTokens(prompt);
+        long firstTokenMillis = sampleFirstTokenMillis();
+
+        if (!provider.isStreaming(format, path, request)) {
+            sleep(firstTokenMillis + tokens.size() * config.getTokenIntervalMs());
+            byte[] response = objectMapper.writeValueAsBytes(provider.completeResponse(format, model, tokens, promptTokens));
+            send(exchange, 200, "application/json", response);
+            return;
+        }
+
+        streamed.increment();
+        List<String> events = provider.streamEvents(format, model, tokens, promptTokens, request);
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        sleep(firstTokenMillis);
+        for (int i = 0; i < events.size(); i++) {
+            if (i > 0) {
+                sleep(config.getTokenIntervalMs());
+            }
+            out.write(events.get(i).getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+        out.close();
+    }
+
+    /**
+     * 首token延迟：中位数为 median-first-token-ms 的对数正态分布
+     */
+    private long sampleFirstTokenMillis() {
+        double gaussian = ThreadLocalRandom.current().nextGaussian();
+        return Math.round(config.getMedianFirstTokenMs() * Math.exp(config.getLatencySigma() * gaussian));
+    }
+
+    private static void sleep(long millis) throws IOException {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("模拟服务已停止", e);
+        }
+    }
+
+    static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length > 0 ? body.length : -1);
+        if (body.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    /**
+     * 以OpenAI错误格式返回错误，状态码决定网关的重试分类
+     */
+    static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        String body = "{\"error\":{\"message\":\"" + message + "\",\"type\":\"simulated_error\",\"code\":" + status + "}}";
+        send(exchange, status, "application/json", body.getBytes(StandardCharsets.UTF_8));
+    }
+}
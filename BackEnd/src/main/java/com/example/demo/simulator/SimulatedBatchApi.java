@@ -0,0 +1,249 @@
+package com.example.demo.simulator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.demo.config.LlmConfig.SimulatorConfig;
+import com.example.demo.simulator.SimulatedProvider.Format;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * 模拟的OpenAI格式批量接口（/v1/files、/v1/batches），用于在本地验证PROVIDER_BATCH执行方式
+ * 上传的请求文件和创建的任务只保存在内存中；任务创建后按首token延迟的中位数等待一段时间，
+ * 再为每行请求生成与实时接口相同格式的响应写入结果文件，按 error-rate 注入的失败写入错误文件。
+ */
+class SimulatedBatchApi {
+
+    private static final Logger logger = LoggerFactory.getLogger(SimulatedBatchApi.class);
+
+    private final SimulatorConfig config;
+    private final ObjectMapper objectMapper;
+    private final SimulatedProvider provider;
+    private final ExecutorService executor;
+    private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+    private final Map<String, ObjectNode> batches = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    SimulatedBatchApi(SimulatorConfig config, ObjectMapper objectMapper, SimulatedProvider provider,
+                      ExecutorService executor) {
+        this.config = config;
+        this.objectMapper = objectMapper;
+        this.provider = provider;
+        this.executor = executor;
+    }
+
+    /**
+     * 是否为批量接口的路径
+     */
+    static boolean handles(String path) {
+        return path.contains("/v1/files") || path.contains("/v1/batches");
+    }
+
+    void handle(HttpExchange exchange, byte[] body) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        String[] segments = path.substring(path.indexOf("/v1/") + 4).split("/");
+
+        if ("POST".equalsIgnoreCase(method) && segments.length == 1 && "files".equals(segments[0])) {
+            uploadFile(exchange, body);
+        } else if ("POST".equalsIgnoreCase(method) && segments.length == 1 && "batches".equals(segments[0])) {
+            createBatch(exchange, body);
+        } else if ("GET".equalsIgnoreCase(method) && segments.length == 2 && "batches".equals(segments[0])) {
+            ObjectNode batch = batches.get(segments[1]);
+            if (batch == null) {
+                LlmSimulatorServer.sendError(exchange, 404, "批量任务不存在");
+                return;
+            }
+            synchronized (batch) {
+                LlmSimulatorServer.send(exchange, 200, "application/json", objectMapper.writeValueAsBytes(batch));
+            }
+        } else if ("GET".equalsIgnoreCase(method) && segments.length == 3 && "files".equals(segments[0])
+                && "content".equals(segments[2])) {
+            byte[] content = files.get(segments[1]);
+            if (content == null) {
+                LlmSimulatorServer.sendError(exchange, 404, "文件不存在");
+                return;
+            }
+            LlmSimulatorServer.send(exchange, 200, "application/jsonl", content);
+        } else {
+            LlmSimulatorServer.sendError(exchange, 404, "不支持的批量接口: " + method + " " + path);
+        }
+    }
+
+    /**
+     * 接收multipart上传的请求文件，只保存名为file的部分
+     */
+    private void uploadFile(HttpExchange exchange, byte[] body) throws IOException {
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        int boundaryStart = contentType != null ? contentType.indexOf("boundary=") : -1;
+        if (boundaryStart < 0) {
+            LlmSimulatorServer.sendError(exchange, 400, "请求不是multipart格式");
+            return;
+        }
+        String boundary = "--" + contentType.substring(boundaryStart + "boundary=".length()).trim();
+        byte[] content = null;
+        for (String part : new String(body, StandardCharsets.UTF_8).split(boundary)) {
+            int headerEnd = part.indexOf("\r\n\r\n");
+            if (headerEnd < 0 || !part.substring(0, headerEnd).contains("name=\"file\"")) {
+                continue;
+            }
+            String data = part.substring(headerEnd + 4);
+            if (data.endsWith("\r\n")) {
+                data = data.substring(0, data.length() - 2);
+            }
+            content = data.getBytes(StandardCharsets.UTF_8);
+        }
+        if (content == null) {
+            LlmSimulatorServer.sendError(exchange, 400, "缺少file字段");
+            return;
+        }
+
+        String fileId = "file-sim-" + sequence.incrementAndGet();
+        files.put(fileId, content);
+        ObjectNode file = objectMapper.createObjectNode();
+        file.put("id", fileId);
+        file.put("object", "file");
+        file.put("bytes", content.length);
+        file.put("created_at", System.currentTimeMillis() / 1000);
+        file.put("filename", "batch.jsonl");
+        file.put("purpose", "batch");
+        LlmSimulatorServer.send(exchange, 200, "application/json", objectMapper.writeValueAsBytes(file));
+    }
+
+    private void createBatch(HttpExchange exchange, byte[] body) throws IOException {
+        JsonNode request;
+        try {
+            request = objectMapper.readTree(body);
+        } catch (IOException e) {
+            LlmSimulatorServer.sendError(exchange, 400, "请求体不是合法的JSON");
+            return;
+        }
+        String inputFileId = request.path("input_file_id").asText("");
+        byte[] input = files.get(inputFileId);
+        if (input == null) {
+            LlmSimulatorServer.sendError(exchange, 400, "请求文件不存在: " + inputFileId);
+            return;
+        }
+        String[] lines = new String(input, StandardCharsets.UTF_8).split("\n");
+
+        String batchId = "batch_sim_" + sequence.incrementAndGet();
+        ObjectNode batch = objectMapper.createObjectNode();
+        batch.put("id", batchId);
+        batch.put("object", "batch");
+        batch.put("endpoint", request.path("endpoint").asText("/v1/chat/completions"));
+        batch.put("input_file_id", inputFileId);
+        batch.put("completion_window", request.path("completion_window").asText("24h"));
+        batch.put("status", "in_progress");
+        batch.putNull("output_file_id");
+        batch.putNull("error_file_id");
+        batch.put("created_at", System.currentTimeMillis() / 1000);
+        ObjectNode counts = batch.putObject("request_counts");
+        counts.put("total", countLines(lines));
+        counts.put("completed", 0);
+        counts.put("failed", 0);
+        batches.put(batchId, batch);
+
+        byte[] response;
+        synchronized (batch) {
+            response = objectMapper.writeValueAsBytes(batch);
+        }
+        executor.submit(() -> complete(batch, lines));
+        logger.info("模拟批量任务已创建: 任务ID={}, 请求数={}", batchId, counts.path("total").asInt());
+        LlmSimulatorServer.send(exchange, 200, "application/json", response);
+    }
+
+    /**
+     * 等待一段时间后生成全部结果
+     */
+    private void complete(ObjectNode batch, String[] lines) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(config.getMedianFirstTokenMs());
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            ByteArrayOutputStream errors = new ByteArrayOutputStream();
+            int completed = 0;
+            int failed = 0;
+            for (String line : lines) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                JsonNode item = objectMapper.readTree(line);
+                ObjectNode result = objectMapper.createObjectNode();
+                result.put("id", "batch_req_" + sequence.incrementAndGet());
+                result.put("custom_id", item.path("custom_id").asText());
+                ObjectNode response = result.putObject("response");
+                response.put("request_id", "req_sim_" + sequence.incrementAndGet());
+                result.putNull("error");
+
+                if (ThreadLocalRandom.current().nextDouble() < config.getErrorRate()) {
+                    response.put("status_code", 500);
+                    response.putObject("body").putObject("error")
+                            .put("message", "模拟的服务端错误").put("type", "simulated_error");
+                    errors.write(objectMapper.writeValueAsBytes(result));
+                    errors.write('\n');
+                    failed++;
+                    continue;
+                }
+                JsonNode request = item.path("body");
+                String prompt = provider.promptOf(Format.OPENAI, request);
+                List<String> tokens = provider.answerTokens(prompt);
+                response.put("status_code", 200);
+                response.set("body", provider.completeResponse(Format.OPENAI, request.path("model").asText("simulated"),
+                        tokens, SimulatedProvider.estimatePromptTokens(prompt)));
+                output.write(objectMapper.writeValueAsBytes(result));
+                output.write('\n');
+                completed++;
+            }
+
+            synchronized (batch) {
+                if (output.size() > 0) {
+                    String outputFileId = "file-sim-" + sequence.incrementAndGet();
+                    files.put(outputFileId, output.toByteArray());
+                    batch.put("output_file_id", outputFileId);
+                }
+                if (errors.size() > 0) {
+                    String errorFileId = "file-sim-" + sequence.incrementAndGet();
+                    files.put(errorFileId, errors.toByteArray());
+                    batch.put("error_file_id", errorFileId);
+                }
+                ObjectNode counts = (ObjectNode) batch.get("request_counts");
+                counts.put("completed", completed);
+                counts.put("failed", failed);
+                batch.put("status", "completed");
+                batch.put("completed_at", System.currentTimeMillis() / 1000);
+            }
+            logger.info("模拟批量任务已完成: 任务ID={}, 成功={}, 失败={}", batch.path("id").asText(), completed, failed);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            logger.error("模拟批量任务处理失败: 任务ID={}", batch.path("id").asText(), e);
+            synchronized (batch) {
+                batch.put("status", "failed");
+                batch.putObject("errors").putArray("data").addObject().put("message", e.getMessage());
+            }
+        }
+    }
+
+    private static int countLines(String[] lines) {
+        int count = 0;
+        for (String line : lines) {
+            if (!line.isBlank()) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,273 @@
+package com.example.demo.simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * 模拟提供商的协议格式：解析请求中的提示词和流式标志，按OpenAI兼容、Anthropic和Google格式构造响应和SSE事件
+ * 回答内容由提示词决定（相同提示词得到相同回答），便于比较不同版本的运行结果。
+ */
+class SimulatedProvider {
+
+    /**
+     * 按请求路径区分的协议格式
+     */
+    enum Format {
+        OPENAI, ANTHROPIC_MESSAGES, ANTHROPIC_COMPLETE, GOOGLE;
+
+        static Format detect(String path) {
+            if (path.contains(":generateContent") || path.contains(":streamGenerateContent")) {
+                return GOOGLE;
+            }
+            if (path.endsWith("/v1/messages")) {
+                return ANTHROPIC_MESSAGES;
+            }
+            if (path.endsWith("/v1/complete")) {
+                return ANTHROPIC_COMPLETE;
+            }
+            return OPENAI;
+        }
+    }
+
+    private static final String[] VOCABULARY = {
+        "模型", "评测", "回答", "问题", "数据", "结果", "分析", "方法", "首先", "其次", "最后", "因此",
+        "可以", "需要", "通过", "进行", "相关", "重要", "标准", "依据", "，", "。"
+    };
+
+    private final ObjectMapper objectMapper;
+    private final int outputTokens;
+
+    SimulatedProvider(ObjectMapper objectMapper, int outputTokens) {
+        this.objectMapper = objectMapper;
+        this.outputTokens = Math.max(1, outputTokens);
+    }
+
+    boolean isStreaming(Format format, String path, JsonNode request) {
+        if (format == Format.GOOGLE) {
+            return path.contains(":streamGenerateContent");
+        }
+        return request.path("stream").asBoolean(false);
+    }
+
+    /**
+     * 提取请求中的全部提示文本，用于生成确定的回答和估算输入token数
+     */
+    String promptOf(Format format, JsonNode request) {
+        StringBuilder prompt = new StringBuilder();
+        switch (format) {
+            case GOOGLE:
+                for (JsonNode content : request.path("contents")) {
+                    for (JsonNode part : content.path("parts")) {
+                        prompt.append(part.path("text").asText(""));
+                    }
+                }
+                break;
+            case ANTHROPIC_COMPLETE:
+                prompt.append(request.path("prompt").asText(""));
+                break;
+            default:
+                prompt.append(request.path("system").asText(""));
+                for (JsonNode message : request.path("messages")) {
+                    prompt.append(message.path("content").asText(""));
+                }
+                break;
+        }
+        return prompt.toString();
+    }
+
+    String modelOf(Format format, String path, JsonNode request) {
+        if (format == Format.GOOGLE) {
+            int start = path.lastIndexOf('/') + 1;
+            int end = path.indexOf(':', start);
+            return end > start ? path.substring(start, end) : "gemini-simulated";
+        }
+        return request.path("model").asText("simulated-model");
+    }
+
+    /**
+     * 按提示词生成回答token，长度在平均值的80%到120%之间
+     */
+    List<String> answerTokens(String prompt) {
+        Random random = new Random(prompt.hashCode());
+        int count = (int) Math.max(1, Math.round(outputTokens * (0.8 + 0.4 * random.nextDouble())));
+        List<String> tokens = new ArrayList<>(count);
+        tokens.add("【模拟回答】");
+        for (int i = 1; i < count; i++) {
+            tokens.add(VOCABULARY[random.nextInt(VOCABULARY.length)]);
+        }
+        return tokens;
+    }
+
+    /**
+     * 粗略估算输入token数
+     */
+    static int estimatePromptTokens(String prompt) {
+        return Math.max(1, prompt.length() / 2);
+    }
+
+    /**
+     * 非流式响应
+     */
+    ObjectNode completeResponse(Format format, String model, List<String> tokens, int promptTokens) {
+        String text = String.join("", tokens);
+        ObjectNode response = objectMapper.createObjectNode();
+        switch (format) {
+            case GOOGLE:
+                ObjectNode candidate = response.putArray("candidates").addObject();
+                ObjectNode content = candidate.putObject("content");
+                content.put("role", "model");
+                content.putArray("parts").addObject().put("text", text);
+                candidate.put("finishReason", "STOP");
+                putGoogleUsage(response, promptTokens, tokens.size());
+                break;
+            case ANTHROPIC_COMPLETE:
+                response.put("type", "completion");
+                response.put("completion", text);
+                response.put("stop_reason", "stop_sequence");
+                response.put("model", model);
+                break;
+            case ANTHROPIC_MESSAGES:
+                response.put("id", "msg_simulated");
+                response.put("type", "message");
+                response.put("role", "assistant");
+                response.put("model", model);
+                response.putArray("content").addObject().put("type", "text").put("text", text);
+                response.put("stop_reason", "end_turn");
+                response.putObject("usage").put("input_tokens", promptTokens).put("output_tokens", tokens.size());
+                break;
+            default:
+                response.put("id", "chatcmpl-simulated");
+                response.put("object", "chat.completion");
+                response.put("created", System.currentTimeMillis() / 1000);
+                response.put("model", model);
+                ObjectNode choice = response.putArray("choices").addObject();
+                choice.put("index", 0);
+                choice.putObject("message").put("role", "assistant").put("content", text);
+                choice.put("finish_reason", "stop");
+                putOpenAiUsage(response, promptTokens, tokens.size());
+                break;
+        }
+        return response;
+    }
+
+    /**
+     * 流式响应的SSE事件，每个token一个事件，之后是结束事件
+     *
+     * @return 事件列表，第一个事件在首token延迟后发送，其余按token间隔发送
+     */
+    List<String> streamEvents(Format format, String model, List<String> tokens, int promptTokens, JsonNode request) {
+        List<String> events = new ArrayList<>(tokens.size() + 4);
+        switch (format) {
+            case GOOGLE:
+                for (int i = 0; i < tokens.size(); i++) {
+                    ObjectNode chunk = objectMapper.createObjectNode();
+                    ObjectNode candidate = chunk.putArray("candidates").addObject();
+                    candidate.putObject("content").put("role", "model").putArray("parts").addObject()
+                            .put("text", tokens.get(i));
+                    if (i == tokens.size() - 1) {
+                        candidate.put("finishReason", "STOP");
+                        putGoogleUsage(chunk, promptTokens, tokens.size());
+                    }
+                    events.add(data(chunk));
+                }
+                break;
+            case ANTHROPIC_COMPLETE:
+                for (String token : tokens) {
+                    events.add(event("completion", objectMapper.createObjectNode()
+                            .put("type", "completion").put("completion", token).putNull("stop_reason")));
+                }
+                events.add(event("completion", objectMapper.createObjectNode()
+                        .put("type", "completion").put("completion", "").put("stop_reason", "stop_sequence")));
+                break;
+            case ANTHROPIC_MESSAGES:
+                ObjectNode start = objectMapper.createObjectNode().put("type", "message_start");
+                ObjectNode message = start.putObject("message");
+                message.put("id", "msg_simulated").put("type", "message").put("role", "assistant").put("model", model);
+                message.putObject("usage").put("input_tokens", promptTokens).put("output_tokens", 0);
+                String first = tokens.get(0);
+                events.add(event("message_start", start)
+                        + event("content_block_start", objectMapper.createObjectNode()
+                                .put("type", "content_block_start").put("index", 0)
+                                .set("content_block", objectMapper.createObjectNode().put("type", "text").put("text", "")))
+                        + event("content_block_delta", textDelta(first)));
+                for (int i = 1; i < tokens.size(); i++) {
+                    events.add(event("content_block_delta", textDelta(tokens.get(i))));
+                }
+                ObjectNode messageDelta = objectMapper.createObjectNode().put("type", "message_delta");
+                messageDelta.putObject("delta").put("stop_reason", "end_turn");
+                messageDelta.putObject("usage").put("output_tokens", tokens.size());
+                events.add(event("content_block_stop", objectMapper.createObjectNode()
+                                .put("type", "content_block_stop").put("index", 0))
+                        + event("message_delta", messageDelta)
+                        + event("message_stop", objectMapper.createObjectNode().put("type", "message_stop")));
+                break;
+            default:
+                for (String token : tokens) {
+                    events.add(data(openAiChunk(model, token, null)));
+                }
+                StringBuilder end = new StringBuilder(data(openAiChunk(model, null, "stop")));
+                if (request.path("stream_options").path("include_usage").asBoolean(false)) {
+                    ObjectNode usageChunk = openAiChunk(model, null, null);
+                    usageChunk.putArray("choices");
+                    putOpenAiUsage(usageChunk, promptTokens, tokens.size());
+                    end.append(data(usageChunk));
+                }
+                end.append("data: [DONE]\n\n");
+                events.add(end.toString());
+                break;
+        }
+        return events;
+    }
+
+    private ObjectNode openAiChunk(String model, String content, String finishReason) {
+        ObjectNode chunk = objectMapper.createObjectNode();
+        chunk.put("id", "chatcmpl-simulated");
+        chunk.put("object", "chat.completion.chunk");
+        chunk.put("model", model);
+        ObjectNode choice = chunk.putArray("choices").addObject();
+        choice.put("index", 0);
+        ObjectNode delta = choice.putObject("delta");
+        if (content != null) {
+            delta.put("content", content);
+        }
+        if (finishReason != null) {
+            choice.put("finish_reason", finishReason);
+        } else {
+            choice.putNull("finish_reason");
+        }
+        return chunk;
+    }
+
+    private ObjectNode textDelta(String text) {
+        ObjectNode delta = objectMapper.createObjectNode().put("type", "content_block_delta").put("index", 0);
+        delta.putObject("delta").put("type", "text_delta").put("text", text);
+        return delta;
+    }
+
+    private static void putOpenAiUsage(ObjectNode node, int promptTokens, int completionTokens) {
+        node.putObject("usage")
+                .put("prompt_tokens", promptTokens)
+                .put("completion_tokens", completionTokens)
+                .put("total_tokens", promptTokens + completionTokens);
+    }
+
+    private static void putGoogleUsage(ObjectNode node, int promptTokens, int completionTokens) {
+        node.putObject("usageMetadata")
+                .put("promptTokenCount", promptTokens)
+                .put("candidatesTokenCount", completionTokens)
+                .put("totalTokenCount", promptTokens + completionTokens);
+    }
+
+    private static String data(JsonNode payload) {
+        return "data: " + payload + "\n\n";
+    }
+
+    private static String event(String name, JsonNode payload) {
+        return "event: " + name + "\n" + data(payload);
+    }
+}
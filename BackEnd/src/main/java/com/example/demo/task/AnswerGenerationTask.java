@@ -1,34 +1,49 @@
 package com.example.demo.task;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.PlatformTransactionManager;
-import org.springframework.transaction.TransactionDefinition;
-import org.springframework.transaction.TransactionStatus;
-import org.springframework.transaction.support.DefaultTransactionDefinition;
 import org.springframework.transaction.support.TransactionTemplate;
 
+import com.example.demo.config.LlmConfig;
+import com.example.demo.dto.LlmCallResult;
 import com.example.demo.dto.WebSocketMessage.MessageType;
 import com.example.demo.entity.jdbc.AnswerGenerationBatch;
 import com.example.demo.entity.jdbc.AnswerGenerationBatch.BatchStatus;
+import com.example.demo.entity.jdbc.AnswerGenerationBatch.ExecutionMode;
 import com.example.demo.entity.jdbc.AnswerPromptAssemblyConfig;
 import com.example.demo.entity.jdbc.AnswerQuestionTypePrompt;
 import com.example.demo.entity.jdbc.AnswerTagPrompt;
@@ -38,20 +53,43 @@ import com.example.demo.entity.jdbc.LlmAnswer;
 import com.example.demo.entity.jdbc.LlmModel;
 import com.example.demo.entity.jdbc.ModelAnswerRun;
 import com.example.demo.entity.jdbc.ModelAnswerRun.RunStatus;
+import com.example.demo.entity.jdbc.ProviderBatchJob;
+import com.example.demo.entity.jdbc.ProviderBatchJob.JobStatus;
 import com.example.demo.entity.jdbc.QuestionType;
 import com.example.demo.entity.jdbc.StandardQuestion;
 import com.example.demo.entity.jdbc.Tag;
 import com.example.demo.exception.EntityNotFoundException;
+import com.example.demo.gateway.LlmGatewayRequest;
+import com.example.demo.gateway.LlmGatewayRequest.Purpose;
+import com.example.demo.gateway.ProviderBatchAdapter;
+import com.example.demo.gateway.ProviderBatchGateway;
+import com.example.demo.manager.AnswerWorkQueue;
+import com.example.demo.manager.AnswerWorkQueue.WorkUnit;
+import com.example.demo.manager.AnswerWriteBehindBuffer;
+import com.example.demo.manager.BatchLeaseManager;
 import com.example.demo.manager.BatchStateManager;
+import com.example.demo.manager.DeferredRetryQueue;
+import com.example.demo.manager.FairShareScheduler;
+import com.example.demo.manager.ModelCircuitBreakerRegistry;
+import com.example.demo.manager.ModelCircuitBreakerRegistry.CircuitBreaker;
+import com.example.demo.manager.QuestionCostEstimator;
+import com.example.demo.manager.RunProgressAggregator;
+import com.example.demo.manager.RunProgressAggregator.ProgressSnapshot;
+import com.example.demo.manager.RunProgressAggregator.RunProgress;
+import com.example.demo.manager.RunUsageAggregator;
 import com.example.demo.repository.jdbc.AnswerGenerationBatchRepository;
 import com.example.demo.repository.jdbc.AnswerQuestionTypePromptRepository;
 import com.example.demo.repository.jdbc.AnswerTagPromptRepository;
+import com.example.demo.repository.jdbc.DatasetQuestionMappingRepository;
 import com.example.demo.repository.jdbc.LlmAnswerRepository;
 import com.example.demo.repository.jdbc.ModelAnswerRunRepository;
+import com.example.demo.repository.jdbc.ProviderBatchJobRepository;
 import com.example.demo.repository.jdbc.StandardQuestionRepository;
 import com.example.demo.repository.jdbc.StandardQuestionTagsRepository;
 import com.example.demo.service.LlmApiService;
 import com.example.demo.service.WebSocketService;
+import com.example.demo.util.BoundedVirtualThreadExecutor;
+import com.example.demo.util.LlmRetryPolicy;
 import com.example.demo.utils.TextPreprocessor;
 
 import jakarta.annotation.PostConstruct;
@@ -76,18 +114,53 @@ public class AnswerGenerationTask {
     private final AnswerTagPromptRepository answerTagPromptRepository;
     private final AnswerQuestionTypePromptRepository answerQuestionTypePromptRepository;
     private final StandardQuestionTagsRepository standardQuestionTagsRepository;
+    private final DatasetQuestionMappingRepository datasetQuestionMappingRepository;
     private final JdbcTemplate jdbcTemplate;
+    private final LlmConfig llmConfig;
+    private final AnswerWriteBehindBuffer answerWriteBuffer;
+    private final RunProgressAggregator progressAggregator;
+    private final ModelCircuitBreakerRegistry circuitBreakers;
+    private final DeferredRetryQueue retryQueue;
+    private final AnswerWorkQueue workQueue;
+    private final BatchLeaseManager batchLeaseManager;
+    private final RunUsageAggregator usageAggregator;
+    private final QuestionCostEstimator costEstimator;
+    private final ProviderBatchGateway providerBatchGateway;
+    private final ProviderBatchJobRepository providerBatchJobRepository;
     private BatchStateManager batchStateManager;
     // 添加事务管理器
     private final PlatformTransactionManager transactionManager;
     
     // 添加中断控制器
+    // 批次中断标志，由Redis广播的中断信号实时更新，检查中断时只读内存
     private final ConcurrentHashMap<Long, AtomicBoolean> interruptionFlags = new ConcurrentHashMap<>();
+    
+    // 兜底轮询Redis中断标志的间隔，用于补偿广播丢失（如订阅断线期间）
+    @Value("${llm.control.safety-poll-interval-ms:30000}")
+    private long safetyPollIntervalMs;
     private final ScheduledExecutorService interruptionMonitor = Executors.newScheduledThreadPool(1);
     
+    // 问题处理流水线的各阶段执行器，所有运行共享
+    // LLM调用阶段（questionExecutor）中单个运行的占用量由模型的并发请求上限约束
+    private final ExecutorService promptStageExecutor;
+    private final ExecutorService questionExecutor;
+    private final ExecutorService persistStageExecutor;
+    // 所有运行共享的流水线名额：问题提交前占用、处理结束后归还，名额用完时运行暂停提交新问题。
+    // 背压只施加在运行的提交循环上，各阶段执行器的提交方（包括HttpClient完成线程）从不阻塞；为null表示不限制
+    private final Semaphore pipelineSlots;
+    
     // 添加中断标志来源跟踪
     private final ConcurrentHashMap<Long, String> interruptionSource = new ConcurrentHashMap<>();
     
+    // 处理权租约丢失时的中断来源，只在本实例生效，兜底轮询不会清除
+    static final String SOURCE_LEASE_LOST = "LEASE_LOST";
+    
+    // 正在处理的批次的执行上下文
+    private final ConcurrentHashMap<Long, BatchExecutionContext> executionContexts = new ConcurrentHashMap<>();
+    
+    // 分布式模式下本实例处理过工作单元的批次，空闲超过context-idle-ms后清除
+    private final ConcurrentHashMap<Long, UnitBatchState> unitBatches = new ConcurrentHashMap<>();
+    
     @Autowired
     public AnswerGenerationTask(
             AnswerGenerationBatchRepository batchRepository,
@@ -99,8 +172,23 @@ public class AnswerGenerationTask {
             AnswerTagPromptRepository answerTagPromptRepository,
             AnswerQuestionTypePromptRepository answerQuestionTypePromptRepository,
             StandardQuestionTagsRepository standardQuestionTagsRepository,
+            DatasetQuestionMappingRepository datasetQuestionMappingRepository,
             JdbcTemplate jdbcTemplate,
-            PlatformTransactionManager transactionManager) {
+            PlatformTransactionManager transactionManager,
+            LlmConfig llmConfig,
+            AnswerWriteBehindBuffer answerWriteBuffer,
+            RunProgressAggregator progressAggregator,
+            ModelCircuitBreakerRegistry circuitBreakers,
+            DeferredRetryQueue retryQueue,
+            AnswerWorkQueue workQueue,
+            BatchLeaseManager batchLeaseManager,
+            RunUsageAggregator usageAggregator,
+            QuestionCostEstimator costEstimator,
+            ProviderBatchGateway providerBatchGateway,
+            ProviderBatchJobRepository providerBatchJobRepository,
+            @Qualifier("promptStageExecutor") ExecutorService promptStageExecutor,
+            @Qualifier("questionExecutor") ExecutorService questionExecutor,
+            @Qualifier("persistStageExecutor") ExecutorService persistStageExecutor) {
         this.batchRepository = batchRepository;
         this.runRepository = runRepository;
         this.questionRepository = questionRepository;
@@ -110,8 +198,26 @@ public class AnswerGenerationTask {
         this.answerTagPromptRepository = answerTagPromptRepository;
         this.answerQuestionTypePromptRepository = answerQuestionTypePromptRepository;
         this.standardQuestionTagsRepository = standardQuestionTagsRepository;
+        this.datasetQuestionMappingRepository = datasetQuestionMappingRepository;
         this.jdbcTemplate = jdbcTemplate;
         this.transactionManager = transactionManager;
+        this.llmConfig = llmConfig;
+        this.answerWriteBuffer = answerWriteBuffer;
+        this.progressAggregator = progressAggregator;
+        this.circuitBreakers = circuitBreakers;
+        this.retryQueue = retryQueue;
+        this.workQueue = workQueue;
+        this.batchLeaseManager = batchLeaseManager;
+        this.usageAggregator = usageAggregator;
+        this.costEstimator = costEstimator;
+        this.providerBatchGateway = providerBatchGateway;
+        this.providerBatchJobRepository = providerBatchJobRepository;
+        this.promptStageExecutor = promptStageExecutor;
+        this.questionExecutor = questionExecutor;
+        this.persistStageExecutor = persistStageExecutor;
+        int queueCapacity = llmConfig.getConcurrency().getQuestionQueueCapacity();
+        this.pipelineSlots = queueCapacity >= 0
+            ? new Semaphore(llmConfig.getConcurrency().getQuestionMaxConcurrency() + queueCapacity, true) : null;
     }
     
     @Autowired
@@ -127,40 +233,38 @@ public class AnswerGenerationTask {
     public void init() {
         logger.info("初始化回答生成任务管理器");
         
-        // 启动定期检查Redis中断标志的任务
-        interruptionMonitor.scheduleAtFixedRate(() -> {
+        // 中断信号通过Redis广播实时同步，这里只做低频兜底：批量读取所有已跟踪批次的Redis中断标志
+        long interval = Math.max(1000, safetyPollIntervalMs);
+        interruptionMonitor.scheduleWithFixedDelay(() -> {
             try {
-                // 检查所有有中断标志的批次
-                for (Long batchId : interruptionFlags.keySet()) {
-                    try {
-                        // 检查Redis中的中断标志
-                        if (batchStateManager != null) {
-                            boolean redisInterruptFlag = batchStateManager.isInterrupted(batchId);
-                            boolean memoryInterruptFlag = interruptionFlags.get(batchId).get();
-                            
-                            // 同步Redis和内存中的中断标志
-                            if (redisInterruptFlag && !memoryInterruptFlag) {
-                                logger.info("批次{}在Redis中有中断标志，同步到内存", batchId);
-                                markForInterruption(batchId, "REDIS_SYNC");
-                            } else if (!redisInterruptFlag && memoryInterruptFlag) {
-                                // 检查是否是手动暂停
-                                String source = interruptionSource.getOrDefault(batchId, "UNKNOWN");
-                                if (!"MANUAL_PAUSE".equals(source)) {
-                                    logger.info("批次{}在Redis中无中断标志，清除内存中的中断标志", batchId);
-                                    clearInterruptionFlag(batchId);
-                                } else {
-                                    logger.info("批次{}有手动暂停标志，保持中断状态", batchId);
-                                }
-                            }
+                if (batchStateManager == null || interruptionFlags.isEmpty()) {
+                    return;
+                }
+                Set<Long> redisInterrupted = batchStateManager.findInterrupted(interruptionFlags.keySet());
+                for (Map.Entry<Long, AtomicBoolean> entry : interruptionFlags.entrySet()) {
+                    Long batchId = entry.getKey();
+                    boolean redisInterruptFlag = redisInterrupted.contains(batchId);
+                    boolean memoryInterruptFlag = entry.getValue().get();
+                    
+                    // 同步Redis和内存中的中断标志
+                    if (redisInterruptFlag && !memoryInterruptFlag) {
+                        logger.info("批次{}在Redis中有中断标志，同步到内存", batchId);
+                        markForInterruption(batchId, "REDIS_SYNC");
+                    } else if (!redisInterruptFlag && memoryInterruptFlag) {
+                        // 检查是否是手动暂停
+                        String source = interruptionSource.getOrDefault(batchId, "UNKNOWN");
+                        if (!"MANUAL_PAUSE".equals(source) && !SOURCE_LEASE_LOST.equals(source)) {
+                            logger.info("批次{}在Redis中无中断标志，清除内存中的中断标志", batchId);
+                            clearInterruptionFlag(batchId);
+                        } else {
+                            logger.info("批次{}有手动暂停标志，保持中断状态", batchId);
                         }
-                    } catch (Exception e) {
-                        logger.error("检查批次{}中断状态时出错", batchId, e);
                     }
                 }
             } catch (Exception e) {
                 logger.error("中断监控任务出错", e);
             }
-        }, 5, 5, TimeUnit.SECONDS);
+        }, interval, interval, TimeUnit.MILLISECONDS);
     }
     
     /**
@@ -195,30 +299,75 @@ public class AnswerGenerationTask {
      */
     public void clearInterruptionFlag(Long batchId) {
         logger.info("批次{}的中断标志已清除", batchId);
-        AtomicBoolean flag = interruptionFlags.get(batchId);
-        if (flag != null) {
-            flag.set(false);
-        }
+        interruptionFlags.computeIfAbsent(batchId, k -> new AtomicBoolean(false)).set(false);
         interruptionSource.remove(batchId);
     }
     
+    /**
+     * 批次处理权租约丢失（已被其他实例接管或长时间无法续约），立即停止本实例对该批次的处理
+     * 只设置本实例的中断标志，不影响接管的实例
+     */
+    public void onBatchLeaseLost(Long batchId) {
+        logger.warn("批次{}的处理权租约已丢失，停止本实例的处理", batchId);
+        markForInterruption(batchId, SOURCE_LEASE_LOST);
+    }
+    
+    /**
+     * 批次处理权超过半个有效期未续约时自行停止处理，并让租约立即过期，由任一实例从断点接管
+     * 
+     * @return 租约已不可靠、应停止提交新问题时返回true
+     */
+    private boolean fenceStaleLease(Long batchId) {
+        if (batchLeaseManager.isLeaseFresh(batchId)) {
+            return false;
+        }
+        if (batchLeaseManager.isOwned(batchId)) {
+            logger.warn("批次{}的处理权超过{}ms未续约，停止提交新问题", batchId, llmConfig.getOwnership().getLeaseTtlMs() / 2);
+            batchLeaseManager.expire(batchId);
+        }
+        onBatchLeaseLost(batchId);
+        return true;
+    }
+    
+    /**
+     * 本实例是否仍在执行批次的运行（包括租约丢失后尚未停止的运行）
+     */
+    public boolean isProcessingLocally(Long batchId) {
+        return executionContexts.containsKey(batchId);
+    }
+    
+    /**
+     * 应用从Redis广播收到的中断信号，标志未变化时忽略（包括本实例自己发出的信号）
+     * 租约丢失的中断只属于本实例，其他实例广播的清除信号不能解除，否则尚未停止的运行会与接管的实例并行处理
+     */
+    public void applyInterruptSignal(Long batchId, boolean interrupted) {
+        AtomicBoolean flag = interruptionFlags.computeIfAbsent(batchId, k -> new AtomicBoolean(!interrupted));
+        if (flag.get() == interrupted) {
+            return;
+        }
+        if (interrupted) {
+            markForInterruption(batchId, "REDIS_SIGNAL");
+        } else if (SOURCE_LEASE_LOST.equals(interruptionSource.get(batchId))) {
+            logger.info("批次{}的处理权已丢失，忽略清除中断的信号", batchId);
+        } else {
+            clearInterruptionFlag(batchId);
+        }
+    }
+    
     /**
      * 检查批次是否应该中断
+     * 只读内存标志；批次首次检查时从Redis加载一次，之后由广播信号和兜底轮询维护。
      */
     public boolean shouldInterrupt(Long batchId) {
-        // 只检查内存中的中断标志
         AtomicBoolean flag = interruptionFlags.get(batchId);
-        if (flag != null && flag.get()) {
-            logger.debug("批次{}有内存中断标志，需要中断", batchId);
-            return true;
+        if (flag == null) {
+            flag = interruptionFlags.computeIfAbsent(batchId, 
+                k -> new AtomicBoolean(batchStateManager != null && batchStateManager.isInterrupted(k)));
         }
-        
-        // 如果Redis中有中断标志，也应该中断
-        if (batchStateManager != null && batchStateManager.isInterrupted(batchId)) {
-            logger.debug("批次{}在Redis中有中断标志，需要中断", batchId);
+        if (flag.get()) {
+            logger.debug("批次{}有内存中断标志，需要中断", batchId);
             return true;
         }
-        
         return false;
     }
     
@@ -245,20 +394,22 @@ public class AnswerGenerationTask {
             logger.info("批次{}当前状态为{}，开始处理", batchId, currentStatus);
             
             // 直接更新状态为GENERATING_ANSWERS，不做状态检查
-            int updated = jdbcTemplate.update(
-                "UPDATE answer_generation_batches SET status = 'GENERATING_ANSWERS', last_activity_time = ?, " + 
-                "last_check_time = ?, processing_instance = ? WHERE id = ?",
-                LocalDateTime.now(), LocalDateTime.now(), UUID.randomUUID().toString(), batchId);
-                    
-            logger.info("已将批次{}状态更新为GENERATING_ANSWERS并获取处理权", batchId);
+            jdbcTemplate.update(
+                "UPDATE answer_generation_batches SET status = 'GENERATING_ANSWERS', last_activity_time = ? WHERE id = ?",
+                LocalDateTime.now(), batchId);
             
-            // 同步Redis状态
+            // 获取处理权租约，处理期间由心跳续约
+            batchLeaseManager.acquire(batchId);
+            logger.info("已将批次{}状态更新为GENERATING_ANSWERS并获取处理权，实例: {}", 
+                batchId, batchLeaseManager.getInstanceId());
+            
+            // 同步Redis状态；Redis中的中断标志已由启动和恢复操作清除，这里不再广播清除信号，
+            // 接管时广播会解除原实例租约丢失的中断
             if (batchStateManager != null) {
                 batchStateManager.setBatchState(batchId, "GENERATING_ANSWERS");
-                batchStateManager.setInterruptFlag(batchId, false);
             }
             
-            // 清除内存中断标志
+            // 清除本实例内存中的中断标志
             clearInterruptionFlag(batchId);
             
             // 获取批次信息
@@ -269,170 +420,230 @@ public class AnswerGenerationTask {
             List<ModelAnswerRun> runs = runRepository.findByAnswerGenerationBatchId(batchId);
             if (runs.isEmpty()) {
                 logger.warn("批次{}没有关联的运行，无法启动处理", batchId);
+                failBatch(batchId, "批次没有关联的运行");
                 return;
             }
             logger.info("批次{}共有{}个运行", batchId, runs.size());
             
             // 获取批次关联的所有问题
-            List<StandardQuestion> questions = questionRepository.findByDatasetVersionId(batch.getDatasetVersion().getId());
+            List<StandardQuestion> questions = loadBatchQuestions(batch);
             if (questions.isEmpty()) {
                 logger.warn("批次{}关联的数据集版本没有问题，无法启动处理", batchId);
+                failBatch(batchId, "批次关联的数据集版本没有问题");
                 return;
             }
             logger.info("批次{}关联的数据集共有{}个问题", batchId, questions.size());
             
-            // 预加载问题ID
-            List<Long> questionIds = questions.stream().map(StandardQuestion::getId).collect(java.util.stream.Collectors.toList());
-            
-            // 预加载数据集映射（不会覆盖已加载的标签）
-            if (!questionIds.isEmpty()) {
-                logger.info("预加载批次{}的问题映射关系", batchId);
-                List<StandardQuestion> questionsWithMappings = questionRepository.findByIdsWithDatasetMappings(questionIds);
-                
-                // 创建ID到预加载问题的映射，用于替换原始列表中的问题
-                Map<Long, StandardQuestion> questionMap = new HashMap<>();
-                for (StandardQuestion q : questionsWithMappings) {
-                    questionMap.put(q.getId(), q);
-                }
-                
-                // 使用预加载的问题替换原始列表中的问题
-                for (int i = 0; i < questions.size(); i++) {
-                    Long id = questions.get(i).getId();
-                    if (questionMap.containsKey(id)) {
-                        questions.set(i, questionMap.get(id));
-                    }
-                }
-                logger.info("批次{}问题映射关系加载完成", batchId);
-            }
-            
             // 更新批次的总问题数
             int totalQuestions = questions.size() * runs.size() * batch.getAnswerRepeatCount();
             logger.info("批次{}总问题数: {}", batchId, totalQuestions);
             
-            // 检查是否有上次处理到的运行记录
+            // 上次处理到的运行仅作记录，并发模式下以各运行自身状态和断点为准
             Long lastProcessedRunId = batch.getLastProcessedRunId();
-            ModelAnswerRun lastProcessedRun = null;
-            int startIndex = 0;
-            
             if (lastProcessedRunId != null) {
-                lastProcessedRun = runRepository.findById(lastProcessedRunId).orElse(null);
-                if (lastProcessedRun != null) {
-                    logger.info("批次{}有上次处理记录，从运行ID={}之后开始处理", batchId, lastProcessedRunId);
-                    // 找到上次处理的运行在列表中的位置
-                    for (int i = 0; i < runs.size(); i++) {
-                        if (runs.get(i).getId().equals(lastProcessedRunId)) {
-                            startIndex = i; // 从下一个运行开始
-                            break;
-                        }
-                    }
-                    logger.info("将从运行列表的索引{}开始处理", startIndex);
-                }
+                logger.info("批次{}上次处理记录的运行ID={}，将恢复所有未完成的运行", batchId, lastProcessedRunId);
             }
             
-            // 启动每个运行的处理，从startIndex开始
-            for (int i = startIndex; i < runs.size(); i++) {
-                ModelAnswerRun run = runs.get(i);
-                Long runId = run.getId();
-                
-                // 获取当前状态但不用于判断是否处理
+            // 筛选需要处理的运行，已完成的运行不再重复处理
+            List<ModelAnswerRun> pendingRuns = new ArrayList<>();
+            for (ModelAnswerRun run : runs) {
                 String runStatus = jdbcTemplate.queryForObject(
                     "SELECT status FROM model_answer_runs WHERE id = ?", 
-                    String.class, runId);
-                
-                logger.info("开始处理批次{}的运行: {}，模型: {}, 当前状态: {}", 
-                        batchId, runId, run.getLlmModel().getName(), runStatus);
-                
-                // 直接更新运行状态为GENERATING_ANSWERS
-                jdbcTemplate.update(
-                    "UPDATE model_answer_runs SET status = 'GENERATING_ANSWERS', last_activity_time = ? WHERE id = ?",
-                    LocalDateTime.now(), runId);
-                    
-                logger.info("运行{}状态已更新为GENERATING_ANSWERS", runId);
-                
-                // 更新批次的lastProcessedRun为当前运行
-                jdbcTemplate.update(
-                    "UPDATE answer_generation_batches SET last_processed_run_id = ? WHERE id = ?",
-                    runId, batchId);
-                logger.info("批次{}的last_processed_run_id已更新为{}", batchId, runId);
+                    String.class, run.getId());
+                if (RunStatus.COMPLETED.name().equals(runStatus)) {
+                    logger.info("批次{}的运行{}已完成，跳过处理", batchId, run.getId());
+                    continue;
+                }
+                pendingRuns.add(run);
+            }
+            
+            if (!pendingRuns.isEmpty() && llmConfig.getDistributed().isEnabled()
+                    && batch.getExecutionMode() != ExecutionMode.PROVIDER_BATCH) {
+                // 分布式模式：运行切分为工作单元投递到Redis队列，由所有实例拉取处理，
+                // 批次完成状态在最后一个单元完成时检查；通过提供商批量接口执行的批次只需一个实例提交和轮询
+                distributeRuns(batch, pendingRuns, questions.size() * batch.getAnswerRepeatCount());
+                // 投递完成后各单元有自己的租约，不再需要批次处理权
+                batchLeaseManager.release(batchId);
+                return;
+            }
+            
+            if (!pendingRuns.isEmpty()) {
+                // 一次性加载Prompt组装和保存回答所需的数据，所有运行共享
+                BatchExecutionContext context = buildExecutionContext(batch, questions);
+                executionContexts.put(batchId, context);
                 
-                // 检查是否有断点信息
-                Long lastProcessedQuestionId = run.getLastProcessedQuestionId();
-                Integer lastProcessedQuestionIndex = run.getLastProcessedQuestionIndex();
+                // 按配置的并发上限并行处理各运行
+                int maxConcurrentRuns = Math.max(1, llmConfig.getConcurrency().getMaxConcurrentRuns());
+                int poolSize = Math.min(pendingRuns.size(), maxConcurrentRuns);
+                logger.info("批次{}共有{}个待处理运行，并发上限: {}", batchId, pendingRuns.size(), poolSize);
                 
-                if (lastProcessedQuestionId != null && lastProcessedQuestionIndex != null && lastProcessedQuestionIndex >= 0) {
-                    logger.info("运行{}有断点信息，将从断点处继续: 问题ID={}, 索引={}", 
-                                runId, lastProcessedQuestionId, lastProcessedQuestionIndex);
-                    
-                    // 从断点处继续处理
-                    startRunAnswerGenerationFromCheckpoint(run, questions, batch.getAnswerRepeatCount(), new AtomicBoolean(false));
-                } else {
-                    logger.info("运行{}没有断点信息，将从头开始处理", runId);
+                ExecutorService runExecutor = new BoundedVirtualThreadExecutor("Run-" + batchId, poolSize);
+                try {
+                    List<CompletableFuture<Void>> futures = new ArrayList<>();
+                    for (ModelAnswerRun run : pendingRuns) {
+                        futures.add(CompletableFuture.runAsync(
+                            () -> processRun(context, run), runExecutor));
+                    }
                     
-                    // 从头开始处理
-                    startRunAnswerGeneration(run, questions, batch.getAnswerRepeatCount(), new AtomicBoolean(false));
+                    // 等待所有运行结束（完成、失败或暂停）
+                    CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+                } finally {
+                    runExecutor.shutdown();
+                    executionContexts.remove(batchId, context);
                 }
-                
-                logger.info("批次{}的运行{}处理已启动", batchId, runId);
+            }
+            
+            // 处理权已被其他实例接管时，批次状态由接管的实例维护
+            if (!batchLeaseManager.isOwned(batchId)) {
+                logger.warn("批次{}的处理权已丢失，本实例停止处理，不更新批次状态", batchId);
+                return;
             }
             
             // 批次处理完成后，检查所有运行状态并更新批次状态
             checkAndUpdateBatchCompletion(batch);
             
             // 处理完成后，清除处理标记
-            jdbcTemplate.update(
-                "UPDATE answer_generation_batches SET processing_instance = NULL WHERE id = ?",
-                batchId);
+            batchLeaseManager.release(batchId);
                 
             logger.info("批次{}处理完成，已清除处理标记", batchId);
         } catch (Exception e) {
             logger.error("处理批次{}失败: {}", batchId, e.getMessage(), e);
+            executionContexts.remove(batchId);
+            if (!batchLeaseManager.isOwned(batchId)) {
+                logger.warn("批次{}的处理权已丢失，不标记为失败", batchId);
+                return;
+            }
+            failBatch(batchId, e.getMessage());
+        }
+    }
+    
+    /**
+     * 释放批次处理权并将批次标记为失败
+     */
+    private void failBatch(Long batchId, String errorMessage) {
+        batchLeaseManager.release(batchId);
+        
+        try {
+            // 更新批次状态为失败
+            jdbcTemplate.update(
+                "UPDATE answer_generation_batches SET status = 'FAILED', error_message = ?, " +
+                "last_activity_time = ?, processing_instance = NULL WHERE id = ?",
+                errorMessage, LocalDateTime.now(), batchId);
             
-            try {
-                // 更新批次状态为失败
-                jdbcTemplate.update(
-                    "UPDATE answer_generation_batches SET status = 'FAILED', error_message = ?, " +
-                    "last_activity_time = ?, processing_instance = NULL WHERE id = ?",
-                    e.getMessage(), LocalDateTime.now(), batchId);
-                
-                if (batchStateManager != null) {
-                    batchStateManager.setBatchState(batchId, "FAILED");
-                }
-                
-                // 发送错误通知
-                Map<String, Object> errorData = new HashMap<>();
-                errorData.put("batchId", batchId);
-                errorData.put("error", "批次处理失败: " + e.getMessage());
-                errorData.put("timestamp", System.currentTimeMillis());
-                webSocketService.sendBatchMessage(batchId, MessageType.ERROR, errorData);
-            } catch (Exception ex) {
-                logger.error("更新批次{}失败状态时出错", batchId, ex);
+            if (batchStateManager != null) {
+                batchStateManager.setBatchState(batchId, "FAILED");
             }
+            
+            // 发送错误通知
+            Map<String, Object> errorData = new HashMap<>();
+            errorData.put("batchId", batchId);
+            errorData.put("error", "批次处理失败: " + errorMessage);
+            errorData.put("timestamp", System.currentTimeMillis());
+            webSocketService.sendBatchMessage(batchId, MessageType.ERROR, errorData);
+        } catch (Exception ex) {
+            logger.error("更新批次{}失败状态时出错", batchId, ex);
         }
     }
     
     /**
-     * 从断点处开始处理单个运行的回答生成
+     * 加载批次数据集的问题（按问题ID排序，各实例的问题序号一致），并预加载数据集映射
      */
-    private void startRunAnswerGenerationFromCheckpoint(ModelAnswerRun run, List<StandardQuestion> questions, int repeatCount, AtomicBoolean shouldStop) {
-        Long runId = run.getId();
-        Long batchId = run.getAnswerGenerationBatch().getId();
-        logger.info("从断点处恢复运行: {}, 模型: {}", runId, run.getLlmModel().getName());
+    private List<StandardQuestion> loadBatchQuestions(AnswerGenerationBatch batch) {
+        Long batchId = batch.getId();
+        List<StandardQuestion> questions = questionRepository.findByDatasetVersionId(batch.getDatasetVersion().getId());
+        if (questions.isEmpty()) {
+            return questions;
+        }
+        
+        // 预加载问题ID
+        List<Long> questionIds = questions.stream().map(StandardQuestion::getId).collect(java.util.stream.Collectors.toList());
+        
+        // 预加载数据集映射（不会覆盖已加载的标签）
+        logger.info("预加载批次{}的问题映射关系", batchId);
+        List<StandardQuestion> questionsWithMappings = questionRepository.findByIdsWithDatasetMappings(questionIds);
+        
+        // 创建ID到预加载问题的映射，用于替换原始列表中的问题
+        Map<Long, StandardQuestion> questionMap = new HashMap<>();
+        for (StandardQuestion q : questionsWithMappings) {
+            questionMap.put(q.getId(), q);
+        }
         
-        // 获取批次状态但不用于判断是否处理
-        String batchStatus = jdbcTemplate.queryForObject(
-            "SELECT status FROM answer_generation_batches WHERE id = ?", 
-            String.class, batchId);
+        // 使用预加载的问题替换原始列表中的问题
+        for (int i = 0; i < questions.size(); i++) {
+            Long id = questions.get(i).getId();
+            if (questionMap.containsKey(id)) {
+                questions.set(i, questionMap.get(id));
+            }
+        }
+        logger.info("批次{}问题映射关系加载完成", batchId);
+        return questions;
+    }
+    
+    /**
+     * 处理单个运行，由批次的运行线程池调用
+     */
+    private void processRun(BatchExecutionContext context, ModelAnswerRun run) {
+        AnswerGenerationBatch batch = context.getBatch();
+        Long batchId = batch.getId();
+        Long runId = run.getId();
         
-        logger.info("断点恢复前批次{}状态: {}，继续处理", batchId, batchStatus);
+        // 运行共享上下文中已完整加载的批次对象
+        run.setAnswerGenerationBatch(batch);
         
         try {
-            // 直接更新运行状态为GENERATING_ANSWERS，不做状态检查
+            logger.info("开始处理批次{}的运行: {}，模型: {}", batchId, runId, run.getLlmModel().getName());
+            
+            // 直接更新运行状态为GENERATING_ANSWERS
             jdbcTemplate.update(
                 "UPDATE model_answer_runs SET status = 'GENERATING_ANSWERS', last_activity_time = ? WHERE id = ?",
                 LocalDateTime.now(), runId);
             
-            logger.info("运行{}状态已更新为GENERATING_ANSWERS", runId);
+            // 记录最近开始处理的运行
+            jdbcTemplate.update(
+                "UPDATE answer_generation_batches SET last_processed_run_id = ? WHERE id = ?",
+                runId, batchId);
+            logger.info("批次{}的last_processed_run_id已更新为{}", batchId, runId);
+            
+            // 检查是否有断点信息
+            Long lastProcessedQuestionId = run.getLastProcessedQuestionId();
+            Integer lastProcessedQuestionIndex = run.getLastProcessedQuestionIndex();
+            
+            if (batch.getExecutionMode() == ExecutionMode.PROVIDER_BATCH) {
+                logger.info("运行{}通过提供商批量接口处理", runId);
+                long startTime = System.currentTimeMillis();
+                if (processRunWithProviderBatch(context, run, batch.getAnswerRepeatCount())) {
+                    logger.info("运行{}处理完成，总耗时: {}毫秒", runId, (System.currentTimeMillis() - startTime));
+                    updateRunStatus(run, RunStatus.COMPLETED, null);
+                }
+            } else if (lastProcessedQuestionId != null && lastProcessedQuestionIndex != null && lastProcessedQuestionIndex >= 0) {
+                logger.info("运行{}有断点信息，将从断点处继续: 问题ID={}, 索引={}", 
+                            runId, lastProcessedQuestionId, lastProcessedQuestionIndex);
+                startRunAnswerGenerationFromCheckpoint(context, run, batch.getAnswerRepeatCount(), new AtomicBoolean(false));
+            } else {
+                logger.info("运行{}没有断点信息，将从头开始处理", runId);
+                startRunAnswerGeneration(context, run, batch.getAnswerRepeatCount(), new AtomicBoolean(false));
+            }
             
+            logger.info("批次{}的运行{}处理结束", batchId, runId);
+        } catch (InterruptedException e) {
+            // 实例关闭时等待批量任务的线程被中断，运行保持处理中状态，由接管的实例继续查询
+            Thread.currentThread().interrupt();
+            logger.warn("批次{}的运行{}在等待批量任务时被中断", batchId, runId);
+        } catch (Exception e) {
+            logger.error("批次{}的运行{}处理异常: {}", batchId, runId, e.getMessage(), e);
+            updateRunStatus(run, RunStatus.FAILED, e.getMessage());
+        }
+    }
+    
+    /**
+     * 从断点处开始处理单个运行的回答生成
+     */
+    private void startRunAnswerGenerationFromCheckpoint(BatchExecutionContext context, ModelAnswerRun run, int repeatCount, AtomicBoolean shouldStop) {
+        Long runId = run.getId();
+        List<StandardQuestion> questions = context.getQuestions();
+        logger.info("从断点处恢复运行: {}, 模型: {}", runId, run.getLlmModel().getName());
+        
+        try {
             // 初始化计数器
             int totalQuestions = questions.size() * repeatCount;
             int completedQuestions = run.getCompletedQuestionsCount();
@@ -441,216 +652,974 @@ public class AnswerGenerationTask {
             logger.info("运行{}已完成的问题数: {}, 失败的问题数: {}, 总问题数: {}", 
                 runId, completedQuestions, failedQuestions, totalQuestions);
             
-            // 查找上次处理的位置
+            // 断点位置为第一个尚未处理完成的问题
             int lastProcessedIndex = run.getLastProcessedQuestionIndex();
-            Long lastProcessedId = run.getLastProcessedQuestionId();
+            int startIndex = Math.max(0, Math.min(lastProcessedIndex, totalQuestions));
             
-            logger.info("运行{}上次处理位置: 问题ID={}, 索引={}", runId, lastProcessedId, lastProcessedIndex);
+            logger.info("运行{}从断点处恢复：问题ID={}, 索引={}", runId, run.getLastProcessedQuestionId(), startIndex);
             
-            // 确定开始处理的重复索引和问题索引
-            int startRepeatIndex = 0;
-            int startQuestionIndex = 0;
+            long startTime = System.currentTimeMillis();
+            boolean finished = processRunQuestions(context, run, repeatCount, startIndex, 
+                completedQuestions, failedQuestions, shouldStop);
             
-            if (lastProcessedIndex >= 0) {
-                // 计算重复索引和问题索引
-                startRepeatIndex = lastProcessedIndex / questions.size();
-                startQuestionIndex = lastProcessedIndex % questions.size();
+            if (finished) {
+                logger.info("运行{}处理完成，总耗时: {}毫秒", runId, (System.currentTimeMillis() - startTime));
                 
-                logger.info("运行{}从断点处恢复：重复索引={}, 问题索引={}", runId, startRepeatIndex, startQuestionIndex);
-            } else {
-                logger.info("运行{}没有有效的断点位置，从头开始处理", runId);
+                // 更新运行状态为COMPLETED，批次完成状态由startBatchAnswerGeneration统一检查
+                updateRunStatus(run, RunStatus.COMPLETED, null);
             }
+        } catch (Exception e) {
+            logger.error("处理运行{}失败: {}", runId, e.getMessage(), e);
             
+            // 更新运行状态为FAILED
+            updateRunStatus(run, RunStatus.FAILED, e.getMessage());
+        }
+    }
+    
+    /**
+     * 开始处理单个运行的回答生成
+     */
+    private void startRunAnswerGeneration(BatchExecutionContext context, ModelAnswerRun run, int repeatCount, AtomicBoolean shouldStop) {
+        Long runId = run.getId();
+        logger.info("开始处理运行: {}, 模型: {}", runId, run.getLlmModel().getName());
+        
+        try {
             long startTime = System.currentTimeMillis();
-            logger.info("开始从断点处恢复运行{}的处理", runId);
+            boolean finished = processRunQuestions(context, run, repeatCount, 0, 0, 0, shouldStop);
             
-            // 处理每个问题（考虑重复次数），从断点处开始
-            for (int r = startRepeatIndex; r < repeatCount; r++) {
-                for (int q = (r == startRepeatIndex ? startQuestionIndex : 0); q < questions.size(); q++) {
-                    StandardQuestion question = questions.get(q);
-                    
-                    logger.debug("运行{}处理问题: ID={}, 重复索引={}, 问题索引={}", 
-                        runId, question.getId(), r, q);
-                    
-                    // 每次处理一个问题前检查批次是否应该中断
-                    if (shouldInterrupt(batchId) || shouldStop.get()) {
-                        logger.info("检测到批次{}已标记为中断，停止处理运行{}中的新问题", batchId, runId);
-                        
-                        // 保存当前处理位置
-                        jdbcTemplate.update(
-                            "UPDATE model_answer_runs SET status = 'PAUSED', last_activity_time = ?, " +
-                            "last_processed_question_id = ?, last_processed_question_index = ? WHERE id = ?",
-                            LocalDateTime.now(), question.getId(), (r * questions.size() + q), runId);
-                            
-                        logger.info("运行{}已暂停，当前处理位置已保存: 问题ID={}, 索引={}", 
-                            runId, question.getId(), (r * questions.size() + q));
-                            
-                        // 发送状态变更通知
-                        Map<String, Object> statusData = new HashMap<>();
-                        statusData.put("runId", runId);
-                        statusData.put("status", "PAUSED");
-                        statusData.put("completedQuestions", completedQuestions);
-                        statusData.put("failedQuestions", failedQuestions);
-                        statusData.put("totalQuestions", totalQuestions);
-                        statusData.put("message", "运行已暂停");
-                        
-                        webSocketService.sendRunMessage(runId, MessageType.STATUS_CHANGE, statusData);
-                        
-                        return;
-                    }
-                    
-                    // 处理单个问题
-                    logger.debug("运行{}开始处理问题: ID={}", runId, question.getId());
-                    boolean success = processQuestion(run, question, r, completedQuestions + 1);
-                    
-                    // 更新计数器
-                    if (success) {
-                        completedQuestions++;
-                        logger.debug("运行{}问题处理成功: ID={}, 已完成问题数={}", 
-                            runId, question.getId(), completedQuestions);
-                    } else {
-                        failedQuestions++;
-                        logger.debug("运行{}问题处理失败: ID={}, 失败问题数={}", 
-                            runId, question.getId(), failedQuestions);
-                    }
-                    
-                    // 更新处理位置
-                    jdbcTemplate.update(
-                        "UPDATE model_answer_runs SET last_processed_question_id = ?, last_processed_question_index = ? WHERE id = ?",
-                        question.getId(), (r * questions.size() + q), runId);
-                    
-                    logger.debug("运行{}处理位置已更新: 问题ID={}, 索引={}", 
-                        runId, question.getId(), (r * questions.size() + q));
-                    
-                    // 更新进度
-                    updateRunProgress(run, completedQuestions, failedQuestions, totalQuestions);
-                    
-                    // 每处理5个问题后，再次检查中断状态
-                    if ((completedQuestions + failedQuestions) % 5 == 0) {
-                        if (shouldInterrupt(batchId) || shouldStop.get()) {
-                            logger.info("批量处理过程中检测到批次{}已标记为中断，停止处理", batchId);
-                            return;
+            if (finished) {
+                logger.info("运行{}处理完成，总耗时: {}毫秒", runId, (System.currentTimeMillis() - startTime));
+                
+                // 更新运行状态为COMPLETED，批次完成状态由startBatchAnswerGeneration统一检查
+                updateRunStatus(run, RunStatus.COMPLETED, null);
+            }
+        } catch (Exception e) {
+            logger.error("处理运行{}失败: {}", runId, e.getMessage(), e);
+            
+            // 更新运行状态为FAILED
+            updateRunStatus(run, RunStatus.FAILED, e.getMessage());
+        }
+    }
+    
+    /**
+     * 按模型的并发上限处理运行中的问题（考虑重复次数）
+     * 每个运行最多同时有max_concurrent_requests个问题在共享线程池中执行，起到舱壁隔离作用，
+     * 慢速模型不会占满共享线程池。问题按排序策略提交（默认按预计耗时从长到短），可能乱序完成，
+     * 断点始终按数据集顺序只推进到连续完成的位置；恢复时断点之后已有成功回答的问题直接跳过。
+     * 进度和断点只在进度聚合器中累计，由聚合器定时合并写库，运行结束或暂停时立即写入；
+     * 恢复时完成数以已保存的成功回答为准。
+     * 
+     * @return 是否处理完所有问题，被中断时返回false
+     */
+    private boolean processRunQuestions(BatchExecutionContext context, ModelAnswerRun run, int repeatCount,
+            int startIndex, int initialCompleted, int initialFailed, AtomicBoolean shouldStop) {
+        List<StandardQuestion> questions = context.getQuestions();
+        Long runId = run.getId();
+        Long batchId = run.getAnswerGenerationBatch().getId();
+        int questionCount = questions.size();
+        int totalQuestions = questionCount * repeatCount;
+        int maxInFlight = run.getLlmModel().resolveMaxConcurrentRequests();
+        
+        logger.info("运行{}开始处理问题，起始索引: {}, 总问题数: {}, 并发请求上限: {}", 
+            runId, startIndex, totalQuestions, maxInFlight);
+        
+        Semaphore inFlightPermits = new Semaphore(maxInFlight);
+        CircuitBreaker breaker = circuitBreakers.get(run.getLlmModel());
+        RunCheckpointTracker checkpoint = new RunCheckpointTracker(startIndex, totalQuestions);
+        List<Integer> pendingIndexes = planPendingIndexes(context, run, startIndex, totalQuestions, checkpoint);
+        // 已有成功回答时按回答表重新统计完成数：运行表的计数最多落后一个写入间隔（宕机或接管后丢失），
+        // 断点之后跳过的位置也已计入
+        if (startIndex > 0 || pendingIndexes.size() < totalQuestions - startIndex) {
+            int answered = answerRepository.countSuccessByRunId(runId);
+            if (answered != initialCompleted) {
+                logger.info("运行{}的已完成数按已保存的成功回答重新统计: {} -> {}", runId, initialCompleted, answered);
+                initialCompleted = answered;
+            }
+        }
+        // 断点之后曾失败的位置在恢复时重新处理，按位置记录，避免重复计入失败
+        Set<Integer> retriedIndexes = initialFailed > 0
+            ? planRetriedIndexes(context, run, startIndex, pendingIndexes) : Collections.emptySet();
+        orderByExpectedCost(context, run, pendingIndexes);
+        RunProgress progress = progressAggregator.register(run, totalQuestions, initialCompleted, initialFailed,
+            checkpoint.getNextIndex());
+        boolean interrupted = false;
+        ProgressSnapshot finalProgress;
+        
+        try {
+            for (int index : pendingIndexes) {
+                // 每次提交问题前检查批次是否应该中断
+                if (shouldInterrupt(batchId) || shouldStop.get() || fenceStaleLease(batchId)) {
+                    interrupted = true;
+                    break;
+                }
+                
+                // 模型熔断时暂停提交新问题，直到探测请求成功
+                if (!awaitCircuitRecovery(run, breaker, inFlightPermits, maxInFlight, shouldStop)) {
+                    interrupted = true;
+                    break;
+                }
+                
+                try {
+                    inFlightPermits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    interrupted = true;
+                    break;
+                }
+                if (!acquirePipelineSlot()) {
+                    inFlightPermits.release();
+                    interrupted = true;
+                    break;
+                }
+                
+                // 等待许可期间可能已被中断，或处理权的续约已被延误
+                if (shouldInterrupt(batchId) || shouldStop.get() || fenceStaleLease(batchId)) {
+                    releasePipelineSlot();
+                    inFlightPermits.release();
+                    interrupted = true;
+                    break;
+                }
+                
+                final int questionIndex = index;
+                final int repeatIndex = index / questionCount;
+                final StandardQuestion question = questions.get(index % questionCount);
+                final boolean retried = retriedIndexes.contains(index);
+                
+                logger.debug("运行{}提交问题: ID={}, 重复索引={}, 索引={}", runId, question.getId(), repeatIndex, questionIndex);
+                
+                processQuestionAsync(context, run, question, repeatIndex, progress.getCompletedQuestions() + 1)
+                    .whenComplete((outcome, ex) -> {
+                        try {
+                            if (ex != null) {
+                                logger.error("运行{}处理问题{}时出现未捕获异常", runId, question.getId(), ex);
+                                outcome = QuestionOutcome.FAILED;
+                            }
+                            // 因中断而跳过的问题不推进断点，恢复时会重新处理
+                            if (outcome == QuestionOutcome.SKIPPED) {
+                                return;
+                            }
+                            // 断点推进和计数在同一把锁内完成，保证聚合器中的断点单调前进
+                            synchronized (checkpoint) {
+                                int nextIndex = checkpoint.markFinished(questionIndex);
+                                Long nextQuestionId = nextIndex < totalQuestions ? questions.get(nextIndex % questionCount).getId() : null;
+                                progressAggregator.recordResult(runId, outcome == QuestionOutcome.SUCCESS, retried, question.getId(),
+                                    nextQuestionId, nextIndex < totalQuestions ? nextIndex : -1);
+                            }
+                        } catch (Exception e) {
+                            logger.error("运行{}更新问题{}的处理进度失败", runId, question.getId(), e);
+                        } finally {
+                            releasePipelineSlot();
+                            inFlightPermits.release();
                         }
+                    });
+            }
+            
+            // 立即写入缓冲中的回答，再等待所有已提交的问题处理结束
+            answerWriteBuffer.flush();
+            inFlightPermits.acquireUninterruptibly(maxInFlight);
+            inFlightPermits.release(maxInFlight);
+        } finally {
+            // 写入最终进度，并把实时计数同步回运行对象，后续保存运行状态时不会覆盖为旧值
+            finalProgress = progressAggregator.unregister(runId);
+            usageAggregator.evict(runId);
+            if (finalProgress != null) {
+                finalProgress.applyTo(run);
+            }
+        }
+        
+        if (!interrupted || checkpoint.isAllFinished()) {
+            return checkpoint.isAllFinished();
+        }
+        
+        // 处理权已被接管时只停止处理，运行状态由接管的实例维护
+        if (!batchLeaseManager.isOwned(batchId)) {
+            logger.warn("批次{}的处理权已丢失，运行{}已停止，断点: 索引={}", batchId, runId, checkpoint.getNextIndex());
+            return false;
+        }
+        
+        // 保存断点：第一个尚未处理完成的问题
+        int pauseIndex = checkpoint.getNextIndex();
+        Long pauseQuestionId = questions.get(pauseIndex % questionCount).getId();
+        logger.info("检测到批次{}已标记为中断，运行{}已停止，断点: 问题ID={}, 索引={}", 
+            batchId, runId, pauseQuestionId, pauseIndex);
+        
+        jdbcTemplate.update(
+            "UPDATE model_answer_runs SET status = 'PAUSED', last_activity_time = ?, " +
+            "last_processed_question_id = ?, last_processed_question_index = ? WHERE id = ?",
+            LocalDateTime.now(), pauseQuestionId, pauseIndex, runId);
+        
+        // 发送状态变更通知
+        Map<String, Object> statusData = new HashMap<>();
+        statusData.put("runId", runId);
+        statusData.put("status", "PAUSED");
+        statusData.put("completedQuestions", finalProgress.getCompletedQuestions());
+        statusData.put("failedQuestions", finalProgress.getFailedQuestions());
+        statusData.put("totalQuestions", totalQuestions);
+        statusData.put("message", "运行已暂停");
+        
+        webSocketService.sendRunMessage(runId, MessageType.STATUS_CHANGE, statusData);
+        return false;
+    }
+    
+    /**
+     * 运行本次需要提交的位置（数据集顺序）：断点之后已有成功回答的位置直接标记为已完成
+     * （问题不按数据集顺序提交或通过提供商批量接口提交时，暂停前断点之后可能已有问题完成）
+     */
+    private List<Integer> planPendingIndexes(BatchExecutionContext context, ModelAnswerRun run, int startIndex,
+            int totalQuestions, RunCheckpointTracker checkpoint) {
+        List<StandardQuestion> questions = context.getQuestions();
+        int questionCount = questions.size();
+        Set<String> answeredKeys = startIndex < totalQuestions
+            ? answerRepository.findAnsweredKeys(run.getId()) : Collections.emptySet();
+        
+        List<Integer> pendingIndexes = new ArrayList<>();
+        int answeredCount = 0;
+        for (int index = startIndex; index < totalQuestions; index++) {
+            Long mappingId = context.getMappingId(questions.get(index % questionCount).getId());
+            if (answeredKeys.contains(mappingId + ":" + index / questionCount)) {
+                checkpoint.markFinished(index);
+                answeredCount++;
+            } else {
+                pendingIndexes.add(index);
+            }
+        }
+        if (answeredCount > 0) {
+            logger.info("运行{}断点之后已有{}个问题生成了回答，恢复时跳过", run.getId(), answeredCount);
+        }
+        return pendingIndexes;
+    }
+    
+    /**
+     * 断点之后此前已计入失败的位置（数据集顺序的待提交位置中）
+     * 失败问题列表只记录问题ID，断点之前的位置都已处理完，其中没有成功回答的就是断点之前的失败；
+     * 问题的失败次数减去断点之前的失败即为断点之后的失败，依次对应该问题最靠前的待提交位置。
+     * 断点之前的失败不会重新提交，保持计入失败。
+     */
+    private Set<Integer> planRetriedIndexes(BatchExecutionContext context, ModelAnswerRun run, int startIndex,
+            List<Integer> pendingIndexes) {
+        List<Long> failedQuestionIds = run.getFailedQuestionsIds();
+        if (failedQuestionIds == null || failedQuestionIds.isEmpty() || pendingIndexes.isEmpty()) {
+            return Collections.emptySet();
+        }
+        List<StandardQuestion> questions = context.getQuestions();
+        int questionCount = questions.size();
+        Map<Long, Integer> failedCounts = new HashMap<>();
+        for (Long failedQuestionId : failedQuestionIds) {
+            failedCounts.merge(failedQuestionId, 1, Integer::sum);
+        }
+        
+        // 断点之前的失败：断点之前该问题的位置中没有成功回答的位置数
+        Set<String> answeredBefore = Collections.emptySet();
+        if (startIndex > 0) {
+            List<Long> mappingIds = new ArrayList<>();
+            for (Long questionId : failedCounts.keySet()) {
+                Long mappingId = context.getMappingId(questionId);
+                if (mappingId != null) {
+                    mappingIds.add(mappingId);
+                }
+            }
+            answeredBefore = answerRepository.findAnsweredKeys(run.getId(), mappingIds, 0,
+                (startIndex - 1) / questionCount);
+        }
+        for (int index = 0; index < startIndex; index++) {
+            Long questionId = questions.get(index % questionCount).getId();
+            if (failedCounts.containsKey(questionId)
+                    && !answeredBefore.contains(context.getMappingId(questionId) + ":" + index / questionCount)) {
+                failedCounts.computeIfPresent(questionId, (id, count) -> count > 1 ? count - 1 : null);
+            }
+        }
+        
+        Set<Integer> retriedIndexes = new HashSet<>();
+        for (int index : pendingIndexes) {
+            Long questionId = questions.get(index % questionCount).getId();
+            if (failedCounts.containsKey(questionId)) {
+                retriedIndexes.add(index);
+                failedCounts.computeIfPresent(questionId, (id, count) -> count > 1 ? count - 1 : null);
+            }
+        }
+        return retriedIndexes;
+    }
+    
+    /**
+     * 按预计耗时从长到短排列待提交的位置，预计耗时相同时保持数据集顺序
+     * 耗时最长的问题最先开始，运行结束前不会只剩个别长问题在执行
+     */
+    private void orderByExpectedCost(BatchExecutionContext context, ModelAnswerRun run, List<Integer> indexes) {
+        if (!costEstimator.isLongestFirst() || indexes.size() < 2) {
+            return;
+        }
+        List<StandardQuestion> questions = context.getQuestions();
+        int questionCount = questions.size();
+        Map<Long, Double> expectedMillis = costEstimator.estimate(questions,
+            context.getBatch().getDatasetVersion().getId(), run.getLlmModel().getId());
+        indexes.sort(Comparator.comparingDouble((Integer index) ->
+            expectedMillis.getOrDefault(questions.get(index % questionCount).getId(), 0.0)).reversed());
+        logger.debug("运行{}按预计耗时从长到短提交{}个问题", run.getId(), indexes.size());
+    }
+    
+    /**
+     * 通过提供商批量接口处理运行（批次执行方式为PROVIDER_BATCH）
+     * 尚无成功回答的位置组装Prompt后按max-requests-per-job拆分提交，定时查询任务状态，任务结束后下载结果，
+     * 与实时调用一样解析并经TextPreprocessor清理后批量写入回答。提交的任务记录在PROVIDER_BATCH_JOBS中，
+     * 暂停或处理权转移时提供商侧的任务继续执行，恢复后先接着查询这些任务，其结果未覆盖的位置再重新提交。
+     * 提供商返回错误或最终没有返回结果的问题计为失败。
+     * 
+     * @return 是否处理完所有问题，被中断时返回false
+     */
+    private boolean processRunWithProviderBatch(BatchExecutionContext context, ModelAnswerRun run, int repeatCount)
+            throws InterruptedException {
+        List<StandardQuestion> questions = context.getQuestions();
+        LlmModel model = run.getLlmModel();
+        Long runId = run.getId();
+        Long batchId = context.getBatch().getId();
+        int questionCount = questions.size();
+        int totalQuestions = questionCount * repeatCount;
+        if (!providerBatchGateway.supports(model)) {
+            throw new IllegalStateException("模型" + model.getName() + "的API类型" + model.getApiType() 
+                + "没有可用的批量接口，无法以PROVIDER_BATCH方式执行");
+        }
+        
+        // 没有成功回答的位置都在本次重新处理，此前的失败计数清零
+        run.setFailedQuestionsCount(0);
+        run.setFailedQuestionsIds(new ArrayList<>());
+        RunCheckpointTracker checkpoint = new RunCheckpointTracker(0, totalQuestions);
+        Set<Integer> remaining = new LinkedHashSet<>(planPendingIndexes(context, run, 0, totalQuestions, checkpoint));
+        progressAggregator.register(run, totalQuestions, totalQuestions - remaining.size(), 0, checkpoint.getNextIndex());
+        boolean interrupted = false;
+        ProgressSnapshot finalProgress;
+        
+        try {
+            // 先接着查询上次提交后尚未写入结果的任务
+            List<ProviderBatchJob> activeJobs = providerBatchJobRepository.findActiveByRunId(runId);
+            if (!activeJobs.isEmpty()) {
+                logger.info("运行{}有{}个已提交的批量任务尚未写入结果，继续查询", runId, activeJobs.size());
+                interrupted = !awaitProviderBatchJobs(context, run, activeJobs, checkpoint, remaining);
+            }
+            
+            if (!interrupted && !remaining.isEmpty()) {
+                List<ProviderBatchJob> jobs = submitProviderBatchJobs(context, run, new ArrayList<>(remaining));
+                interrupted = !awaitProviderBatchJobs(context, run, jobs, checkpoint, remaining);
+            }
+            
+            if (!interrupted && !remaining.isEmpty()) {
+                logger.warn("运行{}有{}个问题在批量任务结束后仍没有结果，计为失败", runId, remaining.size());
+                for (int index : remaining) {
+                    recordProviderBatchOutcome(run, questions, totalQuestions, checkpoint, index, false);
+                }
+                remaining.clear();
+            }
+        } finally {
+            // 写入最终进度，并把实时计数同步回运行对象，后续保存运行状态时不会覆盖为旧值
+            finalProgress = progressAggregator.unregister(runId);
+            usageAggregator.evict(runId);
+            if (finalProgress != null) {
+                finalProgress.applyTo(run);
+            }
+        }
+        
+        if (!interrupted || checkpoint.isAllFinished()) {
+            return checkpoint.isAllFinished();
+        }
+        
+        // 处理权已被接管时只停止处理，运行状态由接管的实例维护
+        if (!batchLeaseManager.isOwned(batchId)) {
+            logger.warn("批次{}的处理权已丢失，运行{}停止查询批量任务", batchId, runId);
+            return false;
+        }
+        
+        int pauseIndex = checkpoint.getNextIndex();
+        Long pauseQuestionId = questions.get(pauseIndex % questionCount).getId();
+        logger.info("检测到批次{}已标记为中断，运行{}停止查询批量任务，已提交的任务在恢复后继续查询", batchId, runId);
+        
+        jdbcTemplate.update(
+            "UPDATE model_answer_runs SET status = 'PAUSED', last_activity_time = ?, " +
+            "last_processed_question_id = ?, last_processed_question_index = ? WHERE id = ?",
+            LocalDateTime.now(), pauseQuestionId, pauseIndex, runId);
+        
+        Map<String, Object> statusData = new HashMap<>();
+        statusData.put("runId", runId);
+        statusData.put("status", "PAUSED");
+        statusData.put("completedQuestions", finalProgress.getCompletedQuestions());
+        statusData.put("failedQuestions", finalProgress.getFailedQuestions());
+        statusData.put("totalQuestions", totalQuestions);
+        statusData.put("message", "运行已暂停，已提交的批量任务在提供商侧继续执行");
+        
+        webSocketService.sendRunMessage(runId, MessageType.STATUS_CHANGE, statusData);
+        return false;
+    }
+    
+    /**
+     * 组装各位置的Prompt，按max-requests-per-job拆分提交批量任务并记录
+     * 批次被中断时停止提交，已提交的任务恢复后继续查询
+     */
+    private List<ProviderBatchJob> submitProviderBatchJobs(BatchExecutionContext context, ModelAnswerRun run,
+            List<Integer> indexes) throws InterruptedException {
+        List<StandardQuestion> questions = context.getQuestions();
+        int questionCount = questions.size();
+        int jobSize = Math.max(1, llmConfig.getProviderBatch().getMaxRequestsPerJob());
+        Map<String, Object> contextVariables = getContextVariables(run);
+        
+        List<ProviderBatchJob> jobs = new ArrayList<>();
+        for (int from = 0; from < indexes.size(); from += jobSize) {
+            if (shouldInterrupt(context.getBatch().getId())) {
+                break;
+            }
+            List<ProviderBatchAdapter.Item> items = new ArrayList<>();
+            for (int index : indexes.subList(from, Math.min(indexes.size(), from + jobSize))) {
+                StandardQuestion question = questions.get(index % questionCount);
+                LlmGatewayRequest request = LlmGatewayRequest.forModel(run.getLlmModel(),
+                    assemblePrompt(context, question), contextVariables, Purpose.GENERATION);
+                items.add(new ProviderBatchAdapter.Item(providerBatchCustomId(question.getId(), index / questionCount), request));
+            }
+            
+            ProviderBatchAdapter.Status status = providerBatchGateway.submit(run.getLlmModel(), items);
+            ProviderBatchJob job = new ProviderBatchJob();
+            job.setModelAnswerRunId(run.getId());
+            job.setProviderBatchId(status.getProviderBatchId());
+            job.setInputFileId(status.getInputFileId());
+            job.setRequestCount(items.size());
+            jobs.add(providerBatchJobRepository.insert(job));
+            logger.info("运行{}已提交批量任务: 任务ID={}, 请求数={}", run.getId(), status.getProviderBatchId(), items.size());
+        }
+        return jobs;
+    }
+    
+    /**
+     * 按poll-interval-ms定时查询批量任务的状态，已结束的任务立即写入结果
+     * 查询遇到可重试错误（超时、限流、5xx）时下一轮再查，不可重试的错误（如任务不存在）使该任务结束
+     * 
+     * @param remaining 尚无结果的位置，写入结果时移除
+     * @return 是否所有任务都已结束并写入结果，批次被中断时返回false
+     */
+    private boolean awaitProviderBatchJobs(BatchExecutionContext context, ModelAnswerRun run, List<ProviderBatchJob> jobs,
+            RunCheckpointTracker checkpoint, Set<Integer> remaining) throws InterruptedException {
+        Long runId = run.getId();
+        Long batchId = context.getBatch().getId();
+        long pollIntervalMs = Math.max(1000, llmConfig.getProviderBatch().getPollIntervalMs());
+        List<ProviderBatchJob> pendingJobs = new ArrayList<>(jobs);
+        
+        while (true) {
+            int requestCount = 0;
+            int finishedCount = 0;
+            Iterator<ProviderBatchJob> iterator = pendingJobs.iterator();
+            while (iterator.hasNext()) {
+                if (shouldInterrupt(batchId)) {
+                    return false;
+                }
+                ProviderBatchJob job = iterator.next();
+                ProviderBatchAdapter.Status status;
+                try {
+                    status = providerBatchGateway.getStatus(run.getLlmModel(), job.getProviderBatchId());
+                } catch (RuntimeException e) {
+                    if (LlmRetryPolicy.isRetryable(e)) {
+                        logger.warn("查询运行{}的批量任务{}状态失败，下一轮重试: {}", runId, job.getProviderBatchId(), e.getMessage());
+                        continue;
                     }
+                    logger.error("查询运行{}的批量任务{}状态失败，不再等待该任务: {}", runId, job.getProviderBatchId(), e.getMessage());
+                    job.setStatus(JobStatus.FAILED);
+                    job.setErrorMessage(e.getMessage());
+                    job.setLastPollTime(LocalDateTime.now());
+                    providerBatchJobRepository.updateStatus(job);
+                    iterator.remove();
+                    continue;
                 }
+                
+                applyProviderBatchStatus(job, status);
+                if (status.isTerminal()) {
+                    ingestProviderBatchResults(context, run, job, status, checkpoint, remaining);
+                    iterator.remove();
+                } else {
+                    providerBatchJobRepository.updateStatus(job);
+                    requestCount += job.getRequestCount();
+                    finishedCount += status.getCompleted() + status.getFailed();
+                }
+            }
+            if (pendingJobs.isEmpty()) {
+                return true;
             }
             
-            long endTime = System.currentTimeMillis();
-            logger.info("运行{}处理完成，总耗时: {}毫秒", runId, (endTime - startTime));
+            ProgressSnapshot live = progressAggregator.getLiveProgress(runId);
+            sendRunProgressNotification(run, live != null ? live.getProgressPercentage().doubleValue() : 0,
+                String.format("等待提供商批量任务: %d个任务处理中，已完成请求%d/%d", pendingJobs.size(), finishedCount, requestCount));
             
-            // 更新运行状态为COMPLETED
-            updateRunStatus(run, RunStatus.COMPLETED, null);
+            // 等待下一轮查询，期间及时响应暂停
+            long wakeAt = System.currentTimeMillis() + pollIntervalMs;
+            while (System.currentTimeMillis() < wakeAt) {
+                if (shouldInterrupt(batchId)) {
+                    return false;
+                }
+                Thread.sleep(Math.min(1000, Math.max(1, wakeAt - System.currentTimeMillis())));
+            }
+        }
+    }
+    
+    /**
+     * 下载已结束任务的结果并写入回答：成功的响应按实时调用的方式解析和清理，提供商返回错误的问题计为失败
+     * 批量任务没有单次调用的耗时，回答的耗时记为任务从提交到结果写入的周转时间
+     */
+    private void ingestProviderBatchResults(BatchExecutionContext context, ModelAnswerRun run, ProviderBatchJob job,
+            ProviderBatchAdapter.Status status, RunCheckpointTracker checkpoint, Set<Integer> remaining)
+            throws InterruptedException {
+        List<StandardQuestion> questions = context.getQuestions();
+        int questionCount = questions.size();
+        int totalQuestions = questionCount * context.getBatch().getAnswerRepeatCount();
+        Map<Long, Integer> questionPositions = new HashMap<>();
+        for (int i = 0; i < questionCount; i++) {
+            questionPositions.put(questions.get(i).getId(), i);
+        }
+        
+        List<ProviderBatchAdapter.Result> results = providerBatchGateway.fetchResults(run.getLlmModel(), status);
+        long turnaroundMillis = Math.max(0, Duration.between(job.getSubmittedAt(), LocalDateTime.now()).toMillis());
+        Map<String, Object> contextVariables = getContextVariables(run);
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        Map<Integer, Boolean> outcomes = new LinkedHashMap<>();
+        
+        for (ProviderBatchAdapter.Result result : results) {
+            Integer index = providerBatchIndexOf(result.getCustomId(), questionPositions, questionCount);
+            // 恢复前已写入回答或重复出现的位置不再写入
+            if (index == null || !remaining.contains(index) || outcomes.containsKey(index)) {
+                continue;
+            }
+            StandardQuestion question = questions.get(index % questionCount);
+            int repeatIndex = index / questionCount;
+            if (!result.isSuccess()) {
+                logger.warn("批量任务{}中的问题生成失败: 运行={}, 问题ID={}, 重复索引={}, 错误={}",
+                    job.getProviderBatchId(), run.getId(), question.getId(), repeatIndex, result.getError());
+                sendQuestionFailedNotification(run, question, repeatIndex, result.getError());
+                outcomes.put(index, false);
+                continue;
+            }
             
-            // 检查批次是否所有运行都已完成
-            checkAndUpdateBatchCompletion(run.getAnswerGenerationBatch());
+            String prompt = assemblePrompt(context, question);
+            LlmGatewayRequest request = LlmGatewayRequest.forModel(run.getLlmModel(), prompt, contextVariables,
+                Purpose.GENERATION);
+            LlmCallResult callResult = providerBatchGateway.toCallResult(request, result, turnaroundMillis);
+            LlmAnswer answer = buildModelAnswer(context, run, question, callResult.getText(), repeatIndex, prompt);
+            answer.setRawModelResponseBytes(callResult.getRawResponseBytes());
+            applyCallMetrics(answer, callResult, 0);
+            writes.add(answerWriteBuffer.enqueue(answer));
+            usageAggregator.record(run, callResult, 0);
+            outcomes.put(index, true);
+        }
+        
+        // 回答全部落库后再推进进度和断点
+        answerWriteBuffer.flush();
+        CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).join();
+        for (Map.Entry<Integer, Boolean> outcome : outcomes.entrySet()) {
+            remaining.remove(outcome.getKey());
+            recordProviderBatchOutcome(run, questions, totalQuestions, checkpoint, outcome.getKey(), outcome.getValue());
+        }
+        
+        if (status.getState() == ProviderBatchAdapter.Status.State.COMPLETED) {
+            job.setStatus(JobStatus.INGESTED);
+        } else {
+            logger.warn("运行{}的批量任务{}未正常完成: 状态={}, 原因={}，已写入其中{}个结果",
+                run.getId(), job.getProviderBatchId(), status.getState(), status.getMessage(), writes.size());
+        }
+        job.setCompletedAt(LocalDateTime.now());
+        providerBatchJobRepository.updateStatus(job);
+        logger.info("运行{}的批量任务{}结果已写入: 成功={}, 失败={}",
+            run.getId(), job.getProviderBatchId(), writes.size(), outcomes.size() - writes.size());
+    }
+    
+    /**
+     * 把提供商返回的任务状态同步到任务记录
+     */
+    private static void applyProviderBatchStatus(ProviderBatchJob job, ProviderBatchAdapter.Status status) {
+        switch (status.getState()) {
+            case COMPLETED:
+                job.setStatus(JobStatus.COMPLETED);
+                break;
+            case FAILED:
+                job.setStatus(JobStatus.FAILED);
+                break;
+            case EXPIRED:
+                job.setStatus(JobStatus.EXPIRED);
+                break;
+            case CANCELLED:
+                job.setStatus(JobStatus.CANCELLED);
+                break;
+            default:
+                job.setStatus(JobStatus.IN_PROGRESS);
+                break;
+        }
+        job.setCompletedCount(status.getCompleted());
+        job.setFailedCount(status.getFailed());
+        job.setOutputFileId(status.getOutputFileId());
+        job.setErrorFileId(status.getErrorFileId());
+        if (status.getMessage() != null) {
+            job.setErrorMessage(status.getMessage());
+        }
+        job.setLastPollTime(LocalDateTime.now());
+    }
+    
+    /**
+     * 记录批量任务中一个位置的结果并推进断点
+     */
+    private void recordProviderBatchOutcome(ModelAnswerRun run, List<StandardQuestion> questions, int totalQuestions,
+            RunCheckpointTracker checkpoint, int index, boolean success) {
+        int questionCount = questions.size();
+        int nextIndex = checkpoint.markFinished(index);
+        Long nextQuestionId = nextIndex < totalQuestions ? questions.get(nextIndex % questionCount).getId() : null;
+        progressAggregator.recordResult(run.getId(), success, questions.get(index % questionCount).getId(),
+            nextQuestionId, nextIndex < totalQuestions ? nextIndex : -1);
+    }
+    
+    /**
+     * 批量任务中请求的custom_id，由问题ID和重复索引组成，结果按它对应回运行中的位置
+     */
+    private static String providerBatchCustomId(Long questionId, int repeatIndex) {
+        return "q" + questionId + "-r" + repeatIndex;
+    }
+    
+    /**
+     * 由custom_id得到运行中的位置，无法识别时返回null
+     */
+    private static Integer providerBatchIndexOf(String customId, Map<Long, Integer> questionPositions, int questionCount) {
+        if (customId == null || !customId.startsWith("q")) {
+            return null;
+        }
+        int separator = customId.indexOf("-r");
+        if (separator < 0) {
+            return null;
+        }
+        try {
+            Integer position = questionPositions.get(Long.parseLong(customId.substring(1, separator)));
+            int repeatIndex = Integer.parseInt(customId.substring(separator + 2));
+            return position != null && repeatIndex >= 0 ? repeatIndex * questionCount + position : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * 占用一个流水线名额，所有运行的在途问题达到上限时阻塞提交循环
+     * 
+     * @return 是否获得名额，等待期间线程被中断时返回false
+     */
+    private boolean acquirePipelineSlot() {
+        if (pipelineSlots == null) {
+            return true;
+        }
+        try {
+            pipelineSlots.acquire();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+    
+    private void releasePipelineSlot() {
+        if (pipelineSlots != null) {
+            pipelineSlots.release();
+        }
+    }
+    
+    /**
+     * 模型熔断期间暂停运行提交新问题，其他模型的运行不受影响
+     * 熔断到期后由已提交（在延迟队列中等待）的问题充当探测请求；运行中没有在途问题时，
+     * 放行一个新问题作为探测。探测成功熔断器关闭后恢复提交。
+     * 
+     * @return 是否可以继续提交，批次被中断时返回false
+     */
+    private boolean awaitCircuitRecovery(ModelAnswerRun run, CircuitBreaker breaker, Semaphore inFlightPermits,
+            int maxInFlight, AtomicBoolean shouldStop) {
+        if (breaker.getState() == ModelCircuitBreakerRegistry.State.CLOSED) {
+            return true;
+        }
+        
+        Long runId = run.getId();
+        Long batchId = run.getAnswerGenerationBatch().getId();
+        logger.warn("模型{}已熔断，运行{}暂停提交新问题", breaker.getModelName(), runId);
+        sendCircuitNotification(runId, breaker, "模型调用连续失败，已暂停提交新问题，等待自动恢复");
+        
+        while (breaker.getState() != ModelCircuitBreakerRegistry.State.CLOSED) {
+            if (shouldInterrupt(batchId) || shouldStop.get()) {
+                return false;
+            }
+            // 熔断已到期且没有在途问题可作为探测请求时，放行一个新问题
+            if (!breaker.isOpen() && inFlightPermits.availablePermits() == maxInFlight) {
+                logger.info("运行{}提交探测问题，检查模型{}是否恢复", runId, breaker.getModelName());
+                return true;
+            }
+            try {
+                Thread.sleep(Math.max(100, Math.min(1000, breaker.getRemainingOpenMillis())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        
+        logger.info("模型{}熔断已恢复，运行{}继续提交问题", breaker.getModelName(), runId);
+        sendCircuitNotification(runId, breaker, "模型调用已恢复，继续处理问题");
+        return true;
+    }
+    
+    private void sendCircuitNotification(Long runId, CircuitBreaker breaker, String message) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("runId", runId);
+        payload.put("modelName", breaker.getModelName());
+        payload.put("circuitState", breaker.getState().name());
+        payload.put("message", message);
+        payload.put("timestamp", System.currentTimeMillis());
+        webSocketService.sendRunMessage(runId, MessageType.NOTIFICATION, payload);
+    }
+    
+    /**
+     * 分布式模式下投递批次的待处理运行
+     * 先清除该批次仍在排队或已暂停暂存的单元，再按各运行已完成的单元重新投递，恢复批次时不会重复投递；
+     * 暂停前已拉取、尚未结束的单元仍由原持有者处理，不再投递
+     */
+    private void distributeRuns(AnswerGenerationBatch batch, List<ModelAnswerRun> pendingRuns, int questionsPerRun) {
+        Long batchId = batch.getId();
+        int purged = workQueue.purgeBatch(batchId);
+        if (purged > 0) {
+            logger.info("批次{}清除了{}个排队或暂停暂存的工作单元，将重新投递", batchId, purged);
+        }
+        
+        int remaining = 0;
+        for (ModelAnswerRun run : pendingRuns) {
+            jdbcTemplate.update(
+                "UPDATE model_answer_runs SET status = 'GENERATING_ANSWERS', last_activity_time = ? WHERE id = ?",
+                LocalDateTime.now(), run.getId());
+            int units = workQueue.publishRun(batchId, run.getId(), questionsPerRun);
+            if (units == 0) {
+                // 所有单元此前都已完成（如最后一个单元完成前批次被暂停）
+                finishDistributedRun(run.getId(), batchId);
+            }
+            remaining += units;
+        }
+        logger.info("批次{}的{}个运行共有{}个未完成的工作单元", batchId, pendingRuns.size(), remaining);
+    }
+    
+    /**
+     * 处理一个分布式工作单元：按模型的并发上限提交区间内尚无成功回答的问题，等待回答全部落库后返回
+     * 租约过期后单元会被重新投递，已保存回答的问题直接计为完成，不会重复调用模型
+     * 
+     * @param leaseLost 租约是否已丢失，丢失后停止提交新问题
+     */
+    WorkUnitResult processWorkUnit(WorkUnit unit, BooleanSupplier leaseLost) {
+        Long batchId = unit.getBatchId();
+        Long runId = unit.getRunId();
+        if (shouldInterrupt(batchId)) {
+            return WorkUnitResult.interrupted();
+        }
+        
+        UnitBatchState state = unitBatches.computeIfAbsent(batchId, this::loadUnitBatchState);
+        state.activeUnits.incrementAndGet();
+        try {
+            BatchExecutionContext context = state.context;
+            List<StandardQuestion> questions = context.getQuestions();
+            int questionCount = questions.size();
+            int totalQuestions = questionCount * context.getBatch().getAnswerRepeatCount();
+            int endIndex = Math.min(unit.getEndIndex(), totalQuestions);
+            
+            ModelAnswerRun run = runRepository.findById(runId)
+                .orElseThrow(() -> new EntityNotFoundException("找不到指定的运行: " + runId));
+            run.setAnswerGenerationBatch(context.getBatch());
+            int maxInFlight = run.getLlmModel().resolveMaxConcurrentRequests();
+            // 同一运行在本实例的所有单元共享并发许可
+            Semaphore inFlightPermits = state.runPermits.computeIfAbsent(runId, k -> new Semaphore(maxInFlight));
+            CircuitBreaker breaker = circuitBreakers.get(run.getLlmModel());
+            AtomicBoolean shouldStop = new AtomicBoolean(false);
+            
+            // 查询单元内已有成功回答的问题
+            Set<Long> mappingIds = new HashSet<>();
+            for (int index = unit.getStartIndex(); index < endIndex; index++) {
+                Long mappingId = context.getMappingId(questions.get(index % questionCount).getId());
+                if (mappingId != null) {
+                    mappingIds.add(mappingId);
+                }
+            }
+            Set<String> answeredKeys = answerRepository.findAnsweredKeys(runId, mappingIds,
+                unit.getStartIndex() / questionCount, (endIndex - 1) / questionCount);
+            
+            int answeredBefore = 0;
+            List<Integer> pendingIndexes = new ArrayList<>();
+            for (int index = unit.getStartIndex(); index < endIndex; index++) {
+                Long mappingId = context.getMappingId(questions.get(index % questionCount).getId());
+                if (answeredKeys.contains(mappingId + ":" + index / questionCount)) {
+                    answeredBefore++;
+                } else {
+                    pendingIndexes.add(index);
+                }
+            }
+            orderByExpectedCost(context, run, pendingIndexes);
+            
+            List<StandardQuestion> submitted = new ArrayList<>();
+            List<CompletableFuture<QuestionOutcome>> futures = new ArrayList<>();
+            boolean stopped = false;
+            for (int index : pendingIndexes) {
+                if (shouldInterrupt(batchId) || leaseLost.getAsBoolean()) {
+                    stopped = true;
+                    break;
+                }
+                
+                StandardQuestion question = questions.get(index % questionCount);
+                int repeatIndex = index / questionCount;
+                
+                if (!awaitCircuitRecovery(run, breaker, inFlightPermits, maxInFlight, shouldStop)) {
+                    stopped = true;
+                    break;
+                }
+                try {
+                    inFlightPermits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    stopped = true;
+                    break;
+                }
+                if (!acquirePipelineSlot()) {
+                    inFlightPermits.release();
+                    stopped = true;
+                    break;
+                }
+                
+                QuestionWork work = new QuestionWork(context, run, question, repeatIndex, 
+                    answeredBefore + submitted.size() + 1);
+                work.unitWork = true;
+                submitted.add(question);
+                futures.add(processQuestionAsync(work).whenComplete((outcome, ex) -> {
+                    releasePipelineSlot();
+                    inFlightPermits.release();
+                }));
+            }
             
-        } catch (Exception e) {
-            logger.error("处理运行{}失败: {}", runId, e.getMessage(), e);
+            // 立即写入缓冲中的回答，再等待所有已提交的问题处理结束
+            answerWriteBuffer.flush();
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+            
+            int answeredNow = 0;
+            List<Long> failedQuestionIds = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                QuestionOutcome outcome = futures.get(i).join();
+                if (outcome == QuestionOutcome.SUCCESS) {
+                    answeredNow++;
+                } else if (outcome == QuestionOutcome.FAILED) {
+                    failedQuestionIds.add(submitted.get(i).getId());
+                } else {
+                    // 因中断而跳过的问题由重新投递的单元处理
+                    stopped = true;
+                }
+            }
             
-            // 更新运行状态为FAILED
-            updateRunStatus(run, RunStatus.FAILED, e.getMessage());
+            if (stopped) {
+                return shouldInterrupt(batchId) ? WorkUnitResult.interrupted() : WorkUnitResult.abandoned();
+            }
+            return WorkUnitResult.finished(answeredBefore + answeredNow, failedQuestionIds, totalQuestions);
+        } finally {
+            state.lastUsedMillis = System.currentTimeMillis();
+            state.activeUnits.decrementAndGet();
+        }
+    }
+    
+    /**
+     * 运行的最后一个工作单元完成后结束运行，所有运行结束时更新批次完成状态
+     * 运行状态直接按ID更新，不覆盖其他实例并发写入的进度计数
+     */
+    void finishDistributedRun(Long runId, Long batchId) {
+        workQueue.clearRun(runId);
+        usageAggregator.clearRun(runId);
+        int updated = jdbcTemplate.update(
+            "UPDATE model_answer_runs SET status = 'COMPLETED', progress_percentage = 100, last_activity_time = ? " +
+            "WHERE id = ? AND status <> 'COMPLETED'",
+            LocalDateTime.now(), runId);
+        if (updated > 0) {
+            webSocketService.sendStatusChangeMessage(runId, RunStatus.COMPLETED.name(), 
+                    "运行状态变更为: " + RunStatus.COMPLETED.name());
+            logger.info("批次{}的运行{}所有工作单元已完成", batchId, runId);
         }
+        
+        AnswerGenerationBatch batch = batchRepository.findById(batchId)
+            .orElseThrow(() -> new EntityNotFoundException("找不到指定的批次: " + batchId));
+        if (checkAndUpdateBatchCompletion(batch)) {
+            jdbcTemplate.update(
+                "UPDATE answer_generation_batches SET processing_instance = NULL WHERE id = ?",
+                batchId);
+            unitBatches.remove(batchId);
+            logger.info("批次{}处理完成，已清除处理标记", batchId);
+        }
+    }
+    
+    /**
+     * 批次暂停后清除本实例缓存的执行上下文，恢复时重新加载（期间可能修改了Prompt配置）
+     */
+    void evictUnitBatch(Long batchId) {
+        unitBatches.computeIfPresent(batchId, (k, state) -> state.activeUnits.get() > 0 ? state : null);
+    }
+    
+    /**
+     * 清除空闲超过指定时间的批次执行上下文
+     */
+    void evictIdleUnitBatches(long idleMillis) {
+        long now = System.currentTimeMillis();
+        for (Long batchId : unitBatches.keySet()) {
+            unitBatches.computeIfPresent(batchId, (k, state) -> 
+                state.activeUnits.get() == 0 && now - state.lastUsedMillis > idleMillis ? null : state);
+        }
+    }
+    
+    private UnitBatchState loadUnitBatchState(Long batchId) {
+        AnswerGenerationBatch batch = batchRepository.findById(batchId)
+            .orElseThrow(() -> new EntityNotFoundException("找不到指定的批次: " + batchId));
+        logger.info("加载批次{}的执行上下文用于处理工作单元", batchId);
+        return new UnitBatchState(buildExecutionContext(batch, loadBatchQuestions(batch)));
     }
     
     /**
-     * 开始处理单个运行的回答生成
+     * 本实例处理某个批次的工作单元时共享的状态
      */
-    private void startRunAnswerGeneration(ModelAnswerRun run, List<StandardQuestion> questions, int repeatCount, AtomicBoolean shouldStop) {
-        Long runId = run.getId();
-        Long batchId = run.getAnswerGenerationBatch().getId();
-        logger.info("开始处理运行: {}, 模型: {}", runId, run.getLlmModel().getName());
-        
-        // 获取批次状态但不用于判断是否处理
-        String batchStatus = jdbcTemplate.queryForObject(
-            "SELECT status FROM answer_generation_batches WHERE id = ?", 
-            String.class, batchId);
+    private static class UnitBatchState {
+        final BatchExecutionContext context;
+        // 各运行在本实例的并发请求许可
+        final Map<Long, Semaphore> runPermits = new ConcurrentHashMap<>();
+        final AtomicInteger activeUnits = new AtomicInteger();
+        volatile long lastUsedMillis = System.currentTimeMillis();
         
-        logger.info("批次{}当前状态为{}，继续处理运行{}", batchId, batchStatus, runId);
+        UnitBatchState(BatchExecutionContext context) {
+            this.context = context;
+        }
+    }
+    
+    /**
+     * 单个问题的处理结果
+     */
+    private enum QuestionOutcome {
+        SUCCESS,
+        FAILED,
+        // 因批次中断而未处理，不计入失败，恢复时重新处理
+        SKIPPED
+    }
+    
+    /**
+     * 单个问题在流水线各阶段之间传递的处理状态
+     */
+    private static class QuestionWork {
+        final BatchExecutionContext context;
+        final ModelAnswerRun run;
+        final StandardQuestion question;
+        final int repeatIndex;
+        final int expectedCompletedCount;
+        String prompt;
+        String answer;
+        // 非流式调用的原始响应字节，随回答写入raw_model_response
+        byte[] rawResponse;
+        // 成功调用的结果，token用量和耗时随回答保存
+        LlmCallResult callResult;
+        QuestionOutcome outcome;
+        // 已调用模型的次数（不含熔断期间的等待）
+        int attempts;
+        // 分布式工作单元中的问题，失败计数在单元完成时统一累计
+        boolean unitWork;
         
-        try {
-            // 直接更新运行状态为GENERATING_ANSWERS，不做状态检查
-            jdbcTemplate.update(
-                "UPDATE model_answer_runs SET status = 'GENERATING_ANSWERS', last_activity_time = ? WHERE id = ?",
-                LocalDateTime.now(), runId);
-            
-            // 初始化计数器
-            int totalQuestions = questions.size() * repeatCount;
-            int completedQuestions = 0;
-            int failedQuestions = 0;
-            
-            long startTime = System.currentTimeMillis();
-            
-            // 处理每个问题（考虑重复次数）
-            for (int r = 0; r < repeatCount; r++) {
-                for (int q = 0; q < questions.size(); q++) {
-                    StandardQuestion question = questions.get(q);
-                    
-                    // 每次处理一个问题前检查批次是否应该中断
-                    if (shouldInterrupt(batchId) || shouldStop.get()) {
-                        logger.info("检测到批次{}已标记为中断，停止处理运行{}中的新问题", batchId, runId);
-                        
-                        // 更新运行状态为PAUSED，同时保存当前处理位置
-                        jdbcTemplate.update(
-                            "UPDATE model_answer_runs SET status = 'PAUSED', last_activity_time = ?, " +
-                            "last_processed_question_id = ?, last_processed_question_index = ? WHERE id = ?",
-                            LocalDateTime.now(), question.getId(), (r * questions.size() + q), runId);
-                            
-                        // 发送状态变更通知
-                        Map<String, Object> statusData = new HashMap<>();
-                        statusData.put("runId", runId);
-                        statusData.put("status", "PAUSED");
-                        statusData.put("completedQuestions", completedQuestions);
-                        statusData.put("failedQuestions", failedQuestions);
-                        statusData.put("totalQuestions", totalQuestions);
-                        statusData.put("message", "运行已暂停");
-                        
-                        webSocketService.sendRunMessage(runId, MessageType.STATUS_CHANGE, statusData);
-                        
-                        return;
-                    }
-                    
-                    // 处理单个问题
-                    boolean success = processQuestion(run, question, r, completedQuestions + 1);
-                    
-                    // 更新计数器
-                    if (success) {
-                        completedQuestions++;
-                    } else {
-                        failedQuestions++;
-                    }
-                    
-                    // 更新处理位置
-                    jdbcTemplate.update(
-                        "UPDATE model_answer_runs SET last_processed_question_id = ?, last_processed_question_index = ? WHERE id = ?",
-                        question.getId(), (r * questions.size() + q), runId);
-                    
-                    // 更新进度
-                    updateRunProgress(run, completedQuestions, failedQuestions, totalQuestions);
-                    
-                    // 每处理5个问题后，再次检查中断状态
-                    if ((completedQuestions + failedQuestions) % 5 == 0) {
-                        if (shouldInterrupt(batchId) || shouldStop.get()) {
-                            logger.info("批量处理过程中检测到批次{}已标记为中断，停止处理", batchId);
-                            return;
-                        }
-                    }
-                }
-            }
-            
-            long endTime = System.currentTimeMillis();
-            logger.info("运行{}处理完成，总耗时: {}毫秒", runId, (endTime - startTime));
-            
-            // 更新运行状态为COMPLETED
-            updateRunStatus(run, RunStatus.COMPLETED, null);
-            
-            // 检查批次是否所有运行都已完成
-            checkAndUpdateBatchCompletion(run.getAnswerGenerationBatch());
-            
-        } catch (Exception e) {
-            logger.error("处理运行{}失败: {}", runId, e.getMessage(), e);
-            
-            // 更新运行状态为FAILED
-            updateRunStatus(run, RunStatus.FAILED, e.getMessage());
+        QuestionWork(BatchExecutionContext context, ModelAnswerRun run, StandardQuestion question, 
+                int repeatIndex, int expectedCompletedCount) {
+            this.context = context;
+            this.run = run;
+            this.question = question;
+            this.repeatIndex = repeatIndex;
+            this.expectedCompletedCount = expectedCompletedCount;
         }
     }
     
@@ -658,11 +1627,42 @@ public class AnswerGenerationTask {
      * 处理单个问题
      */
     public boolean processQuestion(ModelAnswerRun run, StandardQuestion question, int repeatIndex, int expectedCompletedCount) {
+        return processQuestionAsync(getExecutionContext(run), run, question, repeatIndex, expectedCompletedCount)
+            .join() == QuestionOutcome.SUCCESS;
+    }
+    
+    /**
+     * 以分阶段流水线方式处理单个问题：
+     * 1. Prompt组装（使用批次执行上下文，promptStageExecutor）
+     * 2. 调用LLM（不持有数据库连接，questionExecutor），可重试错误和熔断等待进入延迟重试队列，不占用工作线程
+     * 3. 构建回答并交给写缓冲批量落库（persistStageExecutor）
+     * 各阶段有独立的并发上限和有界队列，下游排满时上游阶段阻塞，形成背压。
+     * 返回的Future在回答真正写入数据库后才完成。
+     */
+    private CompletableFuture<QuestionOutcome> processQuestionAsync(BatchExecutionContext context, ModelAnswerRun run, 
+            StandardQuestion question, int repeatIndex, int expectedCompletedCount) {
+        return processQuestionAsync(new QuestionWork(context, run, question, repeatIndex, expectedCompletedCount));
+    }
+    
+    private CompletableFuture<QuestionOutcome> processQuestionAsync(QuestionWork work) {
+        return CompletableFuture
+            .supplyAsync(() -> prepareQuestionPrompt(work), promptStageExecutor)
+            .thenComposeAsync(this::callModelWithRetry, questionExecutor)
+            .thenComposeAsync(this::persistQuestionAnswer, persistStageExecutor)
+            .exceptionally(ex -> handleQuestionFailure(work, ex));
+    }
+    
+    /**
+     * 流水线阶段一：检查中断并组装Prompt，组装结果同时作为回答记录的promptUsed
+     */
+    private QuestionWork prepareQuestionPrompt(QuestionWork work) {
+        ModelAnswerRun run = work.run;
+        StandardQuestion question = work.question;
         Long runId = run.getId();
         Long questionId = question.getId();
         Long batchId = run.getAnswerGenerationBatch().getId();
         
-        logger.info("开始处理问题: 运行={}, 问题ID={}, 重复索引={}", runId, questionId, repeatIndex);
+        logger.info("开始处理问题: 运行={}, 问题ID={}, 重复索引={}", runId, questionId, work.repeatIndex);
         
         // 每次处理问题前检查中断标志
         if (shouldInterrupt(batchId)) {
@@ -673,125 +1673,246 @@ public class AnswerGenerationTask {
             payload.put("runId", runId);
             payload.put("questionId", questionId);
             payload.put("questionText", question.getQuestionText());
-            payload.put("repeatIndex", repeatIndex);
+            payload.put("repeatIndex", work.repeatIndex);
             payload.put("reason", "批次中断");
             payload.put("timestamp", System.currentTimeMillis());
             
             webSocketService.sendRunMessage(runId, MessageType.NOTIFICATION, payload);
             logger.debug("问题跳过通知已发送: 运行={}, 问题ID={}", runId, questionId);
             
-            return false; // 立即返回，不处理当前问题
+            work.outcome = QuestionOutcome.SKIPPED; // 不处理当前问题
+            return work;
+        }
+        
+        // 发送问题开始处理通知
+        sendQuestionStartedNotification(run, question, work.repeatIndex);
+        logger.debug("问题处理开始通知已发送: 运行={}, 问题ID={}", runId, questionId);
+        
+        // 组装Prompt
+        logger.debug("开始组装问题Prompt: 运行={}, 问题ID={}", runId, questionId);
+        work.prompt = assemblePrompt(work.context, question);
+        logger.debug("问题Prompt组装完成: 运行={}, 问题ID={}, Prompt长度={}", runId, questionId, work.prompt.length());
+        return work;
+    }
+    
+    /**
+     * 流水线阶段二的容错包装：经过模型熔断器调用LLM
+     * 熔断期间不发起调用，问题进入延迟队列等待熔断到期；
+     * 超时、5xx、429、连接重置等可重试错误按带抖动的指数退避进入延迟队列重试，
+     * 达到最大尝试次数或遇到不可重试错误时才判定失败。
+     */
+    private CompletableFuture<QuestionWork> callModelWithRetry(QuestionWork work) {
+        if (work.outcome != null) {
+            return CompletableFuture.completedFuture(work);
         }
         
-        logger.debug("处理问题: 运行={}, 问题={}, 重复索引={}", runId, questionId, repeatIndex);
+        ModelAnswerRun run = work.run;
+        Long runId = run.getId();
+        Long questionId = work.question.getId();
+        CircuitBreaker breaker = circuitBreakers.get(run.getLlmModel());
         
-        // 创建事务定义
-        DefaultTransactionDefinition def = new DefaultTransactionDefinition();
-        def.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRED);
-        TransactionStatus status = transactionManager.getTransaction(def);
+        if (!breaker.tryAcquirePermission()) {
+            if (shouldInterrupt(run.getAnswerGenerationBatch().getId())) {
+                work.outcome = QuestionOutcome.SKIPPED;
+                return CompletableFuture.completedFuture(work);
+            }
+            long waitMillis = Math.max(500, breaker.getRemainingOpenMillis());
+            logger.debug("模型{}处于熔断状态，问题{}延迟{}毫秒后再试: 运行={}", 
+                breaker.getModelName(), questionId, waitMillis, runId);
+            return retryQueue.schedule(waitMillis, questionExecutor, () -> callModelWithRetry(work));
+        }
         
+        work.attempts++;
+        CompletableFuture<QuestionWork> call;
         try {
-            // 在问题处理过程中定期检查中断标志
-            if (shouldInterrupt(batchId)) {
-                logger.info("问题处理前检测到批次{}的中断信号，中止处理", batchId);
-                transactionManager.rollback(status);
-                return false;
+            call = callModelForQuestion(work);
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        return call.handle((result, error) -> {
+            if (error == null) {
+                // 调用前被暂停或调用中被取消时没有得到提供商的响应，只归还探测名额，不能据此恢复熔断
+                if (result.outcome == QuestionOutcome.SKIPPED) {
+                    breaker.onIgnored();
+                } else {
+                    breaker.onSuccess();
+                }
+                return CompletableFuture.completedFuture(result);
             }
-            
-            // 发送问题开始处理通知
-            sendQuestionStartedNotification(run, question, repeatIndex);
-            logger.debug("问题处理开始通知已发送: 运行={}, 问题ID={}", runId, questionId);
-            
-            // 组装Prompt
-            logger.debug("开始组装问题Prompt: 运行={}, 问题ID={}", runId, questionId);
-            String prompt = assemblePrompt(run, question);
-            logger.debug("问题Prompt组装完成: 运行={}, 问题ID={}, Prompt长度={}", runId, questionId, prompt.length());
-            
-            // 调用LLM API生成回答，并支持中断检查
-            logger.info("开始调用LLM API生成回答: 运行={}, 问题ID={}, 模型={}", 
-                runId, questionId, run.getLlmModel().getName());
-            String answer = generateAnswerWithInterruptCheck(run, prompt, new AtomicBoolean(false));
-            
-            // 如果已被中断，则不继续处理
-            if (answer == null) {
-                logger.info("批次{}在生成回答过程中被中断，不保存结果: 运行={}, 问题={}", batchId, runId, questionId);
-                jdbcTemplate.update(
-                    "UPDATE model_answer_runs SET status = 'PAUSED', last_activity_time = ? WHERE id = ?",
-                    LocalDateTime.now(), runId);
-                transactionManager.rollback(status);
-                return false;
+            Throwable e = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (!LlmRetryPolicy.isRetryable(e)) {
+                breaker.onIgnored();
+                return CompletableFuture.<QuestionWork>failedFuture(e);
             }
+            breaker.onFailure();
             
-            logger.info("LLM API生成回答成功: 运行={}, 问题ID={}, 回答长度={}", 
-                runId, questionId, answer.length());
-            
-            // 使用TextPreprocessor处理模型回答，移除思考过程标记
-            String cleanedAnswer = TextPreprocessor.cleanText(answer);
-            
-            // 检查是否有思考过程标记被移除
-            if (cleanedAnswer.length() != answer.length()) {
-                // 提取并保存思考过程（可选）
-                String thinkingProcess = TextPreprocessor.extractThinkingProcess(answer);
-                if (!thinkingProcess.isEmpty()) {
-                    // 保存思考过程（如果系统有相应字段）
-                    // answer.setThinkingProcess(thinkingProcess);  // 假设系统有该字段
-                    
-                    logger.info("检测到并提取了思考过程，长度: {}, 回答ID: {}", 
-                        thinkingProcess.length(), questionId);
-                }
+            int maxAttempts = Math.max(1, llmConfig.getRetry().getMaxAttempts());
+            if (work.attempts >= maxAttempts) {
+                logger.error("问题{}调用模型已尝试{}次仍失败: 运行={}", questionId, work.attempts, runId);
+                return CompletableFuture.<QuestionWork>failedFuture(e);
             }
             
-            // 保存清理后的回答
-            answer = cleanedAnswer;
-            
-            // 保存回答结果
-            logger.debug("开始保存回答结果: 运行={}, 问题ID={}", runId, questionId);
-            saveModelAnswer(run, question, answer, repeatIndex);
+            long delayMillis = LlmRetryPolicy.backoffDelayMillis(llmConfig.getRetry(), work.attempts);
+            logger.warn("问题{}第{}次调用模型失败，{}毫秒后重试: 运行={}, 错误={}", 
+                questionId, work.attempts, delayMillis, runId, e.getMessage());
+            return retryQueue.schedule(delayMillis, questionExecutor, () -> callModelWithRetry(work));
+        }).thenCompose(future -> future);
+    }
+    
+    /**
+     * 流水线阶段二：异步调用LLM API生成回答，等待响应期间既不持有数据库连接也不占用工作线程
+     */
+    private CompletableFuture<QuestionWork> callModelForQuestion(QuestionWork work) {
+        if (work.outcome != null) {
+            return CompletableFuture.completedFuture(work);
+        }
+        
+        ModelAnswerRun run = work.run;
+        Long batchId = run.getAnswerGenerationBatch().getId();
+        
+        // API调用前检查中断状态
+        if (shouldInterrupt(batchId)) {
+            logger.info("API调用前检测到批次{}的中断信号，不执行API调用", batchId);
+            return CompletableFuture.completedFuture(markInterrupted(work));
+        }
+        
+        // 调用LLM API生成回答，同时传入中断检查回调，流式调用中被暂停时立即断开连接
+        logger.info("开始调用LLM API生成回答: 运行={}, 问题ID={}, 模型={}", 
+            run.getId(), work.question.getId(), run.getLlmModel().getName());
+        return llmApiService.generateModelAnswerAsync(run.getLlmModel(), work.prompt, getContextVariables(run),
+                FairShareScheduler.forBatch(run.getAnswerGenerationBatch()), () -> shouldInterrupt(batchId))
+            .thenApplyAsync(result -> applyModelAnswer(work, result), questionExecutor);
+    }
+    
+    /**
+     * 调用被中断：不保存结果，运行置为暂停
+     */
+    private QuestionWork markInterrupted(QuestionWork work) {
+        Long runId = work.run.getId();
+        logger.info("批次{}在生成回答过程中被中断，不保存结果: 运行={}, 问题={}", 
+            work.run.getAnswerGenerationBatch().getId(), runId, work.question.getId());
+        jdbcTemplate.update(
+            "UPDATE model_answer_runs SET status = 'PAUSED', last_activity_time = ? WHERE id = ?",
+            LocalDateTime.now(), runId);
+        work.outcome = QuestionOutcome.SKIPPED;
+        return work;
+    }
+    
+    /**
+     * 处理模型调用结果，清理回答文本中的思考过程标记
+     */
+    private QuestionWork applyModelAnswer(QuestionWork work, LlmCallResult result) {
+        if (result.isCancelled()) {
+            return markInterrupted(work);
+        }
+        
+        Long runId = work.run.getId();
+        Long questionId = work.question.getId();
+        String answer = result.getText() != null ? result.getText() : "";
+        logger.info("LLM API生成回答成功: 运行={}, 问题ID={}, 回答长度={}, 耗时={}ms, token用量={}", 
+            runId, questionId, answer.length(), result.getLatencyMillis(), result.getTotalTokens());
+        
+        // 使用TextPreprocessor处理模型回答，移除思考过程标记
+        String cleanedAnswer = TextPreprocessor.cleanText(answer);
+        
+        // 检查是否有思考过程标记被移除
+        if (cleanedAnswer.length() != answer.length()) {
+            // 提取并保存思考过程（可选）
+            String thinkingProcess = TextPreprocessor.extractThinkingProcess(answer);
+            if (!thinkingProcess.isEmpty()) {
+                logger.info("检测到并提取了思考过程，长度: {}, 回答ID: {}", 
+                    thinkingProcess.length(), questionId);
+            }
+        }
+        
+        work.answer = cleanedAnswer;
+        work.rawResponse = result.getRawResponseBytes();
+        work.callResult = result;
+        usageAggregator.record(work.run, result, Math.max(0, work.attempts - 1));
+        return work;
+    }
+    
+    /**
+     * 流水线阶段三：构建回答并交给写缓冲，回答落库后发送完成通知
+     */
+    private CompletableFuture<QuestionOutcome> persistQuestionAnswer(QuestionWork work) {
+        if (work.outcome != null) {
+            return CompletableFuture.completedFuture(work.outcome);
+        }
+        
+        ModelAnswerRun run = work.run;
+        Long runId = run.getId();
+        Long questionId = work.question.getId();
+        
+        logger.debug("回答进入写缓冲: 运行={}, 问题ID={}", runId, questionId);
+        LlmAnswer answer = buildModelAnswer(work.context, run, work.question, work.answer, work.repeatIndex, work.prompt);
+        answer.setRawModelResponseBytes(work.rawResponse);
+        applyCallMetrics(answer, work.callResult, Math.max(0, work.attempts - 1));
+        
+        return answerWriteBuffer.enqueue(answer).thenApply(v -> {
             logger.info("回答结果保存成功: 运行={}, 问题ID={}", runId, questionId);
             
-            // 提交事务
-            transactionManager.commit(status);
-            
-            // 事务提交成功后发送问题完成处理通知
-            sendQuestionCompletedNotification(run, question, repeatIndex, expectedCompletedCount);
-            logger.debug("问题处理完成通知已发送: 运行={}, 问题ID={}, 完成数量={}", runId, questionId, expectedCompletedCount);
-            
-            return true;
-        } catch (Exception e) {
-            // 回滚事务
-            transactionManager.rollback(status);
-            
-            logger.error("处理问题失败: 运行={}, 问题={}, 错误={}", runId, questionId, e.getMessage(), e);
-            
-            // 记录失败信息
-            recordFailedQuestion(run, questionId);
+            // 回答落库后发送问题完成处理通知
+            sendQuestionCompletedNotification(run, work.question, work.repeatIndex, work.expectedCompletedCount);
+            return QuestionOutcome.SUCCESS;
+        });
+    }
+    
+    /**
+     * 把调用的token用量、耗时和重试次数写入回答
+     */
+    private static void applyCallMetrics(LlmAnswer answer, LlmCallResult result, int retries) {
+        if (result == null) {
+            return;
+        }
+        answer.setPromptTokens(result.getPromptTokens());
+        answer.setCompletionTokens(result.getCompletionTokens());
+        answer.setTotalTokens(result.getTotalTokens());
+        answer.setLatencyMs(result.getLatencyMillis());
+        answer.setTtftMs(result.getTtftMillis());
+        answer.setRetryCount(retries);
+        answer.setFinishReason(result.getFinishReason());
+    }
+    
+    /**
+     * 流水线任一阶段失败时记录失败信息
+     */
+    private QuestionOutcome handleQuestionFailure(QuestionWork work, Throwable ex) {
+        Throwable cause = (ex instanceof CompletionException && ex.getCause() != null) ? ex.getCause() : ex;
+        Long runId = work.run.getId();
+        Long questionId = work.question.getId();
+        
+        logger.error("处理问题失败: 运行={}, 问题={}, 错误={}", runId, questionId, cause.getMessage(), cause);
+        
+        try {
+            // 运行由进度聚合器跟踪时，失败计数在处理结果回调中累计；分布式工作单元在单元完成时累计；
+            // 单独处理的问题直接写库
+            if (!work.unitWork && !progressAggregator.isTracking(runId)) {
+                recordFailedQuestion(work.run, questionId);
+            }
             
             // 发送问题处理失败通知
-            sendQuestionFailedNotification(run, question, repeatIndex, e.getMessage());
-            
-            return false;
+            sendQuestionFailedNotification(work.run, work.question, work.repeatIndex, cause.getMessage());
+        } catch (Exception e) {
+            logger.error("记录问题失败信息时出错: 运行={}, 问题={}", runId, questionId, e);
         }
+        
+        return QuestionOutcome.FAILED;
     }
     
     /**
-     * 组装Prompt
+     * 组装Prompt，所需数据全部来自批次执行上下文，不访问数据库
      */
-    private String assemblePrompt(ModelAnswerRun run, StandardQuestion question) {
+    private String assemblePrompt(BatchExecutionContext context, StandardQuestion question) {
         StringBuilder promptBuilder = new StringBuilder();
         
         // 获取回答Prompt组装配置
-        AnswerGenerationBatch batch = run.getAnswerGenerationBatch();
-        if (batch == null) {
-            logger.error("ModelAnswerRun {}的关联批次为null，无法组装prompt", run.getId());
-            return "Error: 无法找到批次配置";
-        }
-        
-        AnswerPromptAssemblyConfig config = batch.getAnswerAssemblyConfig();
+        AnswerGenerationBatch batch = context.getBatch();
+        AnswerPromptAssemblyConfig config = context.getAssemblyConfig();
         
         // 详细记录批次和配置信息
-        logger.info("组装prompt - 批次ID：{}，名称：{}，关联配置ID：{}", 
-            batch.getId(), batch.getName(), 
-            batch.getAnswerAssemblyConfig() != null ? batch.getAnswerAssemblyConfig().getId() : "null");
+        logger.debug("组装prompt - 批次ID：{}，名称：{}，关联配置ID：{}", 
+            batch.getId(), batch.getName(), config != null ? config.getId() : "null");
         
         if (config == null) {
             logger.warn("未找到Prompt组装配置，尝试使用默认系统提示词");
@@ -813,7 +1934,7 @@ public class AnswerGenerationTask {
         }
         
         // 获取问题的标签
-        List<Tag> tags = standardQuestionTagsRepository.findTagsByQuestionId(question.getId());
+        List<Tag> tags = context.getTags(question.getId());
         logger.debug("问题ID={}关联标签数量：{}", question.getId(), tags.size());
         
         // 只有存在标签时才添加标签提示词部分
@@ -828,7 +1949,7 @@ public class AnswerGenerationTask {
             
             // 收集标签相关的prompt
             for (Tag tag : tags) {
-                List<AnswerTagPrompt> prompts = answerTagPromptRepository.findActivePromptsByTagId(tag.getId());
+                List<AnswerTagPrompt> prompts = context.getTagPrompts(tag.getId());
                 if (!prompts.isEmpty()) {
                     logger.debug("标签「{}」(ID={})找到{}个提示词", tag.getTagName(), tag.getId(), prompts.size());
                     tagPrompts.addAll(prompts);
@@ -872,7 +1993,7 @@ public class AnswerGenerationTask {
         }
         
         // 添加题型提示词部分
-        AnswerQuestionTypePrompt questionTypePrompt = getQuestionTypePrompt(batch, question.getQuestionType());
+        AnswerQuestionTypePrompt questionTypePrompt = context.getQuestionTypePrompt(question.getQuestionType());
         
         if (questionTypePrompt != null) {
             if (config.getQuestionTypeSectionHeader() != null) {
@@ -909,43 +2030,12 @@ public class AnswerGenerationTask {
         
         // 记录完整的prompt
         String fullPrompt = promptBuilder.toString();
-        logger.info("组装完成，问题ID={}的prompt长度：{}", question.getId(), fullPrompt.length());
+        logger.debug("组装完成，问题ID={}的prompt长度：{}", question.getId(), fullPrompt.length());
         logger.debug("完整prompt内容：{}", fullPrompt);
         
         return fullPrompt;
     }
     
-    /**
-     * 调用LLM API生成回答，并支持中断检查
-     */
-    private String generateAnswerWithInterruptCheck(ModelAnswerRun run, String prompt, AtomicBoolean interrupted) {
-        Long batchId = run.getAnswerGenerationBatch().getId();
-        LlmModel model = run.getLlmModel();
-        
-        // API调用前检查中断状态
-        if (shouldInterrupt(batchId)) {
-            logger.info("API调用前检测到批次{}的中断信号，不执行API调用", batchId);
-            return null;
-        }
-        
-        // 如果外部已经设置中断标志，也直接返回
-        if (interrupted.get()) {
-            logger.info("检测到外部中断标志，不执行API调用");
-            return null;
-        }
-        
-        try {
-            // 获取上下文变量
-            Map<String, Object> contextVariables = getContextVariables(run);
-            
-            // 使用LlmApiService生成回答，同时传入中断检查回调
-            return llmApiService.generateModelAnswer(model, prompt, contextVariables);
-        } catch (Exception e) {
-            logger.error("生成模型回答失败: {}", e.getMessage(), e);
-            throw e;
-        }
-    }
-    
     /**
      * 获取上下文变量，包括批次全局参数和运行特定参数
      */
@@ -966,148 +2056,44 @@ public class AnswerGenerationTask {
     }
     
     /**
-     * 保存模型回答
+     * 构建待保存的模型回答，数据集问题映射ID和Prompt来自批次执行上下文，不访问数据库
      */
-    public void saveModelAnswer(ModelAnswerRun run, StandardQuestion question, String answerText, int repeatIndex) {
-        // 创建事务模板
-        TransactionTemplate txTemplate = new TransactionTemplate(transactionManager);
+    private LlmAnswer buildModelAnswer(BatchExecutionContext context, ModelAnswerRun run, StandardQuestion question, 
+            String answerText, int repeatIndex, String promptUsed) {
+        AnswerGenerationBatch batch = context.getBatch();
+        DatasetVersion datasetVersion = batch.getDatasetVersion();
         
-        txTemplate.execute(status -> {
-            try {
-                // 先记录原始批次信息用于调试
-                logger.debug("原始批次信息: runId={}, batchId={}", 
-                    run.getId(),
-                    run.getAnswerGenerationBatch() != null ? run.getAnswerGenerationBatch().getId() : "NULL");
-                
-                // 强制重新加载批次对象，避免使用可能部分加载的引用
-                Long originalBatchId = run.getAnswerGenerationBatch().getId();
-                AnswerGenerationBatch freshBatch = batchRepository.findById(originalBatchId)
-                    .orElseThrow(() -> new IllegalStateException("找不到ID为" + originalBatchId + "的批次"));
-                
-                // 用新加载的批次替换运行对象中的引用
-                run.setAnswerGenerationBatch(freshBatch);
-                logger.debug("重新加载的批次信息: id={}, name={}", 
-                    freshBatch.getId(), freshBatch.getName());
-                
-                // 确保数据集版本已正确加载
-                if (freshBatch.getDatasetVersion() == null) {
-                    // 尝试直接从数据库查询数据集版本ID
-                    Long datasetVersionId = jdbcTemplate.queryForObject(
-                        "SELECT dataset_version_id FROM answer_generation_batches WHERE id = ?", 
-                        Long.class, freshBatch.getId());
-                    
-                    if (datasetVersionId != null) {
-                        // 从数据库加载完整的数据集版本
-                        DatasetVersion version = jdbcTemplate.queryForObject(
-                            "SELECT * FROM dataset_versions WHERE id = ?",
-                            (rs, rowNum) -> {
-                                DatasetVersion dv = new DatasetVersion();
-                                dv.setId(rs.getLong("id"));
-                                dv.setName(rs.getString("name"));
-                                dv.setVersionNumber(rs.getString("version_number"));
-                                return dv;
-                            },
-                            datasetVersionId);
-                            
-                        if (version != null) {
-                            freshBatch.setDatasetVersion(version);
-                            logger.info("从数据库直接加载数据集版本成功: versionId={}, name={}", 
-                                version.getId(), version.getName());
-                        }
-                    }
-                }
-                
-                LlmAnswer answer = new LlmAnswer();
-                answer.setModelAnswerRun(run);
-                
-                // 检查批次的数据集版本是否为空
-                if (run.getAnswerGenerationBatch() == null) {
-                    logger.info("批次为空: runId={}, questionId={}", run.getId(), question.getId());
-                    throw new IllegalStateException("批次为空，无法保存回答");
-                }
-
-                logger.debug("批次信息: id={}, name={}", 
-                    run.getAnswerGenerationBatch().getId(),
-                    run.getAnswerGenerationBatch().getName());
-
-                if (run.getAnswerGenerationBatch().getDatasetVersion() == null) {
-                    logger.info("数据集版本为空: runId={}, questionId={}, batchId={}", 
-                        run.getId(), question.getId(), run.getAnswerGenerationBatch().getId());
-                    throw new IllegalStateException("批次的数据集版本为空，无法保存回答");
-                }
-
-                logger.debug("数据集版本信息: id={}, name={}, version={}", 
-                    run.getAnswerGenerationBatch().getDatasetVersion().getId(),
-                    run.getAnswerGenerationBatch().getDatasetVersion().getName(),
-                    run.getAnswerGenerationBatch().getDatasetVersion().getVersionNumber());
-                
-                // 需要从StandardQuestion获取对应的DatasetQuestionMapping
-                // 直接通过ID查询，避免使用懒加载的集合
-                Long datasetVersionId = run.getAnswerGenerationBatch().getDatasetVersion().getId();
-                
-                // 使用JDBC直接查询，替代EntityManager查询
-                Map<String, Object> mappingData = jdbcTemplate.queryForMap(
-                    "SELECT dqm.* FROM dataset_question_mapping dqm " +
-                    "WHERE dqm.standard_question_id = ? " +
-                    "AND dqm.dataset_version_id = ?", 
-                    question.getId(), datasetVersionId);
-                    
-                // 构建DatasetQuestionMapping对象
-                DatasetQuestionMapping mapping = new DatasetQuestionMapping();
-                mapping.setId(((Number) mappingData.get("id")).longValue());
-                
-                // 设置必要的关联
-                DatasetVersion datasetVersion = new DatasetVersion();
-                datasetVersion.setId(datasetVersionId);
-                mapping.setDatasetVersion(datasetVersion);
-                
-                mapping.setStandardQuestion(question);
-                // 设置其他需要的字段
-                
-                answer.setDatasetQuestionMapping(mapping);
-                answer.setAnswerText(answerText);
-                answer.setRepeatIndex(repeatIndex);
-                answer.setGenerationTime(LocalDateTime.now());
-                answer.setGenerationStatus(LlmAnswer.GenerationStatus.SUCCESS);
-                
-                // 可以添加其他字段
-                answer.setPromptUsed(assemblePrompt(run, question));
-                
-                answerRepository.save(answer);
-                return null;
-            } catch (Exception e) {
-                status.setRollbackOnly();
-                logger.error("保存模型回答失败: questionId={}, runId={}", question.getId(), run.getId(), e);
-                throw e;
-            }
-        });
+        Long mappingId = context.getMappingId(question.getId());
+        if (mappingId == null) {
+            logger.error("问题{}不属于批次{}的数据集版本{}，无法保存回答", 
+                question.getId(), batch.getId(), datasetVersion.getId());
+            throw new IllegalStateException("找不到问题" + question.getId() + "在数据集版本中的映射，无法保存回答");
+        }
+        
+        LlmAnswer answer = new LlmAnswer();
+        answer.setModelAnswerRun(run);
+        
+        // 构建DatasetQuestionMapping对象
+        DatasetQuestionMapping mapping = new DatasetQuestionMapping();
+        mapping.setId(mappingId);
+        mapping.setDatasetVersion(datasetVersion);
+        mapping.setStandardQuestion(question);
+        
+        answer.setDatasetQuestionMapping(mapping);
+        answer.setAnswerText(answerText);
+        answer.setRepeatIndex(repeatIndex);
+        answer.setGenerationTime(LocalDateTime.now());
+        answer.setGenerationStatus(LlmAnswer.GenerationStatus.SUCCESS);
+        answer.setPromptUsed(promptUsed);
+        
+        return answer;
     }
     
     /**
-     * 记录失败的问题
+     * 记录失败的问题，计数和ID列表在数据库端原子更新，不持有运行对象的锁
      */
-    public void recordFailedQuestion(ModelAnswerRun run, Long questionId) {
-        TransactionTemplate txTemplate = new TransactionTemplate(transactionManager);
-        txTemplate.execute(status -> {
-            try {
-                run.setFailedQuestionsCount(run.getFailedQuestionsCount() + 1);
-                
-                // 添加到失败问题ID列表
-                List<Long> failedIds = run.getFailedQuestionsIds();
-                if (failedIds == null) {
-                    failedIds = new ArrayList<>();
-                }
-                failedIds.add(questionId);
-                run.setFailedQuestionsIds(failedIds);
-                
-                runRepository.save(run);
-                return null;
-            } catch (Exception e) {
-                status.setRollbackOnly();
-                logger.error("记录失败问题时出错: runId={}, questionId={}", run.getId(), questionId, e);
-                throw e;
-            }
-        });
+    private void recordFailedQuestion(ModelAnswerRun run, Long questionId) {
+        runRepository.appendFailedQuestion(run.getId(), questionId);
     }
     
     /**
@@ -1118,40 +2104,6 @@ public class AnswerGenerationTask {
                 .orElseThrow(() -> new IllegalArgumentException("运行不存在: " + runId));
     }
     
-    /**
-     * 更新运行进度
-     */
-    public void updateRunProgress(ModelAnswerRun run, int completedQuestions, int failedQuestions, int totalQuestions) {
-        TransactionTemplate txTemplate = new TransactionTemplate(transactionManager);
-        txTemplate.execute(status -> {
-            try {
-                // 更新运行进度信息
-                run.setLastProcessedQuestionId(null);
-                run.setLastProcessedQuestionIndex(-1);
-                run.setLastActivityTime(LocalDateTime.now());
-                
-                run.setCompletedQuestionsCount(completedQuestions);
-                run.setFailedQuestionsCount(failedQuestions);
-                
-                // 计算进度百分比
-                BigDecimal progressPercentage = BigDecimal.valueOf((double) completedQuestions / totalQuestions * 100)
-                        .setScale(2, java.math.RoundingMode.HALF_UP);
-                run.setProgressPercentage(progressPercentage);
-                
-                runRepository.save(run);
-                
-                // 发送WebSocket进度更新通知
-                sendRunProgressNotification(run, progressPercentage.doubleValue(), 
-                        "已处理 " + completedQuestions + "/" + totalQuestions + " 个问题");
-                return null;
-            } catch (Exception e) {
-                status.setRollbackOnly();
-                logger.error("更新运行{}进度失败", run.getId(), e);
-                throw e;
-            }
-        });
-    }
-    
     /**
      * 更新运行状态
      */
@@ -1387,11 +2339,8 @@ public class AnswerGenerationTask {
         payload.put("completedCount", currentCompletedCount);
         payload.put("timestamp", System.currentTimeMillis());
         
-        // 使用异步方式发送消息，避免线程上下文问题
+        // 回答已落库后才会调用，无需再等待事务提交
         try {
-            // 添加短暂延迟，确保事务完全提交
-            Thread.sleep(10);
-            
             logger.info("即将发送问题完成通知: 运行ID={}, 问题ID={}, 完成数量={}", 
                 run.getId(), question.getId(), currentCompletedCount);
             
@@ -1400,10 +2349,6 @@ public class AnswerGenerationTask {
             logger.info("问题完成通知发送完成: 运行ID={}, 问题ID={}", 
                 run.getId(), question.getId());
                 
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            logger.warn("发送问题完成通知时被中断: 运行ID={}, 问题ID={}", 
-                run.getId(), question.getId());
         } catch (Exception e) {
             logger.error("发送问题完成通知失败: 运行ID={}, 问题ID={}, 错误={}", 
                 run.getId(), question.getId(), e.getMessage(), e);
@@ -1468,6 +2413,67 @@ public class AnswerGenerationTask {
         }
     }
 
+    /**
+     * 构建批次执行上下文：一次性加载数据集问题映射、问题标签、标签提示词和题型提示词
+     */
+    private BatchExecutionContext buildExecutionContext(AnswerGenerationBatch batch, List<StandardQuestion> questions) {
+        long startTime = System.currentTimeMillis();
+        Long datasetVersionId = batch.getDatasetVersion().getId();
+        
+        Map<Long, Long> mappingIds = datasetQuestionMappingRepository.findMappingIdsByDatasetVersionId(datasetVersionId);
+        Map<Long, List<Tag>> tagsByQuestionId = standardQuestionTagsRepository.findTagsByDatasetVersionId(datasetVersionId);
+        
+        // 批次涉及的所有标签的提示词一次查出，按标签分组（查询结果已按优先级排序）
+        Set<Long> tagIds = new LinkedHashSet<>();
+        for (List<Tag> tags : tagsByQuestionId.values()) {
+            for (Tag tag : tags) {
+                tagIds.add(tag.getId());
+            }
+        }
+        Map<Long, List<AnswerTagPrompt>> tagPromptsByTagId = new HashMap<>();
+        for (AnswerTagPrompt prompt : answerTagPromptRepository.findActivePromptsByTagIds(tagIds)) {
+            if (prompt.getTag() != null) {
+                tagPromptsByTagId.computeIfAbsent(prompt.getTag().getId(), k -> new ArrayList<>()).add(prompt);
+            }
+        }
+        
+        // 只解析批次中实际出现的题型
+        Map<QuestionType, AnswerQuestionTypePrompt> questionTypePrompts = new EnumMap<>(QuestionType.class);
+        for (StandardQuestion question : questions) {
+            QuestionType questionType = question.getQuestionType();
+            if (questionType != null && !questionTypePrompts.containsKey(questionType)) {
+                AnswerQuestionTypePrompt prompt = getQuestionTypePrompt(batch, questionType);
+                if (prompt != null) {
+                    questionTypePrompts.put(questionType, prompt);
+                }
+            }
+        }
+        
+        logger.info("批次{}执行上下文加载完成: 问题{}个, 映射{}个, 有标签的问题{}个, 标签提示词{}个, 题型提示词{}个, 耗时{}毫秒",
+            batch.getId(), questions.size(), mappingIds.size(), tagsByQuestionId.size(), 
+            tagPromptsByTagId.values().stream().mapToInt(List::size).sum(), questionTypePrompts.size(),
+            System.currentTimeMillis() - startTime);
+        
+        return new BatchExecutionContext(batch, new ArrayList<>(questions), mappingIds, tagsByQuestionId,
+            tagPromptsByTagId, questionTypePrompts);
+    }
+    
+    /**
+     * 获取运行所属批次的执行上下文，批次不在处理中时（单独处理问题）临时构建
+     */
+    private BatchExecutionContext getExecutionContext(ModelAnswerRun run) {
+        Long batchId = run.getAnswerGenerationBatch().getId();
+        BatchExecutionContext context = executionContexts.get(batchId);
+        if (context != null) {
+            return context;
+        }
+        
+        AnswerGenerationBatch batch = batchRepository.findById(batchId)
+            .orElseThrow(() -> new EntityNotFoundException("找不到指定的批次: " + batchId));
+        List<StandardQuestion> questions = questionRepository.findByDatasetVersionId(batch.getDatasetVersion().getId());
+        return buildExecutionContext(batch, questions);
+    }
+    
     /**
      * 根据题型获取对应的提示词
      */
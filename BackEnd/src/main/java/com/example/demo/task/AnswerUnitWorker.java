@@ -0,0 +1,234 @@
+package com.example.demo.task;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.LlmConfig;
+import com.example.demo.config.LlmConfig.DistributedConfig;
+import com.example.demo.exception.EntityNotFoundException;
+import com.example.demo.manager.AnswerWorkQueue;
+import com.example.demo.manager.AnswerWorkQueue.Lease;
+import com.example.demo.manager.AnswerWorkQueue.WorkUnit;
+import com.example.demo.manager.RunProgressAggregator;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 分布式回答生成的工作单元处理器（llm.distributed.enabled=true 时启动）
+ * 每个实例运行worker-concurrency个拉取循环，从Redis队列领取工作单元并交给AnswerGenerationTask处理；
+ * 持有的租约定时续约，实例宕机后租约过期，单元由回收任务重新投递给其他实例。
+ */
+@Component
+public class AnswerUnitWorker {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnswerUnitWorker.class);
+
+    private final AnswerWorkQueue workQueue;
+    private final AnswerGenerationTask answerGenerationTask;
+    private final RunProgressAggregator progressAggregator;
+    private final DistributedConfig config;
+
+    private final Set<Lease> activeLeases = ConcurrentHashMap.newKeySet();
+    private final List<Thread> workers = new ArrayList<>();
+    private final ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor();
+    private final LongAdder finishedUnits = new LongAdder();
+    private final LongAdder parkedUnits = new LongAdder();
+    private final LongAdder abandonedUnits = new LongAdder();
+    private final LongAdder failedUnits = new LongAdder();
+    private volatile boolean running;
+
+    @Autowired
+    public AnswerUnitWorker(AnswerWorkQueue workQueue,
+                            AnswerGenerationTask answerGenerationTask,
+                            RunProgressAggregator progressAggregator,
+                            LlmConfig llmConfig) {
+        this.workQueue = workQueue;
+        this.answerGenerationTask = answerGenerationTask;
+        this.progressAggregator = progressAggregator;
+        this.config = llmConfig.getDistributed();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        running = true;
+        int concurrency = Math.max(1, config.getWorkerConcurrency());
+        for (int i = 0; i < concurrency; i++) {
+            workers.add(Thread.ofVirtual().name("answer-unit-worker-" + i).start(this::pollLoop));
+        }
+        long interval = Math.max(1000, config.getHeartbeatIntervalMs());
+        heartbeat.scheduleWithFixedDelay(this::renewLeases, interval, interval, TimeUnit.MILLISECONDS);
+        logger.info("分布式回答生成已启用: 实例={}, 拉取并发={}, 单元大小={}, 租约有效期={}ms",
+                workQueue.getInstanceId(), concurrency, config.getUnitSize(), config.getLeaseTtlMs());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        workers.forEach(Thread::interrupt);
+        // 等待各拉取循环停止提交并等完已提交的问题，单元由拉取循环自己放回队列；等待期间继续续约。
+        // 超过租约有效期仍未结束的单元此时放回与租约过期后被回收没有区别
+        long deadline = System.currentTimeMillis() + config.getLeaseTtlMs();
+        for (Thread worker : workers) {
+            try {
+                worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        heartbeat.shutdownNow();
+        // 仍未结束的单元放回队列，由其他实例立即接手，不必等待租约过期
+        int remaining = activeLeases.size();
+        for (Lease lease : activeLeases) {
+            workQueue.release(lease);
+        }
+        logger.info("分布式回答生成已停止，释放{}个未完成的工作单元", remaining);
+    }
+
+    private void pollLoop() {
+        while (running) {
+            Lease lease;
+            try {
+                lease = workQueue.poll(config.getPollTimeoutMs());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("拉取工作单元失败", e);
+                sleepQuietly(config.getPollTimeoutMs());
+                continue;
+            }
+            if (lease == null) {
+                continue;
+            }
+            activeLeases.add(lease);
+            try {
+                process(lease);
+            } finally {
+                activeLeases.remove(lease);
+            }
+        }
+    }
+
+    private void process(Lease lease) {
+        WorkUnit unit = lease.getUnit();
+        try {
+            WorkUnitResult result = answerGenerationTask.processWorkUnit(unit, () -> lease.isLost() || !running);
+            switch (result.getStatus()) {
+                case FINISHED:
+                    long remaining = workQueue.complete(lease);
+                    if (remaining < 0) {
+                        // 租约已被回收，单元由其他实例重新处理并计入进度
+                        logger.warn("工作单元{}处理完成时租约已丢失，结果不计入进度", unit);
+                        return;
+                    }
+                    finishedUnits.increment();
+                    progressAggregator.recordUnitResult(unit.getRunId(), unit.getBatchId(), unit.getId(),
+                            result.getRunTotalQuestions(), result.getFailedQuestionIds());
+                    logger.debug("工作单元{}处理完成: 有回答={}, 失败={}, 运行剩余单元={}",
+                            unit, result.getAnsweredCount(), result.getFailedQuestionIds().size(), remaining);
+                    if (remaining == 0) {
+                        answerGenerationTask.finishDistributedRun(unit.getRunId(), unit.getBatchId());
+                    }
+                    break;
+                case INTERRUPTED:
+                    parkedUnits.increment();
+                    workQueue.park(lease);
+                    answerGenerationTask.evictUnitBatch(unit.getBatchId());
+                    break;
+                default:
+                    abandonedUnits.increment();
+                    workQueue.release(lease);
+                    break;
+            }
+        } catch (EntityNotFoundException e) {
+            // 批次或运行已被删除，丢弃单元
+            logger.warn("工作单元{}所属的批次或运行不存在，丢弃: {}", unit, e.getMessage());
+            workQueue.complete(lease);
+        } catch (Exception e) {
+            // 单元放回队列尾部重试，持续失败的问题在单元内按失败记录
+            failedUnits.increment();
+            logger.error("处理工作单元{}失败，放回队列重试", unit, e);
+            workQueue.release(lease);
+            sleepQuietly(config.getPollTimeoutMs());
+        }
+    }
+
+    private void renewLeases() {
+        for (Lease lease : activeLeases) {
+            try {
+                if (!workQueue.renew(lease)) {
+                    logger.warn("工作单元{}的租约续约失败，已被回收，停止提交新问题", lease.getUnit());
+                }
+            } catch (Exception e) {
+                logger.warn("续约工作单元{}失败: {}", lease.getUnit(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 定时回收租约过期的单元，并清除空闲的批次执行上下文
+     */
+    @Scheduled(fixedDelayString = "${llm.distributed.reap-interval-ms:10000}")
+    public void reap() {
+        if (!running) {
+            return;
+        }
+        try {
+            int requeued = workQueue.reapExpired();
+            if (requeued > 0) {
+                logger.info("重新投递{}个租约过期的工作单元", requeued);
+            }
+        } catch (Exception e) {
+            logger.error("回收过期工作单元失败", e);
+        }
+        answerGenerationTask.evictIdleUnitBatches(config.getContextIdleMs());
+    }
+
+    /**
+     * 本实例的单元处理统计和队列状态
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", config.isEnabled());
+        metrics.put("instanceId", workQueue.getInstanceId());
+        metrics.put("activeUnits", activeLeases.size());
+        metrics.put("finishedUnits", finishedUnits.sum());
+        metrics.put("parkedUnits", parkedUnits.sum());
+        metrics.put("abandonedUnits", abandonedUnits.sum());
+        metrics.put("failedUnits", failedUnits.sum());
+        if (config.isEnabled()) {
+            metrics.put("queue", workQueue.getMetrics());
+        }
+        return metrics;
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
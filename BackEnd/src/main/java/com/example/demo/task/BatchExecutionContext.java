@@ -0,0 +1,82 @@
+package com.example.demo.task;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.example.demo.entity.jdbc.AnswerGenerationBatch;
+import com.example.demo.entity.jdbc.AnswerPromptAssemblyConfig;
+import com.example.demo.entity.jdbc.AnswerQuestionTypePrompt;
+import com.example.demo.entity.jdbc.AnswerTagPrompt;
+import com.example.demo.entity.jdbc.QuestionType;
+import com.example.demo.entity.jdbc.StandardQuestion;
+import com.example.demo.entity.jdbc.Tag;
+
+/**
+ * 批次执行上下文
+ * 批次开始处理时一次性加载组装Prompt和保存回答所需的全部数据，由该批次的所有运行只读共享，
+ * 处理单个问题时不再访问数据库。
+ */
+public final class BatchExecutionContext {
+
+    private final AnswerGenerationBatch batch;
+    private final AnswerPromptAssemblyConfig assemblyConfig;
+    private final List<StandardQuestion> questions;
+    // 问题ID -> 数据集问题映射ID
+    private final Map<Long, Long> mappingIds;
+    // 问题ID -> 标签
+    private final Map<Long, List<Tag>> tagsByQuestionId;
+    // 标签ID -> 激活的标签提示词（按优先级排序）
+    private final Map<Long, List<AnswerTagPrompt>> tagPromptsByTagId;
+    private final Map<QuestionType, AnswerQuestionTypePrompt> questionTypePrompts;
+
+    BatchExecutionContext(AnswerGenerationBatch batch,
+                          List<StandardQuestion> questions,
+                          Map<Long, Long> mappingIds,
+                          Map<Long, List<Tag>> tagsByQuestionId,
+                          Map<Long, List<AnswerTagPrompt>> tagPromptsByTagId,
+                          Map<QuestionType, AnswerQuestionTypePrompt> questionTypePrompts) {
+        this.batch = batch;
+        this.assemblyConfig = batch.getAnswerAssemblyConfig();
+        this.questions = Collections.unmodifiableList(questions);
+        this.mappingIds = Collections.unmodifiableMap(mappingIds);
+        this.tagsByQuestionId = Collections.unmodifiableMap(tagsByQuestionId);
+        this.tagPromptsByTagId = Collections.unmodifiableMap(tagPromptsByTagId);
+        this.questionTypePrompts = Collections.unmodifiableMap(questionTypePrompts);
+    }
+
+    public AnswerGenerationBatch getBatch() {
+        return batch;
+    }
+
+    public Long getBatchId() {
+        return batch.getId();
+    }
+
+    public AnswerPromptAssemblyConfig getAssemblyConfig() {
+        return assemblyConfig;
+    }
+
+    public List<StandardQuestion> getQuestions() {
+        return questions;
+    }
+
+    /**
+     * 获取问题在批次数据集版本中的映射ID，不存在时返回null
+     */
+    public Long getMappingId(Long questionId) {
+        return mappingIds.get(questionId);
+    }
+
+    public List<Tag> getTags(Long questionId) {
+        return tagsByQuestionId.getOrDefault(questionId, Collections.emptyList());
+    }
+
+    public List<AnswerTagPrompt> getTagPrompts(Long tagId) {
+        return tagPromptsByTagId.getOrDefault(tagId, Collections.emptyList());
+    }
+
+    public AnswerQuestionTypePrompt getQuestionTypePrompt(QuestionType questionType) {
+        return questionType != null ? questionTypePrompts.get(questionType) : null;
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.demo.task;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.LlmConfig;
+import com.example.demo.config.LlmConfig.OwnershipConfig;
+import com.example.demo.dto.WebSocketMessage.MessageType;
+import com.example.demo.manager.BatchLeaseManager;
+import com.example.demo.service.WebSocketService;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 批次处理权的心跳和故障接管
+ * 每个实例定时续约自己持有的批次，续约失败的批次立即停止本实例的处理。续约使用独立的线程，
+ * 不与Spring默认的单线程调度器上的其他定时任务排队，避免被慢任务拖过租约有效期；
+ * 同时检查所有处理中批次的租约，过期的批次（持有者宕机）由抢到处理权的实例从各运行的断点继续处理。
+ */
+@Component
+public class BatchOwnershipMonitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchOwnershipMonitor.class);
+
+    private final BatchLeaseManager leaseManager;
+    private final AnswerGenerationTask answerGenerationTask;
+    private final WebSocketService webSocketService;
+    private final ExecutorService taskExecutor;
+    private final OwnershipConfig config;
+    private final ScheduledExecutorService heartbeatScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "batch-lease-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public BatchOwnershipMonitor(BatchLeaseManager leaseManager,
+                                 AnswerGenerationTask answerGenerationTask,
+                                 WebSocketService webSocketService,
+                                 LlmConfig llmConfig,
+                                 @Qualifier("taskExecutor") ExecutorService taskExecutor) {
+        this.leaseManager = leaseManager;
+        this.answerGenerationTask = answerGenerationTask;
+        this.webSocketService = webSocketService;
+        this.taskExecutor = taskExecutor;
+        this.config = llmConfig.getOwnership();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        long interval = Math.max(1000, config.getHeartbeatIntervalMs());
+        heartbeatScheduler.scheduleWithFixedDelay(this::heartbeat, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 续约本实例持有的批次
+     */
+    void heartbeat() {
+        try {
+            for (Long batchId : leaseManager.renewAll()) {
+                answerGenerationTask.onBatchLeaseLost(batchId);
+            }
+        } catch (Exception e) {
+            // 异常不能抛出，否则后续的心跳不再执行
+            logger.error("续约批次处理权失败", e);
+        }
+    }
+
+    /**
+     * 接管租约已过期的批次
+     */
+    @Scheduled(fixedDelayString = "${llm.ownership.reap-interval-ms:5000}")
+    public void reapExpiredLeases() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        List<Long> expired;
+        try {
+            expired = leaseManager.findExpired();
+        } catch (Exception e) {
+            logger.error("查询租约过期的批次失败", e);
+            return;
+        }
+        for (Long batchId : expired) {
+            // 本实例仍有该批次的运行在停止过程中，等其结束后再接管，避免同一批次并行处理
+            if (leaseManager.isOwned(batchId) || answerGenerationTask.isProcessingLocally(batchId)) {
+                continue;
+            }
+            try {
+                if (!leaseManager.takeOver(batchId)) {
+                    continue;
+                }
+            } catch (Exception e) {
+                logger.error("接管批次{}失败", batchId, e);
+                continue;
+            }
+            logger.warn("批次{}的处理权租约已过期，由本实例{}接管并从断点继续处理", batchId, leaseManager.getInstanceId());
+            sendTakeOverNotification(batchId);
+            try {
+                taskExecutor.submit(() -> answerGenerationTask.startBatchAnswerGeneration(batchId));
+            } catch (Exception e) {
+                // 无法提交时让租约重新过期，由其他实例接管
+                logger.error("提交批次{}的接管处理任务失败", batchId, e);
+                leaseManager.expire(batchId);
+            }
+        }
+    }
+
+    /**
+     * 实例关闭时停止本实例持有的批次，等本实例的运行停止后再让租约立即过期，其他实例无需等待租约有效期即可接管。
+     * 等待不超过半个租约有效期，之后数据库中的租约仍有半个有效期，运行尚未停止时其他实例也不会立即接管
+     */
+    @PreDestroy
+    public void destroy() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        heartbeatScheduler.shutdownNow();
+        List<Long> batchIds = leaseManager.relinquishAll();
+        if (batchIds.isEmpty()) {
+            return;
+        }
+        for (Long batchId : batchIds) {
+            answerGenerationTask.onBatchLeaseLost(batchId);
+        }
+        
+        long deadline = System.currentTimeMillis() + config.getLeaseTtlMs() / 2;
+        for (Long batchId : batchIds) {
+            while (answerGenerationTask.isProcessingLocally(batchId) && System.currentTimeMillis() < deadline) {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            if (answerGenerationTask.isProcessingLocally(batchId)) {
+                logger.warn("实例关闭时批次{}的运行未在{}ms内停止，租约仍将置为过期", batchId, config.getLeaseTtlMs() / 2);
+            }
+            leaseManager.expire(batchId);
+        }
+        logger.info("实例关闭，已释放{}个批次的处理权: {}", batchIds.size(), batchIds);
+    }
+
+    private void sendTakeOverNotification(Long batchId) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("batchId", batchId);
+        payload.put("instance", leaseManager.getInstanceId());
+        payload.put("message", "原处理实例已失效，批次由其他实例从断点继续处理");
+        payload.put("timestamp", System.currentTimeMillis());
+        webSocketService.sendBatchMessage(batchId, MessageType.NOTIFICATION, payload);
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.demo.task;
+
+import java.util.BitSet;
+
+/**
+ * 运行断点跟踪器
+ * 同一运行内的问题可能乱序完成，断点只推进到连续完成的最前位置，
+ * 保证从断点恢复时不会跳过尚未完成的问题
+ */
+class RunCheckpointTracker {
+
+    private final BitSet finished = new BitSet();
+    private final int totalCount;
+    private int nextIndex;
+
+    RunCheckpointTracker(int startIndex, int totalCount) {
+        this.nextIndex = startIndex;
+        this.totalCount = totalCount;
+    }
+
+    /**
+     * 标记指定位置已处理完成（成功或失败），返回新的断点位置
+     */
+    synchronized int markFinished(int index) {
+        finished.set(index);
+        while (nextIndex < totalCount && finished.get(nextIndex)) {
+            nextIndex++;
+        }
+        return nextIndex;
+    }
+
+    /**
+     * 获取断点位置，即第一个尚未处理完成的位置
+     */
+    synchronized int getNextIndex() {
+        return nextIndex;
+    }
+
+    /**
+     * 是否所有位置都已处理完成
+     */
+    synchronized boolean isAllFinished() {
+        return nextIndex >= totalCount;
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.demo.task;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 单个分布式工作单元的处理结果
+ */
+final class WorkUnitResult {
+
+    enum Status {
+        // 单元内所有问题都已处理（成功、失败或此前已有回答）
+        FINISHED,
+        // 批次被暂停，单元需要暂存到恢复时再处理
+        INTERRUPTED,
+        // 租约已丢失或本实例正在关闭，单元交给其他实例处理
+        ABANDONED
+    }
+
+    private final Status status;
+    private final int answeredCount;
+    private final List<Long> failedQuestionIds;
+    private final int runTotalQuestions;
+
+    private WorkUnitResult(Status status, int answeredCount, List<Long> failedQuestionIds, int runTotalQuestions) {
+        this.status = status;
+        this.answeredCount = answeredCount;
+        this.failedQuestionIds = failedQuestionIds;
+        this.runTotalQuestions = runTotalQuestions;
+    }
+
+    static WorkUnitResult finished(int answeredCount, List<Long> failedQuestionIds, int runTotalQuestions) {
+        return new WorkUnitResult(Status.FINISHED, answeredCount, failedQuestionIds, runTotalQuestions);
+    }
+
+    static WorkUnitResult interrupted() {
+        return new WorkUnitResult(Status.INTERRUPTED, 0, Collections.emptyList(), 0);
+    }
+
+    static WorkUnitResult abandoned() {
+        return new WorkUnitResult(Status.ABANDONED, 0, Collections.emptyList(), 0);
+    }
+
+    Status getStatus() {
+        return status;
+    }
+
+    /**
+     * 单元内有回答的问题数（含此前已保存的回答）
+     */
+    int getAnsweredCount() {
+        return answeredCount;
+    }
+
+    List<Long> getFailedQuestionIds() {
+        return failedQuestionIds;
+    }
+
+    /**
+     * 单元所属运行的总问题数（含重复次数）
+     */
+    int getRunTotalQuestions() {
+        return runTotalQuestions;
+    }
+}
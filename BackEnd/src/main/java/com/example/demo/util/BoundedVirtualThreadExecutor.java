@@ -0,0 +1,181 @@
+package com.example.demo.util;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 基于虚拟线程的有界执行器
+ * 每个任务运行在独立的虚拟线程上，通过信号量而不是线程池大小限制并发数。
+ * 等待许可的任务计为排队任务，不会因队列已满而被拒绝，适合大量阻塞的LLM调用。
+ * 提交从不阻塞：流水线各阶段的任务由HttpClient完成线程和延迟重试队列的续接提交，阻塞提交方会拖住这些共享线程，
+ * 背压由提交问题的运行循环施加（见 AnswerGenerationTask 的流水线名额）。
+ */
+public class BoundedVirtualThreadExecutor extends AbstractExecutorService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BoundedVirtualThreadExecutor.class);
+
+    private final String name;
+    private final int maxConcurrency;
+    private final Semaphore permits;
+    private final ThreadFactory threadFactory;
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    private final Object terminationLock = new Object();
+
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicInteger queuedCount = new AtomicInteger();
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private volatile boolean shutdown;
+
+    public BoundedVirtualThreadExecutor(String name, int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("最大并发数必须大于0: " + maxConcurrency);
+        }
+        this.name = name;
+        this.maxConcurrency = maxConcurrency;
+        this.permits = new Semaphore(maxConcurrency, true);
+        this.threadFactory = Thread.ofVirtual().name(name + "-", 0).factory();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        Objects.requireNonNull(command, "任务不能为空");
+        if (shutdown) {
+            throw new RejectedExecutionException("执行器" + name + "已关闭");
+        }
+
+        submittedCount.incrementAndGet();
+        queuedCount.incrementAndGet();
+        Thread thread = threadFactory.newThread(() -> runTask(command));
+        threads.add(thread);
+        thread.start();
+    }
+
+    private void runTask(Runnable command) {
+        try {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                // 排队期间被取消（通常是shutdownNow）
+                queuedCount.decrementAndGet();
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            queuedCount.decrementAndGet();
+            activeCount.incrementAndGet();
+            try {
+                command.run();
+                completedCount.incrementAndGet();
+            } catch (Throwable t) {
+                failedCount.incrementAndGet();
+                logger.error("执行器{}中的任务执行异常", name, t);
+            } finally {
+                activeCount.decrementAndGet();
+                permits.release();
+            }
+        } finally {
+            threads.remove(Thread.currentThread());
+            if (shutdown && threads.isEmpty()) {
+                synchronized (terminationLock) {
+                    terminationLock.notifyAll();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && threads.isEmpty();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (terminationLock) {
+            while (!isTerminated()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(terminationLock, remaining);
+            }
+            return true;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * 正在执行的任务数
+     */
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    /**
+     * 等待并发许可的任务数
+     */
+    public int getQueuedCount() {
+        return queuedCount.get();
+    }
+
+    /**
+     * 获取执行器指标快照
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("name", name);
+        metrics.put("maxConcurrency", maxConcurrency);
+        metrics.put("activeTasks", activeCount.get());
+        metrics.put("queuedTasks", queuedCount.get());
+        metrics.put("availablePermits", permits.availablePermits());
+        metrics.put("submittedTasks", submittedCount.get());
+        metrics.put("completedTasks", completedCount.get());
+        metrics.put("failedTasks", failedCount.get());
+        metrics.put("shutdown", shutdown);
+        return metrics;
+    }
+}
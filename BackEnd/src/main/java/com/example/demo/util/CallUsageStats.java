@@ -0,0 +1,197 @@
+package com.example.demo.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.example.demo.entity.jdbc.LlmModel;
+
+/**
+ * 模型调用的用量汇总
+ * 增量累计调用次数、重试次数、token用量、估算费用和延迟分布；
+ * 吞吐按首次调用开始到最近一次调用结束的时间计算，反映并发执行时的实际产出速度。
+ * 费用按模型参数 input_price_per_1k_tokens、output_price_per_1k_tokens 估算，未配置价格时不计费用。
+ */
+public class CallUsageStats {
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    // 提供商未返回用量的调用数，这些调用不计入token和费用
+    private final LongAdder callsWithoutUsage = new LongAdder();
+    private final LongAdder promptTokens = new LongAdder();
+    private final LongAdder completionTokens = new LongAdder();
+    private final LongAdder latencyMillisTotal = new LongAdder();
+    private final DoubleAdder estimatedCost = new DoubleAdder();
+    private final LatencyHistogram latency;
+    private final LatencyHistogram ttft;
+    private final AtomicLong firstStartMillis = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong lastEndMillis = new AtomicLong();
+    private volatile boolean priced;
+
+    /**
+     * @param latencySamples 延迟分布保留的样本数上限
+     */
+    public CallUsageStats(long latencySamples) {
+        this.latency = new LatencyHistogram(latencySamples);
+        this.ttft = new LatencyHistogram(latencySamples);
+    }
+
+    /**
+     * 记录一次成功的调用
+     *
+     * @param latencyMillis   调用耗时
+     * @param ttftMillis      首字延迟，非流式调用为null
+     * @param endMillis       调用结束的时间戳
+     * @param modelParameters 模型参数，用于读取价格，可为null
+     */
+    public void record(Integer promptTokens, Integer completionTokens, long latencyMillis, Long ttftMillis,
+                       int retries, long endMillis, Map<String, Object> modelParameters) {
+        calls.increment();
+        this.retries.add(retries);
+        latencyMillisTotal.add(latencyMillis);
+        latency.record(latencyMillis);
+        if (ttftMillis != null) {
+            ttft.record(ttftMillis);
+        }
+        firstStartMillis.accumulateAndGet(endMillis - latencyMillis, Math::min);
+        lastEndMillis.accumulateAndGet(endMillis, Math::max);
+
+        if (promptTokens == null && completionTokens == null) {
+            callsWithoutUsage.increment();
+            return;
+        }
+        if (promptTokens != null) {
+            this.promptTokens.add(promptTokens);
+        }
+        if (completionTokens != null) {
+            this.completionTokens.add(completionTokens);
+        }
+        double cost = estimateCost(modelParameters, promptTokens, completionTokens);
+        if (cost >= 0) {
+            priced = true;
+            estimatedCost.add(cost);
+        }
+    }
+
+    /**
+     * 累加已汇总的调用统计（从数据库或Redis恢复），延迟分布另行通过recordLatencySample或addLatencyBucket补充
+     *
+     * @param estimatedCost 估算费用，模型未配置价格时为null
+     */
+    public void addTotals(long calls, long retries, long callsWithoutUsage, long promptTokens, long completionTokens,
+                          long latencyMillisTotal, Double estimatedCost, long firstStartMillis, long lastEndMillis) {
+        if (calls <= 0) {
+            return;
+        }
+        this.calls.add(calls);
+        this.retries.add(retries);
+        this.callsWithoutUsage.add(callsWithoutUsage);
+        this.promptTokens.add(promptTokens);
+        this.completionTokens.add(completionTokens);
+        this.latencyMillisTotal.add(latencyMillisTotal);
+        this.firstStartMillis.accumulateAndGet(firstStartMillis, Math::min);
+        this.lastEndMillis.accumulateAndGet(lastEndMillis, Math::max);
+        if (estimatedCost != null) {
+            priced = true;
+            this.estimatedCost.add(estimatedCost);
+        }
+    }
+
+    /**
+     * 只记录延迟分布的样本，不计入调用次数
+     */
+    public void recordLatencySample(long latencyMillis, Long ttftMillis) {
+        latency.record(latencyMillis);
+        if (ttftMillis != null) {
+            ttft.record(ttftMillis);
+        }
+    }
+
+    /**
+     * 合并延迟分布的桶计数
+     *
+     * @param firstOutput 是否为首字延迟的分布
+     */
+    public void addLatencyBucket(boolean firstOutput, int index, long samples) {
+        (firstOutput ? ttft : latency).addBucket(index, samples);
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    /**
+     * 按模型参数中的每千token价格估算费用（单次调用或token总量）
+     *
+     * @return 费用，模型未配置价格时返回-1
+     */
+    public static double estimateCost(Map<String, Object> modelParameters, Number promptTokens,
+                                      Number completionTokens) {
+        Double inputPrice = priceParameter(modelParameters, LlmModel.PARAM_INPUT_PRICE_PER_1K_TOKENS);
+        Double outputPrice = priceParameter(modelParameters, LlmModel.PARAM_OUTPUT_PRICE_PER_1K_TOKENS);
+        if (inputPrice == null && outputPrice == null) {
+            return -1;
+        }
+        double cost = 0;
+        if (inputPrice != null && promptTokens != null) {
+            cost += promptTokens.doubleValue() / 1000.0 * inputPrice;
+        }
+        if (outputPrice != null && completionTokens != null) {
+            cost += completionTokens.doubleValue() / 1000.0 * outputPrice;
+        }
+        return cost;
+    }
+
+    public Map<String, Object> toMap() {
+        long count = calls.sum();
+        long prompt = promptTokens.sum();
+        long completion = completionTokens.sum();
+        long latencyTotal = latencyMillisTotal.sum();
+        long first = firstStartMillis.get();
+        long elapsedMillis = count > 0 ? Math.max(1, lastEndMillis.get() - first) : 0;
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("calls", count);
+        map.put("retries", retries.sum());
+        map.put("callsWithoutUsage", callsWithoutUsage.sum());
+        map.put("promptTokens", prompt);
+        map.put("completionTokens", completion);
+        map.put("totalTokens", prompt + completion);
+        map.put("avgLatencyMillis", count > 0 ? latencyTotal / count : 0);
+        map.put("p50LatencyMillis", latency.percentile(0.5));
+        map.put("p95LatencyMillis", latency.percentile(0.95));
+        map.put("p99LatencyMillis", latency.percentile(0.99));
+        map.put("p50TtftMillis", ttft.percentile(0.5));
+        map.put("p95TtftMillis", ttft.percentile(0.95));
+        // 整体吞吐：并发调用的输出token总数除以实际经过的时间
+        map.put("outputTokensPerSecond", elapsedMillis > 0 ? round(completion * 1000.0 / elapsedMillis) : 0);
+        // 单次调用的平均输出速度
+        map.put("perCallOutputTokensPerSecond", latencyTotal > 0 ? round(completion * 1000.0 / latencyTotal) : 0);
+        map.put("estimatedCost", priced ? round(estimatedCost.sum()) : null);
+        return map;
+    }
+
+    private static Double priceParameter(Map<String, Object> parameters, String key) {
+        if (parameters == null) {
+            return null;
+        }
+        Object value = parameters.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof String) {
+            try {
+                return Double.parseDouble(((String) value).trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10000) / 10000.0;
+    }
+}
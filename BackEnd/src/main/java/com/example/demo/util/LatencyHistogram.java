@@ -0,0 +1,102 @@
+package com.example.demo.util;
+
+/**
+ * 延迟直方图
+ * 按2的幂分段、每段再等分为4个桶记录毫秒延迟，分位数误差不超过约25%，内存固定。
+ * 样本数达到上限时所有桶计数减半，使分位数逐步跟随延迟的变化而不是被历史样本锁定。
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 4;
+    private static final int MAX_OCTAVE = 40;
+
+    private final long[] counts = new long[1 + (MAX_OCTAVE + 1) * SUB_BUCKETS];
+    private final long maxSamples;
+    private long count;
+
+    /**
+     * @param maxSamples 保留的样本数上限，达到后计数减半
+     */
+    public LatencyHistogram(long maxSamples) {
+        this.maxSamples = Math.max(2, maxSamples);
+    }
+
+    public synchronized void record(long millis) {
+        counts[bucketIndex(millis)]++;
+        if (++count >= maxSamples) {
+            count = 0;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] >>= 1;
+                count += counts[i];
+            }
+        }
+    }
+
+    /**
+     * 按桶合并其他直方图的计数（如各实例汇总到Redis的计数），合并后超过样本上限时计数减半
+     *
+     * @param index 桶序号，由bucketIndex计算
+     */
+    public synchronized void addBucket(int index, long samples) {
+        if (index < 0 || index >= counts.length || samples <= 0) {
+            return;
+        }
+        counts[index] += samples;
+        count += samples;
+        while (count >= maxSamples) {
+            count = 0;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] >>= 1;
+                count += counts[i];
+            }
+        }
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * 估计分位数延迟，返回所在桶的上界
+     *
+     * @param percentile 0到1之间，如0.95
+     * @return 延迟毫秒数，没有样本时返回-1
+     */
+    public synchronized long percentile(double percentile) {
+        if (count == 0) {
+            return -1;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return upperBoundMillis(i);
+            }
+        }
+        return upperBoundMillis(counts.length - 1);
+    }
+
+    /**
+     * 延迟所在的桶序号
+     */
+    public static int bucketIndex(long millis) {
+        if (millis < 1) {
+            return 0;
+        }
+        int octave = Math.min(MAX_OCTAVE, 63 - Long.numberOfLeadingZeros(millis));
+        int sub = octave >= 2
+                ? (int) ((millis >> (octave - 2)) & (SUB_BUCKETS - 1))
+                : (int) ((millis << (2 - octave)) & (SUB_BUCKETS - 1));
+        return 1 + octave * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBoundMillis(int index) {
+        if (index == 0) {
+            return 1;
+        }
+        int octave = (index - 1) / SUB_BUCKETS;
+        int sub = (index - 1) % SUB_BUCKETS;
+        return (long) Math.ceil((SUB_BUCKETS + sub + 1) * Math.pow(2, octave) / SUB_BUCKETS);
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.demo.util;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+
+import com.example.demo.config.LlmConfig;
+
+/**
+ * 模型调用重试策略
+ * 负责判断错误是否值得重试，以及计算带抖动的指数退避延迟。
+ */
+public final class LlmRetryPolicy {
+
+    private LlmRetryPolicy() {
+    }
+
+    /**
+     * 判断错误是否可重试（会沿异常链查找根本原因）
+     * 可重试：超时、连接失败或重置、HTTP 408/429 及 5xx；
+     * 不可重试：其余 4xx（请求本身有问题，重试也不会成功）、解析错误、中断等。
+     */
+    public static boolean isRetryable(Throwable error) {
+        Throwable current = error;
+        int depth = 0;
+        while (current != null && depth++ < 10) {
+            if (current instanceof InterruptedException) {
+                return false;
+            }
+            if (current instanceof HttpStatusCodeException httpError) {
+                int status = httpError.getStatusCode().value();
+                return status == 408 || status == 429 || status >= 500;
+            }
+            if (current instanceof ResourceAccessException
+                    || current instanceof SocketTimeoutException
+                    || current instanceof HttpTimeoutException
+                    || current instanceof TimeoutException
+                    || current instanceof ConnectException
+                    || current instanceof SocketException) {
+                return true;
+            }
+            if (current instanceof IOException && current.getMessage() != null
+                    && current.getMessage().toLowerCase().contains("connection reset")) {
+                return true;
+            }
+            if (current.getCause() == current) {
+                break;
+            }
+            current = current.getCause();
+        }
+        return false;
+    }
+
+    /**
+     * 计算第attempt次失败后的退避延迟（毫秒）
+     * 基础延迟按 backoffDelay * 2^(attempt-1) 增长并受 maxBackoffDelay 限制，
+     * 实际取 [基础延迟/2, 基础延迟] 之间的随机值，避免大量请求同时重试。
+     */
+    public static long backoffDelayMillis(LlmConfig.RetryConfig config, int attempt) {
+        long initial = Math.max(1, config.getBackoffDelay());
+        long max = Math.max(initial, config.getMaxBackoffDelay());
+        int exponent = Math.min(Math.max(attempt - 1, 0), 20);
+        long base = Math.min(max, initial << exponent);
+        long half = base / 2;
+        return half + ThreadLocalRandom.current().nextLong(base - half + 1);
+    }
+}
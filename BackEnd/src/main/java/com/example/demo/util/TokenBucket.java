@@ -0,0 +1,78 @@
+package com.example.demo.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 令牌桶
+ * 按固定速率补充令牌，采用预约方式：令牌不足时仍扣减（允许为负），返回调用方需要等待的时间，
+ * 从而保证等待中的请求按到达顺序获得配额。
+ */
+public class TokenBucket {
+
+    private double capacity;
+    private double refillPerNano;
+    private double tokens;
+    private long lastRefillNanos;
+
+    /**
+     * @param permitsPerMinute 每分钟补充的令牌数，同时作为桶容量（允许一分钟内的突发）
+     */
+    public TokenBucket(long permitsPerMinute) {
+        this.capacity = permitsPerMinute;
+        this.refillPerNano = permitsPerMinute / (double) TimeUnit.MINUTES.toNanos(1);
+        this.tokens = permitsPerMinute;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * 修改每分钟速率，已有令牌不超过新容量
+     */
+    public synchronized void setPermitsPerMinute(long permitsPerMinute) {
+        refill();
+        this.capacity = permitsPerMinute;
+        this.refillPerNano = permitsPerMinute / (double) TimeUnit.MINUTES.toNanos(1);
+        this.tokens = Math.min(tokens, capacity);
+    }
+
+    public synchronized long getPermitsPerMinute() {
+        return (long) capacity;
+    }
+
+    /**
+     * 预约令牌
+     *
+     * @param permits 需要的令牌数，超过容量时按容量计算，避免永远无法满足
+     * @return 获得令牌前需要等待的纳秒数，0表示立即可用
+     */
+    public synchronized long reserve(long permits) {
+        refill();
+        double needed = Math.min(permits, capacity);
+        tokens -= needed;
+        if (tokens >= 0) {
+            return 0;
+        }
+        return (long) Math.ceil(-tokens / refillPerNano);
+    }
+
+    /**
+     * 归还多扣的令牌或补扣少扣的令牌（预估值与实际用量不同时调用）
+     */
+    public synchronized void adjust(long delta) {
+        refill();
+        tokens = Math.min(capacity, tokens + delta);
+    }
+
+    /**
+     * 当前可用令牌数，为负表示已有请求在排队等待
+     */
+    public synchronized double getAvailablePermits() {
+        refill();
+        return tokens;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * refillPerNano);
+        lastRefillNanos = now;
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.demo.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * 模型调用的token用量，字段未知时为null
+ * 支持OpenAI（usage.prompt_tokens/completion_tokens）、Anthropic（usage.input_tokens/output_tokens）
+ * 和Google（usageMetadata）三种响应格式。
+ */
+public final class TokenUsage {
+
+    private final Integer promptTokens;
+    private final Integer completionTokens;
+    private final Integer totalTokens;
+
+    public TokenUsage(Integer promptTokens, Integer completionTokens, Integer totalTokens) {
+        this.promptTokens = promptTokens;
+        this.completionTokens = completionTokens;
+        if (totalTokens == null && promptTokens != null && completionTokens != null) {
+            totalTokens = promptTokens + completionTokens;
+        }
+        this.totalTokens = totalTokens;
+    }
+
+    /**
+     * 从响应JSON（或流式事件）中解析用量，没有用量信息时返回null
+     */
+    public static TokenUsage from(JsonNode root) {
+        if (root == null || root.isMissingNode()) {
+            return null;
+        }
+        JsonNode usage = root.path("usage");
+        if (usage.isMissingNode() || usage.isNull()) {
+            // Anthropic流式的message_start事件把用量放在message下
+            usage = root.path("message").path("usage");
+        }
+        if (usage.isObject()) {
+            Integer prompt = intOrNull(usage, "prompt_tokens", "input_tokens");
+            Integer completion = intOrNull(usage, "completion_tokens", "output_tokens");
+            Integer total = intOrNull(usage, "total_tokens", null);
+            if (prompt != null || completion != null || total != null) {
+                return new TokenUsage(prompt, completion, total);
+            }
+        }
+        JsonNode metadata = root.path("usageMetadata");
+        if (metadata.isObject()) {
+            return new TokenUsage(intOrNull(metadata, "promptTokenCount", null),
+                    intOrNull(metadata, "candidatesTokenCount", null),
+                    intOrNull(metadata, "totalTokenCount", null));
+        }
+        return null;
+    }
+
+    /**
+     * 合并两次用量，后者的非空字段覆盖前者（流式响应的用量可能分多次给出）
+     */
+    public static TokenUsage merge(TokenUsage current, TokenUsage update) {
+        if (current == null) {
+            return update;
+        }
+        if (update == null) {
+            return current;
+        }
+        return new TokenUsage(
+                update.promptTokens != null ? update.promptTokens : current.promptTokens,
+                update.completionTokens != null ? update.completionTokens : current.completionTokens,
+                update.totalTokens);
+    }
+
+    public Integer getPromptTokens() {
+        return promptTokens;
+    }
+
+    public Integer getCompletionTokens() {
+        return completionTokens;
+    }
+
+    public Integer getTotalTokens() {
+        return totalTokens;
+    }
+
+    private static Integer intOrNull(JsonNode node, String name, String alternative) {
+        JsonNode value = node.path(name);
+        if (!value.isNumber() && alternative != null) {
+            value = node.path(alternative);
+        }
+        return value.isNumber() ? value.intValue() : null;
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.demo.utils;
+
+/**
+ * 流式思考过程过滤器
+ * 按块接收模型输出，实时剥离思考过程标记（与 TextPreprocessor 使用相同的标记）包裹的内容，
+ * 标记被拆分在两个块之间时只暂存不完整的标记部分，原始输出不会被完整缓存两份。
+ * 非线程安全，每次流式调用使用一个实例。
+ */
+public class StreamingThinkingFilter {
+
+    private static final String[] THINKING_TAGS = {"think", "thinking", "reasoning", "work", "thought"};
+
+    private final StringBuilder visible = new StringBuilder();
+    private final StringBuilder thinking = new StringBuilder();
+    // 尚未确定是否属于标记的尾部文本
+    private final StringBuilder pending = new StringBuilder();
+    // 当前所在的思考标记名称，null表示不在思考过程中
+    private String openTag;
+    // 最近一次匹配到的开始标记名称
+    private String matchedTagName;
+    // 当前思考块在thinking中的起始位置，标记未闭合时用于还原原文
+    private int openBlockStart;
+
+    /**
+     * 追加一段模型输出
+     */
+    public void append(String chunk) {
+        if (chunk == null || chunk.isEmpty()) {
+            return;
+        }
+        pending.append(chunk);
+        process(false);
+    }
+
+    /**
+     * 输出结束，处理剩余文本
+     * 未闭合的思考标记按原文保留，与 TextPreprocessor 的正则处理结果一致。
+     */
+    public void finish() {
+        process(true);
+        if (openTag != null) {
+            visible.append('<').append(openTag).append('>').append(thinking, openBlockStart, thinking.length());
+            thinking.setLength(openBlockStart);
+            openTag = null;
+        }
+    }
+
+    /**
+     * 去除思考过程后的回答文本（未做空白标准化）
+     */
+    public String getVisibleText() {
+        return visible.toString();
+    }
+
+    /**
+     * 提取的思考过程，多个思考块之间以换行分隔
+     */
+    public String getThinkingText() {
+        return thinking.toString().trim();
+    }
+
+    private void process(boolean endOfStream) {
+        int index = 0;
+        int length = pending.length();
+        while (index < length) {
+            int tagStart = pending.indexOf("<", index);
+            if (tagStart < 0) {
+                emit(index, length);
+                index = length;
+                break;
+            }
+            emit(index, tagStart);
+
+            int matched = matchTag(tagStart);
+            if (matched < 0 && !endOfStream) {
+                // 可能是被拆分的标记，等待下一块
+                index = tagStart;
+                break;
+            }
+            if (matched > 0) {
+                if (openTag == null) {
+                    openTag = matchedTagName;
+                    if (thinking.length() > 0) {
+                        thinking.append('\n');
+                    }
+                    openBlockStart = thinking.length();
+                } else {
+                    openTag = null;
+                }
+                index = tagStart + matched;
+            } else {
+                emit(tagStart, tagStart + 1);
+                index = tagStart + 1;
+            }
+        }
+        pending.delete(0, index);
+    }
+
+    /**
+     * 判断指定位置是否为标记：不在思考中时匹配开始标记，在思考中时只匹配对应的结束标记
+     *
+     * @return 标记长度；0表示不是标记；-1表示文本不足以判断
+     */
+    private int matchTag(int start) {
+        if (openTag != null) {
+            return matchCandidate(start, "</" + openTag + ">");
+        }
+        boolean partial = false;
+        for (String tag : THINKING_TAGS) {
+            int result = matchCandidate(start, "<" + tag + ">");
+            if (result > 0) {
+                matchedTagName = tag;
+                return result;
+            }
+            if (result < 0) {
+                partial = true;
+            }
+        }
+        return partial ? -1 : 0;
+    }
+
+    private int matchCandidate(int start, String candidate) {
+        int available = pending.length() - start;
+        int compareLength = Math.min(available, candidate.length());
+        for (int i = 0; i < compareLength; i++) {
+            if (pending.charAt(start + i) != candidate.charAt(i)) {
+                return 0;
+            }
+        }
+        return available >= candidate.length() ? candidate.length() : -1;
+    }
+
+    private void emit(int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        if (openTag == null) {
+            visible.append(pending, from, to);
+        } else {
+            thinking.append(pending, from, to);
+        }
+    }
+}
@@ -106,15 +106,29 @@ public class TextPreprocessor {
         // 1. 移除思考过程标记
         String result = removeThinkingProcess(text);
         
-        // 2. 移除控制字符（ASCII 0-31，除了制表符、换行符和回车符）
-        result = result.replaceAll("[\\x00-\\x08\\x0B\\x0C\\x0E-\\x1F]", "");
+        // 2. 移除控制字符并标准化空白
+        return normalizeText(result);
+    }
+    
+    /**
+     * 标准化文本：移除控制字符、合并空白、去除首尾空白（不处理思考过程标记，
+     * 供已在流式输出中剥离思考过程的文本使用）
+     * 
+     * @param text 原始文本
+     * @return 标准化后的文本
+     */
+    public static String normalizeText(String text) {
+        if (text == null || text.isEmpty()) {
+            return text;
+        }
         
-        // 3. 标准化空白字符（多个空格变成一个）
-        result = result.replaceAll("\\s+", " ");
+        // 移除控制字符（ASCII 0-31，除了制表符、换行符和回车符）
+        String result = text.replaceAll("[\\x00-\\x08\\x0B\\x0C\\x0E-\\x1F]", "");
         
-        // 4. 移除首尾空白
-        result = result.trim();
+        // 标准化空白字符（多个空格变成一个）
+        result = result.replaceAll("\\s+", " ");
         
-        return result;
+        // 移除首尾空白
+        return result.trim();
     }
 } 
\ No newline at end of file